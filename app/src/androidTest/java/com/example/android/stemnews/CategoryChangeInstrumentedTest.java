@@ -0,0 +1,149 @@
+package com.example.android.stemnews;
+
+import android.content.Context;
+import android.preference.PreferenceManager;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.*;
+
+/**
+ * Loads the first page with the default settings before and after the search categories change,
+ * against a local server on the device, to check which requests the change makes.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CategoryChangeInstrumentedTest {
+
+    private static final int CATEGORY_RESULTS = 15;
+
+    private Context appContext;
+    private MockWebServer server;
+    private String apiUrl;
+    private final List<String> requestedQueries = Collections.synchronizedList(new ArrayList<String>());
+
+    @Before
+    public void setUp() throws IOException {
+        appContext = InstrumentationRegistry.getTargetContext();
+
+        // Start from the default settings, without a first page recorded
+        PreferenceManager.getDefaultSharedPreferences(appContext).edit().clear().commit();
+
+        server = new MockWebServer();
+        server.setDispatcher(new CategoryDispatcher());
+        server.start();
+        apiUrl = server.url("/search").toString();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+        PreferenceManager.getDefaultSharedPreferences(appContext).edit().clear().commit();
+    }
+
+    @Test
+    public void addedCategory_isTheOnlyOneRequested() {
+        loadFirstPage("science");
+        requestedQueries.clear();
+
+        List<NewsArticle> firstPage = loadFirstPage("science", "technology");
+
+        assertEquals(Collections.singletonList("technology"), requestedQueries);
+        assertEquals(PageSizer.DEFAULT_PAGE_SIZE, firstPage.size());
+        for (int i = 0; i < firstPage.size(); i++) {
+            String category = (i % 2 == 0) ? "science" : "technology";
+            assertEquals(category + "/" + (i / 2), firstPage.get(i).getArticleId());
+        }
+    }
+
+    @Test
+    public void removedCategory_withNothingStored_makesOneCombinedRequest() {
+        loadFirstPage("engineering", "science", "technology");
+        requestedQueries.clear();
+
+        loadFirstPage("science", "technology");
+
+        assertEquals(Collections.singletonList("science OR technology"), requestedQueries);
+    }
+
+    @Test
+    public void unchangedCategories_makeOneCombinedRequest() {
+        loadFirstPage("science", "technology");
+        requestedQueries.clear();
+
+        loadFirstPage("science", "technology");
+
+        assertEquals(Collections.singletonList("science OR technology"), requestedQueries);
+    }
+
+    // Choose the categories in the settings and load the first page as the app does when opened
+    private List<NewsArticle> loadFirstPage(String... categories) {
+        PreferenceManager.getDefaultSharedPreferences(appContext).edit()
+                .putStringSet(appContext.getString(R.string.settings_search_categories_key),
+                        new HashSet<>(Arrays.asList(categories)))
+                .commit();
+        String firstPageUrl = QueryUtils.createUrlString(appContext, apiUrl, 1, PageSizer.DEFAULT_PAGE_SIZE);
+
+        ArticleLoader articleLoader = new ArticleLoader(appContext, firstPageUrl, null, false, true,
+                QueryUtils.isFanOutEnabled(appContext));
+        assertNotNull(articleLoader.loadInBackground());
+
+        return ArticleCache.getInstance(appContext).get(ArticleCache.queryKey(firstPageUrl));
+    }
+
+    /*
+    Replies to the combined query of any of the categories with the newest of their results, where
+    each category's articles alternate in date with the others'
+    */
+    private final class CategoryDispatcher extends Dispatcher {
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            String query = request.getRequestUrl().queryParameter("q");
+            int page = Integer.parseInt(request.getRequestUrl().queryParameter(QueryUtils.PAGE_PARAMETER));
+            int pageSize = Integer.parseInt(request.getRequestUrl().queryParameter(QueryUtils.PAGE_SIZE_PARAMETER));
+            requestedQueries.add(query);
+
+            List<String> categories = Arrays.asList(query.split(" OR "));
+            List<String> results = new ArrayList<>();
+            for (int i = 0; i < CATEGORY_RESULTS * 4; i++) {
+                String category = categoryAt(i % 4);
+                if (categories.contains(category)) {
+                    results.add(String.format(Locale.US,
+                            "{\"id\":\"%1$s/%2$d\",\"webTitle\":\"%1$s %2$d\",\"sectionName\":\"Science\","
+                                    + "\"tags\":[],\"webPublicationDate\":\"2018-05-20T%3$02d:%4$02d:00Z\","
+                                    + "\"webUrl\":\"https://www.theguardian.com/%1$s/%2$d\"}",
+                            category, i / 4, 23 - i / 60, 59 - i % 60));
+                }
+            }
+
+            int start = Math.min((page - 1) * pageSize, results.size());
+            int end = Math.min(start + pageSize, results.size());
+            StringBuilder body = new StringBuilder("{\"response\":{\"status\":\"ok\",\"results\":[");
+            for (int i = start; i < end; i++) {
+                body.append(i > start ? "," : "").append(results.get(i));
+            }
+            return new MockResponse().setBody(body.append("]}}").toString());
+        }
+
+        private String categoryAt(int index) {
+            return new String[]{"science", "technology", "engineering", "mathematics"}[index];
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.android.stemnews;
+
+import android.content.Context;
+import android.preference.PreferenceManager;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the {@link FeedSync} against a local server on the device, as the pages it fetches are
+ * stored in the {@link ArticleCache} database.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FeedSyncInstrumentedTest {
+
+    private Context appContext;
+    private MockWebServer server;
+    private String apiUrl;
+    private int pageCount;
+
+    @Before
+    public void setUp() throws IOException {
+        appContext = InstrumentationRegistry.getTargetContext();
+        pageCount = appContext.getResources().getInteger(R.integer.sync_page_count);
+
+        // Request the combined OR query, so that each page of the sync is a single request
+        PreferenceManager.getDefaultSharedPreferences(appContext).edit()
+                .putBoolean(appContext.getString(R.string.settings_category_fan_out_key), false)
+                .commit();
+
+        server = new MockWebServer();
+        server.start();
+        apiUrl = server.url("/search").toString();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void sync_storesPagesUnderTheKeysTheLoaderUses() {
+        server.setDispatcher(new PageDispatcher(false));
+
+        assertTrue(FeedSync.syncPages(appContext, apiUrl, new AtomicBoolean()));
+
+        assertEquals(pageCount, server.getRequestCount());
+        for (int page = 1; page <= pageCount; page++) {
+            String pageUrl = QueryUtils.createUrlString(appContext, apiUrl, page, PageSizer.DEFAULT_PAGE_SIZE);
+            List<NewsArticle> storedPage = ArticleCache.getInstance(appContext).get(ArticleCache.queryKey(pageUrl));
+
+            assertNotNull(storedPage);
+            assertEquals(1, storedPage.size());
+            assertEquals("science/page-" + page, storedPage.get(0).getArticleId());
+        }
+    }
+
+    @Test
+    public void stoppedSync_makesNoRequests() {
+        server.setDispatcher(new PageDispatcher(false));
+
+        assertFalse(FeedSync.syncPages(appContext, apiUrl, new AtomicBoolean(true)));
+        assertEquals(0, server.getRequestCount());
+    }
+
+    @Test
+    public void failedPage_stopsTheSync() {
+        server.setDispatcher(new PageDispatcher(true));
+
+        assertFalse(FeedSync.syncPages(appContext, apiUrl, new AtomicBoolean()));
+        assertEquals(1, server.getRequestCount());
+    }
+
+    // Replies with one article named after the page requested, or fails the first page
+    private static final class PageDispatcher extends Dispatcher {
+        private final boolean failFirstPage;
+
+        PageDispatcher(boolean failFirstPage) {
+            this.failFirstPage = failFirstPage;
+        }
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            String page = request.getRequestUrl().queryParameter(QueryUtils.PAGE_PARAMETER);
+            if (failFirstPage && "1".equals(page)) {
+                return new MockResponse().setResponseCode(500);
+            }
+
+            return new MockResponse().setBody("{\"response\":{\"status\":\"ok\",\"results\":["
+                    + "{\"id\":\"science/page-" + page + "\",\"webTitle\":\"Page " + page + "\","
+                    + "\"sectionName\":\"Science\",\"tags\":[],\"webPublicationDate\":\"2018-05-17T13:21:54Z\","
+                    + "\"webUrl\":\"https://www.theguardian.com/science/page-" + page + "\"}]}}");
+        }
+    }
+}
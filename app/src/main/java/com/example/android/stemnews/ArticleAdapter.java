@@ -1,183 +1,309 @@
 package com.example.android.stemnews;
 
-import android.app.Activity;
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
-import android.support.annotation.Nullable;
-import android.util.DisplayMetrics;
-import android.util.Log;
+import android.support.v4.os.TraceCompat;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.util.ListUpdateCallback;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
+import android.widget.ImageView;
 import android.widget.TextView;
 
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-public class ArticleAdapter extends ArrayAdapter<NewsArticle> {
+public class ArticleAdapter extends RecyclerView.Adapter<ArticleAdapter.ViewHolder> {
 
-    private final String LOG_TAG = ArticleAdapter.class.getName();
+    // Diffs are worked out one at a time away from the main thread
+    private static final ExecutorService diffExecutor = Executors.newSingleThreadExecutor();
 
-    private List<NewsArticle> adapterItems;
+    private final Context context;
+    private final OnArticleClickListener clickListener;
+    private final List<ArticleRow> adapterItems = new ArrayList<>();
+    private final int halfScreenWidth;
+    private final ThumbnailLoader thumbnailLoader;
+    private final int thumbnailWidth;
+    private final int thumbnailHeight;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
 
-    ArticleAdapter(@NonNull Context context, @NonNull List<NewsArticle> objects) {
-        super(context, 0, objects);
-        this.adapterItems = objects;
+    /*
+    The position of the first article that has changed in any feed given to the adapter since its
+    data set was last updated, and the number of the latest update so that the results of any
+    older diffs still being worked out can be ignored
+    */
+    private int changedFrom = Integer.MAX_VALUE;
+    private int latestUpdate;
+
+    /**
+     * Interface for receiving clicks on the articles in the list.
+     */
+    interface OnArticleClickListener {
+        void onArticleClick(NewsArticle clickedArticle);
+    }
+
+    /**
+     * Interface for finding out when an update to the data set has been applied, which can happen
+     * after the call that asked for it has returned.
+     */
+    interface OnUpdateAppliedListener {
+        void onUpdateApplied();
+    }
+
+    ArticleAdapter(@NonNull Context context, @NonNull OnArticleClickListener clickListener) {
+        this.context = context;
+        this.clickListener = clickListener;
+
+        /*
+        Retrieve the width of the screen once for use in limiting the size of the section name
+        and author name {@link TextView}s. A new adapter is created when the screen is rotated
+        */
+        this.halfScreenWidth = context.getResources().getDisplayMetrics().widthPixels / 2;
+
+        // The thumbnails have a fixed size, so they can be decoded to it before they are laid out
+        this.thumbnailLoader = ThumbnailLoader.getInstance(context);
+        this.thumbnailWidth = context.getResources().getDimensionPixelSize(R.dimen.thumbnail_width);
+        this.thumbnailHeight = context.getResources().getDimensionPixelSize(R.dimen.thumbnail_height);
     }
 
     @NonNull
     @Override
-    public View getView(int position, @Nullable View convertView, @NonNull ViewGroup parent) {
-        ViewHolder articleViewHolder;
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        /*
+        Inflate a new list item from the layout file and obtain references to all the views in
+        the list item so that they can be stored in the {@link ViewHolder}
+        */
+        View itemView = LayoutInflater.from(context).inflate(R.layout.article_list_item, parent, false);
+        final ViewHolder articleViewHolder = new ViewHolder(itemView);
 
+        // The author name can only ever take up half the screen width
+        articleViewHolder.authorText.setMaxWidth(halfScreenWidth);
+
+        // Pass clicks on the list item to the listener, along with the article it is showing
+        itemView.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                int position = articleViewHolder.getAdapterPosition();
+                if (position != RecyclerView.NO_POSITION) {
+                    clickListener.onArticleClick(adapterItems.get(position).getArticle());
+                }
+            }
+        });
+
+        return articleViewHolder;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder articleViewHolder, int position) {
+        long bindStart = System.nanoTime();
+        TraceCompat.beginSection("ArticleAdapter.onBindViewHolder");
+        try {
+            bindRow(articleViewHolder, adapterItems.get(position));
+        } finally {
+            TraceCompat.endSection();
+            LoadMetrics.record(LoadMetrics.STAGE_BIND, bindStart);
+        }
+    }
+
+    // Assign the values of a row to the views of a list item
+    private void bindRow(ViewHolder articleViewHolder, ArticleRow currentRow) {
         /*
-        If no recycled view is available, inflate a new list item from the layout file and
-        obtain references to all the views in the list item so that they can be stored in the
-        {@link ViewHolder}
+        Everything shown in the row was worked out by the {@link ArticleLoader} when the row was
+        created, so only the values need assigning to the views here
         */
-        if (convertView == null) {
-            convertView = LayoutInflater.from(getContext()).inflate(R.layout.article_list_item, parent, false);
-            articleViewHolder = new ViewHolder();
-            articleViewHolder.titleTextView = convertView.findViewById(R.id.article_title);
-            articleViewHolder.sectionName = convertView.findViewById(R.id.section_name);
-            articleViewHolder.authorText = convertView.findViewById(R.id.article_author);
-            articleViewHolder.separator = convertView.findViewById(R.id.seperator);
-            articleViewHolder.dateTextView = convertView.findViewById(R.id.date);
-            convertView.setTag(articleViewHolder);
+        articleViewHolder.titleTextView.setText(currentRow.getTitle());
+        articleViewHolder.sectionName.setText(currentRow.getSection());
+
+        /*
+        If an author name was given, limit the section name to half the screen width so that
+        they can be shown side by side. If it was not given, simply hide the separator and the
+        author's name {@link TextView}
+        */
+        if (currentRow.showAuthor()) {
+            articleViewHolder.sectionName.setMaxWidth(halfScreenWidth);
+            articleViewHolder.authorText.setText(currentRow.getAuthorLabel());
+            articleViewHolder.authorText.setVisibility(View.VISIBLE);
+            articleViewHolder.separator.setVisibility(View.VISIBLE);
         } else {
-            articleViewHolder = (ViewHolder) convertView.getTag();
+            articleViewHolder.sectionName.setMaxWidth(Integer.MAX_VALUE);
+            articleViewHolder.authorText.setVisibility(View.GONE);
+            articleViewHolder.separator.setVisibility(View.GONE);
         }
 
-        NewsArticle currentArticle = getItem(position);
-
-        if (currentArticle != null) {
-            /*
-            Remove any additional text in the article title response by using the | character
-            as a separator, then display it in the correct {@link TextView}
-            */
-            String titleText = currentArticle.getArticleTitle();
-            if (titleText.contains("|")) {
-                int endOfTitle = titleText.indexOf("|");
-                titleText = titleText.substring(0, endOfTitle);
-            }
-            articleViewHolder.titleTextView.setText(titleText);
-
-            // Set the text of the news section {@link TextView}
-            articleViewHolder.sectionName.setText(currentArticle.getNewsSection());
-
-            /*
-            Retrieve the width dimension of the screen for use in limiting the size of the
-            section name and author name {@link TextView}s
-            */
-            DisplayMetrics displayMetrics = new DisplayMetrics();
-            ((Activity) getContext()).getWindowManager().getDefaultDisplay().getMetrics(displayMetrics);
-            int screenWidth = displayMetrics.widthPixels;
-
-            /*
-            If an author name was given, set the maximum width of both its {@link TextView} and
-            that of the section name so that each can only take up half the screen width. If it
-            was not given, simply hide the separator and the author's name {@link TextView}
-            */
-            String authorName = currentArticle.getAuthorName();
-            if (authorName != null) {
-                articleViewHolder.sectionName.setMaxWidth(screenWidth / 2);
-
-                articleViewHolder.authorText.setMaxWidth(screenWidth / 2);
-                articleViewHolder.authorText.setText(authorName);
-                articleViewHolder.authorText.setVisibility(View.VISIBLE);
-
-                articleViewHolder.separator.setVisibility(View.VISIBLE);
-            } else {
-                articleViewHolder.authorText.setVisibility(View.GONE);
-                articleViewHolder.separator.setVisibility(View.GONE);
-            }
-
-            /*
-            The response publication date is in the ISO 8601 format, which cannot be directly
-            converted to a {@link Date} object using the {@link SimpleDateFormat} class. Therefore,
-            the values in the String need to be rearranged and then it can be parsed
-            */
-            String ISO8601Date = currentArticle.getDatePublished();
-            Date datePublished = null;
-            try {
-                String parsableDate = convertDateForParse(ISO8601Date);
-                DateFormat ISO8601Format = new SimpleDateFormat("dd-MM-yyyy HH:mm:ss", Locale.getDefault());
-                datePublished = ISO8601Format.parse(parsableDate);
-            } catch (ParseException e) {
-                Log.e(LOG_TAG, "Issue parsing the date", e);
-            }
+        // If the date could not be read, remove its view from the current list item
+        if (currentRow.showDate()) {
+            articleViewHolder.dateTextView.setText(currentRow.getDateLabel());
+            articleViewHolder.dateTextView.setVisibility(View.VISIBLE);
+        } else {
+            articleViewHolder.dateTextView.setVisibility(View.GONE);
+        }
 
-            /*
-            If the date was successfully parsed, convert it into the desired format for displaying
-            in the list item and link it to the appropriate {@link TextView}. Otherwise, remove
-            the view from the current list item
-            */
-            if (datePublished != null) {
-                SimpleDateFormat displayFormat = new SimpleDateFormat("dd MMM, yyyy", Locale.getDefault());
-                String dateString = displayFormat.format(datePublished);
-                articleViewHolder.dateTextView.setText(dateString);
-                articleViewHolder.dateTextView.setVisibility(View.VISIBLE);
-            } else {
-                articleViewHolder.dateTextView.setVisibility(View.GONE);
-            }
+        /*
+        Cancel the thumbnail still loading for the article this row showed before, then start
+        loading the new one. If the article has no thumbnail, give its space to the text
+        */
+        articleViewHolder.cancelThumbnail();
+        if (currentRow.getThumbnailUrl() != null) {
+            articleViewHolder.thumbnailView.setVisibility(View.VISIBLE);
+            articleViewHolder.thumbnailRequest = thumbnailLoader.load(currentRow.getThumbnailUrl(),
+                    articleViewHolder.thumbnailView, thumbnailWidth, thumbnailHeight);
+        } else {
+            articleViewHolder.thumbnailView.setImageDrawable(null);
+            articleViewHolder.thumbnailView.setVisibility(View.GONE);
         }
+    }
 
-        return convertView;
+    @Override
+    public void onViewRecycled(@NonNull ViewHolder articleViewHolder) {
+        // Stop loading the thumbnail and let go of the image once the row has left the screen
+        articleViewHolder.cancelThumbnail();
+        articleViewHolder.thumbnailView.setImageDrawable(null);
+    }
+
+    @Override
+    public int getItemCount() {
+        return adapterItems.size();
     }
 
     // Object for holding view references when recycling list items
-    private static class ViewHolder {
-        private TextView titleTextView;
-        private TextView sectionName;
-        private TextView authorText;
-        private View separator;
-        private TextView dateTextView;
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        private final TextView titleTextView;
+        private final TextView sectionName;
+        private final TextView authorText;
+        private final View separator;
+        private final TextView dateTextView;
+        private final ImageView thumbnailView;
+        private ThumbnailLoader.Request thumbnailRequest;
+
+        ViewHolder(View itemView) {
+            super(itemView);
+            titleTextView = itemView.findViewById(R.id.article_title);
+            sectionName = itemView.findViewById(R.id.section_name);
+            authorText = itemView.findViewById(R.id.article_author);
+            separator = itemView.findViewById(R.id.seperator);
+            dateTextView = itemView.findViewById(R.id.date);
+            thumbnailView = itemView.findViewById(R.id.article_thumbnail);
+        }
+
+        void cancelThumbnail() {
+            if (thumbnailRequest != null) {
+                thumbnailRequest.cancel();
+                thumbnailRequest = null;
+            }
+        }
+    }
+
+    public List<ArticleRow> getAdapterItems() {
+        return adapterItems;
     }
 
     /**
-     * A method to convert a date String in ISO 8601 format (which cannot be parsed by the
-     * {@link SimpleDateFormat} class) to a format that can be parsed into a {@link Date} object
+     * Bring the adapter's data set up to date with an {@link ArticleFeed}. Only the articles that
+     * changed in the feed are compared with the ones in the adapter. A new page added to the end
+     * of the list is inserted straight away, while any articles that replace existing ones are
+     * diffed by their ID on a background thread, so that only the rows that were inserted, moved,
+     * removed or changed are laid out and bound again.
      *
-     * @param ISO8601Date is a String that gives a UTC date and time in the ISO 8601 format,
-     *                    for example: 2018-05-17T13:21:54Z is 1:21 pm (and 54secs) on 17th May
-     *                    2018, GMT +00:00
-     * @return the ISO 8601 date String in a form that can be parsed by the {@link SimpleDateFormat}
-     * class
+     * @param articleFeed     is the feed of articles to display.
+     * @param appliedListener is told when the update has been applied to the data set.
      */
-    private String convertDateForParse(String ISO8601Date) {
-        // Remove the UTC indicator (the Z character) at the end of the string
-        int UTCIndicator = ISO8601Date.indexOf("Z");
-        String removedUTCIndicator = ISO8601Date.substring(0, UTCIndicator);
-
-        // Split the date and time strings, then split the date string up into year, month and day
-        String[] splitDateTime = removedUTCIndicator.split("T");
-        String[] splitDate = splitDateTime[0].split("-");
-
-        // Swap the positions of the year and day in the string array
-        String tempYearHolder = splitDate[0];
-        splitDate[0] = splitDate[2];
-        splitDate[2] = tempYearHolder;
-
-        // Rebuild the date by adding hyphens between the elements
-        StringBuilder parsableDate = new StringBuilder();
-        for (int i = 0; i < splitDate.length; i++) {
-            parsableDate.append(splitDate[i]);
-
-            if (i < splitDate.length - 1) {
-                parsableDate.append("-");
-            }
+    void applyFeed(ArticleFeed articleFeed, final OnUpdateAppliedListener appliedListener) {
+        /*
+        If an earlier diff is still being worked out, the adapter is missing its changes as well,
+        so compare everything from the first article changed by either of them
+        */
+        changedFrom = Math.min(changedFrom, articleFeed.getChangedFrom());
+        final ArticleFeed.Update feedUpdate = articleFeed.updateFor(adapterItems, changedFrom);
+        final int update = ++latestUpdate;
+
+        // Nothing needs to be compared when the new articles are only being added to the end
+        if (feedUpdate.getOldRows().isEmpty()) {
+            applyUpdate(feedUpdate, null);
+            appliedListener.onUpdateApplied();
+            return;
         }
 
-        // Return the newly parsable date and time as a single String
-        return parsableDate + " " + splitDateTime[1];
+        diffExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long diffStart = System.nanoTime();
+                TraceCompat.beginSection("ArticleAdapter.calculateDiff");
+                final DiffUtil.DiffResult diffResult;
+                try {
+                    diffResult = DiffUtil.calculateDiff(
+                            new ArticleDiffCallback(feedUpdate.getOldRows(), feedUpdate.getNewRows()));
+                } finally {
+                    TraceCompat.endSection();
+                    LoadMetrics.record(LoadMetrics.STAGE_DIFF, diffStart);
+                }
+
+                // Apply the result on the main thread, unless a newer update has replaced it
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (update == latestUpdate) {
+                            applyUpdate(feedUpdate, diffResult);
+                            appliedListener.onUpdateApplied();
+                        }
+                    }
+                });
+            }
+        });
     }
 
-    public List<NewsArticle> getAdapterItems() {
-        return adapterItems;
+    /**
+     * Remove all of the articles from the adapter straight away, cancelling any update that is
+     * still being worked out.
+     */
+    void clear() {
+        latestUpdate++;
+        changedFrom = Integer.MAX_VALUE;
+        int removedCount = adapterItems.size();
+        adapterItems.clear();
+        notifyItemRangeRemoved(0, removedCount);
+    }
+
+    /**
+     * Replace the articles after the unchanged ones with the new articles and notify the
+     * {@link RecyclerView} of exactly what changed.
+     */
+    private void applyUpdate(ArticleFeed.Update feedUpdate, DiffUtil.DiffResult diffResult) {
+        feedUpdate.applyTo(adapterItems);
+        changedFrom = Integer.MAX_VALUE;
+
+        final int unchangedCount = feedUpdate.getUnchangedCount();
+        if (diffResult == null) {
+            notifyItemRangeInserted(unchangedCount, feedUpdate.getNewRows().size());
+            return;
+        }
+
+        // The diff positions start from the first changed article, so move them along to match
+        diffResult.dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                notifyItemRangeInserted(unchangedCount + position, count);
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                notifyItemRangeRemoved(unchangedCount + position, count);
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                notifyItemMoved(unchangedCount + fromPosition, unchangedCount + toPosition);
+            }
+
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+                notifyItemRangeChanged(unchangedCount + position, count, payload);
+            }
+        });
     }
 }
@@ -0,0 +1,349 @@
+package com.example.android.stemnews;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.net.Uri;
+import android.support.v4.net.ConnectivityManagerCompat;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import okhttp3.CacheControl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Fetches the body text of articles for the in-app reader and keeps it in an
+ * {@link ArticleBodyStore}.
+ * <p>
+ * Bodies are requested from the search endpoint of The Guardian web API with the IDs of the
+ * articles wanted and the bodyText field, so the bodies of all the rows on screen come back in a
+ * single request. The rows on screen are prefetched in the background whilst the device is on an
+ * unmetered network, which means the bodies are normally stored before the user opens them. The
+ * responses are not put in the HTTP cache, as the body store already keeps them compressed.
+ */
+final class ArticleBodies {
+
+    private static final String LOG_TAG = ArticleBodies.class.getName();
+    private static final int OK_RESPONSE = 200;
+
+    // The directory name of the on-disk body store
+    private static final String BODY_STORE_DIRECTORY = "article_bodies";
+
+    // The most articles requested at once, which is the most that fit on a large screen
+    static final int MAX_BATCH_SIZE = 20;
+
+    // The bodies are only fetched from the network and then stored by the app itself
+    private static final CacheControl NOT_CACHED = new CacheControl.Builder()
+            .noCache()
+            .noStore()
+            .build();
+
+    private static ArticleBodies instance;
+
+    private final Context appContext;
+    private final ArticleBodyStore bodyStore;
+
+    // Prefetches are made one batch at a time, leaving the client free for the pages of the list
+    private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor();
+
+    // The IDs of the articles being prefetched, which is guarded by this object's lock
+    private final Set<String> pendingIds = new HashSet<>();
+
+    private ArticleBodies(Context appContext) {
+        this.appContext = appContext;
+        long storeSize = appContext.getResources().getInteger(R.integer.article_body_store_mb) * 1024L * 1024L;
+        this.bodyStore = new ArticleBodyStore(new File(appContext.getFilesDir(), BODY_STORE_DIRECTORY), storeSize);
+    }
+
+    /**
+     * Get the single instance of the article bodies for the application.
+     *
+     * @param context is any {@link Context} from the application.
+     * @return the shared {@link ArticleBodies} object.
+     */
+    static synchronized ArticleBodies getInstance(Context context) {
+        if (instance == null) {
+            instance = new ArticleBodies(context.getApplicationContext());
+        }
+
+        return instance;
+    }
+
+    /**
+     * Start fetching the bodies of articles in the background, skipping any that are already
+     * stored or being fetched. Nothing is fetched unless the device is on an unmetered network.
+     *
+     * @param articles is the list of {@link NewsArticle}s on screen.
+     */
+    void prefetch(List<NewsArticle> articles) {
+        if (articles.isEmpty() || !isOnUnmeteredNetwork(appContext)) {
+            return;
+        }
+
+        final List<String> articleIds = new ArrayList<>();
+        synchronized (this) {
+            for (NewsArticle article : articles) {
+                String articleId = article.getArticleId();
+                if (articleIds.size() < MAX_BATCH_SIZE && !pendingIds.contains(articleId)) {
+                    articleIds.add(articleId);
+                    pendingIds.add(articleId);
+                }
+            }
+        }
+        if (articleIds.isEmpty()) {
+            return;
+        }
+
+        prefetchExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    // Check the store on this thread, as it is read from disk the first time
+                    List<String> missingIds = new ArrayList<>();
+                    for (String articleId : articleIds) {
+                        if (!bodyStore.contains(articleId)) {
+                            missingIds.add(articleId);
+                        }
+                    }
+                    if (!missingIds.isEmpty()) {
+                        storeAll(fetch(missingIds, true));
+                    }
+                } finally {
+                    synchronized (ArticleBodies.this) {
+                        pendingIds.removeAll(articleIds);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Get the body of an article, fetching it if it has not been stored. This can make a network
+     * request, so it must be run on a background thread.
+     *
+     * @param articleId   is the ID of the article.
+     * @param networkFlag is true if the body can be fetched from the network.
+     * @return the body text, or null if it is not stored and could not be fetched.
+     */
+    String load(String articleId, boolean networkFlag) {
+        String storedBody = bodyStore.get(articleId);
+        if (storedBody != null || !networkFlag) {
+            return storedBody;
+        }
+
+        Map<String, String> fetchedBodies = fetch(Collections.singletonList(articleId), false);
+        storeAll(fetchedBodies);
+        return fetchedBodies.get(articleId);
+    }
+
+    /**
+     * @return the {@link ArticleBodyStore} that the bodies are kept in.
+     */
+    ArticleBodyStore getStore() {
+        return bodyStore;
+    }
+
+    /**
+     * Check whether the device is connected to a network that is not charged by the amount of
+     * data used, such as Wi-Fi.
+     *
+     * @param context is any {@link Context} from the application.
+     * @return true if the active network is connected and unmetered.
+     */
+    static boolean isOnUnmeteredNetwork(Context context) {
+        ConnectivityManager deviceConnectivity = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (deviceConnectivity == null) {
+            return false;
+        }
+
+        NetworkInfo deviceNetworkInfo = deviceConnectivity.getActiveNetworkInfo();
+        return deviceNetworkInfo != null && deviceNetworkInfo.isConnected()
+                && !ConnectivityManagerCompat.isActiveNetworkMetered(deviceConnectivity);
+    }
+
+    /**
+     * Build the URL that requests the bodies of a list of articles.
+     *
+     * @param articleIds is the list of article IDs, which must be no longer than
+     *                   {@link #MAX_BATCH_SIZE}.
+     * @return the request URL in String form.
+     */
+    static String createUrlString(List<String> articleIds) {
+        Uri.Builder uriBuilder = Uri.parse(BuildConfig.GUARDIAN_API_URL).buildUpon();
+        uriBuilder.appendQueryParameter("ids", TextUtils.join(",", articleIds));
+        uriBuilder.appendQueryParameter(QueryUtils.PAGE_SIZE_PARAMETER, String.valueOf(articleIds.size()));
+        uriBuilder.appendQueryParameter("show-fields", "bodyText");
+        uriBuilder.appendQueryParameter(ArticleCache.API_KEY_PARAMETER, BuildConfig.API_KEY);
+        return uriBuilder.toString();
+    }
+
+    // Request the bodies of some articles, returning the ones that were read by their article IDs
+    private Map<String, String> fetch(List<String> articleIds, boolean background) {
+        return fetch(createUrlString(articleIds), NetworkClient.getInstance(appContext),
+                ResponseKeys.fromContext(appContext), appContext.getString(R.string.bodyText_key), background);
+    }
+
+    /**
+     * Request the bodies of some articles with the given {@link OkHttpClient}.
+     *
+     * @param requestUrl  is the HTTP request URL in String form.
+     * @param httpClient  is the {@link OkHttpClient} used to make the request.
+     * @param keys        is the {@link ResponseKeys} object holding the JSON keys.
+     * @param bodyTextKey is the JSON key of the body text in the fields of each article.
+     * @param background  is true if the user is not waiting on the request.
+     * @return the body text of each article read by its article ID, which is empty if the request
+     * failed.
+     */
+    static Map<String, String> fetch(String requestUrl, OkHttpClient httpClient, ResponseKeys keys, String bodyTextKey,
+                                     boolean background) {
+        Request bodiesRequest = new Request.Builder()
+                .url(requestUrl)
+                .cacheControl(NOT_CACHED)
+                .tag(RateLimiter.Priority.class, background ? RateLimiter.BACKGROUND : RateLimiter.USER_VISIBLE)
+                .build();
+
+        Response serverResponse = null;
+        try {
+            serverResponse = httpClient.newCall(bodiesRequest).execute();
+            if (serverResponse.code() == OK_RESPONSE) {
+                return parseBodies(serverResponse.body().byteStream(), keys, bodyTextKey);
+            }
+            Log.e(LOG_TAG, "Error response code: " + serverResponse.code());
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Issue requesting the article bodies", e);
+        } finally {
+            if (serverResponse != null) {
+                serverResponse.close();
+            }
+        }
+
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Read the body text of each article from a response stream, in the same way as
+     * {@link ArticleJsonParser} reads the articles. Articles without a body are left out.
+     *
+     * @param responseStream is the input stream response from the HTTP request to the servers.
+     * @param keys           is the {@link ResponseKeys} object holding the JSON keys.
+     * @param bodyTextKey    is the JSON key of the body text in the fields of each article.
+     * @return the body text of each article by its article ID.
+     */
+    static Map<String, String> parseBodies(InputStream responseStream, ResponseKeys keys, String bodyTextKey) throws IOException {
+        Map<String, String> bodies = new HashMap<>();
+
+        JsonReader jsonReader = new JsonReader(new InputStreamReader(responseStream, Charset.forName("UTF-8")));
+        try {
+            jsonReader.beginObject();
+            while (jsonReader.hasNext()) {
+                if (jsonReader.nextName().equals(keys.responseKey)) {
+                    readResponse(jsonReader, keys, bodyTextKey, bodies);
+                    break;
+                } else {
+                    jsonReader.skipValue();
+                }
+            }
+        } catch (MalformedJsonException | IllegalStateException e) {
+            // Keep any of the bodies that were fully read before the problem was found
+            Log.e(LOG_TAG, "Problem parsing the article bodies", e);
+        } finally {
+            jsonReader.close();
+        }
+
+        return bodies;
+    }
+
+    // Read the "response" object, throwing away the bodies if the status is not "ok"
+    private static void readResponse(JsonReader jsonReader, ResponseKeys keys, String bodyTextKey,
+                                     Map<String, String> bodies) throws IOException {
+        String responseStatus = null;
+        String errorMessage = null;
+
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            String name = jsonReader.nextName();
+            if (name.equals(keys.statusKey)) {
+                responseStatus = jsonReader.nextString();
+            } else if (name.equals(keys.resultsKey)) {
+                jsonReader.beginArray();
+                while (jsonReader.hasNext()) {
+                    readArticleBody(jsonReader, keys, bodyTextKey, bodies);
+                }
+                jsonReader.endArray();
+            } else if (name.equals(keys.messageKey)) {
+                errorMessage = jsonReader.nextString();
+            } else {
+                jsonReader.skipValue();
+            }
+        }
+        jsonReader.endObject();
+
+        if (!keys.okStatus.equals(responseStatus)) {
+            bodies.clear();
+            Log.e(LOG_TAG, responseStatus + ": " + errorMessage);
+        }
+    }
+
+    // Read the ID and body text of a single article, skipping every other field
+    private static void readArticleBody(JsonReader jsonReader, ResponseKeys keys, String bodyTextKey,
+                                        Map<String, String> bodies) throws IOException {
+        String articleId = null;
+        String bodyText = null;
+
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            String name = jsonReader.nextName();
+            if (name.equals(keys.idKey)) {
+                articleId = jsonReader.nextString();
+            } else if (name.equals(keys.fieldsKey)) {
+                jsonReader.beginObject();
+                while (jsonReader.hasNext()) {
+                    if (jsonReader.nextName().equals(bodyTextKey) && jsonReader.peek() == JsonToken.STRING) {
+                        bodyText = jsonReader.nextString();
+                    } else {
+                        jsonReader.skipValue();
+                    }
+                }
+                jsonReader.endObject();
+            } else {
+                jsonReader.skipValue();
+            }
+        }
+        jsonReader.endObject();
+
+        if (articleId != null && bodyText != null && !bodyText.isEmpty()) {
+            bodies.put(articleId, bodyText);
+        }
+    }
+
+    private void storeAll(Map<String, String> bodies) {
+        for (Map.Entry<String, String> body : bodies.entrySet()) {
+            try {
+                bodyStore.put(body.getKey(), body.getValue());
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Issue storing an article body", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.example.android.stemnews;
+
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the body text of articles on disk for the in-app reader, so that an article that has
+ * been prefetched opens straight away and can still be read offline.
+ * <p>
+ * Each body is gzip compressed in a file of its own, named after the article ID. The store keeps
+ * to a budget of bytes on disk, measured after compression, by removing the bodies that were
+ * least recently stored or read once it goes over. The order of use is kept in memory and in the
+ * modified time of each file, so it carries over when the app is restarted.
+ */
+final class ArticleBodyStore {
+
+    private static final String LOG_TAG = ArticleBodyStore.class.getName();
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    private final File directory;
+    private final long maxBytes;
+
+    /*
+    The size of each stored file by name, from least to most recently used, and their total. Both
+    are guarded by the store's lock and are read from the directory on first use
+    */
+    private LinkedHashMap<String, Long> fileSizes;
+    private long totalBytes;
+
+    /**
+     * Create a store of article bodies.
+     *
+     * @param directory is the directory to keep the compressed bodies in.
+     * @param maxBytes  is the most bytes that the compressed bodies can take up on disk.
+     */
+    ArticleBodyStore(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param articleId is the ID of the article.
+     * @return true if the body of the article is stored.
+     */
+    synchronized boolean contains(String articleId) {
+        return loadedSizes().containsKey(fileNameOf(articleId));
+    }
+
+    /**
+     * Read the body of an article, marking it as the most recently used.
+     *
+     * @param articleId is the ID of the article.
+     * @return the body text, or null if it is not stored or could not be read.
+     */
+    synchronized String get(String articleId) {
+        String fileName = fileNameOf(articleId);
+        if (loadedSizes().get(fileName) == null) {
+            return null;
+        }
+
+        File bodyFile = new File(directory, fileName);
+        InputStream input = null;
+        try {
+            input = new GZIPInputStream(new FileInputStream(bodyFile));
+            ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+            int count;
+            while ((count = input.read(buffer)) != -1) {
+                bodyBytes.write(buffer, 0, count);
+            }
+
+            bodyFile.setLastModified(System.currentTimeMillis());
+            return new String(bodyBytes.toByteArray(), UTF_8);
+        } catch (IOException e) {
+            // Remove a file that cannot be read, so it can be fetched again
+            Log.e(LOG_TAG, "Issue reading a stored article body", e);
+            remove(fileName);
+            return null;
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Issue closing a stored article body", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Store the body of an article, replacing any earlier copy, then remove the least recently
+     * used bodies until the store is within its budget again.
+     *
+     * @param articleId is the ID of the article.
+     * @param body      is the body text.
+     * @throws IOException if the body could not be written.
+     */
+    void put(String articleId, String body) throws IOException {
+        // Compress the body before taking the lock, as it is the slowest part
+        ByteArrayOutputStream compressedBytes = new ByteArrayOutputStream();
+        OutputStream compressor = new GZIPOutputStream(compressedBytes);
+        try {
+            compressor.write(body.getBytes(UTF_8));
+        } finally {
+            compressor.close();
+        }
+        byte[] compressedBody = compressedBytes.toByteArray();
+
+        synchronized (this) {
+            Map<String, Long> sizes = loadedSizes();
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Could not create the article body directory");
+            }
+
+            // Write to a temporary file first, so a partly written body never replaces a whole one
+            String fileName = fileNameOf(articleId);
+            File tempFile = new File(directory, fileName + ".tmp");
+            OutputStream output = new FileOutputStream(tempFile);
+            try {
+                output.write(compressedBody);
+            } finally {
+                output.close();
+            }
+            if (!tempFile.renameTo(new File(directory, fileName))) {
+                tempFile.delete();
+                throw new IOException("Could not store the article body");
+            }
+
+            Long oldSize = sizes.remove(fileName);
+            if (oldSize != null) {
+                totalBytes -= oldSize;
+            }
+            sizes.put(fileName, (long) compressedBody.length);
+            totalBytes += compressedBody.length;
+
+            trimToBudget();
+        }
+    }
+
+    /**
+     * @return the number of bytes that the stored bodies take up on disk.
+     */
+    synchronized long getTotalBytes() {
+        loadedSizes();
+        return totalBytes;
+    }
+
+    /**
+     * @return the number of article bodies stored.
+     */
+    synchronized int size() {
+        return loadedSizes().size();
+    }
+
+    // Remove the least recently used bodies until the total is within the budget
+    private void trimToBudget() {
+        Iterator<Map.Entry<String, Long>> oldestFirst = fileSizes.entrySet().iterator();
+        while (totalBytes > maxBytes && oldestFirst.hasNext()) {
+            Map.Entry<String, Long> oldest = oldestFirst.next();
+            new File(directory, oldest.getKey()).delete();
+            totalBytes -= oldest.getValue();
+            oldestFirst.remove();
+        }
+    }
+
+    private void remove(String fileName) {
+        new File(directory, fileName).delete();
+        Long size = fileSizes.remove(fileName);
+        if (size != null) {
+            totalBytes -= size;
+        }
+    }
+
+    /*
+    Get the sizes of the stored files, listing the directory the first time in order of when each
+    file was last used. Any temporary files left by a write that did not finish are removed
+    */
+    private Map<String, Long> loadedSizes() {
+        if (fileSizes != null) {
+            return fileSizes;
+        }
+
+        fileSizes = new LinkedHashMap<>(16, 0.75f, true);
+        totalBytes = 0;
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return fileSizes;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File first, File second) {
+                long firstModified = first.lastModified();
+                long secondModified = second.lastModified();
+                return (firstModified < secondModified) ? -1 : ((firstModified > secondModified) ? 1 : 0);
+            }
+        });
+        for (File file : files) {
+            if (file.getName().endsWith(".tmp")) {
+                file.delete();
+            } else {
+                fileSizes.put(file.getName(), file.length());
+                totalBytes += file.length();
+            }
+        }
+        return fileSizes;
+    }
+
+    // Article IDs are paths such as science/2018/may/20/title, so encode them to be a file name
+    static String fileNameOf(String articleId) {
+        try {
+            return URLEncoder.encode(articleId, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError("UTF-8 is always supported");
+        }
+    }
+}
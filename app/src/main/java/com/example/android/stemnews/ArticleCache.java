@@ -0,0 +1,240 @@
+package com.example.android.stemnews;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * On-disk store of the pages of {@link NewsArticle}s returned by The Guardian web API. Each page
+ * is stored against a key built from its query URL, so that a page can be shown straight away on
+ * the next launch or refresh before the network request for it has completed.
+ */
+public class ArticleCache extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "article_cache.db";
+    private static final int DATABASE_VERSION = 3;
+
+    // The maximum number of query pages to keep before the least recently stored are removed
+    private static final int MAX_CACHED_QUERIES = 50;
+
+    // The API key has no effect on the articles returned, so it is left out of the key
+    static final String API_KEY_PARAMETER = "api-key";
+
+    private static final String QUERIES_TABLE = "queries";
+    private static final String ARTICLES_TABLE = "articles";
+
+    private static final String COLUMN_QUERY_KEY = "query_key";
+    private static final String COLUMN_STORED_AT = "stored_at";
+    private static final String COLUMN_POSITION = "position";
+    private static final String COLUMN_ARTICLE_ID = "article_id";
+    private static final String COLUMN_TITLE = "title";
+    private static final String COLUMN_SECTION = "section";
+    private static final String COLUMN_AUTHOR = "author";
+    private static final String COLUMN_DATE = "date_published";
+    private static final String COLUMN_URL = "web_url";
+    private static final String COLUMN_THUMBNAIL = "thumbnail_url";
+
+    private static ArticleCache instance;
+
+    private ArticleCache(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    /**
+     * Get the single instance of the cache for the application.
+     *
+     * @param context is any {@link Context} from the application.
+     * @return the shared {@link ArticleCache} object.
+     */
+    public static synchronized ArticleCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new ArticleCache(context.getApplicationContext());
+        }
+
+        return instance;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + QUERIES_TABLE + " ("
+                + COLUMN_QUERY_KEY + " TEXT PRIMARY KEY, "
+                + COLUMN_STORED_AT + " INTEGER NOT NULL)");
+
+        db.execSQL("CREATE TABLE " + ARTICLES_TABLE + " ("
+                + COLUMN_QUERY_KEY + " TEXT NOT NULL, "
+                + COLUMN_POSITION + " INTEGER NOT NULL, "
+                + COLUMN_ARTICLE_ID + " TEXT NOT NULL, "
+                + COLUMN_TITLE + " TEXT NOT NULL, "
+                + COLUMN_SECTION + " TEXT NOT NULL, "
+                + COLUMN_AUTHOR + " TEXT, "
+                + COLUMN_DATE + " TEXT NOT NULL, "
+                + COLUMN_URL + " TEXT NOT NULL, "
+                + COLUMN_THUMBNAIL + " TEXT, "
+                + "PRIMARY KEY (" + COLUMN_QUERY_KEY + ", " + COLUMN_POSITION + "))");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // The cache only holds copies of server data, so it can simply be rebuilt
+        db.execSQL("DROP TABLE IF EXISTS " + ARTICLES_TABLE);
+        db.execSQL("DROP TABLE IF EXISTS " + QUERIES_TABLE);
+        onCreate(db);
+    }
+
+    /**
+     * Build the cache key for a query URL. The key holds every query parameter that affects the
+     * articles returned (the categories, order and page) in a fixed order, so that the same
+     * query always maps to the same key.
+     *
+     * @param queryUrl is the HTTP request URL in String form.
+     * @return the key for the page of articles returned by the URL.
+     */
+    public static String queryKey(String queryUrl) {
+        return QueryUtils.canonicalUrl(queryUrl, API_KEY_PARAMETER);
+    }
+
+    /**
+     * Read a page of articles from the cache.
+     *
+     * @param queryKey is the key returned by {@link #queryKey(String)} for the page.
+     * @return the list of cached {@link NewsArticle}s, or null if the page is not in the cache.
+     */
+    public List<NewsArticle> get(String queryKey) {
+        return get(queryKey, Long.MAX_VALUE);
+    }
+
+    /**
+     * Read a page of articles from the cache, as long as it was stored recently enough.
+     *
+     * @param queryKey     is the key returned by {@link #queryKey(String)} for the page.
+     * @param maxAgeMillis is the longest time ago that the page can have been stored.
+     * @return the list of cached {@link NewsArticle}s, or null if the page is not in the cache
+     * or is older than the maximum age.
+     */
+    public List<NewsArticle> get(String queryKey, long maxAgeMillis) {
+        SQLiteDatabase db = getReadableDatabase();
+        String[] columns = {COLUMN_ARTICLE_ID, COLUMN_TITLE, COLUMN_SECTION, COLUMN_AUTHOR, COLUMN_DATE, COLUMN_URL, COLUMN_THUMBNAIL};
+        String[] selectionArgs = {queryKey};
+
+        // Check that the page has been stored before, as a stored page may have no articles
+        Cursor queryCursor = db.query(QUERIES_TABLE, new String[]{COLUMN_STORED_AT},
+                COLUMN_QUERY_KEY + " = ?", selectionArgs, null, null, null);
+        try {
+            if (!queryCursor.moveToFirst() || System.currentTimeMillis() - queryCursor.getLong(0) > maxAgeMillis) {
+                return null;
+            }
+        } finally {
+            queryCursor.close();
+        }
+
+        // Keep the articles of the page together in one store, as with a page from the network
+        ArticleStore pageStore = new ArticleStore();
+        List<NewsArticle> articleList = new ArrayList<>();
+        Cursor articleCursor = db.query(ARTICLES_TABLE, columns, COLUMN_QUERY_KEY + " = ?",
+                selectionArgs, null, null, COLUMN_POSITION);
+        try {
+            while (articleCursor.moveToNext()) {
+                articleList.add(pageStore.add(
+                        articleCursor.getString(0),
+                        articleCursor.getString(1),
+                        articleCursor.getString(2),
+                        articleCursor.isNull(3) ? null : articleCursor.getString(3),
+                        articleCursor.getString(4),
+                        articleCursor.getString(5),
+                        articleCursor.isNull(6) ? null : articleCursor.getString(6)));
+            }
+        } finally {
+            articleCursor.close();
+        }
+
+        return articleList;
+    }
+
+    /**
+     * Read every article in the cache, which may include the same article more than once if it
+     * is in several pages.
+     *
+     * @return the list of cached {@link NewsArticle}s, in no particular order.
+     */
+    public List<NewsArticle> getAllArticles() {
+        SQLiteDatabase db = getReadableDatabase();
+        String[] columns = {COLUMN_ARTICLE_ID, COLUMN_TITLE, COLUMN_SECTION, COLUMN_AUTHOR, COLUMN_DATE, COLUMN_URL, COLUMN_THUMBNAIL};
+
+        ArticleStore cacheStore = new ArticleStore();
+        List<NewsArticle> articleList = new ArrayList<>();
+        Cursor articleCursor = db.query(ARTICLES_TABLE, columns, null, null, null, null, null);
+        try {
+            while (articleCursor.moveToNext()) {
+                articleList.add(cacheStore.add(
+                        articleCursor.getString(0),
+                        articleCursor.getString(1),
+                        articleCursor.getString(2),
+                        articleCursor.isNull(3) ? null : articleCursor.getString(3),
+                        articleCursor.getString(4),
+                        articleCursor.getString(5),
+                        articleCursor.isNull(6) ? null : articleCursor.getString(6)));
+            }
+        } finally {
+            articleCursor.close();
+        }
+
+        return articleList;
+    }
+
+    /**
+     * Store a page of articles in the cache, replacing any previous copy of it. Once the cache
+     * holds more than {@link #MAX_CACHED_QUERIES} pages, the oldest ones are removed.
+     *
+     * @param queryKey    is the key returned by {@link #queryKey(String)} for the page.
+     * @param articleList is the list of {@link NewsArticle}s in the page.
+     */
+    public void put(String queryKey, List<NewsArticle> articleList) {
+        SQLiteDatabase db = getWritableDatabase();
+        String[] selectionArgs = {queryKey};
+
+        db.beginTransaction();
+        try {
+            db.delete(ARTICLES_TABLE, COLUMN_QUERY_KEY + " = ?", selectionArgs);
+
+            ContentValues queryValues = new ContentValues();
+            queryValues.put(COLUMN_QUERY_KEY, queryKey);
+            queryValues.put(COLUMN_STORED_AT, System.currentTimeMillis());
+            db.insertWithOnConflict(QUERIES_TABLE, null, queryValues, SQLiteDatabase.CONFLICT_REPLACE);
+
+            ContentValues articleValues = new ContentValues();
+            for (int i = 0; i < articleList.size(); i++) {
+                NewsArticle article = articleList.get(i);
+                articleValues.clear();
+                articleValues.put(COLUMN_QUERY_KEY, queryKey);
+                articleValues.put(COLUMN_POSITION, i);
+                articleValues.put(COLUMN_ARTICLE_ID, article.getArticleId());
+                articleValues.put(COLUMN_TITLE, article.getArticleTitle());
+                articleValues.put(COLUMN_SECTION, article.getNewsSection());
+                articleValues.put(COLUMN_AUTHOR, article.getAuthorName());
+                articleValues.put(COLUMN_DATE, article.getDatePublished());
+                articleValues.put(COLUMN_URL, article.getWebURL());
+                articleValues.put(COLUMN_THUMBNAIL, article.getThumbnailUrl());
+                db.insert(ARTICLES_TABLE, null, articleValues);
+            }
+
+            trimToSize(db);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // Remove the least recently stored pages once the cache has grown past its maximum size
+    private void trimToSize(SQLiteDatabase db) {
+        String staleQueries = "SELECT " + COLUMN_QUERY_KEY + " FROM " + QUERIES_TABLE
+                + " ORDER BY " + COLUMN_STORED_AT + " DESC LIMIT -1 OFFSET " + MAX_CACHED_QUERIES;
+
+        db.execSQL("DELETE FROM " + ARTICLES_TABLE + " WHERE " + COLUMN_QUERY_KEY + " IN (" + staleQueries + ")");
+        db.execSQL("DELETE FROM " + QUERIES_TABLE + " WHERE " + COLUMN_QUERY_KEY + " IN (" + staleQueries + ")");
+    }
+}
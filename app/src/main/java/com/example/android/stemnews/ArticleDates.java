@@ -0,0 +1,266 @@
+package com.example.android.stemnews;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Helper methods for the publication dates of the articles. Dates are read from the ISO 8601
+ * Strings returned by The Guardian web API into epoch milliseconds once, when each
+ * {@link NewsArticle} is created, without any regular expressions or intermediate Strings. The
+ * display Strings are then formatted by a single shared formatter, which keeps the Strings for
+ * recently displayed days so that rows published on the same day reuse them.
+ */
+final class ArticleDates {
+
+    // Returned in place of the epoch milliseconds when a date cannot be read
+    static final long INVALID_DATE = Long.MIN_VALUE;
+
+    private static final long MILLIS_PER_SECOND = 1000;
+    private static final long MILLIS_PER_MINUTE = 60 * MILLIS_PER_SECOND;
+    private static final long MILLIS_PER_HOUR = 60 * MILLIS_PER_MINUTE;
+    private static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
+
+    private static final String DISPLAY_PATTERN = "dd MMM, yyyy";
+
+    /*
+    The number of days that display Strings are kept for. This must be a power of two, as each
+    day is stored in the slot given by the low bits of its day number
+    */
+    private static final int DAY_CACHE_SIZE = 64;
+
+    private static final long[] cachedDays = new long[DAY_CACHE_SIZE];
+    private static final String[] cachedDayStrings = new String[DAY_CACHE_SIZE];
+    private static DateFormat displayFormat;
+    private static Locale displayLocale;
+
+    private ArticleDates() { // Cannot instantiate this class
+    }
+
+    /**
+     * Read a date String in the ISO 8601 format used by the API into epoch milliseconds, for
+     * example 2018-05-17T13:21:54Z is 1:21 pm (and 54secs) on 17th May 2018, GMT +00:00.
+     * Fractions of a second and UTC offsets such as +01:00 are also accepted.
+     *
+     * @param isoDate is the date String to read.
+     * @return the number of milliseconds since the epoch, or {@link #INVALID_DATE} if the String
+     * is not a valid date in this format.
+     */
+    static long parseIsoDate(String isoDate) {
+        if (isoDate == null || isoDate.length() < 19
+                || isoDate.charAt(4) != '-' || isoDate.charAt(7) != '-' || isoDate.charAt(10) != 'T'
+                || isoDate.charAt(13) != ':' || isoDate.charAt(16) != ':') {
+            return INVALID_DATE;
+        }
+
+        int year = readDigits(isoDate, 0, 4);
+        int month = readDigits(isoDate, 5, 2);
+        int day = readDigits(isoDate, 8, 2);
+        int hour = readDigits(isoDate, 11, 2);
+        int minute = readDigits(isoDate, 14, 2);
+        int second = readDigits(isoDate, 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return INVALID_DATE;
+        }
+
+        // Read up to three digits of any fraction of a second as milliseconds, ignoring the rest
+        int position = 19;
+        int millis = 0;
+        if (position < isoDate.length() && isoDate.charAt(position) == '.') {
+            position++;
+            int digitCount = 0;
+            while (position < isoDate.length() && isDigit(isoDate.charAt(position))) {
+                if (digitCount < 3) {
+                    millis = millis * 10 + (isoDate.charAt(position) - '0');
+                }
+                digitCount++;
+                position++;
+            }
+            if (digitCount == 0) {
+                return INVALID_DATE;
+            }
+            for (int i = digitCount; i < 3; i++) {
+                millis *= 10;
+            }
+        }
+
+        // Read the UTC offset, treating a date without one as already being in UTC
+        long offsetMillis = 0;
+        if (position < isoDate.length()) {
+            char designator = isoDate.charAt(position);
+            if (designator == 'Z') {
+                position++;
+            } else if (designator == '+' || designator == '-') {
+                int offsetHours = readDigits(isoDate, position + 1, 2);
+                int minutesStart = position + 3;
+                if (minutesStart < isoDate.length() && isoDate.charAt(minutesStart) == ':') {
+                    minutesStart++;
+                }
+                int offsetMinutes = readDigits(isoDate, minutesStart, 2);
+                if (offsetHours < 0 || offsetHours > 23 || offsetMinutes < 0 || offsetMinutes > 59) {
+                    return INVALID_DATE;
+                }
+                offsetMillis = offsetHours * MILLIS_PER_HOUR + offsetMinutes * MILLIS_PER_MINUTE;
+                if (designator == '-') {
+                    offsetMillis = -offsetMillis;
+                }
+                position = minutesStart + 2;
+            } else {
+                return INVALID_DATE;
+            }
+        }
+
+        if (position != isoDate.length()) {
+            return INVALID_DATE;
+        }
+
+        return daysFromCivil(year, month, day) * MILLIS_PER_DAY + hour * MILLIS_PER_HOUR
+                + minute * MILLIS_PER_MINUTE + second * MILLIS_PER_SECOND + millis - offsetMillis;
+    }
+
+    /**
+     * Format a publication date for displaying in the article list, such as 17 May, 2018. The
+     * date is shown as the calendar day in UTC, which is the day given in the API response.
+     *
+     * @param epochMillis is the publication date in milliseconds since the epoch.
+     * @return the display String, or null if the date is {@link #INVALID_DATE}.
+     */
+    static synchronized String formatDay(long epochMillis) {
+        if (epochMillis == INVALID_DATE) {
+            return null;
+        }
+
+        // Start again with a new formatter if the user has changed the device's language
+        Locale currentLocale = Locale.getDefault();
+        if (!currentLocale.equals(displayLocale)) {
+            displayFormat = new SimpleDateFormat(DISPLAY_PATTERN, currentLocale);
+            displayFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+            displayLocale = currentLocale;
+            for (int i = 0; i < DAY_CACHE_SIZE; i++) {
+                cachedDayStrings[i] = null;
+            }
+        }
+
+        long epochDay = floorDiv(epochMillis, MILLIS_PER_DAY);
+        int slot = (int) (epochDay & (DAY_CACHE_SIZE - 1));
+        if (cachedDayStrings[slot] == null || cachedDays[slot] != epochDay) {
+            cachedDays[slot] = epochDay;
+            cachedDayStrings[slot] = displayFormat.format(new Date(epochDay * MILLIS_PER_DAY));
+        }
+
+        return cachedDayStrings[slot];
+    }
+
+    /**
+     * Write epoch milliseconds back out as an ISO 8601 date String in UTC, in the same format as
+     * the API, such as 2018-05-17T13:21:54Z. Any milliseconds are included as a fraction of a
+     * second.
+     *
+     * @param epochMillis is the date in milliseconds since the epoch.
+     * @return the date String, or null if the date is {@link #INVALID_DATE}.
+     */
+    static String formatIsoDate(long epochMillis) {
+        if (epochMillis == INVALID_DATE) {
+            return null;
+        }
+
+        long epochDay = floorDiv(epochMillis, MILLIS_PER_DAY);
+        long millisOfDay = epochMillis - epochDay * MILLIS_PER_DAY;
+
+        // Convert the day number back into a year, month and day, starting each year in March
+        long shiftedDay = epochDay + 719468;
+        long era = (shiftedDay >= 0 ? shiftedDay : shiftedDay - 146096) / 146097;
+        long dayOfEra = shiftedDay - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+        int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+
+        StringBuilder isoDate = new StringBuilder(24);
+        appendDigits(isoDate, year, 4).append('-');
+        appendDigits(isoDate, month, 2).append('-');
+        appendDigits(isoDate, day, 2).append('T');
+        appendDigits(isoDate, (int) (millisOfDay / MILLIS_PER_HOUR), 2).append(':');
+        appendDigits(isoDate, (int) (millisOfDay % MILLIS_PER_HOUR / MILLIS_PER_MINUTE), 2).append(':');
+        appendDigits(isoDate, (int) (millisOfDay % MILLIS_PER_MINUTE / MILLIS_PER_SECOND), 2);
+        int millis = (int) (millisOfDay % MILLIS_PER_SECOND);
+        if (millis != 0) {
+            appendDigits(isoDate.append('.'), millis, 3);
+        }
+        return isoDate.append('Z').toString();
+    }
+
+    // Write a number with leading zeros up to a fixed number of digits
+    private static StringBuilder appendDigits(StringBuilder builder, int value, int count) {
+        for (int divisor = (int) Math.pow(10, count - 1); divisor > 1 && value < divisor; divisor /= 10) {
+            builder.append('0');
+        }
+        return builder.append(value);
+    }
+
+    // Read a fixed number of decimal digits as a number, or return -1 if any are not digits
+    private static int readDigits(String text, int start, int count) {
+        if (start + count > text.length()) {
+            return -1;
+        }
+
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char digit = text.charAt(i);
+            if (!isDigit(digit)) {
+                return -1;
+            }
+            value = value * 10 + (digit - '0');
+        }
+
+        return value;
+    }
+
+    private static boolean isDigit(char character) {
+        return character >= '0' && character <= '9';
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leapYear = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leapYear ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /*
+    Count the days from 1st January 1970 to a date in the proleptic Gregorian calendar. Years are
+    counted from March so that the leap day falls at the end of each year
+    */
+    private static long daysFromCivil(int year, int month, int day) {
+        if (month <= 2) {
+            year--;
+        }
+        long era = (year >= 0 ? year : year - 399) / 400;
+        long yearOfEra = year - era * 400;
+        long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    // Math.floorDiv is not available on the older API levels that the app supports
+    private static long floorDiv(long dividend, long divisor) {
+        long quotient = dividend / divisor;
+        if ((dividend % divisor != 0) && ((dividend < 0) != (divisor < 0))) {
+            quotient--;
+        }
+        return quotient;
+    }
+}
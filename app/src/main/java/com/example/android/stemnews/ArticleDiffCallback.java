@@ -0,0 +1,54 @@
+package com.example.android.stemnews;
+
+import android.support.v7.util.DiffUtil;
+
+import java.util.List;
+
+/**
+ * Compares an old and a new list of {@link ArticleRow}s for {@link DiffUtil}. Rows are matched by
+ * the ID of their {@link NewsArticle}, so an article that has moved in the list is recognised as
+ * the same one, and a matched row only needs to be bound again if any of the values it displays
+ * changed.
+ */
+final class ArticleDiffCallback extends DiffUtil.Callback {
+
+    private final List<ArticleRow> oldRows;
+    private final List<ArticleRow> newRows;
+
+    ArticleDiffCallback(List<ArticleRow> oldRows, List<ArticleRow> newRows) {
+        this.oldRows = oldRows;
+        this.newRows = newRows;
+    }
+
+    @Override
+    public int getOldListSize() {
+        return oldRows.size();
+    }
+
+    @Override
+    public int getNewListSize() {
+        return newRows.size();
+    }
+
+    @Override
+    public boolean areItemsTheSame(int oldPosition, int newPosition) {
+        return oldRows.get(oldPosition).getArticleId().equals(newRows.get(newPosition).getArticleId());
+    }
+
+    @Override
+    public boolean areContentsTheSame(int oldPosition, int newPosition) {
+        ArticleRow oldRow = oldRows.get(oldPosition);
+        ArticleRow newRow = newRows.get(newPosition);
+
+        return oldRow.getTitle().equals(newRow.getTitle())
+                && oldRow.getSection().equals(newRow.getSection())
+                && sameText(oldRow.getAuthorLabel(), newRow.getAuthorLabel())
+                && sameText(oldRow.getDateLabel(), newRow.getDateLabel())
+                && sameText(oldRow.getThumbnailUrl(), newRow.getThumbnailUrl());
+    }
+
+    // The author and date labels and the thumbnail are the displayed values that can be missing
+    private static boolean sameText(String first, String second) {
+        return (first == null) ? second == null : first.equals(second);
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.android.stemnews;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The full list of {@link NewsArticle}s loaded during an infinite scrolling session, held as
+ * ready-to-bind {@link ArticleRow}s, along with the position of the first article that changed in
+ * the last update. Each page is added to the end of the same list in place, so a consumer only has
+ * to copy the articles that changed rather than the whole list every time a page is loaded.
+ * <p>
+ * The articles of every page added are copied into one {@link ArticleStore} for the session, so
+ * that the section and author names are only kept once however many pages are loaded.
+ * <p>
+ * The feed also keeps an index of the position of every article by its ID. Pages from the API
+ * are based on an offset into the results, so when new articles are published during a session
+ * the next page repeats articles from the end of the last one. The index lets the
+ * {@link ArticleLoader} find and drop these in constant time for each article, from its
+ * background thread.
+ * <p>
+ * Each update returns a new {@link ArticleFeed} that shares the same list of articles, because a
+ * {@link android.content.Loader} will not deliver the same object twice in a row.
+ */
+public class ArticleFeed {
+
+    private final List<ArticleRow> articles;
+    private final ArticleStore store;
+    private final ArticleIdIndex idIndex;
+    private final int changedFrom;
+
+    ArticleFeed() {
+        this(new ArrayList<ArticleRow>(), new ArticleStore(), new ArticleIdIndex(), 0);
+    }
+
+    ArticleFeed(List<ArticleRow> page) {
+        this();
+        for (ArticleRow row : page) {
+            idIndex.add(row.getArticleId());
+            articles.add(row);
+        }
+    }
+
+    private ArticleFeed(List<ArticleRow> articles, ArticleStore store, ArticleIdIndex idIndex, int changedFrom) {
+        this.articles = articles;
+        this.store = store;
+        this.idIndex = idIndex;
+        this.changedFrom = changedFrom;
+    }
+
+    public List<ArticleRow> getRows() {
+        return Collections.unmodifiableList(articles);
+    }
+
+    public int size() {
+        return articles.size();
+    }
+
+    public boolean isEmpty() {
+        return articles.isEmpty();
+    }
+
+    /**
+     * @return the position of the first article that changed in the last update.
+     */
+    public int getChangedFrom() {
+        return changedFrom;
+    }
+
+    /**
+     * Replace all of the articles from the start position onwards with a page of articles. This
+     * adds a new page to the end of the feed, or replaces the last page if it has been loaded
+     * again, for example when a cached copy of the page is replaced by the one from the network.
+     * The store only grows, so a replaced page stays in it but is no longer part of the feed.
+     *
+     * @param start is the position in the feed that the page starts at.
+     * @param page  is the list of articles in the page.
+     * @return the updated feed, which shares its articles with this one.
+     */
+    ArticleFeed replaceFrom(int start, List<ArticleRow> page) {
+        start = Math.min(start, articles.size());
+        articles.subList(start, articles.size()).clear();
+        idIndex.truncate(start);
+
+        for (ArticleRow row : page) {
+            idIndex.add(row.getArticleId());
+            articles.add(store.copyRow(row));
+        }
+        return new ArticleFeed(articles, store, idIndex, start);
+    }
+
+    /**
+     * Remove the articles from a page that are already in the feed before the position that the
+     * page starts at, along with any that appear more than once in the page. This can be called
+     * from a background thread whilst the feed is being updated from the start position onwards.
+     *
+     * @param page        is the list of articles in the page.
+     * @param pageStart   is the position in the feed that the page starts at.
+     * @param acceptedIds is the set of IDs already accepted into the page, which the IDs of the
+     *                    articles kept are added to.
+     * @return the articles in the page that have not been loaded before.
+     */
+    List<NewsArticle> withoutLoaded(List<NewsArticle> page, int pageStart, Set<String> acceptedIds) {
+        List<NewsArticle> newArticles = new ArrayList<>(page.size());
+        for (NewsArticle article : page) {
+            String articleId = article.getArticleId();
+            if (idIndex.positionOf(articleId, pageStart) < 0 && acceptedIds.add(articleId)) {
+                newArticles.add(article);
+            }
+        }
+        return newArticles;
+    }
+
+    /**
+     * Copy the articles from a position in the feed to the end of it. This is used to bring a
+     * copy of the feed up to date, where the start position is the number of articles at the
+     * start of the copy that have not changed.
+     *
+     * @param start is the position of the first article to copy.
+     * @return a new list holding the articles from the start position onwards.
+     */
+    List<ArticleRow> copyFrom(int start) {
+        return new ArrayList<>(articles.subList(Math.min(start, articles.size()), articles.size()));
+    }
+
+    /**
+     * Work out how to bring a copy of the feed up to date, such as the data set of the
+     * {@link ArticleAdapter}. Only the articles from the first changed position onwards are
+     * compared and copied, so the cost stays the same however long the list gets.
+     *
+     * @param copyRows    is the copy's list of articles.
+     * @param changedFrom is the position of the first article changed since the copy was last
+     *                    brought up to date, which can be before this feed's own if an earlier
+     *                    update was never applied to the copy.
+     * @return the {@link Update} holding the articles to replace and the ones to replace them with.
+     */
+    Update updateFor(List<ArticleRow> copyRows, int changedFrom) {
+        int unchangedCount = Math.min(copyRows.size(), changedFrom);
+        List<ArticleRow> oldRows = new ArrayList<>(copyRows.subList(unchangedCount, copyRows.size()));
+        return new Update(unchangedCount, oldRows, copyFrom(unchangedCount));
+    }
+
+    /**
+     * The articles at the end of a copy of the feed that have changed, along with the ones from
+     * the feed that replace them.
+     */
+    static final class Update {
+
+        private final int unchangedCount;
+        private final List<ArticleRow> oldRows;
+        private final List<ArticleRow> newRows;
+
+        private Update(int unchangedCount, List<ArticleRow> oldRows, List<ArticleRow> newRows) {
+            this.unchangedCount = unchangedCount;
+            this.oldRows = oldRows;
+            this.newRows = newRows;
+        }
+
+        /**
+         * @return the number of articles at the start of the copy that have not changed.
+         */
+        int getUnchangedCount() {
+            return unchangedCount;
+        }
+
+        /**
+         * @return the articles in the copy after the unchanged ones.
+         */
+        List<ArticleRow> getOldRows() {
+            return oldRows;
+        }
+
+        /**
+         * @return the articles in the feed after the unchanged ones.
+         */
+        List<ArticleRow> getNewRows() {
+            return newRows;
+        }
+
+        /**
+         * Replace the articles in the copy after the unchanged ones with the new articles.
+         *
+         * @param copyRows is the copy's list of articles, as given to {@link #updateFor}.
+         */
+        void applyTo(List<ArticleRow> copyRows) {
+            copyRows.subList(unchangedCount, copyRows.size()).clear();
+            copyRows.addAll(newRows);
+        }
+    }
+}
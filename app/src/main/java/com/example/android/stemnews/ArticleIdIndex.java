@@ -0,0 +1,136 @@
+package com.example.android.stemnews;
+
+import java.util.Arrays;
+
+/**
+ * Index of the position of each article in an {@link ArticleFeed} by its ID. It is an open
+ * addressing hash table of positions rather than a map, so that it does not add an entry object
+ * for every article loaded during a long scrolling session.
+ * <p>
+ * An entry is only trusted if the ID recorded at its position still matches, so the entries of
+ * articles that have been replaced never need to be removed. They are left out when the table is
+ * rebuilt to grow.
+ * <p>
+ * Like the {@link ArticleStore}, the index is written to by one thread at a time but can be read
+ * from other threads, such as the {@link ArticleLoader}'s background thread. Readers only look
+ * for positions before the start of the page being loaded, which are not changed whilst it loads.
+ */
+final class ArticleIdIndex {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Stands in for an empty slot in the table, as the slots hold each position plus one
+    private static final int EMPTY = 0;
+
+    private volatile Table table = new Table(new String[INITIAL_CAPACITY], new int[INITIAL_CAPACITY * 2]);
+
+    // Only used by the writing thread
+    private int size;
+    private int usedSlots;
+
+    /**
+     * The ID at each position and the table of positions. A new set is created when either of
+     * them needs to grow.
+     */
+    private static final class Table {
+        final String[] ids;
+        final int[] slots;
+
+        Table(String[] ids, int[] slots) {
+            this.ids = ids;
+            this.slots = slots;
+        }
+    }
+
+    /**
+     * Find where an article appears in the feed before a limit position.
+     *
+     * @param articleId is the ID of the article to look for.
+     * @param limit     is the position to look before.
+     * @return the first position of the article, or -1 if it is not in the feed before the limit.
+     */
+    int positionOf(String articleId, int limit) {
+        Table current = table;
+        int mask = current.slots.length - 1;
+        for (int slot = spread(articleId.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+            int position = current.slots[slot] - 1;
+            if (position < 0) {
+                return -1;
+            }
+            if (position < limit && articleId.equals(current.ids[position])) {
+                return position;
+            }
+        }
+    }
+
+    /**
+     * Remove every position from the start position onwards, ready for them to be replaced.
+     *
+     * @param start is the first position to remove.
+     */
+    void truncate(int start) {
+        size = Math.min(start, size);
+    }
+
+    /**
+     * Add an article to the end of the feed. If it already appears earlier on, that position is
+     * the one that stays in the index.
+     *
+     * @param articleId is the ID of the article.
+     */
+    void add(String articleId) {
+        Table current = table;
+        if (size == current.ids.length || (usedSlots + 1) * 2 > current.slots.length) {
+            current = rebuild(current);
+        }
+
+        int position = size;
+        current.ids[position] = articleId;
+        size++;
+
+        if (positionOf(articleId, position) >= 0) {
+            return;
+        }
+
+        int mask = current.slots.length - 1;
+        int slot = spread(articleId.hashCode()) & mask;
+        while (current.slots[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        current.slots[slot] = position + 1;
+        usedSlots++;
+    }
+
+    // Copy the current positions into larger arrays, leaving out entries that no longer match
+    private Table rebuild(Table current) {
+        String[] ids = (size == current.ids.length) ? Arrays.copyOf(current.ids, size * 2) : current.ids.clone();
+        int[] slots = new int[Math.max(current.slots.length, Integer.highestOneBit(Math.max(size, 1)) * 4)];
+        int mask = slots.length - 1;
+
+        usedSlots = 0;
+        for (int position = 0; position < size; position++) {
+            int slot = spread(ids[position].hashCode()) & mask;
+            boolean repeated = false;
+            while (slots[slot] != EMPTY) {
+                if (ids[slots[slot] - 1].equals(ids[position])) {
+                    repeated = true;
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (!repeated) {
+                slots[slot] = position + 1;
+                usedSlots++;
+            }
+        }
+
+        // Publish the new arrays to the threads reading the index
+        table = new Table(ids, slots);
+        return table;
+    }
+
+    // Mix the high bits of the hash code into the low bits used to pick a slot
+    private static int spread(int hashCode) {
+        return hashCode ^ (hashCode >>> 16);
+    }
+}
@@ -0,0 +1,255 @@
+package com.example.android.stemnews;
+
+import android.util.Log;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pull parser that reads {@link NewsArticle} objects straight from the response stream of The
+ * Guardian web API, without first loading the whole response into a String or building a full
+ * JSON object tree. Any fields that the app does not use are skipped over without being read.
+ */
+final class ArticleJsonParser {
+
+    private static final String LOG_TAG = ArticleJsonParser.class.getName();
+
+    private final ResponseKeys keys;
+
+    ArticleJsonParser(ResponseKeys keys) {
+        this.keys = keys;
+    }
+
+    /**
+     * Parse the response stream from the server into a list of {@link NewsArticle} objects. The
+     * parser stops reading as soon as the results for the page have been consumed.
+     *
+     * @param responseStream is the input stream response from the HTTP request to the servers.
+     * @return the list of {@link NewsArticle} objects to be displayed in the app, or null if
+     * there was no response stream to read.
+     */
+    List<NewsArticle> parse(InputStream responseStream) throws IOException {
+        return parse(responseStream, null);
+    }
+
+    /**
+     * Parse the response stream as above, stopping before the next article once the
+     * {@link CancellationToken} is cancelled.
+     *
+     * @param responseStream is the input stream response from the HTTP request to the servers.
+     * @param cancellation   is the {@link CancellationToken} for the request, or null if it
+     *                       cannot be cancelled.
+     * @return the list of {@link NewsArticle} objects to be displayed in the app, or null if
+     * there was no response stream to read.
+     * @throws InterruptedIOException if the parsing was cancelled.
+     */
+    List<NewsArticle> parse(InputStream responseStream, CancellationToken cancellation) throws IOException {
+        // If there is no stream to read from, then return early
+        if (responseStream == null) {
+            return null;
+        }
+
+        // Create an empty ArrayList that we can start adding articles to
+        List<NewsArticle> articleList = new ArrayList<>();
+
+        JsonReader jsonReader = new JsonReader(new InputStreamReader(responseStream, Charset.forName("UTF-8")));
+        try {
+            /*
+            Find the root "response" object and read the articles from it. Everything after this
+            object is of no use to the app, so stop reading as soon as it has been parsed
+            */
+            jsonReader.beginObject();
+            while (jsonReader.hasNext()) {
+                if (jsonReader.nextName().equals(keys.responseKey)) {
+                    readResponse(jsonReader, articleList, cancellation);
+                    break;
+                } else {
+                    jsonReader.skipValue();
+                }
+            }
+        } catch (MalformedJsonException | IllegalStateException e) {
+            /*
+            If there's a problem with the way the JSON is formatted, keep any of the articles
+            that were fully parsed before the problem was found
+            */
+            Log.e(LOG_TAG, "Problem parsing the JSON results", e);
+        } finally {
+            jsonReader.close();
+        }
+
+        return articleList;
+    }
+
+    /**
+     * Read the "response" object, adding each of its articles to the output list. If the
+     * "status" String is not "ok", the list is cleared and the error message is logged instead.
+     */
+    private void readResponse(JsonReader jsonReader, List<NewsArticle> articleList, CancellationToken cancellation) throws IOException {
+        String responseStatus = null;
+        String errorMessage = null;
+        boolean resultsRead = false;
+
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            String name = jsonReader.nextName();
+            if (name.equals(keys.statusKey)) {
+                responseStatus = jsonReader.nextString();
+            } else if (name.equals(keys.resultsKey)) {
+                readResults(jsonReader, articleList, cancellation);
+                resultsRead = true;
+            } else if (name.equals(keys.messageKey)) {
+                errorMessage = jsonReader.nextString();
+            } else {
+                jsonReader.skipValue();
+            }
+
+            // Once the page of results has been read from a successful response, stop early
+            if (resultsRead && keys.okStatus.equals(responseStatus)) {
+                return;
+            }
+        }
+        jsonReader.endObject();
+
+        if (!keys.okStatus.equals(responseStatus)) {
+            articleList.clear();
+            Log.e(LOG_TAG, responseStatus + ": " + errorMessage);
+        }
+    }
+
+    /**
+     * Read the "results" array, which represents the list of article objects, and add a new
+     * {@link NewsArticle} to one {@link ArticleStore} for the page for each element of it. A
+     * response read from the cache is not stopped by cancelling its call, so the cancellation is
+     * also checked before each article.
+     */
+    private void readResults(JsonReader jsonReader, List<NewsArticle> articleList, CancellationToken cancellation) throws IOException {
+        ArticleStore pageStore = new ArticleStore();
+        jsonReader.beginArray();
+        while (jsonReader.hasNext()) {
+            if (cancellation != null && cancellation.isCancelled()) {
+                throw new InterruptedIOException("Parsing cancelled");
+            }
+            articleList.add(readArticle(jsonReader, pageStore));
+        }
+        jsonReader.endArray();
+    }
+
+    /**
+     * Read a single article object into a {@link NewsArticle}, skipping any fields that are not
+     * displayed by the app.
+     */
+    private NewsArticle readArticle(JsonReader jsonReader, ArticleStore pageStore) throws IOException {
+        String articleId = null;
+        String articleTitle = null;
+        String sectionName = null;
+        String authorString = null;
+        String datePublished = null;
+        String articleUrl = null;
+        String thumbnailUrl = null;
+        boolean tagsRead = false;
+
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            String name = jsonReader.nextName();
+            if (name.equals(keys.idKey)) {
+                articleId = jsonReader.nextString();
+            } else if (name.equals(keys.webTitleKey)) {
+                articleTitle = jsonReader.nextString();
+            } else if (name.equals(keys.sectionNameKey)) {
+                sectionName = jsonReader.nextString();
+            } else if (name.equals(keys.tagsKey)) {
+                authorString = readAuthor(jsonReader);
+                tagsRead = true;
+            } else if (name.equals(keys.webPublicationDateKey)) {
+                datePublished = jsonReader.nextString();
+            } else if (name.equals(keys.webUrlKey)) {
+                articleUrl = jsonReader.nextString();
+            } else if (name.equals(keys.fieldsKey)) {
+                thumbnailUrl = readThumbnail(jsonReader);
+            } else {
+                jsonReader.skipValue();
+            }
+        }
+        jsonReader.endObject();
+
+        // Every article must contain all of the fields that the app displays, apart from a thumbnail
+        if (articleId == null || articleTitle == null || sectionName == null || !tagsRead || datePublished == null || articleUrl == null) {
+            throw new MalformedJsonException("Missing article field at " + jsonReader.getPath());
+        }
+
+        return pageStore.add(articleId, articleTitle, sectionName, authorString, datePublished, articleUrl, thumbnailUrl);
+    }
+
+    // Read the thumbnail URL from the "fields" object, if the article has one
+    private String readThumbnail(JsonReader jsonReader) throws IOException {
+        String thumbnailUrl = null;
+
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            if (jsonReader.nextName().equals(keys.thumbnailKey) && jsonReader.peek() == JsonToken.STRING) {
+                thumbnailUrl = jsonReader.nextString();
+            } else {
+                jsonReader.skipValue();
+            }
+        }
+        jsonReader.endObject();
+
+        return thumbnailUrl;
+    }
+
+    /**
+     * Read the first author's name from the "tags" array if any are given. If there are multiple
+     * authors, indicate this with an ampersand and ellipses.
+     */
+    private String readAuthor(JsonReader jsonReader) throws IOException {
+        String authorString = null;
+        int authorCount = 0;
+
+        jsonReader.beginArray();
+        while (jsonReader.hasNext()) {
+            if (authorCount == 0) {
+                authorString = readTagTitle(jsonReader);
+            } else {
+                jsonReader.skipValue();
+            }
+            authorCount++;
+        }
+        jsonReader.endArray();
+
+        if (authorCount > 1) {
+            authorString += keys.multipleAuthors;
+        }
+
+        return authorString;
+    }
+
+    // Read the title String from a single tag object, skipping all of its other fields
+    private String readTagTitle(JsonReader jsonReader) throws IOException {
+        String tagTitle = null;
+
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            if (jsonReader.nextName().equals(keys.webTitleKey)) {
+                tagTitle = jsonReader.nextString();
+            } else {
+                jsonReader.skipValue();
+            }
+        }
+        jsonReader.endObject();
+
+        if (tagTitle == null) {
+            throw new MalformedJsonException("Missing tag title at " + jsonReader.getPath());
+        }
+
+        return tagTitle;
+    }
+}
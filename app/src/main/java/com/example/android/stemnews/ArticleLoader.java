@@ -2,71 +2,299 @@ package com.example.android.stemnews;
 
 import android.content.AsyncTaskLoader;
 import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.os.TraceCompat;
+import android.util.Log;
 
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
-public class ArticleLoader extends AsyncTaskLoader<List<NewsArticle>> {
+public class ArticleLoader extends AsyncTaskLoader<ArticleFeed> {
+
+    /*
+    The number of seconds that an out of date HTTP response can still be used for. Later pages
+    of results change less often than the first one, so they can be kept for longer
+    */
+    private static final int FIRST_PAGE_MAX_STALE = 60;
+    static final int NEXT_PAGE_MAX_STALE = 10 * 60;
+
+    private static final String LOG_TAG = ArticleLoader.class.getName();
 
     private String queryUrl;
-    private List<NewsArticle> existingList;
-    private boolean forceLoadFlag;
+    private ArticleFeed articleFeed;
+
+    /*
+    The feed as it was when the loader was created. Only its articles before the start of this
+    loader's page are checked from the background thread, which are never changed by this loader
+    */
+    private final ArticleFeed loadedFeed;
+    private int pageStart;
+    private boolean pageLoaded;
+    private boolean serveCachedFlag;
+    private boolean networkFlag;
+    private boolean fanOutFlag;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
 
-    ArticleLoader(Context context, String queryUrl, List<NewsArticle> existingList, boolean forceLoadFlag) {
+    /*
+    Cancels the load in progress, including its network request and parsing, when the loader is
+    restarted or reset. Each load has its own, which is only accessed whilst holding the loader's
+    lock so that a cancellation cannot be missed as a load starts
+    */
+    private CancellationToken loadCancellation;
+
+    ArticleLoader(Context context, String queryUrl, ArticleFeed existingFeed, boolean serveCachedFlag, boolean networkFlag, boolean fanOutFlag) {
         super(context);
         this.queryUrl = queryUrl;
-        this.existingList = existingList;
-        this.forceLoadFlag = forceLoadFlag;
+
+        /*
+        The page loaded by this loader is added to the end of the existing feed, or starts a new
+        feed if there isn't one
+        */
+        this.articleFeed = (existingFeed != null) ? existingFeed : new ArticleFeed();
+        this.loadedFeed = articleFeed;
+        this.pageStart = articleFeed.size();
+        this.serveCachedFlag = serveCachedFlag;
+        this.networkFlag = networkFlag;
+        this.fanOutFlag = fanOutFlag;
     }
 
     @Override
     protected void onStartLoading() {
         /*
-        Use cached data if it exists and we aren't forcing a load. This prevents the Loader from
-        reloading if the app is moved to the background
+        Use the loaded data if it exists. This prevents the Loader from reloading if the app is
+        moved to the background
         */
-        if (existingList != null && !forceLoadFlag) {
-            deliverResult(existingList);
+        if (pageLoaded) {
+            super.deliverResult(articleFeed);
         } else {
             forceLoad();
         }
     }
 
     @Override
-    public List<NewsArticle> loadInBackground() {
+    public ArticleFeed loadInBackground() {
         if (queryUrl == null) {
             return null;
         }
 
+        CancellationToken cancellation;
+        synchronized (this) {
+            if (isCancelRequested()) {
+                return null;
+            }
+            cancellation = new CancellationToken();
+            loadCancellation = cancellation;
+        }
+
+        long loadStart = System.nanoTime();
+        TraceCompat.beginSection("ArticleLoader.loadInBackground");
+        try {
+            return loadPage(cancellation);
+        } finally {
+            TraceCompat.endSection();
+            LoadMetrics.record(LoadMetrics.STAGE_LOAD, loadStart);
+            synchronized (this) {
+                loadCancellation = null;
+            }
+        }
+    }
+
+    /*
+    Abort the load in progress straight away when the loader is replaced, so that rapid refreshes
+    or settings changes do not leave old requests downloading in the background. This is only
+    called on API 16 and above, so on older versions the old load runs to completion as before
+    */
+    @Override
+    public void cancelLoadInBackground() {
+        synchronized (this) {
+            if (loadCancellation != null) {
+                loadCancellation.cancel();
+            }
+        }
+    }
+
+    // Check whether the load was cancelled before it started, which needs API 16 and above
+    private boolean isCancelRequested() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN && isLoadInBackgroundCanceled();
+    }
+
+    // Load the page, giving up as soon as the cancellation token is cancelled
+    private ArticleFeed loadPage(CancellationToken cancellation) {
+
+        ArticleCache articleCache = ArticleCache.getInstance(getContext());
+        String queryKey = ArticleCache.queryKey(queryUrl);
+
+        /*
+        If the {@link PagePrefetcher} has already fetched this page (or is part of the way
+        through doing so), use its copy instead of making another request
+        */
+        List<NewsArticle> prefetchedList = PagePrefetcher.getInstance().take(queryUrl, cancellation);
+        if (cancellation.isCancelled()) {
+            return null;
+        }
+        if (prefetchedList != null) {
+            articleCache.put(queryKey, prefetchedList);
+            return renderPage(withoutRepeats(prefetchedList, true, cancellation));
+        }
+
+        /*
+        Check the on-disk cache for a stored copy of this page first. If there is one, deliver it
+        straight away so that the list can be shown whilst the network request is made
+        */
+        List<NewsArticle> cachedList = articleCache.get(queryKey);
+
+        if (cachedList != null && serveCachedFlag) {
+            // Remove the repeats and build the rows here, so the main thread only has to deliver them
+            final ArticleFeed cachedPage = renderPage(withoutRepeats(cachedList, false, null));
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (isStarted() && !isAbandoned()) {
+                        deliverResult(cachedPage);
+                    }
+                }
+            });
+        }
+
+        // Without a network connection, the cached copy is the best that can be shown
+        if (!networkFlag) {
+            return (cachedList != null) ? renderPage(withoutRepeats(cachedList, false, null)) : null;
+        }
+
         /*
         Perform the network request using the query URL, parse the response and extract the
-        list of news articles created
+        list of news articles created. If the user asked for a refresh, always check with the
+        servers that the page is up to date. Store the fresh copy in the cache for next time, but
+        fall back to the cached copy if the request failed
         */
-        return QueryUtils.fetchLatestNews(queryUrl, getContext());
+        int maxStaleSeconds;
+        if (!serveCachedFlag) {
+            maxStaleSeconds = 0;
+        } else if (pageStart > 0) {
+            maxStaleSeconds = NEXT_PAGE_MAX_STALE;
+        } else {
+            maxStaleSeconds = FIRST_PAGE_MAX_STALE;
+        }
+
+        List<NewsArticle> freshList;
+        if (pageStart == 0) {
+            freshList = fetchFirstPage(maxStaleSeconds, cancellation);
+        } else if (fanOutFlag || CategoryFanOut.continuesMerge(queryUrl)) {
+            freshList = CategoryFanOut.fetchLatestNews(queryUrl, getContext(), maxStaleSeconds, false, cancellation);
+        } else {
+            freshList = QueryUtils.fetchLatestNews(queryUrl, getContext(), maxStaleSeconds, false, cancellation);
+        }
+
+        // A cancelled load's result is thrown away, so don't spend any more time on it
+        if (cancellation.isCancelled()) {
+            return null;
+        }
+        if (freshList != null) {
+            articleCache.put(queryKey, freshList);
+            SearchIndex.getInstance(getContext()).addAll(freshList);
+            if (pageStart == 0) {
+                FeedSync.recordSync(getContext());
+            }
+            return renderPage(withoutRepeats(freshList, true, cancellation));
+        }
+
+        return (cachedList != null) ? renderPage(withoutRepeats(cachedList, false, null)) : null;
+    }
+
+    /*
+    If the user has just changed the categories of a list ordered by date, merge the first page
+    from what is stored for the categories they kept and request only the ones they added, so
+    that the later pages carry on from the same merge. If what is needed is not stored, or the
+    categories have not changed, the first page is requested in the same way as the pages after
+    it, so they follow on from one another
+    */
+    private List<NewsArticle> fetchFirstPage(int maxStaleSeconds, CancellationToken cancellation) {
+        String lastFirstPageKey = CategoryFanOut.recordFirstPage(getContext(), queryUrl);
+        boolean reuseStored = CategoryFanOut.isDateOrder(queryUrl)
+                && CategoryFanOut.categoriesChanged(getContext(), lastFirstPageKey, queryUrl);
+        CategoryFanOut.MergeState startState = reuseStored
+                ? CategoryFanOut.reusableStart(getContext(), lastFirstPageKey, queryUrl) : null;
+
+        if (fanOutFlag || startState != null) {
+            return CategoryFanOut.fetchFirstPage(queryUrl, getContext(), maxStaleSeconds, false, cancellation,
+                    startState, reuseStored);
+        }
+
+        CategoryFanOut.forgetMerge(queryUrl);
+        return QueryUtils.fetchLatestNews(queryUrl, getContext(), maxStaleSeconds, false, cancellation);
+    }
+
+    /*
+    Pages of results are based on an offset into the results, so if new articles were published
+    since the previous page was loaded, this page starts with articles that are already in the
+    feed. Remove these (and any repeated within the page) by their IDs. The raw page is still what
+    gets cached, as the repeats depend on what was loaded before it.
+
+    If any were removed and the network can be used, top the page back up from the start of the
+    following page. That page is fetched with the longer staleness limit, so when the user scrolls
+    on to it, it is normally served from the HTTP cache instead of being requested again
+    */
+    private List<NewsArticle> withoutRepeats(List<NewsArticle> page, boolean fillPage, CancellationToken cancellation) {
+        Set<String> acceptedIds = new HashSet<>();
+        List<NewsArticle> newArticles = loadedFeed.withoutLoaded(page, pageStart, acceptedIds);
+
+        int missingCount = page.size() - newArticles.size();
+        if (missingCount == 0 || !fillPage) {
+            return newArticles;
+        }
+
+        String nextPageUrl = QueryUtils.nextPageUrl(queryUrl);
+        if (nextPageUrl == null) {
+            return newArticles;
+        }
+
+        List<NewsArticle> nextPage;
+        if (fanOutFlag || CategoryFanOut.continuesMerge(nextPageUrl)) {
+            nextPage = CategoryFanOut.fetchLatestNews(nextPageUrl, getContext(), NEXT_PAGE_MAX_STALE, false, cancellation);
+        } else {
+            nextPage = QueryUtils.fetchLatestNews(nextPageUrl, getContext(), NEXT_PAGE_MAX_STALE, false, cancellation);
+        }
+        if (nextPage == null) {
+            return newArticles;
+        }
+
+        List<NewsArticle> fillArticles = loadedFeed.withoutLoaded(nextPage, pageStart, acceptedIds);
+        newArticles.addAll(fillArticles.subList(0, Math.min(missingCount, fillArticles.size())));
+
+        Log.d(LOG_TAG, "Removed " + missingCount + " repeated articles from the page");
+        return newArticles;
     }
 
     @Override
-    public void deliverResult(List<NewsArticle> data) {
+    public void deliverResult(ArticleFeed page) {
         /*
-        If the new list consists of acceptable values and there is a previous data set of news
-        articles already in the loader, add the new list to the end of the existing list and
-        output the combined result. Otherwise, just output the new data set
+        Add the articles in the new page to the end of the feed in place, replacing any copy of
+        the page that was delivered before it (such as the cached copy). Only this page is marked
+        as changed, so the adapter only has to copy the new articles rather than the whole feed
         */
-        if (data != null && !data.isEmpty()) {
-            if (existingList != null) {
-                existingList.addAll(data);
-            } else {
-                existingList = new ArrayList<>(data);
-            }
+        List<ArticleRow> pageRows = (page != null) ? page.getRows() : Collections.<ArticleRow>emptyList();
+        articleFeed = articleFeed.replaceFrom(pageStart, pageRows);
 
-            /*
-            Once we have existing data, flip the forceLoad flag for the rest of this loader's
-            lifecycle so that it uses the cached data instead of carrying out a new request
-            */
-            forceLoadFlag = false;
-            super.deliverResult(existingList);
-        } else {
-            super.deliverResult(data);
+        /*
+        Once we have some data, use it for the rest of this loader's lifecycle instead of
+        carrying out a new request
+        */
+        if (!pageRows.isEmpty()) {
+            pageLoaded = true;
         }
+
+        super.deliverResult(articleFeed);
+    }
+
+    /*
+    Work out the rows for a page of articles on the loader's background thread, so that binding
+    them to the list items on the main thread only has to assign the values
+    */
+    static ArticleFeed renderPage(List<NewsArticle> page) {
+        return new ArticleFeed(ArticleRow.fromArticles(page));
     }
 }
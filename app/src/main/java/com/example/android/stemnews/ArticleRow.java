@@ -0,0 +1,97 @@
+package com.example.android.stemnews;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The values shown in one row of the article list, worked out from a {@link NewsArticle} by the
+ * {@link ArticleLoader} on its background thread. Binding a row to a list item then only has to
+ * assign these values to the item's views. Like {@link NewsArticle}, a row is a lightweight view
+ * of a record in an {@link ArticleStore}.
+ */
+public class ArticleRow {
+
+    private final ArticleStore store;
+    private final int index;
+
+    ArticleRow(ArticleStore store, int index) {
+        this.store = store;
+        this.index = index;
+    }
+
+    /**
+     * Work out the rows for a page of articles, storing them together in a new
+     * {@link ArticleStore}.
+     *
+     * @param articles is the page of {@link NewsArticle}s.
+     * @return the list of rows, in the same order as the articles.
+     */
+    static List<ArticleRow> fromArticles(List<NewsArticle> articles) {
+        ArticleStore pageStore = new ArticleStore();
+        List<ArticleRow> rows = new ArrayList<>(articles.size());
+        for (NewsArticle article : articles) {
+            rows.add(pageStore.addRow(article));
+        }
+        return rows;
+    }
+
+    ArticleStore getStore() {
+        return store;
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return a {@link NewsArticle} view of the article shown in this row.
+     */
+    public NewsArticle getArticle() {
+        return new NewsArticle(store, index);
+    }
+
+    public String getArticleId() {
+        return store.getId(index);
+    }
+
+    /**
+     * @return the article title with any additional text after the | character removed.
+     */
+    public String getTitle() {
+        return store.getDisplayTitle(index);
+    }
+
+    public String getSection() {
+        return store.getSection(index);
+    }
+
+    /**
+     * @return the author's name, or null if the article did not give one.
+     */
+    public String getAuthorLabel() {
+        return store.getAuthor(index);
+    }
+
+    /**
+     * @return the publication date to display, or null if it could not be read.
+     */
+    public String getDateLabel() {
+        return store.getDateLabel(index);
+    }
+
+    /**
+     * @return the URL of the thumbnail image to show, or null if the article has none.
+     */
+    public String getThumbnailUrl() {
+        return store.getThumbnailUrl(index);
+    }
+
+    // The separator between the section and the author is only shown alongside the author
+    public boolean showAuthor() {
+        return getAuthorLabel() != null;
+    }
+
+    public boolean showDate() {
+        return getDateLabel() != null;
+    }
+}
@@ -0,0 +1,328 @@
+package com.example.android.stemnews;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact, append-only store for the articles loaded by the app. Each field of the articles is
+ * kept in its own array (one column per field) instead of as a separate object for every article:
+ * <ul>
+ * <li>Section and author names repeat throughout a long scrolling session, so each distinct name
+ * is only kept once in a dictionary and the articles store its position in it. The same is done
+ * for any additional text after the | character in a title, which the list does not display.</li>
+ * <li>Publication dates are kept as primitive epoch milliseconds rather than Strings.</li>
+ * <li>Article URLs are nearly always the Guardian website address followed by the article ID, so
+ * they are only stored when they differ from that.</li>
+ * <li>Thumbnail URLs are kept as they are, or null for articles without one.</li>
+ * </ul>
+ * {@link NewsArticle} and {@link ArticleRow} objects are lightweight views of a position in the
+ * store. Records are never changed or removed once they have been added, so a view always shows
+ * the same article.
+ * <p>
+ * A store is written to by one thread at a time, but its views can be read from other threads,
+ * such as when the {@link ArticleAdapter} works out a diff in the background. The columns are
+ * therefore replaced as a whole when they need to grow and published through a volatile field.
+ */
+final class ArticleStore {
+
+    // The start of the URL for every article on The Guardian website
+    private static final String WEB_URL_PREFIX = "https://www.theguardian.com/";
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Stands in for a missing author or title suffix in their columns
+    private static final int NONE = -1;
+
+    private volatile Columns columns = new Columns(INITIAL_CAPACITY);
+    private int size;
+
+    // Only used by the writing thread to look up the position of a name in its dictionary
+    private final Map<String, Integer> sectionCodes = new HashMap<>();
+    private final Map<String, Integer> authorCodes = new HashMap<>();
+    private final Map<String, Integer> suffixCodes = new HashMap<>();
+
+    /**
+     * The arrays that make up the store. A new set is created when any of them needs to grow,
+     * sharing the arrays that did not.
+     */
+    private static final class Columns {
+        final String[] ids;
+
+        // The title with any text from the | character onwards removed, which is kept separately
+        final String[] displayTitles;
+        final int[] titleSuffixes;
+        final int[] sections;
+        final int[] authors;
+        final long[] publishedMillis;
+
+        // The original date String, only kept when it could not be read into milliseconds
+        final String[] unreadableDates;
+
+        // The display String for the date, shared between all the articles from the same day
+        final String[] dateLabels;
+
+        // The article URL, or null if it is the website address followed by the article ID
+        final String[] webUrls;
+        final String[] thumbnailUrls;
+
+        final String[] sectionNames;
+        final String[] authorNames;
+        final String[] suffixTexts;
+
+        Columns(int capacity) {
+            this(new String[capacity], new String[capacity], new int[capacity], new int[capacity],
+                    new int[capacity], new long[capacity], new String[capacity], new String[capacity],
+                    new String[capacity], new String[capacity], new String[INITIAL_CAPACITY],
+                    new String[INITIAL_CAPACITY], new String[INITIAL_CAPACITY]);
+        }
+
+        Columns(String[] ids, String[] displayTitles, int[] titleSuffixes, int[] sections, int[] authors,
+                long[] publishedMillis, String[] unreadableDates, String[] dateLabels, String[] webUrls,
+                String[] thumbnailUrls, String[] sectionNames, String[] authorNames, String[] suffixTexts) {
+            this.ids = ids;
+            this.displayTitles = displayTitles;
+            this.titleSuffixes = titleSuffixes;
+            this.sections = sections;
+            this.authors = authors;
+            this.publishedMillis = publishedMillis;
+            this.unreadableDates = unreadableDates;
+            this.dateLabels = dateLabels;
+            this.webUrls = webUrls;
+            this.thumbnailUrls = thumbnailUrls;
+            this.sectionNames = sectionNames;
+            this.authorNames = authorNames;
+            this.suffixTexts = suffixTexts;
+        }
+
+        Columns withRecordCapacity(int capacity) {
+            return new Columns(Arrays.copyOf(ids, capacity), Arrays.copyOf(displayTitles, capacity),
+                    Arrays.copyOf(titleSuffixes, capacity), Arrays.copyOf(sections, capacity),
+                    Arrays.copyOf(authors, capacity), Arrays.copyOf(publishedMillis, capacity),
+                    Arrays.copyOf(unreadableDates, capacity), Arrays.copyOf(dateLabels, capacity),
+                    Arrays.copyOf(webUrls, capacity), Arrays.copyOf(thumbnailUrls, capacity), sectionNames,
+                    authorNames, suffixTexts);
+        }
+
+        Columns withSectionCapacity(int capacity) {
+            return new Columns(ids, displayTitles, titleSuffixes, sections, authors, publishedMillis,
+                    unreadableDates, dateLabels, webUrls, thumbnailUrls, Arrays.copyOf(sectionNames, capacity),
+                    authorNames, suffixTexts);
+        }
+
+        Columns withAuthorCapacity(int capacity) {
+            return new Columns(ids, displayTitles, titleSuffixes, sections, authors, publishedMillis,
+                    unreadableDates, dateLabels, webUrls, thumbnailUrls, sectionNames,
+                    Arrays.copyOf(authorNames, capacity), suffixTexts);
+        }
+
+        Columns withSuffixCapacity(int capacity) {
+            return new Columns(ids, displayTitles, titleSuffixes, sections, authors, publishedMillis,
+                    unreadableDates, dateLabels, webUrls, thumbnailUrls, sectionNames, authorNames,
+                    Arrays.copyOf(suffixTexts, capacity));
+        }
+    }
+
+    /**
+     * Add an article from the values returned by The Guardian web API.
+     *
+     * @param thumbnailUrl is the URL of the article's thumbnail image, or null if it has none.
+     * @return a {@link NewsArticle} view of the new record.
+     */
+    NewsArticle add(String articleId, String articleTitle, String newsSection, String authorName, String datePublished,
+                    String webURL, String thumbnailUrl) {
+        long publishedMillis = ArticleDates.parseIsoDate(datePublished);
+        String unreadableDate = (publishedMillis == ArticleDates.INVALID_DATE) ? datePublished : null;
+        return add(articleId, articleTitle, newsSection, authorName, publishedMillis, unreadableDate, webURL, thumbnailUrl);
+    }
+
+    /**
+     * Add an article whose publication date has already been read into epoch milliseconds, such
+     * as one restored from a {@link FeedSnapshot}.
+     *
+     * @param unreadableDate is the original date String if it could not be read, otherwise null.
+     * @return a {@link NewsArticle} view of the new record.
+     */
+    NewsArticle add(String articleId, String articleTitle, String newsSection, String authorName,
+                    long publishedMillis, String unreadableDate, String webURL, String thumbnailUrl) {
+        /*
+        Split off any additional text in the article title by using the | character as a
+        separator, as only the part before it is displayed
+        */
+        int endOfTitle = articleTitle.indexOf('|');
+        String displayTitle = (endOfTitle >= 0) ? articleTitle.substring(0, endOfTitle) : articleTitle;
+        String titleSuffix = (endOfTitle >= 0) ? articleTitle.substring(endOfTitle) : null;
+
+        int index = append(articleId, displayTitle, titleSuffix, newsSection, authorName, publishedMillis,
+                unreadableDate, null, webURL, thumbnailUrl);
+        return new NewsArticle(this, index);
+    }
+
+    /**
+     * Copy an article from any store into this one, working out the values that its row in the
+     * article list displays as it is added.
+     *
+     * @return an {@link ArticleRow} view of the new record.
+     */
+    ArticleRow addRow(NewsArticle article) {
+        ArticleStore source = article.getStore();
+        int sourceIndex = article.getIndex();
+        Columns sourceColumns = source.columns;
+
+        long publishedMillis = sourceColumns.publishedMillis[sourceIndex];
+        int index = append(sourceColumns.ids[sourceIndex], sourceColumns.displayTitles[sourceIndex],
+                source.getTitleSuffix(sourceIndex), source.getSection(sourceIndex),
+                source.getAuthor(sourceIndex), publishedMillis, sourceColumns.unreadableDates[sourceIndex],
+                ArticleDates.formatDay(publishedMillis), sourceColumns.webUrls[sourceIndex],
+                sourceColumns.thumbnailUrls[sourceIndex]);
+        return new ArticleRow(this, index);
+    }
+
+    /**
+     * Copy a row from any store into this one, keeping the values that were already worked out
+     * for it.
+     *
+     * @return an {@link ArticleRow} view of the new record.
+     */
+    ArticleRow copyRow(ArticleRow row) {
+        ArticleStore source = row.getStore();
+        int sourceIndex = row.getIndex();
+        Columns sourceColumns = source.columns;
+
+        int index = append(sourceColumns.ids[sourceIndex], sourceColumns.displayTitles[sourceIndex],
+                source.getTitleSuffix(sourceIndex), source.getSection(sourceIndex),
+                source.getAuthor(sourceIndex), sourceColumns.publishedMillis[sourceIndex],
+                sourceColumns.unreadableDates[sourceIndex], sourceColumns.dateLabels[sourceIndex],
+                sourceColumns.webUrls[sourceIndex], sourceColumns.thumbnailUrls[sourceIndex]);
+        return new ArticleRow(this, index);
+    }
+
+    /**
+     * @return the number of records in the store.
+     */
+    int size() {
+        return size;
+    }
+
+    String getId(int index) {
+        return columns.ids[index];
+    }
+
+    String getTitle(int index) {
+        String titleSuffix = getTitleSuffix(index);
+        return (titleSuffix != null) ? columns.displayTitles[index] + titleSuffix : columns.displayTitles[index];
+    }
+
+    String getDisplayTitle(int index) {
+        return columns.displayTitles[index];
+    }
+
+    private String getTitleSuffix(int index) {
+        Columns current = columns;
+        int suffixCode = current.titleSuffixes[index];
+        return (suffixCode == NONE) ? null : current.suffixTexts[suffixCode];
+    }
+
+    String getSection(int index) {
+        Columns current = columns;
+        return current.sectionNames[current.sections[index]];
+    }
+
+    String getAuthor(int index) {
+        Columns current = columns;
+        int authorCode = current.authors[index];
+        return (authorCode == NONE) ? null : current.authorNames[authorCode];
+    }
+
+    long getPublishedMillis(int index) {
+        return columns.publishedMillis[index];
+    }
+
+    String getDatePublished(int index) {
+        Columns current = columns;
+        String unreadableDate = current.unreadableDates[index];
+        return (unreadableDate != null) ? unreadableDate : ArticleDates.formatIsoDate(current.publishedMillis[index]);
+    }
+
+    String getDateLabel(int index) {
+        return columns.dateLabels[index];
+    }
+
+    String getWebUrl(int index) {
+        Columns current = columns;
+        String webUrl = current.webUrls[index];
+        return (webUrl != null) ? webUrl : WEB_URL_PREFIX + current.ids[index];
+    }
+
+    String getThumbnailUrl(int index) {
+        return columns.thumbnailUrls[index];
+    }
+
+    // Add a record to the end of every column, growing them first if they are full
+    private int append(String articleId, String displayTitle, String titleSuffix, String section, String author,
+                       long publishedMillis, String unreadableDate, String dateLabel, String webUrl,
+                       String thumbnailUrl) {
+        Columns current = columns;
+        if (size == current.ids.length) {
+            current = current.withRecordCapacity(size * 2);
+        }
+
+        int sectionCode = codeOf(section, sectionCodes);
+        if (sectionCode == current.sectionNames.length) {
+            current = current.withSectionCapacity(sectionCode * 2);
+        }
+        current.sectionNames[sectionCode] = section;
+
+        int authorCode = NONE;
+        if (author != null) {
+            authorCode = codeOf(author, authorCodes);
+            if (authorCode == current.authorNames.length) {
+                current = current.withAuthorCapacity(authorCode * 2);
+            }
+            current.authorNames[authorCode] = author;
+        }
+
+        int suffixCode = NONE;
+        if (titleSuffix != null) {
+            suffixCode = codeOf(titleSuffix, suffixCodes);
+            if (suffixCode == current.suffixTexts.length) {
+                current = current.withSuffixCapacity(suffixCode * 2);
+            }
+            current.suffixTexts[suffixCode] = titleSuffix;
+        }
+
+        int index = size;
+        current.ids[index] = articleId;
+        current.displayTitles[index] = displayTitle;
+        current.titleSuffixes[index] = suffixCode;
+        current.sections[index] = sectionCode;
+        current.authors[index] = authorCode;
+        current.publishedMillis[index] = publishedMillis;
+        current.unreadableDates[index] = unreadableDate;
+        current.dateLabels[index] = dateLabel;
+        current.webUrls[index] = (webUrl != null && isWebsiteUrl(webUrl, articleId)) ? null : webUrl;
+        current.thumbnailUrls[index] = thumbnailUrl;
+
+        // Publish the new record (and any grown columns) to the threads reading the views
+        columns = current;
+        size++;
+        return index;
+    }
+
+    // Find the position of a name in its dictionary, adding it to the end if it is a new one
+    private static int codeOf(String name, Map<String, Integer> codes) {
+        Integer code = codes.get(name);
+        if (code == null) {
+            code = codes.size();
+            codes.put(name, code);
+        }
+        return code;
+    }
+
+    // Check whether the URL is the website address followed by the article ID, without joining them
+    private static boolean isWebsiteUrl(String webUrl, String articleId) {
+        return webUrl.length() == WEB_URL_PREFIX.length() + articleId.length()
+                && webUrl.startsWith(WEB_URL_PREFIX)
+                && webUrl.endsWith(articleId);
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.android.stemnews;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lets work on a background thread be stopped from another thread. Work that blocks, such as a
+ * network call, registers a listener that aborts it, so that it stops straight away instead of
+ * running on until it times out. Work that loops, such as parsing, checks the token as it goes.
+ * <p>
+ * A token can only be cancelled once and cannot be reset, so each piece of work needs its own.
+ */
+final class CancellationToken {
+
+    private final List<Runnable> listeners = new ArrayList<>();
+    private volatile boolean cancelled;
+
+    /**
+     * @return true if the work has been cancelled.
+     */
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Cancel the work, running each of the listeners once on the calling thread.
+     */
+    void cancel() {
+        List<Runnable> cancelListeners;
+        synchronized (listeners) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            cancelListeners = new ArrayList<>(listeners);
+            listeners.clear();
+        }
+
+        for (Runnable listener : cancelListeners) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Add a listener that is run when the work is cancelled. If it has already been cancelled,
+     * the listener is run straight away on the calling thread.
+     *
+     * @param listener is the {@link Runnable} that aborts the work.
+     */
+    void addListener(Runnable listener) {
+        synchronized (listeners) {
+            if (!cancelled) {
+                listeners.add(listener);
+                return;
+            }
+        }
+
+        listener.run();
+    }
+
+    /**
+     * Remove a listener once the work it aborts has finished.
+     *
+     * @param listener is the {@link Runnable} that was added.
+     */
+    void removeListener(Runnable listener) {
+        synchronized (listeners) {
+            listeners.remove(listener);
+        }
+    }
+}
@@ -0,0 +1,985 @@
+package com.example.android.stemnews;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Helper methods for requesting each search category in a query from The Guardian web API
+ * separately and at the same time, instead of as one combined OR query. The results of the
+ * categories are merged back into a single list ordered by publication date.
+ * <p>
+ * The pages of the list are cut from one continuous merge of every category's results, rather
+ * than each page being merged on its own, so the order carries on across the page boundaries and
+ * every page holds exactly the page size. The articles fetched for a category that have not been
+ * merged yet are kept with the position that the merge reached, so the next page carries on from
+ * there and only requests more of a category once its leftovers run low. If a page is needed from
+ * a point that has not been reached, such as after the app was restarted, the merge is run again
+ * from the nearest earlier position, which is normally served from the HTTP cache.
+ * <p>
+ * A category that is late or fails is held back from the page rather than failing it, so one
+ * slow category does not hold back the rest. Its position is kept, so the next page requests the
+ * same results again, normally joining the late request or finding it in the HTTP cache, and
+ * merges them in from there.
+ * <p>
+ * When the user changes the search categories of a list ordered by date, its first page is built
+ * this way even if fan-out is turned off, as long as what the categories they kept need is stored
+ * in the {@link ArticleCache}: either the first page of the old categories' combined query, if
+ * they only added some, or each kept category's own first page. Only the added categories are
+ * then requested. The later pages of that list carry on from the same merge instead of the
+ * combined OR query, so no articles are skipped or repeated between the two. If nothing usable
+ * is stored, the combined OR query is requested as normal.
+ */
+public final class CategoryFanOut {
+
+    private static final String LOG_TAG = CategoryFanOut.class.getName();
+
+    // The number of category requests that can be made at the same time
+    private static final int FAN_OUT_THREADS = 4;
+
+    /*
+    The time in milliseconds that each category's request can be in progress for before the page
+    is merged without it. Time queued for a fan-out thread or held back by the rate limiter is not
+    counted, as the request has not been sent to the servers yet
+    */
+    private static final long FAN_OUT_TIMEOUT = 5000;
+
+    private static final String QUERY_PARAMETER = "q";
+    private static final String ORDER_BY_PARAMETER = "order-by";
+    private static final String ORDER_BY_OLDEST = "oldest";
+    private static final String ORDER_BY_RELEVANCE = "relevance";
+
+    /*
+    How long ago a category's first page can have been stored and still be reused when the
+    categories change, which is the same as the staleness allowed for the later pages of the list
+    */
+    private static final long CATEGORY_REUSE_MILLIS = TimeUnit.SECONDS.toMillis(ArticleLoader.NEXT_PAGE_MAX_STALE);
+
+    private static final ExecutorService fanOutExecutor = Executors.newFixedThreadPool(FAN_OUT_THREADS);
+
+    // The positions reached by the merges of the lists shown to the user
+    private static final MergeCursors sharedCursors = new MergeCursors();
+
+    // The preference holding the cache key of the last first page loaded for the user
+    private static final String LAST_FIRST_PAGE_KEY = "last_first_page";
+
+    private CategoryFanOut() { // Cannot instantiate this class
+    }
+
+    /**
+     * Request every category in the query URL at the same time and merge their results into one
+     * page of {@link NewsArticle}s, carrying on from where the merge for the page before it
+     * stopped. Every category request is cancelled as soon as the {@link CancellationToken} is
+     * cancelled.
+     *
+     * @param queryUrl        is the HTTP request URL for the combined OR query in String form.
+     * @param appContext      is the {@link Context} used to access application resources.
+     * @param maxStaleSeconds is the number of seconds that an out of date cached response can
+     *                        still be used for.
+     * @param background      is true if the user is not waiting on the request.
+     * @param cancellation    is the {@link CancellationToken} for the request, or null if it
+     *                        cannot be cancelled.
+     * @return the merged page of news articles, or null if any category request failed or the
+     * request was cancelled.
+     */
+    public static List<NewsArticle> fetchLatestNews(String queryUrl, Context appContext, int maxStaleSeconds,
+                                                    boolean background, CancellationToken cancellation) {
+        return fetchPage(queryUrl, appContext, maxStaleSeconds, background, cancellation, sharedCursors,
+                null, null, false);
+    }
+
+    /**
+     * Build the first page of the list from the first page of each category, keeping the
+     * newest articles (or oldest, or most relevant) up to the page size. For the date orders,
+     * this is the same page that the combined OR query would return, as any article in it must
+     * be in the first page of its own category.
+     * <p>
+     * Each category's page is stored in the {@link ArticleCache}. If reuseStored is true, the
+     * pages that are already stored are reused if they are recent enough, so only the ones
+     * without one are requested. The merge starts again from the beginning of the list, or from
+     * the given start found by {@link #reusableStart}, and the later pages carry on from where
+     * each category stopped.
+     *
+     * @param queryUrl        is the HTTP request URL for the first page of the combined OR query.
+     * @param appContext      is the {@link Context} used to access application resources.
+     * @param maxStaleSeconds is the number of seconds that an out of date cached response can
+     *                        still be used for.
+     * @param background      is true if the user is not waiting on the request.
+     * @param cancellation    is the {@link CancellationToken} for the request, or null if it
+     *                        cannot be cancelled.
+     * @param startState      is the {@link MergeState} to start the merge from, or null to
+     *                        merge each category of the query.
+     * @param reuseStored     is true if the stored first pages can be used.
+     * @return the first page of the list, or null if none of the categories could be loaded or
+     * the request was cancelled.
+     */
+    static List<NewsArticle> fetchFirstPage(String queryUrl, Context appContext, int maxStaleSeconds,
+                                            boolean background, CancellationToken cancellation,
+                                            MergeState startState, boolean reuseStored) {
+        return fetchPage(queryUrl, appContext, maxStaleSeconds, background, cancellation, sharedCursors,
+                startState, ArticleCache.getInstance(appContext), reuseStored);
+    }
+
+    /**
+     * Record the first page being loaded for the user, returning the one recorded before it.
+     * This is kept in the default {@link SharedPreferences}, so a change of categories made just
+     * before the app was closed is still seen when it is opened again. Only the loader of the
+     * list shown to the user should call this, as background syncs do not change what the user
+     * has seen.
+     *
+     * @param appContext is the {@link Context} used to access the preferences.
+     * @param queryUrl   is the HTTP request URL for the first page of the combined OR query.
+     * @return the cache key of the first page recorded before, or null if there isn't one.
+     */
+    static String recordFirstPage(Context appContext, String queryUrl) {
+        String firstPageKey = ArticleCache.queryKey(queryUrl);
+        SharedPreferences defaultPreferences = PreferenceManager.getDefaultSharedPreferences(appContext);
+
+        // Read and replace the page under the class lock, so two loads cannot both see a change
+        synchronized (CategoryFanOut.class) {
+            String lastFirstPageKey = defaultPreferences.getString(LAST_FIRST_PAGE_KEY, null);
+            if (!firstPageKey.equals(lastFirstPageKey)) {
+                defaultPreferences.edit().putString(LAST_FIRST_PAGE_KEY, firstPageKey).apply();
+            }
+            return lastFirstPageKey;
+        }
+    }
+
+    /**
+     * Check whether the categories of a query are different to those of the first page recorded
+     * before it. The page numbers and sizes are not compared, as they change with the network.
+     *
+     * @param appContext       is the {@link Context} used to access application resources.
+     * @param lastFirstPageKey is the cache key of the first page recorded before, or null if
+     *                         there isn't one.
+     * @param queryUrl         is the HTTP request URL for the first page of the combined OR query.
+     * @return true if the categories have changed.
+     */
+    static boolean categoriesChanged(Context appContext, String lastFirstPageKey, String queryUrl) {
+        String combiner = " " + appContext.getString(R.string.logical_OR) + " ";
+        Set<String> lastCategoryKeys = (lastFirstPageKey != null) ? categoryKeys(lastFirstPageKey, combiner) : null;
+        return isChange(lastCategoryKeys, categoryKeys(queryUrl, combiner));
+    }
+
+    /**
+     * Nothing counts as a change until the categories of a first page have been recorded, so
+     * that the first time the app is opened does not look for stored pages.
+     *
+     * @param lastCategoryKeys is the set of keys of the categories recorded last time, or null
+     *                         if there aren't any.
+     * @param categoryKeys     is the set of keys of the categories of the page being loaded.
+     * @return true if the categories are different to those recorded last time.
+     */
+    static boolean isChange(Set<String> lastCategoryKeys, Set<String> categoryKeys) {
+        return lastCategoryKeys != null && !lastCategoryKeys.equals(categoryKeys);
+    }
+
+    /**
+     * Find where the first page can be merged from after the categories have changed, using the
+     * pages stored in the {@link ArticleCache} so that only the added categories are requested.
+     * <p>
+     * If categories were only added, the first page stored for the old ones already holds every
+     * article of theirs that can be in the new page, so it is merged with the added categories
+     * as if it were one of them, and its later pages are requested as the list goes on.
+     * Otherwise, each kept category must have its own first page stored from an earlier merge.
+     *
+     * @param appContext       is the {@link Context} used to access application resources.
+     * @param lastFirstPageKey is the cache key of the first page recorded before the change.
+     * @param queryUrl         is the HTTP request URL for the first page of the combined OR query.
+     * @return the {@link MergeState} to start the merge from, or null if the pages needed are
+     * not stored, so the combined OR query should be requested instead.
+     */
+    static MergeState reusableStart(Context appContext, String lastFirstPageKey, String queryUrl) {
+        String combiner = " " + appContext.getString(R.string.logical_OR) + " ";
+        ArticleCache articleCache = ArticleCache.getInstance(appContext);
+        Set<String> lastCategoryKeys = categoryKeys(lastFirstPageKey, combiner);
+        List<String> categoryUrls = splitQuery(queryUrl, combiner);
+        int pageSize = pageSizeOf(queryUrl);
+
+        Set<String> categoryKeys = new HashSet<>();
+        List<String> addedUrls = new ArrayList<>();
+        boolean keptStored = true;
+        for (String categoryUrl : categoryUrls) {
+            String categoryKey = listKeyOf(categoryUrl);
+            categoryKeys.add(categoryKey);
+            if (!lastCategoryKeys.contains(categoryKey)) {
+                addedUrls.add(categoryUrl);
+            } else if (keptStored) {
+                String firstChunkUrl = pageUrl(categoryUrl, 1, chunkSize(pageSize, pageSize, 0));
+                keptStored = articleCache.get(ArticleCache.queryKey(firstChunkUrl), CATEGORY_REUSE_MILLIS) != null;
+            }
+        }
+
+        if (categoryKeys.containsAll(lastCategoryKeys)
+                && articleCache.get(lastFirstPageKey, CATEGORY_REUSE_MILLIS) != null) {
+            // The stored page is the first chunk of the old categories' combined query
+            String lastFirstPageUrl = Uri.parse(lastFirstPageKey).buildUpon()
+                    .appendQueryParameter(ArticleCache.API_KEY_PARAMETER, BuildConfig.API_KEY).toString();
+            List<String> sourceUrls = new ArrayList<>();
+            sourceUrls.add(lastFirstPageUrl);
+            sourceUrls.addAll(addedUrls);
+
+            MergeState startState = new MergeState(sourceUrls);
+            startState.nextChunkUrls[0] = lastFirstPageUrl;
+            return startState;
+        }
+
+        return keptStored ? new MergeState(categoryUrls) : null;
+    }
+
+    // The keys of the categories of a query, which leave out the page parameters
+    private static Set<String> categoryKeys(String queryUrl, String combiner) {
+        Set<String> categoryKeys = new HashSet<>();
+        for (String categoryUrl : splitQuery(queryUrl, combiner)) {
+            categoryKeys.add(listKeyOf(categoryUrl));
+        }
+        return categoryKeys;
+    }
+
+    /**
+     * Check whether the first page can be merged from each category and still match the combined
+     * OR query. This is not true of the relevance order, as the ranks of the categories' own
+     * results cannot be compared exactly with one another.
+     *
+     * @param queryUrl is the HTTP request URL in String form.
+     * @return true if the list is ordered by publication date.
+     */
+    static boolean isDateOrder(String queryUrl) {
+        return orderOf(queryUrl) != BY_RANK;
+    }
+
+    /**
+     * Check whether the pages of a list are being cut from a merge of its categories, so that
+     * the next page should carry on from it even if fan-out is turned off.
+     *
+     * @param queryUrl is the HTTP request URL for any page of the list.
+     * @return true if the merge of the list has been started.
+     */
+    static boolean continuesMerge(String queryUrl) {
+        return sharedCursors.contains(listKeyOf(queryUrl));
+    }
+
+    /**
+     * Forget the merge of a list once its first page has come from the combined OR query, so that
+     * its later pages follow on from that instead.
+     *
+     * @param queryUrl is the HTTP request URL for any page of the list.
+     */
+    static void forgetMerge(String queryUrl) {
+        sharedCursors.remove(listKeyOf(queryUrl));
+    }
+
+    /**
+     * Build a page of the merged list as above, starting from the positions held in the given
+     * {@link MergeCursors} and recording where the merge stopped in them.
+     *
+     * @param queryUrl        is the HTTP request URL for the combined OR query in String form.
+     * @param appContext      is the {@link Context} used to access application resources.
+     * @param maxStaleSeconds is the number of seconds that an out of date cached response can
+     *                        still be used for.
+     * @param background      is true if the user is not waiting on the request.
+     * @param cancellation    is the {@link CancellationToken} for the request, or null if it
+     *                        cannot be cancelled.
+     * @param cursors         is the {@link MergeCursors} that the merge carries on from.
+     * @param startState      is the {@link MergeState} to start the first page from, or null to
+     *                        carry on from the cursors.
+     * @param categoryStore   is the {@link ArticleCache} to store the first page of each category
+     *                        in, or null if they should not be stored.
+     * @param reuseStored     is true if recently stored first pages can be used instead of
+     *                        requesting them again.
+     * @return the merged page of news articles, or null if none of the categories needed could
+     * be loaded or the request was cancelled.
+     */
+    static List<NewsArticle> fetchPage(String queryUrl, Context appContext, int maxStaleSeconds, boolean background,
+                                       CancellationToken cancellation, MergeCursors cursors, MergeState startState,
+                                       ArticleCache categoryStore, boolean reuseStored) {
+        String combiner = " " + appContext.getString(R.string.logical_OR) + " ";
+        int pageSize = pageSizeOf(queryUrl);
+        int pageStart = (pageOf(queryUrl) - 1) * pageSize;
+        String listKey = listKeyOf(queryUrl);
+
+        // Carry on from the furthest position reached at or before the start of the page
+        MergeState mergeState = (startState != null && pageStart == 0)
+                ? startState.copy() : cursors.startAt(listKey, pageStart, splitQuery(queryUrl, combiner));
+
+        /*
+        Make sure every category has enough articles fetched to fill the page, whichever they come
+        from. Articles that more than one category returns are only merged once, so if a category
+        runs out before the page is full, ask for that many more and merge again
+        */
+        Comparator<ArticleCursor> order = orderOf(queryUrl);
+        boolean[] heldBack = new boolean[mergeState.leftovers.size()];
+        int neededCount = pageStart - mergeState.position + pageSize;
+        List<NewsArticle> mergedPage;
+        MergeState mergedState;
+        while (true) {
+            if (!fillCategories(mergeState, heldBack, neededCount, pageSize, appContext,
+                    maxStaleSeconds, background, cancellation, categoryStore, reuseStored)) {
+                return null;
+            }
+
+            mergedState = mergeState.copy();
+            mergedPage = mergeNext(mergedState, order, pageStart - mergeState.position, pageSize, heldBack);
+            int shortfall = pageSize - mergedPage.size();
+            if (shortfall == 0 || !hasRunOut(mergedState, heldBack)) {
+                break;
+            }
+            neededCount += shortfall;
+        }
+
+        int heldBackCount = 0;
+        for (boolean categoryHeldBack : heldBack) {
+            if (categoryHeldBack) {
+                heldBackCount++;
+            }
+        }
+        if (heldBackCount > 0) {
+            if (mergedPage.isEmpty()) {
+                return null;
+            }
+            Log.w(LOG_TAG, "Merged the page without " + heldBackCount + " late or failed categories");
+        }
+
+        cursors.store(listKey, mergedState, pageStart == 0);
+        return mergedPage;
+    }
+
+    /*
+    Fetch more of each category that has fewer than the needed number of leftovers, until none
+    are short. A category whose request is late or fails is held back from the rest of the page,
+    and the URL it was requesting is kept so that the next page asks for the same results.
+    Returns false if the request was cancelled
+    */
+    private static boolean fillCategories(MergeState mergeState, boolean[] heldBack,
+                                          int neededCount, int pageSize, Context appContext, int maxStaleSeconds,
+                                          boolean background, CancellationToken cancellation,
+                                          ArticleCache categoryStore, boolean reuseStored) {
+        while (true) {
+            List<Integer> shortCategories = new ArrayList<>();
+            List<Integer> chunkSizes = new ArrayList<>();
+            List<String> chunkUrls = new ArrayList<>();
+            for (int i = 0; i < mergeState.sourceUrls.size(); i++) {
+                int missingCount = neededCount - mergeState.leftovers.get(i).size();
+                if (!mergeState.exhausted[i] && !heldBack[i] && missingCount > 0) {
+                    String nextChunkUrl = mergeState.nextChunkUrls[i];
+                    int fetchedCount = mergeState.fetchedCounts[i];
+                    int chunkSize = (nextChunkUrl != null)
+                            ? pageSizeOf(nextChunkUrl) : chunkSize(missingCount, pageSize, fetchedCount);
+                    shortCategories.add(i);
+                    chunkSizes.add(chunkSize);
+                    chunkUrls.add((nextChunkUrl != null)
+                            ? nextChunkUrl : pageUrl(mergeState.sourceUrls.get(i), fetchedCount / chunkSize + 1, chunkSize));
+                }
+            }
+            if (shortCategories.isEmpty()) {
+                return true;
+            }
+
+            List<List<NewsArticle>> chunks = fetchChunks(chunkUrls, shortCategories, mergeState, appContext,
+                    maxStaleSeconds, background, cancellation, categoryStore, reuseStored);
+            if (chunks == null || (cancellation != null && cancellation.isCancelled())) {
+                return false;
+            }
+
+            for (int j = 0; j < shortCategories.size(); j++) {
+                int i = shortCategories.get(j);
+                List<NewsArticle> chunk = chunks.get(j);
+                if (chunk == null) {
+                    heldBack[i] = true;
+                    mergeState.nextChunkUrls[i] = chunkUrls.get(j);
+                    continue;
+                }
+
+                List<NewsArticle> leftovers = new ArrayList<>(mergeState.leftovers.get(i));
+                leftovers.addAll(chunk);
+                mergeState.leftovers.set(i, leftovers);
+                mergeState.fetchedCounts[i] += chunk.size();
+                mergeState.nextChunkUrls[i] = null;
+
+                // A short page means that the category has no more results
+                if (chunk.size() < chunkSizes.get(j)) {
+                    mergeState.exhausted[i] = true;
+                }
+            }
+        }
+    }
+
+    // Check whether a merge stopped because a category ran out of the results fetched so far
+    private static boolean hasRunOut(MergeState mergeState, boolean[] heldBack) {
+        for (int i = 0; i < mergeState.leftovers.size(); i++) {
+            if (!heldBack[i] && !mergeState.exhausted[i] && mergeState.leftovers.get(i).isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+    Fetch the next part of each short category. The first part of a category is taken from the
+    category store instead if reusing is allowed and it was stored recently enough, and is stored
+    there once it has been requested otherwise. A part that could not be loaded is null. Returns
+    null if the request was cancelled
+    */
+    private static List<List<NewsArticle>> fetchChunks(List<String> chunkUrls, List<Integer> shortCategories,
+                                                       MergeState mergeState, Context appContext, int maxStaleSeconds,
+                                                       boolean background, CancellationToken cancellation,
+                                                       ArticleCache categoryStore, boolean reuseStored) {
+        List<List<NewsArticle>> chunks = new ArrayList<>();
+        List<String> requestedUrls = new ArrayList<>();
+        List<Integer> requestedPositions = new ArrayList<>();
+        for (int j = 0; j < chunkUrls.size(); j++) {
+            boolean firstChunk = mergeState.fetchedCounts[shortCategories.get(j)] == 0;
+            List<NewsArticle> storedChunk = (firstChunk && categoryStore != null && reuseStored)
+                    ? categoryStore.get(ArticleCache.queryKey(chunkUrls.get(j)), CATEGORY_REUSE_MILLIS) : null;
+            chunks.add(storedChunk);
+            if (storedChunk == null) {
+                requestedUrls.add(chunkUrls.get(j));
+                requestedPositions.add(j);
+            }
+        }
+        if (reuseStored) {
+            Log.d(LOG_TAG, "Categories changed, reusing " + (chunkUrls.size() - requestedUrls.size())
+                    + " and requesting " + requestedUrls.size());
+        }
+
+        List<List<NewsArticle>> fetchedChunks = fetchCategories(requestedUrls, appContext, maxStaleSeconds, background, cancellation);
+        if (fetchedChunks == null) {
+            return null;
+        }
+        for (int k = 0; k < fetchedChunks.size(); k++) {
+            int j = requestedPositions.get(k);
+            List<NewsArticle> fetchedChunk = fetchedChunks.get(k);
+            chunks.set(j, fetchedChunk);
+            if (categoryStore != null && fetchedChunk != null && mergeState.fetchedCounts[shortCategories.get(j)] == 0) {
+                categoryStore.put(ArticleCache.queryKey(chunkUrls.get(j)), fetchedChunk);
+            }
+        }
+
+        return chunks;
+    }
+
+    /*
+    Request each category on the fan-out threads, returning the pages in the same order as the
+    URLs. A category that fails, or whose request has been in progress for longer than the time
+    limit, has a null page so that the others can be merged without it. A late request is left to
+    finish rather than cancelled, so that the next page can join it or find it in the HTTP cache.
+    Returns null if the page was cancelled
+    */
+    private static List<List<NewsArticle>> fetchCategories(List<String> categoryUrls, final Context appContext,
+                                                           final int maxStaleSeconds, final boolean background,
+                                                           CancellationToken cancellation) {
+        /*
+        Give the category requests a token of their own, which is only cancelled with the page
+        whilst it is waiting for them, so that the late ones carry on once the page is merged
+        */
+        final CancellationToken fanOutCancellation = new CancellationToken();
+
+        // Start a request for each category on the fan-out threads, timing each from when it runs
+        final List<RequestTimer> requestTimers = new ArrayList<>();
+        final List<Future<List<NewsArticle>>> categoryFutures = new ArrayList<>();
+        for (final String categoryUrl : categoryUrls) {
+            final RequestTimer requestTimer = new RequestTimer();
+            requestTimers.add(requestTimer);
+            categoryFutures.add(fanOutExecutor.submit(new Callable<List<NewsArticle>>() {
+                @Override
+                public List<NewsArticle> call() {
+                    requestTimer.resume();
+                    try {
+                        return QueryUtils.fetchLatestNews(categoryUrl, appContext, maxStaleSeconds, background,
+                                fanOutCancellation, requestTimer);
+                    } finally {
+                        requestTimer.finish();
+                    }
+                }
+            }));
+        }
+
+        // Stop waiting as soon as the page is cancelled, including for requests that have not started
+        Runnable cancelListener = new Runnable() {
+            @Override
+            public void run() {
+                fanOutCancellation.cancel();
+                for (int i = 0; i < categoryFutures.size(); i++) {
+                    categoryFutures.get(i).cancel(true);
+                    requestTimers.get(i).finish();
+                }
+            }
+        };
+        if (cancellation != null) {
+            cancellation.addListener(cancelListener);
+        }
+
+        List<List<NewsArticle>> categoryPages = new ArrayList<>();
+        try {
+            for (int i = 0; i < categoryFutures.size(); i++) {
+                categoryPages.add(awaitCategory(categoryFutures.get(i), requestTimers.get(i)));
+            }
+        } finally {
+            if (cancellation != null) {
+                cancellation.removeListener(cancelListener);
+            }
+        }
+
+        return fanOutCancellation.isCancelled() ? null : categoryPages;
+    }
+
+    // Wait for a category's page, returning null if it failed or took longer than the time limit
+    private static List<NewsArticle> awaitCategory(Future<List<NewsArticle>> categoryFuture, RequestTimer requestTimer) {
+        try {
+            if (!requestTimer.awaitFinish(FAN_OUT_TIMEOUT)) {
+                Log.w(LOG_TAG, "Category request is late, merging the page without it");
+                return null;
+            }
+            return categoryFuture.get();
+        } catch (ExecutionException e) {
+            Log.e(LOG_TAG, "Issue requesting a category", e);
+        } catch (CancellationException e) {
+            Log.d(LOG_TAG, "Category request cancelled");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    /**
+     * Work out how many results to request for a category, which is at least a page's worth so
+     * that its leftovers last for a while, in a size that the API can start at the results
+     * already fetched.
+     *
+     * @param missingCount is the number of results still needed from the category.
+     * @param pageSize     is the size of the page being merged.
+     * @param fetchedCount is the number of results already fetched for the category.
+     * @return the page size to request the category with.
+     */
+    static int chunkSize(int missingCount, int pageSize, int fetchedCount) {
+        int targetSize = Math.min(Math.max(missingCount, pageSize), PageSizer.MAX_PAGE_SIZE);
+        int units = (targetSize + PageSizer.MIN_PAGE_SIZE - 1) / PageSizer.MIN_PAGE_SIZE;
+        return PagePlan.alignedSize(units * PageSizer.MIN_PAGE_SIZE, fetchedCount);
+    }
+
+    // Read the page size from a query URL, or return the API's default if it does not have one
+    private static int pageSizeOf(String queryUrl) {
+        return readNumber(queryUrl, QueryUtils.PAGE_SIZE_PARAMETER, PageSizer.DEFAULT_PAGE_SIZE);
+    }
+
+    // Read the page number from a query URL, or return the first page if it does not have one
+    private static int pageOf(String queryUrl) {
+        return readNumber(queryUrl, QueryUtils.PAGE_PARAMETER, 1);
+    }
+
+    private static int readNumber(String queryUrl, String parameterName, int defaultValue) {
+        String value = Uri.parse(queryUrl).getQueryParameter(parameterName);
+        try {
+            return (value != null) ? Math.max(1, Integer.parseInt(value)) : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    // The page number and size are not part of the list, so every page of a list has the same key
+    private static String listKeyOf(String queryUrl) {
+        return QueryUtils.canonicalUrl(queryUrl, QueryUtils.PAGE_PARAMETER, QueryUtils.PAGE_SIZE_PARAMETER,
+                ArticleCache.API_KEY_PARAMETER);
+    }
+
+    /**
+     * Build the URL for a page of results with the given page number and size. All of the other
+     * query parameters stay the same.
+     *
+     * @param queryUrl is the HTTP request URL in String form.
+     * @param apiPage  is the page number to request.
+     * @param pageSize is the page size to request.
+     * @return the URL for the page.
+     */
+    static String pageUrl(String queryUrl, int apiPage, int pageSize) {
+        Uri queryUri = Uri.parse(queryUrl);
+        Uri.Builder pageBuilder = queryUri.buildUpon().clearQuery();
+        for (String parameterName : queryUri.getQueryParameterNames()) {
+            if (!parameterName.equals(QueryUtils.PAGE_PARAMETER) && !parameterName.equals(QueryUtils.PAGE_SIZE_PARAMETER)) {
+                pageBuilder.appendQueryParameter(parameterName, queryUri.getQueryParameter(parameterName));
+            }
+        }
+        pageBuilder.appendQueryParameter(QueryUtils.PAGE_SIZE_PARAMETER, String.valueOf(pageSize));
+        pageBuilder.appendQueryParameter(QueryUtils.PAGE_PARAMETER, String.valueOf(apiPage));
+
+        return pageBuilder.toString();
+    }
+
+    /**
+     * Split a query URL that combines several search categories with the logical OR String into
+     * one URL for each category. All of the other query parameters stay the same.
+     *
+     * @param queryUrl is the HTTP request URL for the combined OR query in String form.
+     * @param combiner is the String that separates the categories in the query parameter.
+     * @return the list of URLs, one for each category.
+     */
+    static List<String> splitQuery(String queryUrl, String combiner) {
+        Uri queryUri = Uri.parse(queryUrl);
+        String combinedCategories = queryUri.getQueryParameter(QUERY_PARAMETER);
+
+        if (combinedCategories == null) {
+            return Collections.singletonList(queryUrl);
+        }
+
+        List<String> categoryUrls = new ArrayList<>();
+        for (String category : combinedCategories.split(Pattern.quote(combiner))) {
+            Uri.Builder categoryBuilder = queryUri.buildUpon().clearQuery();
+            for (String parameterName : queryUri.getQueryParameterNames()) {
+                String value = parameterName.equals(QUERY_PARAMETER) ? category : queryUri.getQueryParameter(parameterName);
+                categoryBuilder.appendQueryParameter(parameterName, value);
+            }
+            categoryUrls.add(categoryBuilder.toString());
+        }
+
+        return categoryUrls;
+    }
+
+    // Find the order that the merged page should be in from the order-by query parameter
+    private static Comparator<ArticleCursor> orderOf(String queryUrl) {
+        String orderBy = Uri.parse(queryUrl).getQueryParameter(ORDER_BY_PARAMETER);
+
+        if (ORDER_BY_RELEVANCE.equals(orderBy)) {
+            return BY_RANK;
+        } else if (ORDER_BY_OLDEST.equals(orderBy)) {
+            return OLDEST_FIRST;
+        } else {
+            return NEWEST_FIRST;
+        }
+    }
+
+    /**
+     * Merge several pages of articles, each of which is already in order, into one page with a
+     * k-way merge. Articles that appear in more than one page are only added once.
+     *
+     * @param categoryPages is the list of pages to merge.
+     * @param order         is the order to merge the pages in.
+     * @return the merged list of articles.
+     */
+    static List<NewsArticle> merge(List<List<NewsArticle>> categoryPages, Comparator<ArticleCursor> order) {
+        return merge(categoryPages, order, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Merge several pages of articles as above, stopping once the merged page is full.
+     *
+     * @param categoryPages is the list of pages to merge.
+     * @param order         is the order to merge the pages in.
+     * @param limit         is the most articles to merge.
+     * @return the merged list of articles.
+     */
+    static List<NewsArticle> merge(List<List<NewsArticle>> categoryPages, Comparator<ArticleCursor> order, int limit) {
+        MergeState mergeState = new MergeState(categoryPages.size());
+        for (int i = 0; i < categoryPages.size(); i++) {
+            mergeState.leftovers.set(i, categoryPages.get(i));
+            mergeState.fetchedCounts[i] = categoryPages.get(i).size();
+            mergeState.exhausted[i] = true;
+        }
+
+        return mergeNext(mergeState, order, 0, limit);
+    }
+
+    /**
+     * Carry on a k-way merge of the leftover articles of each category, skipping the given
+     * number of merged articles and then taking up to the limit. The state is moved on to the
+     * position after the last article taken, keeping the rest as the leftovers for the next page.
+     * Articles that appear in more than one category are only counted once, including when they
+     * were merged into an earlier page.
+     *
+     * @param mergeState is the {@link MergeState} to carry on from, which is updated.
+     * @param order      is the order to merge the categories in.
+     * @param skipCount  is the number of merged articles to skip before the page starts.
+     * @param limit      is the most articles to take for the page.
+     * @return the merged page of articles.
+     */
+    static List<NewsArticle> mergeNext(MergeState mergeState, Comparator<ArticleCursor> order, int skipCount, int limit) {
+        return mergeNext(mergeState, order, skipCount, limit, new boolean[mergeState.leftovers.size()]);
+    }
+
+    /**
+     * Carry on a k-way merge as above, leaving out the categories that are held back and keeping
+     * their leftovers for the next page. The merge stops once any other category that has more
+     * results runs out of the ones fetched so far, as its next article could come before any of
+     * the rest, so no article is merged past the point that every category has reached.
+     *
+     * @param mergeState is the {@link MergeState} to carry on from, which is updated.
+     * @param order      is the order to merge the categories in.
+     * @param skipCount  is the number of merged articles to skip before the page starts.
+     * @param limit      is the most articles to take for the page.
+     * @param heldBack   is true for each category that is left out of the page.
+     * @return the merged page of articles.
+     */
+    static List<NewsArticle> mergeNext(MergeState mergeState, Comparator<ArticleCursor> order, int skipCount,
+                                       int limit, boolean[] heldBack) {
+        int categoryCount = mergeState.leftovers.size();
+        ArticleCursor[] cursors = new ArticleCursor[categoryCount];
+        PriorityQueue<ArticleCursor> heads = new PriorityQueue<>(Math.max(1, categoryCount), order);
+        for (int i = 0; i < categoryCount; i++) {
+            List<NewsArticle> leftovers = mergeState.leftovers.get(i);
+            cursors[i] = new ArticleCursor(leftovers, i, mergeState.fetchedCounts[i] - leftovers.size());
+            if (!leftovers.isEmpty() && !heldBack[i]) {
+                heads.add(cursors[i]);
+            }
+        }
+
+        /*
+        Repeatedly take the first article out of whichever category has the next one in order,
+        then move that category's cursor on and put it back in the queue if it has articles left
+        */
+        List<NewsArticle> mergedPage = new ArrayList<>();
+        int takenCount = 0;
+        while (!heads.isEmpty() && mergedPage.size() < limit) {
+            ArticleCursor head = heads.poll();
+            NewsArticle article = head.current();
+            if (mergeState.mergedIds.add(article.getArticleId())) {
+                if (takenCount >= skipCount) {
+                    mergedPage.add(article);
+                }
+                takenCount++;
+            }
+
+            if (head.advance()) {
+                heads.add(head);
+            } else if (!mergeState.exhausted[head.pageIndex]) {
+                break;
+            }
+        }
+
+        // Keep whatever is left of each category for the next page
+        for (int i = 0; i < categoryCount; i++) {
+            List<NewsArticle> leftovers = mergeState.leftovers.get(i);
+            int position = Math.min(cursors[i].position, leftovers.size());
+            if (position > 0) {
+                mergeState.leftovers.set(i, new ArrayList<>(leftovers.subList(position, leftovers.size())));
+            }
+        }
+        mergeState.position += takenCount;
+
+        return mergedPage;
+    }
+
+    /**
+     * Where the merge of a list has got to: the number of merged articles before it and their
+     * IDs, and for each category, the URL its results are requested from, the articles that
+     * have been fetched but not merged yet, the number of results fetched so far, which is where
+     * its next request starts, and the URL that its next request must use, if it is fixed. That
+     * is the case for a request that was late, which the next page asks for again.
+     * <p>
+     * The categories are normally those of the list's query, but a merge can also take in the
+     * combined query of several of them, such as the old categories after more were added.
+     */
+    static final class MergeState {
+        int position;
+        final List<String> sourceUrls;
+        final Set<String> mergedIds;
+        final List<List<NewsArticle>> leftovers;
+        final int[] fetchedCounts;
+        final boolean[] exhausted;
+        final String[] nextChunkUrls;
+
+        /**
+         * @param sourceUrls is the list of URLs that each category's results are requested from.
+         */
+        MergeState(List<String> sourceUrls) {
+            this(sourceUrls, sourceUrls.size());
+        }
+
+        // For merging pages that have already been fetched, which are not requested again
+        MergeState(int categoryCount) {
+            this(null, categoryCount);
+        }
+
+        private MergeState(List<String> sourceUrls, int categoryCount) {
+            this.sourceUrls = sourceUrls;
+            mergedIds = new HashSet<>();
+            leftovers = new ArrayList<>(categoryCount);
+            for (int i = 0; i < categoryCount; i++) {
+                leftovers.add(Collections.<NewsArticle>emptyList());
+            }
+            fetchedCounts = new int[categoryCount];
+            exhausted = new boolean[categoryCount];
+            nextChunkUrls = new String[categoryCount];
+        }
+
+        /*
+        Copy the state so that a merge can move it on without changing the one it started from.
+        The lists of leftovers are never changed, only replaced, so they can be shared
+        */
+        MergeState copy() {
+            MergeState stateCopy = new MergeState(sourceUrls, leftovers.size());
+            stateCopy.position = position;
+            stateCopy.mergedIds.addAll(mergedIds);
+            for (int i = 0; i < leftovers.size(); i++) {
+                stateCopy.leftovers.set(i, leftovers.get(i));
+            }
+            System.arraycopy(fetchedCounts, 0, stateCopy.fetchedCounts, 0, fetchedCounts.length);
+            System.arraycopy(exhausted, 0, stateCopy.exhausted, 0, exhausted.length);
+            System.arraycopy(nextChunkUrls, 0, stateCopy.nextChunkUrls, 0, nextChunkUrls.length);
+            return stateCopy;
+        }
+    }
+
+    /**
+     * The positions reached by the merges of each list, so that each page carries on from the
+     * end of the one before it. The states are copied in and out, so merges of different pages
+     * can run at the same time, such as a page being loaded whilst the next is prefetched.
+     */
+    static final class MergeCursors {
+
+        // The most lists, and positions within each list, that are kept
+        private static final int MAX_LISTS = 4;
+        private static final int MAX_POSITIONS = 16;
+
+        // The states of each list by their position, from the least recently used list, guarded by this object
+        private final Map<String, TreeMap<Integer, MergeState>> listStates =
+                new LinkedHashMap<String, TreeMap<Integer, MergeState>>(MAX_LISTS, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, TreeMap<Integer, MergeState>> eldest) {
+                        return size() > MAX_LISTS;
+                    }
+                };
+
+        /**
+         * @param listKey      is the key of the list, which leaves out the page parameters.
+         * @param position     is the position in the merged list that the page starts at.
+         * @param categoryUrls is the list of URLs of the list's categories.
+         * @return a copy of the furthest state at or before the position, or a new state at the
+         * start of the list if there isn't one.
+         */
+        synchronized MergeState startAt(String listKey, int position, List<String> categoryUrls) {
+            TreeMap<Integer, MergeState> states = listStates.get(listKey);
+            Map.Entry<Integer, MergeState> earlierState = (states != null) ? states.floorEntry(position) : null;
+            if (earlierState != null) {
+                return earlierState.getValue().copy();
+            }
+            return new MergeState(categoryUrls);
+        }
+
+        /**
+         * Keep the state that a merge stopped at, for the next page to carry on from.
+         *
+         * @param listKey    is the key of the list, which leaves out the page parameters.
+         * @param mergeState is the {@link MergeState}, which must not be changed afterwards.
+         * @param restarted  is true if the merge started again from the beginning of the list,
+         *                   so that any states from before it are out of date.
+         */
+        synchronized void store(String listKey, MergeState mergeState, boolean restarted) {
+            TreeMap<Integer, MergeState> states = listStates.get(listKey);
+            if (states == null || restarted) {
+                states = new TreeMap<>();
+                listStates.put(listKey, states);
+            }
+
+            states.put(mergeState.position, mergeState);
+            while (states.size() > MAX_POSITIONS) {
+                states.pollFirstEntry();
+            }
+        }
+
+        /**
+         * @param listKey is the key of the list, which leaves out the page parameters.
+         * @return true if there are any states kept for the list.
+         */
+        synchronized boolean contains(String listKey) {
+            return listStates.containsKey(listKey);
+        }
+
+        /**
+         * Forget every state kept for the list, so its next page starts a new merge.
+         *
+         * @param listKey is the key of the list, which leaves out the page parameters.
+         */
+        synchronized void remove(String listKey) {
+            listStates.remove(listKey);
+        }
+    }
+
+    /**
+     * The position of the next article to be merged from one of the categories.
+     */
+    static final class ArticleCursor {
+        private final List<NewsArticle> page;
+        private final int pageIndex;
+        private final int firstRank;
+        private int position;
+
+        /**
+         * @param page      is the list of articles to merge from.
+         * @param pageIndex is the index of the category that the articles belong to.
+         * @param firstRank is the rank of the first article within all of its category's results.
+         */
+        ArticleCursor(List<NewsArticle> page, int pageIndex, int firstRank) {
+            this.page = page;
+            this.pageIndex = pageIndex;
+            this.firstRank = firstRank;
+        }
+
+        NewsArticle current() {
+            return page.get(position);
+        }
+
+        boolean advance() {
+            position++;
+            return position < page.size();
+        }
+
+        int rank() {
+            return firstRank + position;
+        }
+    }
+
+    /*
+    Publication dates are compared by their epoch milliseconds, which are read once when each
+    article is created. Ties are broken by the page index so that the merge order is always the
+    same
+    */
+    static final Comparator<ArticleCursor> NEWEST_FIRST = new Comparator<ArticleCursor>() {
+        @Override
+        public int compare(ArticleCursor first, ArticleCursor second) {
+            int dateOrder = compareMillis(second.current().getPublishedMillis(), first.current().getPublishedMillis());
+            return dateOrder != 0 ? dateOrder : first.pageIndex - second.pageIndex;
+        }
+    };
+
+    static final Comparator<ArticleCursor> OLDEST_FIRST = new Comparator<ArticleCursor>() {
+        @Override
+        public int compare(ArticleCursor first, ArticleCursor second) {
+            int dateOrder = compareMillis(first.current().getPublishedMillis(), second.current().getPublishedMillis());
+            return dateOrder != 0 ? dateOrder : first.pageIndex - second.pageIndex;
+        }
+    };
+
+    // Long.compare is not available on the older API levels that the app supports
+    private static int compareMillis(long first, long second) {
+        return (first < second) ? -1 : ((first == second) ? 0 : 1);
+    }
+
+    // Relevance scores are not returned by the API, so interleave the pages by their rank instead
+    static final Comparator<ArticleCursor> BY_RANK = new Comparator<ArticleCursor>() {
+        @Override
+        public int compare(ArticleCursor first, ArticleCursor second) {
+            int rankOrder = first.rank() - second.rank();
+            return rankOrder != 0 ? rankOrder : first.pageIndex - second.pageIndex;
+        }
+    };
+}
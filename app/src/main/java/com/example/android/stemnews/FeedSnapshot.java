@@ -0,0 +1,387 @@
+package com.example.android.stemnews;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/**
+ * A copy of the articles loaded during a scrolling session and the user's place in them, saved
+ * to a binary file when the app is moved to the background. If the process is then killed, the
+ * list can be restored from the file before any loader or network work starts.
+ * <p>
+ * The file starts with a header holding an identifying number, the version of the format, the
+ * length of the rest of the file and a checksum of it. Section and author names are written once
+ * in dictionaries that the articles refer to by position, and publication dates as epoch
+ * milliseconds. The file is read through a memory mapping, so it is parsed straight from the
+ * page cache without being copied into a buffer first. If the file does not pass every check, it
+ * is ignored and the list is loaded from the network as normal.
+ */
+final class FeedSnapshot {
+
+    private static final String LOG_TAG = FeedSnapshot.class.getName();
+
+    private static final String SNAPSHOT_FILE = "feed_snapshot.bin";
+
+    // Identifies a snapshot file (the characters STNS) and the version of its format
+    private static final int MAGIC_NUMBER = 0x53544E53;
+    static final int FORMAT_VERSION = 3;
+
+    // The identifying number, version, body length and checksum, which are four bytes each
+    private static final int HEADER_SIZE = 16;
+
+    // Written in place of the length of a missing String or the code of a missing author
+    private static final int NONE = -1;
+
+    private static final int CHECKSUM_CHUNK_SIZE = 8192;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Snapshots are written one at a time, in the order they were taken
+    private static final ExecutorService snapshotExecutor = Executors.newSingleThreadExecutor();
+
+    private final String query;
+    private final List<ArticleRow> rows;
+    private final int currentPage;
+    private final int[] pageSizes;
+    private final int scrollPosition;
+    private final int scrollOffset;
+
+    /**
+     * Take a snapshot of the articles loaded for a query.
+     *
+     * @param query          is the query that the articles were loaded for, from
+     *                       {@link #queryOf(String)}.
+     * @param rows           is the list of loaded articles, which must not be changed afterwards.
+     * @param currentPage    is the last page of results loaded.
+     * @param pageSizes      is the page size of each page loaded, from {@link PagePlan}.
+     * @param scrollPosition is the position of the first visible article.
+     * @param scrollOffset   is the distance from the top of the list to the first visible article.
+     */
+    FeedSnapshot(String query, List<ArticleRow> rows, int currentPage, int[] pageSizes, int scrollPosition, int scrollOffset) {
+        this.query = query;
+        this.rows = rows;
+        this.currentPage = currentPage;
+        this.pageSizes = pageSizes;
+        this.scrollPosition = scrollPosition;
+        this.scrollOffset = scrollOffset;
+    }
+
+    /**
+     * @param context is any {@link Context} from the application.
+     * @return the file that the snapshot is kept in.
+     */
+    static File getFile(Context context) {
+        return new File(context.getCacheDir(), SNAPSHOT_FILE);
+    }
+
+    /**
+     * Work out the query that a page URL belongs to, leaving out the page number, page size and
+     * API key.
+     *
+     * @param pageUrl is the URL of any page of results in String form.
+     * @return the query to compare against the one in a snapshot.
+     */
+    static String queryOf(String pageUrl) {
+        return QueryUtils.canonicalUrl(pageUrl, QueryUtils.PAGE_PARAMETER, QueryUtils.PAGE_SIZE_PARAMETER,
+                ArticleCache.API_KEY_PARAMETER);
+    }
+
+    String getQuery() {
+        return query;
+    }
+
+    /**
+     * @return a new {@link ArticleFeed} holding the articles in the snapshot.
+     */
+    ArticleFeed getFeed() {
+        return new ArticleFeed(rows);
+    }
+
+    int getCurrentPage() {
+        return currentPage;
+    }
+
+    int[] getPageSizes() {
+        return pageSizes;
+    }
+
+    int getScrollPosition() {
+        return scrollPosition;
+    }
+
+    int getScrollOffset() {
+        return scrollOffset;
+    }
+
+    /**
+     * Write the snapshot to a file on a background thread. Any error is only logged, as the
+     * snapshot is not needed for the app to work.
+     *
+     * @param file is the file to write the snapshot to.
+     */
+    void saveInBackground(final File file) {
+        snapshotExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write(file);
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Issue writing the feed snapshot", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Write the snapshot to a file. It is written to a temporary file first and then moved into
+     * place, so that a snapshot that is only partly written never replaces a complete one.
+     *
+     * @param file is the file to write the snapshot to.
+     * @throws IOException if the file could not be written.
+     */
+    void write(File file) throws IOException {
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(bodyBytes);
+
+        writeString(body, query);
+        body.writeInt(currentPage);
+        body.writeInt(pageSizes.length);
+        for (int pageSize : pageSizes) {
+            body.writeInt(pageSize);
+        }
+        body.writeInt(scrollPosition);
+        body.writeInt(scrollOffset);
+
+        List<NewsArticle> articles = new ArrayList<>(rows.size());
+        Map<String, Integer> sectionCodes = new LinkedHashMap<>();
+        Map<String, Integer> authorCodes = new LinkedHashMap<>();
+        for (ArticleRow row : rows) {
+            NewsArticle article = row.getArticle();
+            articles.add(article);
+            codeOf(article.getNewsSection(), sectionCodes);
+            if (article.getAuthorName() != null) {
+                codeOf(article.getAuthorName(), authorCodes);
+            }
+        }
+        writeDictionary(body, sectionCodes);
+        writeDictionary(body, authorCodes);
+
+        body.writeInt(articles.size());
+        for (NewsArticle article : articles) {
+            writeString(body, article.getArticleId());
+            writeString(body, article.getArticleTitle());
+            body.writeInt(sectionCodes.get(article.getNewsSection()));
+            body.writeInt((article.getAuthorName() != null) ? authorCodes.get(article.getAuthorName()) : NONE);
+
+            // The original date String is only needed if it could not be read
+            long publishedMillis = article.getPublishedMillis();
+            body.writeLong(publishedMillis);
+            writeString(body, (publishedMillis == ArticleDates.INVALID_DATE) ? article.getDatePublished() : null);
+            writeString(body, article.getWebURL());
+            writeString(body, article.getThumbnailUrl());
+        }
+        body.flush();
+
+        byte[] bodyArray = bodyBytes.toByteArray();
+        CRC32 checksum = new CRC32();
+        checksum.update(bodyArray, 0, bodyArray.length);
+
+        File tempFile = new File(file.getPath() + ".tmp");
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try {
+            output.writeInt(MAGIC_NUMBER);
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(bodyArray.length);
+            output.writeInt((int) checksum.getValue());
+            output.write(bodyArray);
+        } finally {
+            output.close();
+        }
+
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Could not replace the snapshot file");
+        }
+    }
+
+    /**
+     * Read a snapshot from a file. A file that is corrupt or from a different version of the
+     * format is deleted, so that it is not read again.
+     *
+     * @param file is the file that the snapshot was written to.
+     * @return the snapshot, or null if there is no valid snapshot in the file.
+     */
+    static FeedSnapshot read(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+
+        RandomAccessFile snapshotFile = null;
+        try {
+            snapshotFile = new RandomAccessFile(file, "r");
+            FileChannel snapshotChannel = snapshotFile.getChannel();
+            return readBuffer(snapshotChannel.map(FileChannel.MapMode.READ_ONLY, 0, snapshotChannel.size()));
+        } catch (IOException | RuntimeException e) {
+            // Any malformed value, such as a length that runs past the end of the file, ends up here
+            Log.e(LOG_TAG, "Issue reading the feed snapshot", e);
+            file.delete();
+            return null;
+        } finally {
+            if (snapshotFile != null) {
+                try {
+                    snapshotFile.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Issue closing the feed snapshot", e);
+                }
+            }
+        }
+    }
+
+    // Check the header and checksum, then read the rest of the snapshot
+    private static FeedSnapshot readBuffer(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC_NUMBER) {
+            throw new IOException("Not a feed snapshot");
+        }
+        int version = buffer.getInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+        int bodyLength = buffer.getInt();
+        int expectedChecksum = buffer.getInt();
+        if (bodyLength != buffer.remaining()) {
+            throw new IOException("Snapshot length does not match");
+        }
+
+        // Work out the checksum a chunk at a time, without copying the whole body
+        ByteBuffer checksumBuffer = buffer.duplicate();
+        byte[] chunk = new byte[CHECKSUM_CHUNK_SIZE];
+        CRC32 checksum = new CRC32();
+        while (checksumBuffer.hasRemaining()) {
+            int chunkLength = Math.min(chunk.length, checksumBuffer.remaining());
+            checksumBuffer.get(chunk, 0, chunkLength);
+            checksum.update(chunk, 0, chunkLength);
+        }
+        if ((int) checksum.getValue() != expectedChecksum) {
+            throw new IOException("Snapshot checksum does not match");
+        }
+
+        String query = readString(buffer);
+        int currentPage = buffer.getInt();
+        int pageCount = buffer.getInt();
+        if (pageCount < 0 || pageCount > buffer.remaining() / 4) {
+            throw new IOException("Invalid page count");
+        }
+        int[] pageSizes = new int[pageCount];
+        for (int i = 0; i < pageCount; i++) {
+            pageSizes[i] = buffer.getInt();
+        }
+        int scrollPosition = buffer.getInt();
+        int scrollOffset = buffer.getInt();
+
+        String[] sectionNames = readDictionary(buffer);
+        String[] authorNames = readDictionary(buffer);
+
+        int articleCount = buffer.getInt();
+        if (articleCount < 0) {
+            throw new IOException("Invalid article count");
+        }
+
+        ArticleStore snapshotStore = new ArticleStore();
+        List<NewsArticle> articles = new ArrayList<>(Math.min(articleCount, buffer.remaining()));
+        for (int i = 0; i < articleCount; i++) {
+            String articleId = readString(buffer);
+            String articleTitle = readString(buffer);
+            String newsSection = sectionNames[buffer.getInt()];
+            int authorCode = buffer.getInt();
+            String authorName = (authorCode == NONE) ? null : authorNames[authorCode];
+            long publishedMillis = buffer.getLong();
+            String unreadableDate = readString(buffer);
+            String webUrl = readString(buffer);
+            String thumbnailUrl = readString(buffer);
+            articles.add(snapshotStore.add(articleId, articleTitle, newsSection, authorName,
+                    publishedMillis, unreadableDate, webUrl, thumbnailUrl));
+        }
+
+        if (buffer.hasRemaining()) {
+            throw new IOException("Unexpected data at the end of the snapshot");
+        }
+
+        // Work out the display values of the rows here, so the list can be bound straight away
+        return new FeedSnapshot(query, Collections.unmodifiableList(ArticleRow.fromArticles(articles)),
+                currentPage, pageSizes, scrollPosition, scrollOffset);
+    }
+
+    // Write the names in a dictionary in the order of their codes
+    private static void writeDictionary(DataOutputStream output, Map<String, Integer> codes) throws IOException {
+        output.writeInt(codes.size());
+        for (String name : codes.keySet()) {
+            writeString(output, name);
+        }
+    }
+
+    private static String[] readDictionary(ByteBuffer buffer) throws IOException {
+        int nameCount = buffer.getInt();
+        if (nameCount < 0 || nameCount > buffer.remaining()) {
+            throw new IOException("Invalid dictionary size");
+        }
+
+        String[] names = new String[nameCount];
+        for (int i = 0; i < nameCount; i++) {
+            names[i] = readString(buffer);
+        }
+        return names;
+    }
+
+    // Write a String as its length in UTF-8 bytes followed by the bytes
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        if (value == null) {
+            output.writeInt(NONE);
+            return;
+        }
+
+        byte[] bytes = value.getBytes(UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length == NONE) {
+            return null;
+        } else if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("Invalid String length");
+        }
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    // Find the position of a name in its dictionary, adding it to the end if it is a new one
+    private static int codeOf(String name, Map<String, Integer> codes) {
+        Integer code = codes.get(name);
+        if (code == null) {
+            code = codes.size();
+            codes.put(name, code);
+        }
+        return code;
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.android.stemnews;
+
+import android.annotation.TargetApi;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.util.Log;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the first pages of the user's news query up to date in the {@link ArticleCache} whilst
+ * the app is closed, so that opening it shows recent articles without waiting for the network.
+ * <p>
+ * The sync is run periodically by {@link FeedSyncJobService} when the device is charging and on
+ * an unmetered network. All of the pages are fetched in one run over the shared HTTP client's
+ * pooled connection, rather than waking the device for each one, and a run is skipped if the
+ * pages were fetched less than the minimum interval ago, including by the app itself.
+ * JobScheduler is only available from API 21, so there is no background sync on older devices.
+ */
+final class FeedSync {
+
+    private static final String LOG_TAG = FeedSync.class.getName();
+
+    private static final int SYNC_JOB_ID = 1;
+
+    private static final String SYNC_PREFERENCES = "feed_sync";
+    private static final String LAST_SYNC_KEY = "last_sync";
+
+    private FeedSync() { // Cannot instantiate this class
+    }
+
+    /**
+     * Schedule the periodic sync job, unless it has already been scheduled. The job reads the
+     * user's preferences each time it runs, so it does not need to be scheduled again when they
+     * change.
+     *
+     * @param context is any {@link Context} from the application.
+     */
+    static void schedule(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return;
+        }
+
+        scheduleJob(context.getApplicationContext());
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static void scheduleJob(Context appContext) {
+        JobScheduler jobScheduler = (JobScheduler) appContext.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (jobScheduler == null) {
+            Log.e(LOG_TAG, "Error with job scheduler services");
+            return;
+        }
+
+        // Scheduling the job again would restart its period, so leave an existing one in place
+        for (JobInfo pendingJob : jobScheduler.getAllPendingJobs()) {
+            if (pendingJob.getId() == SYNC_JOB_ID) {
+                return;
+            }
+        }
+
+        long intervalMillis = TimeUnit.MINUTES.toMillis(
+                appContext.getResources().getInteger(R.integer.sync_interval_minutes));
+
+        JobInfo.Builder jobBuilder = new JobInfo.Builder(SYNC_JOB_ID,
+                new ComponentName(appContext, FeedSyncJobService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                .setRequiresCharging(true)
+                .setPersisted(true);
+
+        /*
+        Where possible, let the system run the job at any point in the last part of each period,
+        so that it can be batched with the jobs of other apps
+        */
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            jobBuilder.setPeriodic(intervalMillis, intervalMillis / 2);
+        } else {
+            jobBuilder.setPeriodic(intervalMillis);
+        }
+
+        if (jobScheduler.schedule(jobBuilder.build()) != JobScheduler.RESULT_SUCCESS) {
+            Log.e(LOG_TAG, "Issue scheduling the feed sync job");
+        }
+    }
+
+    /**
+     * Fetch the first pages of the user's current query and store them in the
+     * {@link ArticleCache}. This makes network requests, so it must be run on a background thread.
+     *
+     * @param context is any {@link Context} from the application.
+     * @param stopped is set when the sync should stop before fetching any more pages.
+     * @return true if the pages are up to date, or false if the sync should be tried again later.
+     */
+    static boolean syncFirstPages(Context context, AtomicBoolean stopped) {
+        long minIntervalMillis = TimeUnit.MINUTES.toMillis(
+                context.getResources().getInteger(R.integer.sync_min_interval_minutes));
+        if (!isDue(getLastSync(context), System.currentTimeMillis(), minIntervalMillis)) {
+            return true;
+        }
+
+        if (!syncPages(context, BuildConfig.GUARDIAN_API_URL, stopped)) {
+            return false;
+        }
+
+        recordSync(context);
+        return true;
+    }
+
+    /**
+     * Fetch the first pages of the user's current query from the given API and store them in the
+     * {@link ArticleCache}, whether or not the sync is due.
+     * <p>
+     * The pages are requested with the default page size, which is what the app asks for when it
+     * is opened without any measurements of the network, so they are stored under the keys that
+     * its first loads look up. They are built without the {@link PagePlan} or the merges of the
+     * list being shown, so a sync running whilst the app is open does not change its pages.
+     *
+     * @param context is any {@link Context} from the application.
+     * @param apiUrl  is the base URL of the API to request.
+     * @param stopped is set when the sync should stop before fetching any more pages.
+     * @return true if every page was stored, or false if the sync was stopped or a page failed.
+     */
+    static boolean syncPages(Context context, String apiUrl, AtomicBoolean stopped) {
+        ArticleCache articleCache = ArticleCache.getInstance(context);
+        boolean fanOut = QueryUtils.isFanOutEnabled(context);
+        int pageCount = context.getResources().getInteger(R.integer.sync_page_count);
+
+        // The sync's own merge of the categories, which starts from the beginning on each run
+        CategoryFanOut.MergeCursors syncCursors = new CategoryFanOut.MergeCursors();
+
+        /*
+        Always check with the servers, as the point of the sync is to replace what is stored.
+        The responses also go into the HTTP cache, which the app's first requests can revalidate
+        */
+        for (int page = 1; page <= pageCount; page++) {
+            if (stopped.get()) {
+                return false;
+            }
+
+            String pageUrl = QueryUtils.createUrlString(context, apiUrl, page, PageSizer.DEFAULT_PAGE_SIZE);
+            List<NewsArticle> pageArticles;
+            if (fanOut) {
+                pageArticles = CategoryFanOut.fetchPage(pageUrl, context, 0, true, null, syncCursors, null, null, false);
+            } else {
+                pageArticles = QueryUtils.fetchLatestNews(pageUrl, context, 0, true, null);
+            }
+
+            if (pageArticles == null) {
+                return false;
+            }
+            articleCache.put(ArticleCache.queryKey(pageUrl), pageArticles);
+            SearchIndex.getInstance(context).addAll(pageArticles);
+        }
+        SearchIndex.saveInBackground(context);
+
+        return true;
+    }
+
+    /**
+     * Record that the first page has just been fetched from the network, so that the background
+     * sync does not fetch it again straight away.
+     *
+     * @param context is any {@link Context} from the application.
+     */
+    static void recordSync(Context context) {
+        getSyncPreferences(context).edit().putLong(LAST_SYNC_KEY, System.currentTimeMillis()).apply();
+    }
+
+    /**
+     * Check whether enough time has passed since the last sync for another one to run.
+     *
+     * @param lastSyncMillis    is the time of the last sync, or 0 if there has not been one.
+     * @param nowMillis         is the current time.
+     * @param minIntervalMillis is the minimum time between syncs.
+     * @return true if the sync should run.
+     */
+    static boolean isDue(long lastSyncMillis, long nowMillis, long minIntervalMillis) {
+        // If the clock has been set back to before the last sync, don't wait for it to catch up
+        return nowMillis < lastSyncMillis || nowMillis - lastSyncMillis >= minIntervalMillis;
+    }
+
+    private static long getLastSync(Context context) {
+        return getSyncPreferences(context).getLong(LAST_SYNC_KEY, 0);
+    }
+
+    private static SharedPreferences getSyncPreferences(Context context) {
+        return context.getApplicationContext().getSharedPreferences(SYNC_PREFERENCES, Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.android.stemnews;
+
+import android.annotation.TargetApi;
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.os.Build;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs the periodic background sync scheduled by {@link FeedSync}. Job callbacks are made on the
+ * main thread, so the sync itself is carried out on a separate thread.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class FeedSyncJobService extends JobService {
+
+    private static final ExecutorService syncExecutor = Executors.newSingleThreadExecutor();
+
+    private final AtomicBoolean syncStopped = new AtomicBoolean();
+
+    @Override
+    public boolean onStartJob(final JobParameters jobParameters) {
+        syncStopped.set(false);
+        syncExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Ask for the job to be retried later if any of the pages could not be fetched
+                boolean syncComplete = FeedSync.syncFirstPages(getApplicationContext(), syncStopped);
+                jobFinished(jobParameters, !syncComplete);
+            }
+        });
+
+        // The job is still running on the sync thread
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters jobParameters) {
+        /*
+        The conditions for the job are no longer met, such as the device being unplugged, so stop
+        before the next page and try again the next time they are
+        */
+        syncStopped.set(true);
+        return true;
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.android.stemnews;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Times each stage of loading a page of articles, from looking up the servers' address to binding
+ * the rows of the list, and counts the bytes received. The most recent samples of each stage are
+ * kept so that their percentiles can be shown on the {@link MetricsActivity} screen and exported.
+ * <p>
+ * The network stages are timed by an OkHttp {@link EventListener}, which also passes the timings
+ * of each page of results to the {@link PageSizer}. The rest are timed by the code that carries
+ * them out, which also marks them as sections in system traces.
+ */
+final class LoadMetrics {
+
+    static final int STAGE_DNS = 0;
+    static final int STAGE_CONNECT = 1;
+    static final int STAGE_FIRST_BYTE = 2;
+    static final int STAGE_PARSE = 3;
+    static final int STAGE_LOAD = 4;
+    static final int STAGE_DELIVER = 5;
+    static final int STAGE_DIFF = 6;
+    static final int STAGE_BIND = 7;
+    static final int STAGE_TO_SCREEN = 8;
+
+    private static final String[] STAGE_NAMES = {
+            "DNS lookup",
+            "Connect and TLS",
+            "Time to first byte",
+            "Read and parse",
+            "Load in background",
+            "onLoadFinished",
+            "Diff rows",
+            "Bind row",
+            "Request to screen"
+    };
+
+    // The number of recent samples kept for each stage
+    private static final int SAMPLES_PER_STAGE = 256;
+
+    private static final SampleRing[] stageSamples = new SampleRing[STAGE_NAMES.length];
+
+    static {
+        for (int i = 0; i < stageSamples.length; i++) {
+            stageSamples[i] = new SampleRing(SAMPLES_PER_STAGE);
+        }
+    }
+
+    private static final AtomicLong networkCalls = new AtomicLong();
+    private static final AtomicLong failedCalls = new AtomicLong();
+    private static final AtomicLong bytesReceived = new AtomicLong();
+
+    private LoadMetrics() { // Cannot instantiate this class
+    }
+
+    /**
+     * Record the time taken by a stage that has just finished.
+     *
+     * @param stage      is the stage, such as {@link #STAGE_PARSE}.
+     * @param startNanos is the time the stage started, from {@link System#nanoTime()}.
+     */
+    static void record(int stage, long startNanos) {
+        stageSamples[stage].add(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Write a summary of each stage, with the median and the 95th and 99th percentiles of its
+     * recent samples in milliseconds, followed by the network counters.
+     *
+     * @param output is the {@link Appendable} to write the summary to.
+     * @throws IOException if the summary could not be written.
+     */
+    static void writeSummary(Appendable output) throws IOException {
+        output.append(String.format(Locale.US, "%-20s %7s %8s %8s %8s%n", "Stage (ms)", "count", "p50", "p95", "p99"));
+        for (int stage = 0; stage < stageSamples.length; stage++) {
+            long[] sortedSamples = stageSamples[stage].snapshot();
+            Arrays.sort(sortedSamples);
+            output.append(summaryLine(STAGE_NAMES[stage], stageSamples[stage].getCount(), sortedSamples));
+        }
+
+        output.append(String.format(Locale.US, "%nHTTP calls: %d, failed: %d, bytes received: %d%n",
+                networkCalls.get(), failedCalls.get(), bytesReceived.get()));
+    }
+
+    /**
+     * Format one line of the summary.
+     *
+     * @param stageName     is the name of the stage.
+     * @param count         is the number of samples recorded for the stage.
+     * @param sortedSamples is the recent samples in nanoseconds, in ascending order.
+     * @return the line of the summary, ending with a line separator.
+     */
+    static String summaryLine(String stageName, long count, long[] sortedSamples) {
+        return String.format(Locale.US, "%-20s %7d %8.1f %8.1f %8.1f%n", stageName, count,
+                toMillis(SampleRing.percentile(sortedSamples, 0.5)),
+                toMillis(SampleRing.percentile(sortedSamples, 0.95)),
+                toMillis(SampleRing.percentile(sortedSamples, 0.99)));
+    }
+
+    /**
+     * Write every recent sample as comma separated values, one sample per line.
+     *
+     * @param output is the {@link Writer} to write the samples to.
+     * @throws IOException if the samples could not be written.
+     */
+    static void writeSamples(Writer output) throws IOException {
+        output.write("stage,duration_ms\n");
+        for (int stage = 0; stage < stageSamples.length; stage++) {
+            for (long sample : stageSamples[stage].snapshot()) {
+                output.write(String.format(Locale.US, "%s,%.3f%n", STAGE_NAMES[stage], toMillis(sample)));
+            }
+        }
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Creates a listener for each call made by the HTTP client, which times the network stages
+     * of the call and counts the bytes received.
+     */
+    static final EventListener.Factory EVENT_LISTENER_FACTORY = new EventListener.Factory() {
+        @Override
+        public EventListener create(Call call) {
+            return new NetworkStageListener();
+        }
+    };
+
+    // Listens to the events of a single call, which all happen on the thread making the call
+    private static final class NetworkStageListener extends EventListener {
+        private long dnsStartNanos;
+        private long connectStartNanos;
+        private long requestSentNanos;
+        private long responseStartNanos;
+        private int responseCode;
+
+        @Override
+        public void callStart(Call call) {
+            networkCalls.incrementAndGet();
+        }
+
+        @Override
+        public void dnsStart(Call call, String domainName) {
+            dnsStartNanos = System.nanoTime();
+        }
+
+        @Override
+        public void dnsEnd(Call call, String domainName, List<InetAddress> addresses) {
+            record(STAGE_DNS, dnsStartNanos);
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress address, Proxy proxy) {
+            connectStartNanos = System.nanoTime();
+        }
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress address, Proxy proxy, Protocol protocol) {
+            record(STAGE_CONNECT, connectStartNanos);
+        }
+
+        @Override
+        public void requestHeadersEnd(Call call, Request request) {
+            requestSentNanos = System.nanoTime();
+        }
+
+        @Override
+        public void responseHeadersStart(Call call) {
+            responseStartNanos = System.nanoTime();
+            if (requestSentNanos != 0) {
+                record(STAGE_FIRST_BYTE, requestSentNanos);
+            }
+        }
+
+        @Override
+        public void responseHeadersEnd(Call call, Response response) {
+            responseCode = response.code();
+        }
+
+        @Override
+        public void responseBodyEnd(Call call, long byteCount) {
+            bytesReceived.addAndGet(byteCount);
+
+            // Only a page of results counts, not an error such as a throttled response before a retry
+            String pageSize = call.request().url().queryParameter(QueryUtils.PAGE_SIZE_PARAMETER);
+            if (pageSize != null && responseCode == HttpURLConnection.HTTP_OK && requestSentNanos != 0) {
+                try {
+                    PageSizer.getInstance().recordResponse(Integer.parseInt(pageSize), byteCount,
+                            responseStartNanos - requestSentNanos, System.nanoTime() - responseStartNanos);
+                } catch (NumberFormatException e) {
+                    // Not a page of results requested by the app
+                }
+            }
+        }
+
+        @Override
+        public void callFailed(Call call, IOException ioe) {
+            failedCalls.incrementAndGet();
+        }
+    }
+}
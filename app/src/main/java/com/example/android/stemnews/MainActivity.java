@@ -4,61 +4,51 @@ import android.app.LoaderManager;
 import android.content.Context;
 import android.content.Intent;
 import android.content.Loader;
-import android.content.SharedPreferences;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
-import android.net.Uri;
 import android.preference.PreferenceManager;
+import android.support.v4.content.ContextCompat;
+import android.support.v4.os.TraceCompat;
 import android.support.v4.widget.SwipeRefreshLayout;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.v7.widget.DividerItemDecoration;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.Toolbar;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AbsListView;
-import android.widget.AdapterView;
-import android.widget.ListView;
 import android.widget.TextView;
-import android.widget.Toast;
 
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
 
-public class MainActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<List<NewsArticle>> {
+public class MainActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<ArticleFeed> {
 
     private final String LOG_TAG = MainActivity.class.getName();
 
-    /**
-     * The query URL for news article data from The Guardian web API.
-     * <p>
-     * I use my personal API key from the project gradle.properties file, but this is not included
-     * in the GitHub repo, so other users will need to get their own API Key from:
-     * https://open-platform.theguardian.com/access/on (or use the "test" key).
-     * <p>
-     * To include your personal key in the app, add it to the project's gradle.properties file
-     * and use the following link as a guide to include it in your build.gradle (Module:app) file
-     * under the name GuardianAPIKey:
-     * https://medium.com/code-better/hiding-api-keys-from-your-android-repository-b23f5598b906
-     * <p>
-     * For test purposes, you can simply replace the GuardianAPIKey call in the build.gradle file
-     * with the String "test", but this only gives you a limited number of calls to the servers.
-     */
-    private static final String GUARDIAN_API_URL = "http://content.guardianapis.com/search";
+    private static final int LOADER_ID = 1;
 
-    private ListView articleListView;
+    private RecyclerView articleListView;
+    private LinearLayoutManager articleLayoutManager;
     private ArticleAdapter articleAdapter;
+    private ArticleFeed articleFeed;
     private TextView emptyStateView;
     private SwipeRefreshLayout articleRefresh;
     private View loadingIndicator;
 
     private int currentPage;
+    private int prefetchedPage;
+    private int prefetchDistance;
+    private int prefetchDepth;
     private boolean articlesLoading = true;
+    private boolean deviceOnline;
+
+    // The time that the current loader was created, until its first page is shown in the list
+    private long loadRequestedNanos;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -72,14 +62,25 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
         // Retrieve the loading indicator circle view
         loadingIndicator = findViewById(R.id.progress_circle);
 
-        /* Retrieve the current page value on an orientation change. Otherwise, set it to its
-        default initial value */
+        /* Retrieve the current page value and the size of each page on an orientation change.
+        Otherwise, set it to its default initial value and let the page sizes be chosen afresh */
         if (savedInstanceState != null) {
             currentPage = savedInstanceState.getInt(getString(R.string.current_page_key));
+            int[] pageSizes = savedInstanceState.getIntArray(getString(R.string.page_sizes_key));
+            if (pageSizes != null) {
+                PagePlan.getInstance().restore(pageSizes);
+            }
         } else {
             currentPage = 1;
+            PagePlan.getInstance().reset();
         }
 
+        /* Retrieve how many rows from the end of the list the next pages should start being
+        fetched and how many pages ahead of the current one to fetch */
+        prefetchedPage = currentPage;
+        prefetchDistance = getResources().getInteger(R.integer.prefetch_distance);
+        prefetchDepth = getResources().getInteger(R.integer.prefetch_depth);
+
         // Retrieve the swipe-refresh view and add a listener to update the loader data on a refresh
         articleRefresh = findViewById(R.id.swipe_refresh);
         articleRefresh.setOnRefreshListener(new SwipeRefreshLayout.OnRefreshListener() {
@@ -87,70 +88,80 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
             public void onRefresh() {
                 // Set the page parameter value back to 1 and refresh the article list
                 currentPage = 1;
+                discardPrefetchedPages();
                 articleListView.setEnabled(false);
                 updateArticles(true);
             }
         });
 
-        /* Retrieve the {@link ListView} in the layout and then add the empty state {@link TextView}
-        to it for when there is no data to display */
+        /* Retrieve the {@link RecyclerView} in the layout, lay its items out in a vertical list
+        and space them apart with a blank divider. The empty state {@link TextView} is shown
+        instead of the list when there is no data to display */
         articleListView = findViewById(R.id.article_list);
+        articleLayoutManager = new LinearLayoutManager(this);
+        articleListView.setLayoutManager(articleLayoutManager);
+        articleListView.setHasFixedSize(true);
+        DividerItemDecoration articleSpacing = new DividerItemDecoration(this, DividerItemDecoration.VERTICAL);
+        articleSpacing.setDrawable(ContextCompat.getDrawable(this, R.drawable.article_spacing));
+        articleListView.addItemDecoration(articleSpacing);
         emptyStateView = findViewById(R.id.empty_state_text);
-        articleListView.setEmptyView(emptyStateView);
-
-        /* Create a new adapter that takes an empty list of earthquakes as its input and then link
-        the adapter to the {@link ListView} */
-        articleAdapter = new ArticleAdapter(this, new ArrayList<NewsArticle>());
-        articleListView.setAdapter(articleAdapter);
 
-        /* Set an item click listener on the {@link ListView} that sends an intent to any
-        available web browser to open the full selected article */
-        articleListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        /* Create a new adapter with a click listener that opens the selected article in the
+        in-app reader, then link the adapter to the {@link RecyclerView} */
+        articleAdapter = new ArticleAdapter(this, new ArticleAdapter.OnArticleClickListener() {
             @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int position, long l) {
-                NewsArticle clickedArticle = articleAdapter.getItem(position);
-
-                if (clickedArticle != null) {
-                    // Prepare a browser-opening {@link Intent} by parsing the website URL into a URI
-                    Intent browserIntent = new Intent(Intent.ACTION_VIEW, Uri.parse(clickedArticle.getWebURL()));
-
-                    /* Check that there is an application that can receive the intent and then
-                    start the activity if there is. If there isn't one available, indicate this
-                    with a {@link Toast} message */
-                    if (browserIntent.resolveActivity(getPackageManager()) != null) {
-                        startActivity(browserIntent);
-                    } else {
-                        Toast.makeText(getApplicationContext(), getString(R.string.no_browser_app), Toast.LENGTH_SHORT).show();
-                    }
+            public void onArticleClick(NewsArticle clickedArticle) {
+                // Ignore clicks whilst the list is disabled during a load
+                if (articleListView.isEnabled()) {
+                    startActivity(ReaderActivity.createIntent(MainActivity.this, clickedArticle));
                 }
             }
         });
+        articleListView.setAdapter(articleAdapter);
 
-        /* Add a scroll listener to the {@link ListView} that loads in additional pages of data
+        /* Add a scroll listener to the {@link RecyclerView} that loads in additional pages of data
         if they are available when the user nears the bottom of the current list */
-        articleListView.setOnScrollListener(new AbsListView.OnScrollListener() {
+        articleListView.addOnScrollListener(new RecyclerView.OnScrollListener() {
             private boolean userScrolled = false;
 
             @Override
-            public void onScrollStateChanged(AbsListView absListView, int scrollState) {
+            public void onScrollStateChanged(RecyclerView recyclerView, int scrollState) {
                 // Check that the scroll event was a user controlled one
                 switch (scrollState) {
-                    case AbsListView.OnScrollListener.SCROLL_STATE_TOUCH_SCROLL:
-                    case AbsListView.OnScrollListener.SCROLL_STATE_FLING:
+                    case RecyclerView.SCROLL_STATE_DRAGGING:
+                    case RecyclerView.SCROLL_STATE_SETTLING:
                         userScrolled = true;
                         break;
                     default:
                         userScrolled = false;
+
+                        // Fetch the bodies of the rows the user has stopped on, ready to be read
+                        prefetchVisibleBodies();
                         break;
                 }
             }
 
             @Override
-            public void onScroll(AbsListView absListView, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                int lastVisiblePosition = articleLayoutManager.findLastVisibleItemPosition();
+                int totalItemCount = articleAdapter.getItemCount();
+
+                // Measure how quickly the user is moving through the list to size the next pages
+                if (userScrolled) {
+                    PageSizer.getInstance().recordScroll(lastVisiblePosition, SystemClock.uptimeMillis());
+                }
+
+                /* Once the user has scrolled to within the prefetch distance of the end of the
+                list, start fetching the next pages in the background so that they are ready
+                by the time the end is reached */
+                if (lastVisiblePosition >= (totalItemCount - 1 - prefetchDistance) && !articlesLoading && userScrolled) {
+                    prefetchNextPages();
+                }
+
                 /* If the last visible item in the list is the last element AND no articles are
                 currently being loaded in AND the scroll event was user controlled, prepare to
                 load the next page of results into the adapter */
-                if (absListView.getLastVisiblePosition() == (totalItemCount - 1) && !articlesLoading && userScrolled) {
+                if (lastVisiblePosition == (totalItemCount - 1) && !articlesLoading && userScrolled) {
                     /* Increase the results page number value by 1 and update the article list. It
                     does not matter if the currentPage value exceeds the query page size, as
                     this will just return no data and it will be handled by the
@@ -158,30 +169,94 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
                     currentPage++;
 
                     /* Whilst the list is updating, show the loading indicator and prevent
-                    user interaction with the {@link ListView} underneath */
-                    loadingIndicator.setVisibility(View.VISIBLE);
-                    articleListView.setEnabled(false);
+                    user interaction with the {@link RecyclerView} underneath, unless the page has
+                    already been prefetched and can be added straight away */
+                    if (!PagePrefetcher.getInstance().isReady(QueryUtils.createUrlString(MainActivity.this, currentPage))) {
+                        loadingIndicator.setVisibility(View.VISIBLE);
+                        articleListView.setEnabled(false);
+                    }
 
                     updateArticles(true);
                 }
             }
         });
 
-        // Use a new {@link Loader} to create the first instance of the list
-        updateArticles(false);
+        /* If the app was killed whilst it was in the background, the {@link Loader} holding the
+        list will have gone with it, so restore the list from the snapshot taken when the app was
+        stopped. Otherwise (or if there is no snapshot for the current query), use a new
+        {@link Loader} to create the first instance of the list */
+        if (savedInstanceState == null || getLoaderManager().getLoader(LOADER_ID) != null || !restoreSnapshot()) {
+            updateArticles(false);
+        }
+
+        // Keep the first pages up to date in the background for the next time the app is opened
+        FeedSync.schedule(this);
     }
 
     /**
-     * Check that the device is connected to the internet before using a {@link ArticleLoader} to
-     * load in the news data to the {@link ListView}. If the list is being refreshed, destroy the
-     * old {@link ArticleLoader} and create a new one with the same ID.
+     * Show the articles from the {@link FeedSnapshot} and scroll back to the user's place in them,
+     * as long as the snapshot is for the current query. The next page is only loaded once the
+     * user reaches the end of the list, in the same way as during a normal session.
      *
-     * @param listRefresh is a boolean that indicates whether the list already exists and is being
-     *                    refreshed by the user.
+     * @return true if the list was restored from the snapshot.
      */
-    private void updateArticles(boolean listRefresh) {
-        final int LOADER_ID = 1;
+    private boolean restoreSnapshot() {
+        final FeedSnapshot snapshot = FeedSnapshot.read(FeedSnapshot.getFile(this));
+        String currentQuery = FeedSnapshot.queryOf(QueryUtils.createUrlString(this, 1));
+        if (snapshot == null || !snapshot.getQuery().equals(currentQuery)) {
+            return false;
+        }
 
+        // No loader runs after a restore, so check the connection here for the pages prefetched next
+        updateDeviceOnline();
+
+        currentPage = snapshot.getCurrentPage();
+        prefetchedPage = currentPage;
+        PagePlan.getInstance().restore(snapshot.getPageSizes());
+        articleFeed = snapshot.getFeed();
+        articleAdapter.applyFeed(articleFeed, new ArticleAdapter.OnUpdateAppliedListener() {
+            @Override
+            public void onUpdateApplied() {
+                articleLayoutManager.scrollToPositionWithOffset(snapshot.getScrollPosition(), snapshot.getScrollOffset());
+                updateEmptyState();
+            }
+        });
+
+        loadingIndicator.setVisibility(View.GONE);
+        articlesLoading = false;
+        return true;
+    }
+
+    /**
+     * Start fetching the pages after the current one in the background with the
+     * {@link PagePrefetcher}, up to the prefetch depth. Pages that have already been requested
+     * are skipped.
+     */
+    private void prefetchNextPages() {
+        if (!deviceOnline) {
+            return;
+        }
+
+        while (prefetchedPage < currentPage + prefetchDepth) {
+            prefetchedPage = Math.max(prefetchedPage + 1, currentPage + 1);
+            PagePrefetcher.getInstance().prefetch(QueryUtils.createUrlString(this, prefetchedPage),
+                    getApplicationContext(), ArticleLoader.NEXT_PAGE_MAX_STALE, QueryUtils.isFanOutEnabled(this));
+        }
+    }
+
+    /* Throw away any prefetched pages and the planned page sizes, as the list is being reloaded
+    from the first page */
+    private void discardPrefetchedPages() {
+        PagePrefetcher.getInstance().discard();
+        PagePlan.getInstance().reset();
+        prefetchedPage = currentPage;
+    }
+
+    /**
+     * Check whether the device is connected to the internet, which decides whether pages can be
+     * fetched from the servers or only shown from the {@link ArticleCache}.
+     */
+    private void updateDeviceOnline() {
         /* Get a reference to the app's {@link ConnectivityManager} to check the state of
         the device's network connectivity */
         ConnectivityManager deviceConnectivity = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
@@ -189,158 +264,161 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
             // Get details on the currently active network connection
             NetworkInfo deviceNetworkInfo = deviceConnectivity.getActiveNetworkInfo();
 
-            /* If there is a network connection and information about it is available, fetch the
-            news data using the {@link ArticleLoader} */
-            if (deviceNetworkInfo != null && deviceNetworkInfo.isConnected()) {
-                // Indicate that the load has started
-                articlesLoading = true;
-
-                /* Initialise the {@link ArticleLoader}. If we are refreshing the list instead of
-                creating it for the first time, use the restartLoader method instead to destroy
-                the existing one and create a new instance */
-                if (listRefresh) {
-                    getLoaderManager().restartLoader(LOADER_ID, null, this);
-                } else {
-                    getLoaderManager().initLoader(LOADER_ID, null, this);
-                }
-            } else {
-                /* Otherwise, display a no internet connection error. Hide the loading indicator
-                as well so that the error message is clearer */
-                loadingIndicator.setVisibility(View.GONE);
-
-                // Update empty state with no connection error message
-                emptyStateView.setText(getString(R.string.no_internet_connection));
-            }
+            /* If there is a network connection and information about it is available, the
+            {@link ArticleLoader} can fetch the news data from the servers */
+            deviceOnline = deviceNetworkInfo != null && deviceNetworkInfo.isConnected();
         } else {
-            loadingIndicator.setVisibility(View.GONE);
-
-            emptyStateView.setText(getString(R.string.no_internet_connection));
+            deviceOnline = false;
             Log.e(LOG_TAG, "Error with connectivity services");
         }
     }
 
+    /**
+     * Check whether the device is connected to the internet and then use a {@link ArticleLoader}
+     * to load in the news data to the {@link RecyclerView}. Without a connection, the loader can still
+     * show any articles stored in the {@link ArticleCache}. If the list is being refreshed, destroy
+     * the old {@link ArticleLoader} and create a new one with the same ID.
+     *
+     * @param listRefresh is a boolean that indicates whether the list already exists and is being
+     *                    refreshed by the user.
+     */
+    private void updateArticles(boolean listRefresh) {
+        updateDeviceOnline();
+
+        // Indicate that the load has started
+        articlesLoading = true;
+
+        /* Initialise the {@link ArticleLoader}. If we are refreshing the list instead of
+        creating it for the first time, use the restartLoader method instead to destroy
+        the existing one and create a new instance */
+        if (listRefresh) {
+            getLoaderManager().restartLoader(LOADER_ID, null, this);
+        } else {
+            getLoaderManager().initLoader(LOADER_ID, null, this);
+        }
+    }
+
     @Override
-    public Loader<List<NewsArticle>> onCreateLoader(int i, Bundle bundle) {//
+    public Loader<ArticleFeed> onCreateLoader(int i, Bundle bundle) {//
         // Create the full URL String
-        String fullUrl = createUrlString();
+        String fullUrl = QueryUtils.createUrlString(this, currentPage);
+        loadRequestedNanos = System.nanoTime();
 
         /* If the article list is refreshing or it is empty, create a new {@link ArticleLoader} with
-        no initial data. Otherwise, pass the existing data set to the loader so that it can be
-        added to any new data that is obtained in the next HTTP request. Always force a new load
-        of data if we are creating a new instance of {@link ArticleLoader} as well */
-        if (articleRefresh.isRefreshing() || articleAdapter.isEmpty()) {
-            return new ArticleLoader(this, fullUrl, null, true);
+        no initial data. Otherwise, pass the existing feed to the loader so that the next page can
+        be added to the end of it in place. When the user has asked for a refresh, skip showing
+        the cached copy of the page and wait for the fresh one */
+        boolean fanOut = QueryUtils.isFanOutEnabled(this);
+        if (articleRefresh.isRefreshing()) {
+            return new ArticleLoader(this, fullUrl, null, false, deviceOnline, fanOut);
+        } else if (articleFeed == null || articleFeed.isEmpty()) {
+            return new ArticleLoader(this, fullUrl, null, true, deviceOnline, fanOut);
         } else {
-            return new ArticleLoader(this, fullUrl, new ArrayList<>(articleAdapter.getAdapterItems()), true);
+            return new ArticleLoader(this, fullUrl, articleFeed, true, deviceOnline, fanOut);
         }
     }
 
-    /**
-     * Create a full URL String for a HTTP request by using the domain/host String as a base and
-     * then appending the relevant parameters onto this.
-     */
-    private String createUrlString() {
-        // Get the shared preference keys and values for the app
-        SharedPreferences defaultPreferences = PreferenceManager.getDefaultSharedPreferences(this);
-
-        /* Retrieve the String value or String {@link Set} for each parameter from the preferences.
-         The second parameter is the default value for the preference if one has not already been
-         loaded into the app */
-        String orderBy = defaultPreferences.getString(
-                getString(R.string.settings_order_by_key),
-                getString(R.string.settings_order_by_default));
-
-        Set<String> searchCategories = defaultPreferences.getStringSet(
-                getString(R.string.settings_search_categories_key),
-                new HashSet<>(Arrays.asList(getResources().getStringArray(R.array.settings_search_categories_values))));
-
-        /* Combine all of the search category values into a single String, where they are
-         separated with the logical OR String */
-        StringBuilder categoriesParameter = new StringBuilder();
-        Iterator<String> categoriesIterator = searchCategories.iterator();
-        while (categoriesIterator.hasNext()) {
-            categoriesParameter.append(categoriesIterator.next());
-            if (categoriesIterator.hasNext()) {
-                String combiner = " " + getString(R.string.logical_OR) + " ";
-                categoriesParameter.append(combiner);
-            }
+    @Override
+    public void onLoadFinished(Loader<ArticleFeed> loader, ArticleFeed feed) {
+        long deliverStart = System.nanoTime();
+        TraceCompat.beginSection("MainActivity.onLoadFinished");
+        try {
+            showFeed(feed);
+        } finally {
+            TraceCompat.endSection();
+            LoadMetrics.record(LoadMetrics.STAGE_DELIVER, deliverStart);
         }
-
-        // Parse the base URL string into an {@link Uri} object
-        Uri baseUri = Uri.parse(GUARDIAN_API_URL);
-
-        // Prepare the base URI so that we can add query parameters to it
-        Uri.Builder uriBuilder = baseUri.buildUpon();
-
-        // Append the query parameters and their values
-        uriBuilder.appendQueryParameter("q", categoriesParameter.toString());
-        uriBuilder.appendQueryParameter("order-by", orderBy);
-        uriBuilder.appendQueryParameter("page-size", "10");
-        uriBuilder.appendQueryParameter("page", String.valueOf(currentPage));
-        uriBuilder.appendQueryParameter("show-tags", "contributor");
-        uriBuilder.appendQueryParameter("api-key", BuildConfig.API_KEY);
-
-        return uriBuilder.toString();
     }
 
-    @Override
-    public void onLoadFinished(Loader<List<NewsArticle>> loader, List<NewsArticle> articlesList) {
+    // Show a feed delivered by the loader in the list
+    private void showFeed(ArticleFeed feed) {
         /* Hide the loading indicator once the data has been loaded and set the empty state text to
         display that no articles were found if it is used */
         loadingIndicator.setVisibility(View.GONE);
-        emptyStateView.setText(R.string.no_articles);
-
-        /* Store a temporary pointer to the articleList so that it is not lost when we clear the
-        articleAdapter */
-        List<NewsArticle> tempArticleList = (articlesList != null) ? new ArrayList<>(articlesList) : null;
-
-        /* Store the current first visible list item index position and its offset from the top of the
-        screen so that we can move the list back to the same exact position after new data has been
-        loaded into the adapter */
-        int firstItemIndex = articleListView.getFirstVisiblePosition();
-        View firstItemView = articleListView.getChildAt(0);
-        int topOffset = (firstItemView == null) ? 0 : (firstItemView.getTop() - articleListView.getPaddingTop());
-
-        // Clear the adapter of any previous data and notify the {@link ListView}
-        articleAdapter.clear();
-        articleListView.requestLayout();
+        emptyStateView.setText(deviceOnline ? R.string.no_articles : R.string.no_internet_connection);
+
+        /* Keep hold of the feed so that the next page can be added to it, then pass it to the
+        adapter, which only updates the rows that changed. If there is no feed, clear the adapter
+        instead. The {@link RecyclerView} keeps its scroll position because the items above the
+        new page are left in place */
+        articleFeed = feed;
+        final boolean listRefreshed = articleRefresh.isRefreshing();
+        if (articleFeed != null) {
+            articleAdapter.applyFeed(articleFeed, new ArticleAdapter.OnUpdateAppliedListener() {
+                @Override
+                public void onUpdateApplied() {
+                    // If the list has been refreshed, it should go back to the top of the list
+                    if (listRefreshed) {
+                        articleListView.scrollToPosition(0);
+                    }
+                    updateEmptyState();
+                    prefetchVisibleBodies();
 
-        /* If there is a valid list of {@link NewsArticle}s, then add them to the adapter's
-        data set. Notify the {@link ListView} of this change again */
-        if (tempArticleList != null && !tempArticleList.isEmpty()) {
-            articleAdapter.addAll(tempArticleList);
-            articleListView.requestLayout();
+                    // Time from creating the loader to its first page being in the list
+                    if (loadRequestedNanos != 0) {
+                        LoadMetrics.record(LoadMetrics.STAGE_TO_SCREEN, loadRequestedNanos);
+                        loadRequestedNanos = 0;
+                    }
+                }
+            });
+        } else {
+            articleAdapter.clear();
+            updateEmptyState();
         }
 
-        // Re-enable the {@link ListView} if it was previously disabled
+        // Re-enable the {@link RecyclerView} if it was previously disabled
         if (!articleListView.isEnabled()) {
             articleListView.setEnabled(true);
         }
 
-        /* Restore the list scroll position unless the list has been refreshed, in which case it
-        should go back to the top of the list */
-        if (articleRefresh.isRefreshing()) {
-            articleListView.setSelection(0);
-
-            // Indicate that the refresh is complete
+        // Indicate that the refresh is complete
+        if (listRefreshed) {
             articleRefresh.setRefreshing(false);
-        } else {
-            articleListView.setSelectionFromTop(firstItemIndex, topOffset);
         }
 
         // Indicate that the load has finished
         articlesLoading = false;
     }
 
+    /*
+    Start fetching the bodies of the articles on screen for the reader. This does nothing unless
+    the device is on an unmetered network
+    */
+    private void prefetchVisibleBodies() {
+        int firstVisiblePosition = articleLayoutManager.findFirstVisibleItemPosition();
+        int lastVisiblePosition = articleLayoutManager.findLastVisibleItemPosition();
+        if (firstVisiblePosition == RecyclerView.NO_POSITION) {
+            return;
+        }
+
+        List<ArticleRow> adapterItems = articleAdapter.getAdapterItems();
+        List<NewsArticle> visibleArticles = new ArrayList<>();
+        for (int position = firstVisiblePosition; position <= lastVisiblePosition && position < adapterItems.size(); position++) {
+            visibleArticles.add(adapterItems.get(position).getArticle());
+        }
+        ArticleBodies.getInstance(this).prefetch(visibleArticles);
+    }
+
     @Override
-    public void onLoaderReset(Loader<List<NewsArticle>> loader) {
+    public void onLoaderReset(Loader<ArticleFeed> loader) {
+        articleFeed = null;
         articleAdapter.clear();
-        articleListView.requestLayout();
+        updateEmptyState();
+    }
+
+    // Show the empty state {@link TextView} in place of the list when there is no data to display
+    private void updateEmptyState() {
+        boolean listEmpty = articleAdapter.getItemCount() == 0;
+        emptyStateView.setVisibility(listEmpty ? View.VISIBLE : View.GONE);
+        articleListView.setVisibility(listEmpty ? View.GONE : View.VISIBLE);
     }
 
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.overflow_menu, menu);
+
+        // The load metrics screen is only for debug builds
+        menu.findItem(R.id.open_metrics).setVisible(BuildConfig.DEBUG);
         return true;
     }
 
@@ -351,6 +429,7 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
                 /* Set the page parameter back to 1 and refresh the article list, disabling
                 interactions with the list whilst the load is taking place */
                 currentPage = 1;
+                discardPrefetchedPages();
                 articleRefresh.setRefreshing(true);
                 articleListView.setEnabled(false);
                 updateArticles(true);
@@ -366,15 +445,49 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
                 Intent settingsIntent = new Intent(this, SettingsActivity.class);
                 startActivity(settingsIntent);
                 return true;
+            case R.id.open_search:
+                startActivity(new Intent(this, SearchActivity.class));
+                return true;
+            case R.id.open_metrics:
+                startActivity(new Intent(this, MetricsActivity.class));
+                return true;
         }
 
         return super.onOptionsItemSelected(item);
     }
 
-    // Save the current page number for the HTTP requests on an orientation change
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        ThumbnailLoader.getInstance(this).trimMemory(level);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+
+        /* Save a snapshot of the loaded articles and the user's place in them on a background
+        thread, in case the app is killed whilst it is in the background */
+        if (articleFeed != null && !articleFeed.isEmpty()) {
+            int scrollPosition = Math.max(articleLayoutManager.findFirstVisibleItemPosition(), 0);
+            View firstVisibleRow = articleLayoutManager.findViewByPosition(scrollPosition);
+            int scrollOffset = (firstVisibleRow != null) ? firstVisibleRow.getTop() - articleListView.getPaddingTop() : 0;
+
+            FeedSnapshot snapshot = new FeedSnapshot(FeedSnapshot.queryOf(QueryUtils.createUrlString(this, 1)),
+                    articleFeed.copyFrom(0), currentPage, PagePlan.getInstance().getPageSizes(currentPage),
+                    scrollPosition, scrollOffset);
+            snapshot.saveInBackground(FeedSnapshot.getFile(this));
+        }
+
+        // Save the articles added to the search index since it was last saved
+        SearchIndex.saveInBackground(this);
+    }
+
+    // Save the current page number and page sizes for the HTTP requests on an orientation change
     @Override
     protected void onSaveInstanceState(Bundle outState) {
         outState.putInt(getString(R.string.current_page_key), currentPage);
+        outState.putIntArray(getString(R.string.page_sizes_key), PagePlan.getInstance().getPageSizes(currentPage));
         super.onSaveInstanceState(outState);
     }
 }
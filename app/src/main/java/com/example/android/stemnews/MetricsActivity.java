@@ -0,0 +1,155 @@
+package com.example.android.stemnews;
+
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.support.v4.app.NavUtils;
+import android.support.v7.app.ActionBar;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+import okhttp3.Cache;
+
+/**
+ * Debug screen that shows the percentiles of the time taken by each stage of loading a page, as
+ * recorded by {@link LoadMetrics}, along with the request counters. The summary and every recent
+ * sample can be exported to a text file in the app's external files directory.
+ */
+public class MetricsActivity extends AppCompatActivity {
+
+    private static final String LOG_TAG = MetricsActivity.class.getName();
+
+    private static final String EXPORT_FILE_NAME = "load_metrics.txt";
+
+    private TextView metricsText;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_metrics);
+
+        // Add up navigation arrow to the action bar
+        ActionBar metricsActionBar = getSupportActionBar();
+        if (metricsActionBar != null) {
+            metricsActionBar.setDisplayHomeAsUpEnabled(true);
+        }
+
+        metricsText = findViewById(R.id.metrics_text);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        showSummary();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.metrics_menu, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+            case android.R.id.home:
+                NavUtils.navigateUpFromSameTask(this);
+                return true;
+            case R.id.metrics_refresh:
+                showSummary();
+                return true;
+            case R.id.metrics_export:
+                exportMetrics();
+                return true;
+        }
+
+        return super.onOptionsItemSelected(item);
+    }
+
+    private void showSummary() {
+        StringBuilder summary = new StringBuilder();
+        try {
+            writeSummary(summary);
+        } catch (IOException e) {
+            // A StringBuilder never throws
+        }
+        metricsText.setText(summary);
+    }
+
+    // Write the stage percentiles, followed by the request and HTTP cache counters and the page
+    // size estimates
+    private void writeSummary(Appendable output) throws IOException {
+        LoadMetrics.writeSummary(output);
+
+        RequestCoalescer<?> pageRequests = QueryUtils.getPageRequests();
+        output.append(getString(R.string.metrics_page_requests, pageRequests.getStartedCount(),
+                pageRequests.getCoalescedCount(), pageRequests.getAbandonedCount())).append('\n');
+
+        RateLimiter rateLimiter = RateLimiter.getInstance(this);
+        output.append(getString(R.string.metrics_request_budget, rateLimiter.getAvailableTokens(),
+                rateLimiter.getRemainingToday(), rateLimiter.getThrottledCount())).append('\n');
+
+        Cache responseCache = NetworkClient.getInstance(this).cache();
+        if (responseCache != null) {
+            output.append(getString(R.string.metrics_http_cache, responseCache.hitCount(),
+                    responseCache.networkCount(), responseCache.requestCount())).append('\n');
+        }
+
+        PageSizer pageSizer = PageSizer.getInstance();
+        output.append(getString(R.string.metrics_page_size, pageSizer.targetPageSize(false),
+                pageSizer.getRoundTripMillis(), pageSizer.getBytesPerSecond() / 1024,
+                pageSizer.getArticlesPerSecond())).append('\n');
+    }
+
+    /*
+    Write the summary and the recent samples to a file on a background thread. The app's external
+    files can be copied off the device without root access, and are removed with the app
+    */
+    private void exportMetrics() {
+        File exportDirectory = getExternalFilesDir(null);
+        if (exportDirectory == null) {
+            exportDirectory = getFilesDir();
+        }
+        final File exportFile = new File(exportDirectory, EXPORT_FILE_NAME);
+
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean exported = false;
+                try {
+                    Writer exportWriter = new OutputStreamWriter(new FileOutputStream(exportFile), Charset.forName("UTF-8"));
+                    try {
+                        writeSummary(exportWriter);
+                        exportWriter.write('\n');
+                        LoadMetrics.writeSamples(exportWriter);
+                        exported = true;
+                    } finally {
+                        exportWriter.close();
+                    }
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Problem exporting the load metrics", e);
+                }
+
+                final String message = exported
+                        ? getString(R.string.metrics_exported, exportFile.getAbsolutePath())
+                        : getString(R.string.metrics_export_failed);
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Toast.makeText(MetricsActivity.this, message, Toast.LENGTH_LONG).show();
+                    }
+                });
+            }
+        });
+    }
+}
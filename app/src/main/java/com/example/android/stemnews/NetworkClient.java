@@ -0,0 +1,101 @@
+package com.example.android.stemnews;
+
+import android.content.Context;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+
+/**
+ * Holds the single {@link OkHttpClient} shared by every request to The Guardian web API.
+ * <p>
+ * Sharing the client lets requests for later pages reuse the pooled connections (and their TLS
+ * sessions) of earlier ones, with several requests multiplexed over one connection where the
+ * servers support HTTP/2. Responses are requested with gzip compression and decoded as they are
+ * streamed into the parser, and they are stored in a HTTP cache on disk. Every request that goes to
+ * the network is kept within the limits of the API key by the shared {@link RateLimiter}.
+ */
+final class NetworkClient {
+
+    private static final int READ_TIMEOUT = 10000;
+    private static final int CONNECT_TIMEOUT = 15000;
+
+    // The directory name and maximum size in bytes of the on-disk HTTP response cache
+    private static final String HTTP_CACHE_DIRECTORY = "http";
+    private static final long HTTP_CACHE_SIZE = 10 * 1024 * 1024;
+
+    private static OkHttpClient instance;
+
+    private NetworkClient() { // Cannot instantiate this class
+    }
+
+    /**
+     * Get the shared {@link OkHttpClient} for the application, creating it on first use with the
+     * connection pool settings from the app's integer resources.
+     *
+     * @param context is any {@link Context} from the application.
+     * @return the shared {@link OkHttpClient} object.
+     */
+    static synchronized OkHttpClient getInstance(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            instance = createClient(
+                    new File(appContext.getCacheDir(), HTTP_CACHE_DIRECTORY),
+                    HTTP_CACHE_SIZE,
+                    appContext.getResources().getInteger(R.integer.http_pool_max_idle_connections),
+                    appContext.getResources().getInteger(R.integer.http_pool_keep_alive_seconds),
+                    RateLimiter.getInstance(appContext));
+        }
+
+        return instance;
+    }
+
+    /**
+     * Create a new {@link OkHttpClient} with a HTTP response cache and connection pool. The cache
+     * honours the ETag, Last-Modified and Cache-Control headers sent by the servers and removes the
+     * least recently used responses first once it is full.
+     *
+     * @param cacheDirectory     is the directory to store the HTTP response cache in.
+     * @param cacheSize          is the maximum size of the HTTP response cache in bytes.
+     * @param maxIdleConnections is the number of idle connections to keep in the pool.
+     * @param keepAliveSeconds   is the time that an idle connection stays in the pool before it
+     *                           is closed.
+     * @return the new {@link OkHttpClient} object.
+     */
+    static OkHttpClient createClient(File cacheDirectory, long cacheSize, int maxIdleConnections, long keepAliveSeconds) {
+        return createClient(cacheDirectory, cacheSize, maxIdleConnections, keepAliveSeconds, null);
+    }
+
+    /**
+     * Create a new {@link OkHttpClient} as above, with its requests to the API kept within the
+     * limits of the API key by a {@link RateLimiter}.
+     *
+     * @param cacheDirectory     is the directory to store the HTTP response cache in.
+     * @param cacheSize          is the maximum size of the HTTP response cache in bytes.
+     * @param maxIdleConnections is the number of idle connections to keep in the pool.
+     * @param keepAliveSeconds   is the time that an idle connection stays in the pool before it
+     *                           is closed.
+     * @param rateLimiter        is the {@link RateLimiter} for the requests, or null if they are
+     *                           not limited.
+     * @return the new {@link OkHttpClient} object.
+     */
+    static OkHttpClient createClient(File cacheDirectory, long cacheSize, int maxIdleConnections, long keepAliveSeconds,
+                                     RateLimiter rateLimiter) {
+        OkHttpClient.Builder clientBuilder = new OkHttpClient.Builder()
+                .cache(new Cache(cacheDirectory, cacheSize))
+                .connectionPool(new ConnectionPool(maxIdleConnections, keepAliveSeconds, TimeUnit.SECONDS))
+                .readTimeout(READ_TIMEOUT, TimeUnit.MILLISECONDS)
+                .connectTimeout(CONNECT_TIMEOUT, TimeUnit.MILLISECONDS)
+                .eventListenerFactory(LoadMetrics.EVENT_LISTENER_FACTORY);
+
+        if (rateLimiter != null) {
+            clientBuilder.addInterceptor(rateLimiter.retryInterceptor());
+            clientBuilder.addNetworkInterceptor(rateLimiter.networkInterceptor());
+        }
+
+        return clientBuilder.build();
+    }
+}
@@ -1,38 +1,74 @@
 package com.example.android.stemnews;
 
+/**
+ * A news article returned by The Guardian web API. The values of the article are held in an
+ * {@link ArticleStore}, which this object is a lightweight view of.
+ */
 public class NewsArticle {
 
-    private String articleTitle;
-    private String newsSection;
-    private String authorName;
-    private String datePublished;
-    private String webURL;
+    private final ArticleStore store;
+    private final int index;
 
-    NewsArticle(String articleTitle, String newsSection, String authorName, String datePublished, String webURL) {
-        this.articleTitle = articleTitle;
-        this.newsSection = newsSection;
-        this.authorName = authorName;
-        this.datePublished = datePublished;
-        this.webURL = webURL;
+    NewsArticle(ArticleStore store, int index) {
+        this.store = store;
+        this.index = index;
+    }
+
+    /**
+     * Create a single article that is not part of a page, in a store of its own. Pages of
+     * articles should be added to a shared {@link ArticleStore} instead.
+     */
+    NewsArticle(String articleId, String articleTitle, String newsSection, String authorName, String datePublished, String webURL) {
+        this(articleId, articleTitle, newsSection, authorName, datePublished, webURL, null);
+    }
+
+    NewsArticle(String articleId, String articleTitle, String newsSection, String authorName, String datePublished,
+                String webURL, String thumbnailUrl) {
+        ArticleStore singleStore = new ArticleStore();
+        this.store = singleStore;
+        this.index = singleStore.add(articleId, articleTitle, newsSection, authorName, datePublished, webURL, thumbnailUrl).index;
+    }
+
+    ArticleStore getStore() {
+        return store;
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    public String getArticleId() {
+        return store.getId(index);
     }
 
     public String getArticleTitle() {
-        return articleTitle;
+        return store.getTitle(index);
     }
 
     public String getNewsSection() {
-        return newsSection;
+        return store.getSection(index);
     }
 
     public String getAuthorName() {
-        return authorName;
+        return store.getAuthor(index);
     }
 
     public String getDatePublished() {
-        return datePublished;
+        return store.getDatePublished(index);
+    }
+
+    public long getPublishedMillis() {
+        return store.getPublishedMillis(index);
     }
 
     public String getWebURL() {
-        return webURL;
+        return store.getWebUrl(index);
+    }
+
+    /**
+     * @return the URL of the article's thumbnail image, or null if it has none.
+     */
+    public String getThumbnailUrl() {
+        return store.getThumbnailUrl(index);
     }
 }
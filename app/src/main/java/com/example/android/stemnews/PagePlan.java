@@ -0,0 +1,139 @@
+package com.example.android.stemnews;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maps the pages of the list, which are numbered from 1 as the user scrolls, to the page number
+ * and page size requested from the API, so that the page size can change part of the way through
+ * a scrolling session without skipping or repeating any results.
+ * <p>
+ * The API numbers its pages by their size, so a page of size s starting at result offset o can
+ * only be requested if o is a multiple of s. Each page therefore gets the largest size, no bigger
+ * than the one the {@link PageSizer} asks for, that the offset it starts at is a multiple of. As
+ * every size is a multiple of the minimum page size, the minimum size always fits, and the sizes
+ * catch up with the target within a few pages.
+ * <p>
+ * The size of each page is fixed the first time it is needed, so the URLs used to prefetch the
+ * pages ahead are the same as the ones used when the user reaches them. The sizes are saved with
+ * the rest of the list so that the pages after it still start at the right offset when it is
+ * restored.
+ */
+final class PagePlan {
+
+    private static PagePlan instance;
+
+    // The size of each page of the list planned so far, which is guarded by the plan's lock
+    private final List<Integer> pageSizes = new ArrayList<>();
+
+    /**
+     * A page of results as requested from the API.
+     */
+    static final class Window {
+        final int apiPage;
+        final int pageSize;
+
+        Window(int apiPage, int pageSize) {
+            this.apiPage = apiPage;
+            this.pageSize = pageSize;
+        }
+    }
+
+    /**
+     * Get the single page plan for the application.
+     *
+     * @return the shared {@link PagePlan} object.
+     */
+    static synchronized PagePlan getInstance() {
+        if (instance == null) {
+            instance = new PagePlan();
+        }
+
+        return instance;
+    }
+
+    /**
+     * Find the API page and page size for a page of the list, planning the size of it and any
+     * pages before it that have not been planned yet.
+     *
+     * @param page  is the page of the list, starting from 1.
+     * @param sizer is the {@link PageSizer} that gives the size wanted for each new page.
+     * @return the {@link Window} of results to request.
+     */
+    synchronized Window windowFor(int page, PageSizer sizer) {
+        int offset = 0;
+        for (int i = 0; i < page - 1; i++) {
+            if (i == pageSizes.size()) {
+                pageSizes.add(alignedSize(sizer.targetPageSize(i == 0), offset));
+            }
+            offset += pageSizes.get(i);
+        }
+
+        int pageSize;
+        if (page - 1 < pageSizes.size()) {
+            pageSize = pageSizes.get(page - 1);
+        } else {
+            pageSize = alignedSize(sizer.targetPageSize(page == 1), offset);
+            pageSizes.add(pageSize);
+        }
+
+        return new Window(offset / pageSize + 1, pageSize);
+    }
+
+    /**
+     * Find the largest page size, no bigger than the target, that the offset is a multiple of.
+     *
+     * @param targetSize is the page size wanted, which is a multiple of the minimum page size.
+     * @param offset     is the number of results before the page.
+     * @return the page size to use.
+     */
+    static int alignedSize(int targetSize, int offset) {
+        for (int pageSize = targetSize; pageSize > PageSizer.MIN_PAGE_SIZE; pageSize -= PageSizer.MIN_PAGE_SIZE) {
+            if (offset % pageSize == 0) {
+                return pageSize;
+            }
+        }
+        return PageSizer.MIN_PAGE_SIZE;
+    }
+
+    /**
+     * Forget every planned page, so that the list starts again from the first page with sizes
+     * from the latest estimates.
+     */
+    synchronized void reset() {
+        pageSizes.clear();
+    }
+
+    /**
+     * @param pageCount is the number of pages of the list to get the sizes of.
+     * @return the sizes of the first pages of the list that have been planned, up to the count.
+     */
+    synchronized int[] getPageSizes(int pageCount) {
+        int[] sizes = new int[Math.min(pageCount, pageSizes.size())];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = pageSizes.get(i);
+        }
+        return sizes;
+    }
+
+    /**
+     * Restore the sizes of the pages of a saved list. If the plan already starts with the same
+     * sizes, such as when the app was not killed, any pages planned after them are kept so that
+     * pages being prefetched are still used.
+     *
+     * @param sizes is the sizes of the pages from {@link #getPageSizes(int)}.
+     */
+    synchronized void restore(int[] sizes) {
+        boolean samePlan = pageSizes.size() >= sizes.length;
+        for (int i = 0; samePlan && i < sizes.length; i++) {
+            samePlan = pageSizes.get(i) == sizes[i];
+        }
+
+        if (!samePlan) {
+            pageSizes.clear();
+            for (int size : sizes) {
+                pageSizes.add(size);
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.android.stemnews;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Fetches the next pages of articles in the background before the user reaches the end of the
+ * list, and holds them until an {@link ArticleLoader} asks for them. Every page held belongs to
+ * the same query, so any pages held for a previous query are discarded when a new one is used.
+ */
+public final class PagePrefetcher {
+
+    private static final String LOG_TAG = PagePrefetcher.class.getName();
+
+    // The number of pages that can be fetched at the same time
+    private static final int PREFETCH_THREADS = 2;
+
+    private static PagePrefetcher instance;
+
+    private final ExecutorService prefetchExecutor = Executors.newFixedThreadPool(PREFETCH_THREADS);
+    private final Map<String, PrefetchedPage> prefetchedPages = new HashMap<>();
+    private String currentQuery;
+
+    private PagePrefetcher() {
+    }
+
+    /**
+     * Get the single instance of the prefetcher for the application.
+     *
+     * @return the shared {@link PagePrefetcher} object.
+     */
+    public static synchronized PagePrefetcher getInstance() {
+        if (instance == null) {
+            instance = new PagePrefetcher();
+        }
+
+        return instance;
+    }
+
+    /**
+     * Start fetching a page of articles in the background, unless it is already held.
+     *
+     * @param pageUrl         is the HTTP request URL for the page in String form.
+     * @param appContext      is the {@link Context} used to access application resources.
+     * @param maxStaleSeconds is the number of seconds that an out of date cached response can
+     *                        still be used for.
+     * @param fanOut          is true if each search category should be requested separately.
+     *                        The page is also cut from the merge of the categories if the first
+     *                        page of the list was.
+     */
+    public synchronized void prefetch(final String pageUrl, final Context appContext, final int maxStaleSeconds, final boolean fanOut) {
+        checkQuery(pageUrl);
+
+        if (prefetchedPages.containsKey(pageUrl)) {
+            return;
+        }
+
+        final PrefetchedPage prefetchedPage = new PrefetchedPage();
+        prefetchedPage.future = prefetchExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                List<NewsArticle> page = null;
+                try {
+                    if (fanOut || CategoryFanOut.continuesMerge(pageUrl)) {
+                        page = CategoryFanOut.fetchLatestNews(pageUrl, appContext, maxStaleSeconds, true, null);
+                    } else {
+                        page = QueryUtils.fetchLatestNews(pageUrl, appContext, maxStaleSeconds, true, null);
+                    }
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, "Issue prefetching the page", e);
+                } finally {
+                    prefetchedPage.finish(page);
+                }
+            }
+        });
+        prefetchedPages.put(pageUrl, prefetchedPage);
+    }
+
+    /**
+     * Check whether a page has already been fetched, so that it can be shown straight away.
+     *
+     * @param pageUrl is the HTTP request URL for the page in String form.
+     * @return true if the page has finished being fetched.
+     */
+    public synchronized boolean isReady(String pageUrl) {
+        PrefetchedPage prefetchedPage = prefetchedPages.get(pageUrl);
+        return prefetchedPage != null && prefetchedPage.isFinished();
+    }
+
+    /**
+     * Remove a page from the prefetcher, waiting for it to finish being fetched if it is still
+     * in progress.
+     *
+     * @param pageUrl      is the HTTP request URL for the page in String form.
+     * @param cancellation is the {@link CancellationToken} that stops the wait, or null if the
+     *                     wait cannot be cancelled. The page carries on being fetched, so that
+     *                     its response is still stored in the HTTP cache.
+     * @return the list of {@link NewsArticle}s in the page, or null if the page was not being
+     * fetched, the request failed or the wait was cancelled.
+     */
+    public List<NewsArticle> take(String pageUrl, CancellationToken cancellation) {
+        final PrefetchedPage prefetchedPage;
+        synchronized (this) {
+            checkQuery(pageUrl);
+            prefetchedPage = prefetchedPages.remove(pageUrl);
+        }
+
+        if (prefetchedPage == null) {
+            return null;
+        }
+
+        // Wake the wait as soon as the load is cancelled, rather than checking it every so often
+        Runnable wakeListener = new Runnable() {
+            @Override
+            public void run() {
+                synchronized (prefetchedPage) {
+                    prefetchedPage.notifyAll();
+                }
+            }
+        };
+        if (cancellation != null) {
+            cancellation.addListener(wakeListener);
+        }
+
+        try {
+            return prefetchedPage.await(cancellation);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            if (cancellation != null) {
+                cancellation.removeListener(wakeListener);
+            }
+        }
+    }
+
+    /**
+     * Cancel any pages that are still being fetched and throw away all of the pages held.
+     */
+    public synchronized void discard() {
+        for (PrefetchedPage prefetchedPage : prefetchedPages.values()) {
+            prefetchedPage.future.cancel(true);
+
+            // A page that had not started yet never finishes by itself
+            prefetchedPage.finish(null);
+        }
+
+        prefetchedPages.clear();
+        currentQuery = null;
+    }
+
+    // Discard the pages held if the URL belongs to a different query to the current one
+    private void checkQuery(String pageUrl) {
+        // The page number and size are not part of the query, so they are left out when checking for a new query
+        String pageQuery = QueryUtils.canonicalUrl(pageUrl, QueryUtils.PAGE_PARAMETER, QueryUtils.PAGE_SIZE_PARAMETER,
+                ArticleCache.API_KEY_PARAMETER);
+
+        if (!pageQuery.equals(currentQuery)) {
+            discard();
+            currentQuery = pageQuery;
+        }
+    }
+
+    /*
+    A page being fetched, which wakes anything waiting for it once it has finished. The result is
+    set by the prefetch thread, and only read once it has finished, both whilst holding this
+    object's lock
+    */
+    private static final class PrefetchedPage {
+        private Future<?> future;
+        private List<NewsArticle> result;
+        private boolean finished;
+
+        synchronized void finish(List<NewsArticle> page) {
+            if (!finished) {
+                result = page;
+                finished = true;
+                notifyAll();
+            }
+        }
+
+        synchronized boolean isFinished() {
+            return finished;
+        }
+
+        // Wait until the page has finished or the wait is cancelled, returning null if it was
+        synchronized List<NewsArticle> await(CancellationToken cancellation) throws InterruptedException {
+            while (!finished) {
+                if (cancellation != null && cancellation.isCancelled()) {
+                    return null;
+                }
+                wait();
+            }
+            return result;
+        }
+    }
+}
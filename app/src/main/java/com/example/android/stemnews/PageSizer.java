@@ -0,0 +1,175 @@
+package com.example.android.stemnews;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chooses how many articles to request in each page from how quickly recent pages arrived and
+ * how quickly the user is scrolling through the list.
+ * <p>
+ * The time taken to load a page is treated as a round trip plus the time to receive its
+ * articles at the measured throughput. A user scrolling quickly gets pages large enough that they
+ * do not reach the end of one before the next could arrive, so they pay for fewer round trips.
+ * On a slow link, the first page is kept small enough to arrive within the first paint budget.
+ * Otherwise, pages stay at the default size. Each estimate is a moving average that favours the
+ * most recent measurements, and sizes are always a whole number of the minimum size.
+ */
+final class PageSizer {
+
+    // The bounds of the page size, where every page size is a multiple of the minimum
+    static final int MIN_PAGE_SIZE = 5;
+    static final int DEFAULT_PAGE_SIZE = 10;
+    static final int MAX_PAGE_SIZE = 50;
+
+    // The longest that the first page of the list should take to arrive
+    private static final long FIRST_PAINT_BUDGET_MILLIS = 1000;
+
+    // The weight given to each new measurement in the moving averages
+    private static final double SMOOTHING = 0.3;
+
+    // Scroll positions are compared at least this far apart to measure the velocity
+    private static final long VELOCITY_WINDOW_MILLIS = 200;
+
+    // A longer gap between scroll events is a pause, which counts as not scrolling
+    private static final long SCROLL_PAUSE_MILLIS = 2000;
+
+    private static PageSizer instance;
+
+    // The network estimates, which are guarded by the sizer's lock and are 0 until first measured
+    private double roundTripMillis;
+    private double bytesPerMilli;
+    private double bytesPerArticle;
+
+    // The scroll velocity starts from 0, as the user has not scrolled yet
+    private double articlesPerSecond;
+
+    private int windowStartPosition = -1;
+    private long windowStartMillis;
+    private long lastScrollMillis;
+
+    /**
+     * Get the single page sizer for the application.
+     *
+     * @return the shared {@link PageSizer} object.
+     */
+    static synchronized PageSizer getInstance() {
+        if (instance == null) {
+            instance = new PageSizer();
+        }
+
+        return instance;
+    }
+
+    /**
+     * Record the timings of a page of results received from the network.
+     *
+     * @param pageSize       is the page size that was requested.
+     * @param bodyBytes      is the number of bytes in the response body as received.
+     * @param roundTripNanos is the time from sending the request to the start of the response.
+     * @param transferNanos  is the time taken to receive the response body.
+     */
+    synchronized void recordResponse(int pageSize, long bodyBytes, long roundTripNanos, long transferNanos) {
+        if (pageSize <= 0 || bodyBytes <= 0) {
+            return;
+        }
+
+        roundTripMillis = smooth(roundTripMillis, roundTripNanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+        bytesPerArticle = smooth(bytesPerArticle, bodyBytes / (double) pageSize);
+
+        // A body that arrived within the timer's resolution says nothing about the throughput
+        double transferMillis = transferNanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        if (transferMillis >= 1) {
+            bytesPerMilli = smooth(bytesPerMilli, bodyBytes / transferMillis);
+        }
+    }
+
+    /**
+     * Record the position of the list whilst the user is scrolling it.
+     *
+     * @param lastVisiblePosition is the position of the last article that can be seen.
+     * @param nowMillis           is the current time in milliseconds, from a monotonic clock.
+     */
+    synchronized void recordScroll(int lastVisiblePosition, long nowMillis) {
+        if (windowStartPosition < 0 || nowMillis - lastScrollMillis > SCROLL_PAUSE_MILLIS) {
+            // After a pause, the time since the last scroll event counts as not scrolling at all
+            if (windowStartPosition >= 0) {
+                articlesPerSecond -= SMOOTHING * articlesPerSecond;
+            }
+            windowStartPosition = lastVisiblePosition;
+            windowStartMillis = nowMillis;
+        } else if (nowMillis - windowStartMillis >= VELOCITY_WINDOW_MILLIS) {
+            int articlesScrolled = Math.max(0, lastVisiblePosition - windowStartPosition);
+            double velocity = articlesScrolled * 1000.0 / (nowMillis - windowStartMillis);
+            articlesPerSecond += SMOOTHING * (velocity - articlesPerSecond);
+            windowStartPosition = lastVisiblePosition;
+            windowStartMillis = nowMillis;
+        }
+        lastScrollMillis = nowMillis;
+    }
+
+    /**
+     * Work out the page size to request from the current estimates.
+     *
+     * @param firstPage is true if the page is the first one of the list.
+     * @return the page size, which is a multiple of {@link #MIN_PAGE_SIZE} within the bounds.
+     */
+    synchronized int targetPageSize(boolean firstPage) {
+        // Without measurements of the network, keep to the default
+        if (bytesPerMilli <= 0 || bytesPerArticle <= 0) {
+            return DEFAULT_PAGE_SIZE;
+        }
+
+        double millisPerArticle = bytesPerArticle / bytesPerMilli;
+        double targetSize = DEFAULT_PAGE_SIZE;
+
+        /*
+        Whilst a page of n articles loads, the user scrolls through v(r + nt) more of them, where
+        v is the scroll velocity, r the round trip and t the time to receive each article. The
+        page lasts until the next one arrives if n is at least vr / (1 - vt). If articles are
+        scrolled past faster than they can be received, no page size is enough, so use the most
+        */
+        double articlesPerMilli = articlesPerSecond / 1000.0;
+        if (articlesPerMilli > 0) {
+            double remaining = 1 - articlesPerMilli * millisPerArticle;
+            targetSize = (remaining > 0)
+                    ? Math.max(targetSize, articlesPerMilli * roundTripMillis / remaining)
+                    : MAX_PAGE_SIZE;
+        }
+
+        int pageSize = roundToPageSize(targetSize);
+
+        // Keep the first page within the budget for the first paint, as the list is empty until then
+        if (firstPage) {
+            double budgetSize = (FIRST_PAINT_BUDGET_MILLIS - roundTripMillis) / millisPerArticle;
+            while (pageSize > MIN_PAGE_SIZE && pageSize > budgetSize) {
+                pageSize -= MIN_PAGE_SIZE;
+            }
+        }
+
+        return pageSize;
+    }
+
+    // Round a size up to a whole number of the minimum page size, within the bounds
+    static int roundToPageSize(double targetSize) {
+        if (!(targetSize > MIN_PAGE_SIZE)) {
+            return MIN_PAGE_SIZE;
+        }
+        int units = (int) Math.ceil(targetSize / MIN_PAGE_SIZE);
+        return Math.min(units * MIN_PAGE_SIZE, MAX_PAGE_SIZE);
+    }
+
+    synchronized double getRoundTripMillis() {
+        return roundTripMillis;
+    }
+
+    synchronized double getBytesPerSecond() {
+        return bytesPerMilli * 1000;
+    }
+
+    synchronized double getArticlesPerSecond() {
+        return articlesPerSecond;
+    }
+
+    private static double smooth(double average, double sample) {
+        return (average <= 0) ? sample : average + SMOOTHING * (sample - average);
+    }
+}
@@ -1,6 +1,10 @@
 package com.example.android.stemnews;
 
 import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.preference.PreferenceManager;
+import android.support.v4.os.TraceCompat;
 import android.text.TextUtils;
 import android.util.Log;
 
@@ -12,12 +16,24 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.CacheControl;
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
 
 /**
  * Helper methods related to requesting and receiving news data from The Guardian web API.
@@ -25,34 +41,318 @@ import java.util.List;
 public final class QueryUtils {
 
     private static final String LOG_TAG = QueryUtils.class.getName();
-    private static final int READ_TIMEOUT = 10000;
-    private static final int CONNECT_TIMEOUT = 15000;
     private static final int OK_RESPONSE = 200;
 
+    /**
+     * The query URL for news article data from The Guardian web API.
+     * <p>
+     * I use my personal API key from the project gradle.properties file, but this is not included
+     * in the GitHub repo, so other users will need to get their own API Key from:
+     * https://open-platform.theguardian.com/access/on (or use the "test" key).
+     * <p>
+     * To include your personal key in the app, add it to the project's gradle.properties file
+     * and use the following link as a guide to include it in your build.gradle (Module:app) file
+     * under the name GuardianAPIKey:
+     * https://medium.com/code-better/hiding-api-keys-from-your-android-repository-b23f5598b906
+     * <p>
+     * For test purposes, you can simply replace the GuardianAPIKey call in the build.gradle file
+     * with the String "test", but this only gives you a limited number of calls to the servers.
+     * <p>
+     * Debug builds can use a local stand-in for the servers instead, by building with the
+     * guardianApiUrl Gradle property set to its address.
+     */
+    private static final String GUARDIAN_API_URL = BuildConfig.GUARDIAN_API_URL;
+
+    // The query parameters that select which page of results is returned and how many it holds
+    static final String PAGE_PARAMETER = "page";
+    static final String PAGE_SIZE_PARAMETER = "page-size";
+
+    // Joins requests for the same page that are made while one is already in progress
+    private static final RequestCoalescer<List<NewsArticle>> pageRequests = new RequestCoalescer<>();
+
     private QueryUtils() { // Cannot instantiate this class
     }
 
     /**
      * Use a URL in String form to make a HTTP request, parse the JSON response and then create
      * a list of {@link NewsArticle} objects.
+     * <p>
+     * Responses are stored in a HTTP cache that honours the ETag, Last-Modified and Cache-Control
+     * headers sent by the servers. A cached response can also be used for up to maxStaleSeconds
+     * after the servers consider it out of date. If maxStaleSeconds is 0, the cached response is
+     * always revalidated with the servers, which only send the page again if it has changed.
+     * <p>
+     * If an identical request is already in progress, this waits for it and returns the same
+     * list, so the list returned must not be changed. A request that the user is waiting on only
+     * joins another that is also user-visible, so it is never held back behind a background one.
+     * The request is given up on as soon as the {@link CancellationToken} is cancelled, which also
+     * aborts it, closing its connection, unless another caller is still waiting on the same
+     * request.
+     * <p>
+     * Requests that go to the network are kept within the limits of the API key by the shared
+     * {@link RateLimiter}, with background requests giving way to the ones the user is waiting on.
+     *
+     * @param requestUrl      is the HTTP request URL in String form.
+     * @param appContext      is the {@link Context} used to access application resources.
+     * @param maxStaleSeconds is the number of seconds that an out of date cached response can
+     *                        still be used for.
+     * @param background      is true if the user is not waiting on the request, such as when
+     *                        prefetching or syncing.
+     * @param cancellation    is the {@link CancellationToken} for the request, or null if it
+     *                        cannot be cancelled.
+     * @return a list of news articles to display to the user, or null if the request failed or
+     * was cancelled.
+     */
+    public static List<NewsArticle> fetchLatestNews(String requestUrl, Context appContext, int maxStaleSeconds,
+                                                    boolean background, CancellationToken cancellation) {
+        return fetchLatestNews(requestUrl, appContext, maxStaleSeconds, background, cancellation, null);
+    }
+
+    /**
+     * Fetch a page of news articles as above, pausing the {@link RequestTimer} whilst the request
+     * is held back by the {@link RateLimiter}. The timer is only used if this request is the one
+     * that goes to the network, rather than joining another already in progress.
      *
-     * @param requestUrl is the HTTP request URL in String form.
-     * @param appContext is the {@link Context} used to access application resources.
+     * @param requestUrl      is the HTTP request URL in String form.
+     * @param appContext      is the {@link Context} used to access application resources.
+     * @param maxStaleSeconds is the number of seconds that an out of date cached response can
+     *                        still be used for.
+     * @param background      is true if the user is not waiting on the request.
+     * @param cancellation    is the {@link CancellationToken} for the request, or null if it
+     *                        cannot be cancelled.
+     * @param requestTimer    is the {@link RequestTimer} timing the request, or null if it is not
+     *                        timed.
+     * @return a list of news articles to display to the user, or null if the request failed or
+     * was cancelled.
+     */
+    static List<NewsArticle> fetchLatestNews(final String requestUrl, final Context appContext, final int maxStaleSeconds,
+                                             final boolean background, CancellationToken cancellation,
+                                             final RequestTimer requestTimer) {
+        return pageRequests.execute(ArticleCache.queryKey(requestUrl), maxStaleSeconds, background, cancellation,
+                new RequestCoalescer.Fetcher<List<NewsArticle>>() {
+                    @Override
+                    public List<NewsArticle> fetch(CancellationToken requestCancellation) {
+                        // Look up the JSON keys once for the whole response and prepare the streaming parser
+                        ArticleJsonParser articleParser = new ArticleJsonParser(ResponseKeys.fromContext(appContext));
+
+                        List<NewsArticle> fetchedList = fetchLatestNews(requestUrl, NetworkClient.getInstance(appContext),
+                                articleParser, maxStaleSeconds, background, requestCancellation, requestTimer);
+                        return (fetchedList != null) ? Collections.unmodifiableList(fetchedList) : null;
+                    }
+                });
+    }
+
+    /**
+     * @return the {@link RequestCoalescer} for page requests, which counts the requests saved.
+     */
+    static RequestCoalescer<List<NewsArticle>> getPageRequests() {
+        return pageRequests;
+    }
+
+    /**
+     * Use a URL in String form to make a HTTP request with the given {@link OkHttpClient}, parse
+     * the JSON response and then create a list of {@link NewsArticle} objects.
+     *
+     * @param requestUrl      is the HTTP request URL in String form.
+     * @param httpClient      is the {@link OkHttpClient} used to make the request.
+     * @param articleParser   is the {@link ArticleJsonParser} used to read the response stream.
+     * @param maxStaleSeconds is the number of seconds that an out of date cached response can
+     *                        still be used for.
      * @return a list of news articles to display to the user.
      */
-    public static List<NewsArticle> fetchLatestNews(String requestUrl, Context appContext) {
+    static List<NewsArticle> fetchLatestNews(String requestUrl, OkHttpClient httpClient, ArticleJsonParser articleParser, int maxStaleSeconds) {
+        return fetchLatestNews(requestUrl, httpClient, articleParser, maxStaleSeconds, false, null);
+    }
+
+    /**
+     * Fetch a page of news articles with the given {@link OkHttpClient} as above, aborting the
+     * request and the parsing of its response as soon as the {@link CancellationToken} is
+     * cancelled.
+     *
+     * @param requestUrl      is the HTTP request URL in String form.
+     * @param httpClient      is the {@link OkHttpClient} used to make the request.
+     * @param articleParser   is the {@link ArticleJsonParser} used to read the response stream.
+     * @param maxStaleSeconds is the number of seconds that an out of date cached response can
+     *                        still be used for.
+     * @param background      is true if the user is not waiting on the request.
+     * @param cancellation    is the {@link CancellationToken} for the request, or null if it
+     *                        cannot be cancelled.
+     * @return a list of news articles to display to the user, or null if the request failed or
+     * was cancelled.
+     */
+    static List<NewsArticle> fetchLatestNews(String requestUrl, OkHttpClient httpClient, ArticleJsonParser articleParser, int maxStaleSeconds,
+                                             boolean background, CancellationToken cancellation) {
+        return fetchLatestNews(requestUrl, httpClient, articleParser, maxStaleSeconds, background, cancellation, null);
+    }
+
+    /**
+     * Fetch a page of news articles with the given {@link OkHttpClient} as above, tagging the
+     * request with the {@link RequestTimer} so that the {@link RateLimiter} can pause it.
+     *
+     * @param requestUrl      is the HTTP request URL in String form.
+     * @param httpClient      is the {@link OkHttpClient} used to make the request.
+     * @param articleParser   is the {@link ArticleJsonParser} used to read the response stream.
+     * @param maxStaleSeconds is the number of seconds that an out of date cached response can
+     *                        still be used for.
+     * @param background      is true if the user is not waiting on the request.
+     * @param cancellation    is the {@link CancellationToken} for the request, or null if it
+     *                        cannot be cancelled.
+     * @param requestTimer    is the {@link RequestTimer} timing the request, or null if it is not
+     *                        timed.
+     * @return a list of news articles to display to the user, or null if the request failed or
+     * was cancelled.
+     */
+    static List<NewsArticle> fetchLatestNews(String requestUrl, OkHttpClient httpClient, ArticleJsonParser articleParser, int maxStaleSeconds,
+                                             boolean background, CancellationToken cancellation, RequestTimer requestTimer) {
         URL newsUrl = createUrl(requestUrl);
 
-        // Perform HTTP request to the URL and receive a JSON response back
-        String jsonResponse = null;
+        /*
+        Perform HTTP request to the URL and parse the relevant fields straight from the JSON
+        response stream into a list of {@link NewsArticle}s
+        */
+        List<NewsArticle> articleList = null;
         try {
-            jsonResponse = makeHttpRequest(newsUrl);
+            articleList = makeHttpRequest(newsUrl, httpClient, articleParser, maxStaleSeconds, background, cancellation, requestTimer);
         } catch (IOException e) {
             Log.e(LOG_TAG, "Issue making the HTTP request", e);
         }
 
-        // Extract relevant fields from the JSON response and return a list of {@link NewsArticle}s
-        return extractFeatureFromJson(jsonResponse, appContext);
+        return articleList;
+    }
+
+    /**
+     * Rebuild a URL in String form with its query parameters in a fixed order, leaving out any of
+     * the given parameters. The same query therefore always gives the same String.
+     *
+     * @param stringUrl          is the URL in String form.
+     * @param excludedParameters are the names of the query parameters to leave out.
+     * @return the canonical form of the URL.
+     */
+    static String canonicalUrl(String stringUrl, String... excludedParameters) {
+        Uri queryUri = Uri.parse(stringUrl);
+        Uri.Builder canonicalBuilder = queryUri.buildUpon().clearQuery();
+
+        Set<String> parameterNames = new TreeSet<>(queryUri.getQueryParameterNames());
+        parameterNames.removeAll(Arrays.asList(excludedParameters));
+        for (String parameterName : parameterNames) {
+            canonicalBuilder.appendQueryParameter(parameterName, queryUri.getQueryParameter(parameterName));
+        }
+
+        return canonicalBuilder.toString();
+    }
+
+    /**
+     * Check the preferences to see whether each search category should be requested separately
+     * and merged by publication date, instead of as one combined query.
+     *
+     * @param context is any {@link Context} from the application.
+     */
+    static boolean isFanOutEnabled(Context context) {
+        SharedPreferences defaultPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+        return defaultPreferences.getBoolean(
+                context.getString(R.string.settings_category_fan_out_key),
+                context.getResources().getBoolean(R.bool.settings_category_fan_out_default));
+    }
+
+    /**
+     * Create a full URL String for a HTTP request by using the domain/host String as a base and
+     * then appending the relevant parameters onto this. The page number and size requested from
+     * the API come from the {@link PagePlan}, so they can differ from the page of the list.
+     *
+     * @param context is any {@link Context} from the application.
+     * @param page    is the page of the list to request, starting from 1.
+     */
+    static String createUrlString(Context context, int page) {
+        PagePlan.Window pageWindow = PagePlan.getInstance().windowFor(page, PageSizer.getInstance());
+        return createUrlString(context, GUARDIAN_API_URL, pageWindow.apiPage, pageWindow.pageSize);
+    }
+
+    /**
+     * Create a full URL String for a HTTP request as above, but for a fixed API page and page
+     * size. This does not plan any pages in the {@link PagePlan}, so it can be used for requests
+     * that are not part of the list being shown, such as the background sync.
+     *
+     * @param context  is any {@link Context} from the application.
+     * @param apiUrl   is the base URL of the API to request.
+     * @param apiPage  is the page number to request from the API, starting from 1.
+     * @param pageSize is the page size to request from the API.
+     */
+    static String createUrlString(Context context, String apiUrl, int apiPage, int pageSize) {
+        // Get the shared preference keys and values for the app
+        SharedPreferences defaultPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+
+        /* Retrieve the String value or String {@link Set} for each parameter from the preferences.
+         The second parameter is the default value for the preference if one has not already been
+         loaded into the app */
+        String orderBy = defaultPreferences.getString(
+                context.getString(R.string.settings_order_by_key),
+                context.getString(R.string.settings_order_by_default));
+
+        Set<String> searchCategories = defaultPreferences.getStringSet(
+                context.getString(R.string.settings_search_categories_key),
+                new HashSet<>(Arrays.asList(context.getResources().getStringArray(R.array.settings_search_categories_values))));
+
+        /* Combine all of the search category values into a single String, where they are
+         separated with the logical OR String. Sort them first so that the same set of categories
+         always gives the same URL, which lets the {@link ArticleCache} find pages it has stored */
+        searchCategories = new TreeSet<>(searchCategories);
+        StringBuilder categoriesParameter = new StringBuilder();
+        Iterator<String> categoriesIterator = searchCategories.iterator();
+        while (categoriesIterator.hasNext()) {
+            categoriesParameter.append(categoriesIterator.next());
+            if (categoriesIterator.hasNext()) {
+                String combiner = " " + context.getString(R.string.logical_OR) + " ";
+                categoriesParameter.append(combiner);
+            }
+        }
+
+        // Parse the base URL string into an {@link Uri} object
+        Uri baseUri = Uri.parse(apiUrl);
+
+        // Prepare the base URI so that we can add query parameters to it
+        Uri.Builder uriBuilder = baseUri.buildUpon();
+
+        // Append the query parameters and their values
+        uriBuilder.appendQueryParameter("q", categoriesParameter.toString());
+        uriBuilder.appendQueryParameter("order-by", orderBy);
+        uriBuilder.appendQueryParameter(PAGE_SIZE_PARAMETER, String.valueOf(pageSize));
+        uriBuilder.appendQueryParameter(PAGE_PARAMETER, String.valueOf(apiPage));
+        uriBuilder.appendQueryParameter("show-tags", "contributor");
+        uriBuilder.appendQueryParameter("show-fields", "thumbnail");
+        uriBuilder.appendQueryParameter(ArticleCache.API_KEY_PARAMETER, BuildConfig.API_KEY);
+
+        return uriBuilder.toString();
+    }
+
+    /**
+     * Build the URL for the page of results after the one requested by a URL. All of the other
+     * query parameters stay the same.
+     *
+     * @param stringUrl is the URL in String form.
+     * @return the URL for the next page, or null if the page number could not be read.
+     */
+    static String nextPageUrl(String stringUrl) {
+        Uri queryUri = Uri.parse(stringUrl);
+        String currentPage = queryUri.getQueryParameter(PAGE_PARAMETER);
+
+        int nextPage;
+        try {
+            nextPage = (currentPage == null) ? 2 : Integer.parseInt(currentPage) + 1;
+        } catch (NumberFormatException e) {
+            Log.e(LOG_TAG, "Issue reading the page number", e);
+            return null;
+        }
+
+        Uri.Builder nextPageBuilder = queryUri.buildUpon().clearQuery();
+        for (String parameterName : queryUri.getQueryParameterNames()) {
+            String value = parameterName.equals(PAGE_PARAMETER) ? String.valueOf(nextPage) : queryUri.getQueryParameter(parameterName);
+            nextPageBuilder.appendQueryParameter(parameterName, value);
+        }
+        if (currentPage == null) {
+            nextPageBuilder.appendQueryParameter(PAGE_PARAMETER, String.valueOf(nextPage));
+        }
+
+        return nextPageBuilder.toString();
     }
 
     /**
@@ -74,64 +374,109 @@ public final class QueryUtils {
     }
 
     /**
-     * Use the {@link URL} object to make the HTTP request and retrieve the JSON response.
+     * Use the {@link URL} object to make the HTTP request and parse the JSON response as it is
+     * streamed in from the server.
      *
-     * @param inputUrl is the the {@link URL} object.
-     * @return the JSON response as a single String.
+     * @param inputUrl        is the the {@link URL} object.
+     * @param httpClient      is the {@link OkHttpClient} used to make the request.
+     * @param articleParser   is the {@link ArticleJsonParser} used to read the response stream.
+     * @param maxStaleSeconds is the number of seconds that an out of date cached response can
+     *                        still be used for.
+     * @param background      is true if the user is not waiting on the request.
+     * @param cancellation    is the {@link CancellationToken} for the request, or null if it
+     *                        cannot be cancelled.
+     * @param requestTimer    is the {@link RequestTimer} timing the request, or null if it is not
+     *                        timed.
+     * @return the list of {@link NewsArticle} objects parsed from the response, or null if the
+     * request was unsuccessful or cancelled.
      */
-    private static String makeHttpRequest(URL inputUrl) throws IOException {
-        String jsonResponse = "";
+    private static List<NewsArticle> makeHttpRequest(URL inputUrl, OkHttpClient httpClient, ArticleJsonParser articleParser, int maxStaleSeconds,
+                                                     boolean background, CancellationToken cancellation,
+                                                     RequestTimer requestTimer) throws IOException {
+        List<NewsArticle> articleList = null;
 
         // If the URL is null, then return early
         if (inputUrl == null) {
-            return jsonResponse;
+            return articleList;
         }
 
-        // Otherwise, proceed with creating the connection for the HTTP request
-        HttpURLConnection serverConnection = null;
-        InputStream responseStream = null;
-
-        try {
-            serverConnection = (HttpURLConnection) inputUrl.openConnection();
+        /*
+        Tell the response cache how old a cached response can be. A max-age of 0 makes it send a
+        conditional request, so the servers can reply that the page has not changed
+        */
+        CacheControl cacheControl;
+        if (maxStaleSeconds > 0) {
+            cacheControl = new CacheControl.Builder().maxStale(maxStaleSeconds, TimeUnit.SECONDS).build();
+        } else {
+            cacheControl = new CacheControl.Builder().maxAge(0, TimeUnit.SECONDS).build();
+        }
 
-            /*
-            Set the time limits in milliseconds for starting to read data and for establishing
-            the connection
-            */
-            serverConnection.setReadTimeout(READ_TIMEOUT);
-            serverConnection.setConnectTimeout(CONNECT_TIMEOUT);
+        Request newsRequest = new Request.Builder()
+                .url(inputUrl)
+                .cacheControl(cacheControl)
+                .tag(RateLimiter.Priority.class, background ? RateLimiter.BACKGROUND : RateLimiter.USER_VISIBLE)
+                .tag(CancellationToken.class, cancellation)
+                .tag(RequestTimer.class, requestTimer)
+                .build();
+
+        /*
+        Otherwise, proceed with making the HTTP request. The response body is closed once the
+        articles have been read, which returns the connection to the client's pool so that it can
+        be reused by the next request instead of being disconnected
+        */
+        Response serverResponse = null;
+
+        /*
+        If the request is cancelled, cancel the call as well. This closes its connection, so a
+        download or parse in progress fails straight away instead of running on to the timeouts
+        */
+        final Call newsCall = httpClient.newCall(newsRequest);
+        Runnable cancelListener = new Runnable() {
+            @Override
+            public void run() {
+                newsCall.cancel();
+            }
+        };
+        if (cancellation != null) {
+            cancellation.addListener(cancelListener);
+        }
 
-            // Indicate that we want to receive data and then make the connection
-            serverConnection.setRequestMethod("GET");
-            serverConnection.connect();
+        try {
+            serverResponse = newsCall.execute();
 
             /*
-            Get the input stream and then parse it into the JSON response String, checking for
-            the successful response code
+            Get the input stream and then parse the articles directly from it, checking for
+            the successful response code. Any gzip compression is decoded as the stream is read
             */
-            if (serverConnection.getResponseCode() == OK_RESPONSE) {
-                responseStream = serverConnection.getInputStream();
-                jsonResponse = readFromStream(responseStream);
+            if (serverResponse.code() == OK_RESPONSE) {
+                long parseStart = System.nanoTime();
+                TraceCompat.beginSection("QueryUtils.parse");
+                try {
+                    articleList = articleParser.parse(serverResponse.body().byteStream(), cancellation);
+                } finally {
+                    TraceCompat.endSection();
+                    LoadMetrics.record(LoadMetrics.STAGE_PARSE, parseStart);
+                }
             } else {
-                Log.e(LOG_TAG, "Error response code: " + serverConnection.getResponseCode());
+                Log.e(LOG_TAG, "Error response code: " + serverResponse.code());
             }
         } catch (IOException e) {
-            Log.e(LOG_TAG, "Issue retrieving the JSON results.", e);
+            // A cancelled request ends with an exception, which is expected
+            if (cancellation != null && cancellation.isCancelled()) {
+                Log.d(LOG_TAG, "Request cancelled: " + inputUrl.getPath());
+            } else {
+                Log.e(LOG_TAG, "Issue retrieving the JSON results.", e);
+            }
         } finally {
-            /*
-            Once the date is loaded, close the connection and input stream. Closing the input
-            stream could throw an IOException, which is indicated by the method signature
-            */
-            if (serverConnection != null) {
-                serverConnection.disconnect();
+            if (cancellation != null) {
+                cancellation.removeListener(cancelListener);
             }
-
-            if (responseStream != null) {
-                responseStream.close();
+            if (serverResponse != null) {
+                serverResponse.close();
             }
         }
 
-        return jsonResponse;
+        return articleList;
     }
 
     /**
@@ -140,7 +485,7 @@ public final class QueryUtils {
      * @param responseStream is the input stream response from the HTTP request to the servers.
      * @return the JSON response as a single String.
      */
-    private static String readFromStream(InputStream responseStream) throws IOException {
+    static String readFromStream(InputStream responseStream) throws IOException {
         StringBuilder outputString = new StringBuilder();
 
         if (responseStream != null) {
@@ -165,12 +510,15 @@ public final class QueryUtils {
     /**
      * Extract the news article data from the JSON response String and use it to create a list of
      * {@link NewsArticle} objects to display to the user.
+     * <p>
+     * This builds the full JSON object tree for the response, so it is no longer used for network
+     * requests, but it is kept as the reference implementation for {@link ArticleJsonParser}.
      *
      * @param newsArticleJson is the JSON response as a single String.
-     * @param appContext      is the {@link Context} used to access application resources.
+     * @param keys            is the {@link ResponseKeys} object holding the JSON keys.
      * @return the list of {@link NewsArticle} objects to be displayed in the app.
      */
-    private static List<NewsArticle> extractFeatureFromJson(String newsArticleJson, Context appContext) {
+    static List<NewsArticle> extractFeatureFromJson(String newsArticleJson, ResponseKeys keys) {
         // If the JSON string is empty or null, then return early
         if (TextUtils.isEmpty(newsArticleJson)) {
             return null;
@@ -184,22 +532,23 @@ public final class QueryUtils {
             Extract the root {@link JSONObject} from the JSON response String and then obtain
             the "status" String to find out the status of the response
             */
-            JSONObject rootJsonObject = new JSONObject(newsArticleJson).getJSONObject(appContext.getString(R.string.response_key));
-            String responseStatus = rootJsonObject.getString(appContext.getString(R.string.status_key));
+            JSONObject rootJsonObject = new JSONObject(newsArticleJson).getJSONObject(keys.responseKey);
+            String responseStatus = rootJsonObject.getString(keys.statusKey);
 
             /*
             If the status String is "ok", try to parse the rest of the JSON response to get
             the list of news articles. If there's a problem with the way the JSON is formatted,
             a JSONException object will be thrown
             */
-            if (responseStatus.equals(appContext.getString(android.R.string.ok).toLowerCase())) {
+            if (responseStatus.equals(keys.okStatus)) {
                 /*
                 Extract the JSONArray associated with the key called "results", which represents
                 the list of article objects
                 */
-                JSONArray articleArray = rootJsonObject.getJSONArray(appContext.getString(R.string.results_key));
+                JSONArray articleArray = rootJsonObject.getJSONArray(keys.resultsKey);
 
-                // For each article in the articleArray, create a new {@link NewsArticle} object
+                // For each article in the articleArray, add a new {@link NewsArticle} to the page
+                ArticleStore pageStore = new ArticleStore();
                 for (int i = 0; i < articleArray.length(); i++) {
                     /*
                     Get a single article object at the current index position within the list of
@@ -207,39 +556,47 @@ public final class QueryUtils {
                     */
                     JSONObject currentArticle = articleArray.getJSONObject(i);
 
+                    // Extract the article ID String
+                    String articleId = currentArticle.getString(keys.idKey);
+
                     // Extract the article title String
-                    String articleTitle = currentArticle.getString(appContext.getString(R.string.webTitle_key));
+                    String articleTitle = currentArticle.getString(keys.webTitleKey);
 
                     // Extract the section name String
-                    String sectionName = currentArticle.getString(appContext.getString(R.string.sectionName_key));
+                    String sectionName = currentArticle.getString(keys.sectionNameKey);
 
                     // Extract the first author's name in the list of authors if any are given. If
                     // there are multiple authors, indicate this with an ampersand and ellipses
-                    JSONArray authorsArray = currentArticle.getJSONArray(appContext.getString(R.string.tags_key));
+                    JSONArray authorsArray = currentArticle.getJSONArray(keys.tagsKey);
                     String authorString = null;
                     if (authorsArray.length() > 0) {
                         JSONObject author = authorsArray.getJSONObject(0);
-                        authorString = author.getString(appContext.getString(R.string.webTitle_key));
+                        authorString = author.getString(keys.webTitleKey);
 
                         if (authorsArray.length() > 1) {
-                            authorString += appContext.getString(R.string.multiple_authors);
+                            authorString += keys.multipleAuthors;
                         }
                     }
 
                     // Extract the publication date String
-                    String datePublished = currentArticle.getString(appContext.getString(R.string.webPublicationDate_key));
+                    String datePublished = currentArticle.getString(keys.webPublicationDateKey);
 
                     // Extract the web URL String
-                    String articleUrl = currentArticle.getString(appContext.getString(R.string.webUrl_key));
+                    String articleUrl = currentArticle.getString(keys.webUrlKey);
+
+                    // Extract the thumbnail URL String, if the article has one
+                    JSONObject articleFields = currentArticle.optJSONObject(keys.fieldsKey);
+                    String thumbnailUrl = (articleFields != null) ? articleFields.optString(keys.thumbnailKey, null) : null;
 
-                    // Create a new {@link NewsArticle} object with the outputs from the parsing
-                    NewsArticle article = new NewsArticle(articleTitle, sectionName, authorString, datePublished, articleUrl);
+                    // Store a new {@link NewsArticle} with the outputs from the parsing
+                    NewsArticle article = pageStore.add(articleId, articleTitle, sectionName, authorString, datePublished,
+                            articleUrl, thumbnailUrl);
 
                     // Add the new {@link NewsArticle} to the list of articles
                     articleList.add(article);
                 }
             } else {
-                Log.e(LOG_TAG, responseStatus + ": " + rootJsonObject.getString(appContext.getString(R.string.message_key)));
+                Log.e(LOG_TAG, responseStatus + ": " + rootJsonObject.getString(keys.messageKey));
             }
         } catch (JSONException e) {
             Log.e(LOG_TAG, "Problem parsing the JSON results", e);
@@ -0,0 +1,441 @@
+package com.example.android.stemnews;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Keeps the requests made with the app's Guardian API key within the limits of the key, so that
+ * scrolling quickly and refreshing cannot burst past them and get the app throttled.
+ * <p>
+ * Requests take a token from a bucket that holds up to one second's worth of requests and is
+ * refilled at the rate the key allows, so short bursts go straight through and longer runs are
+ * spread out at the highest rate allowed. Background requests, such as prefetching and syncing,
+ * leave a few tokens in the bucket and give way to any waiting request that the user is looking
+ * at. A daily budget is also counted, after which requests fail straight away instead of using up
+ * more of the quota on errors.
+ * <p>
+ * If the servers still reply that too many requests have been made (HTTP 429), every request
+ * waits for at least the time given in the Retry-After header, plus a random part of a backoff
+ * that doubles each time this happens in a row. The random part stops every waiting request
+ * retrying at the same moment.
+ * <p>
+ * A request waiting for a token sleeps until the next one is due or the backoff ends. It is woken
+ * sooner if something changes that could let it go earlier, such as a request that the user was
+ * waiting on leaving, or if its {@link CancellationToken} is cancelled.
+ * <p>
+ * Only requests that go to the network take a token, as the limiter runs as a network
+ * interceptor after the HTTP cache. Requests are only limited if they are tagged with a
+ * {@link Priority}.
+ */
+final class RateLimiter {
+
+    private static final String LOG_TAG = RateLimiter.class.getName();
+
+    static final int TOO_MANY_REQUESTS = 429;
+
+    // The number of times a throttled request is retried before its response is returned
+    private static final int MAX_THROTTLED_RETRIES = 2;
+
+    // The backoff after the first throttled response, and the most that it can grow to
+    private static final long BASE_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 60000;
+
+    /*
+    The longest that a request waits for a token. If the servers have asked for a longer wait,
+    the request fails instead, so that the loader can show its cached copy of the page
+    */
+    private static final long MAX_WAIT_MILLIS = 15000;
+
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    // Returned by tryAcquire when the daily budget has been used up
+    static final long BUDGET_USED_UP = -1;
+
+    static final Priority USER_VISIBLE = new Priority(false);
+    static final Priority BACKGROUND = new Priority(true);
+
+    private static RateLimiter instance;
+
+    private final int capacity;
+    private final double tokensPerMilli;
+    private final int backgroundReserve;
+    private final int dailyBudget;
+    private final Random jitter = new Random();
+
+    // The state of the bucket, which is guarded by the limiter's lock
+    private double tokens;
+    private long lastRefillMillis;
+    private long blockedUntilMillis;
+    private int consecutiveThrottles;
+    private int userVisibleWaiting;
+    private int waitingCount;
+    private long dayStartMillis = -1;
+    private int dayCount;
+    private long throttledCount;
+
+    /**
+     * The priority of a request, which is set as its tag of this type.
+     */
+    static final class Priority {
+        final boolean background;
+
+        private Priority(boolean background) {
+            this.background = background;
+        }
+    }
+
+    /**
+     * Create a rate limiter with a full bucket.
+     *
+     * @param requestsPerSecond is the number of requests that the API key allows each second.
+     * @param dailyBudget       is the number of requests that the API key allows each day.
+     * @param backgroundReserve is the number of tokens that background requests leave in the
+     *                          bucket for requests that the user is waiting on.
+     * @param nowMillis         is the current time in milliseconds from {@link #nowMillis()}.
+     */
+    RateLimiter(int requestsPerSecond, int dailyBudget, int backgroundReserve, long nowMillis) {
+        this.capacity = Math.max(1, requestsPerSecond);
+        this.tokensPerMilli = capacity / 1000.0;
+        this.backgroundReserve = Math.min(backgroundReserve, capacity - 1);
+        this.dailyBudget = dailyBudget;
+        this.tokens = capacity;
+        this.lastRefillMillis = nowMillis;
+    }
+
+    /**
+     * Get the single rate limiter shared by every request made with the app's API key, creating
+     * it on first use with the limits from the app's integer resources.
+     *
+     * @param context is any {@link Context} from the application.
+     * @return the shared {@link RateLimiter} object.
+     */
+    static synchronized RateLimiter getInstance(Context context) {
+        if (instance == null) {
+            Resources resources = context.getApplicationContext().getResources();
+            instance = new RateLimiter(
+                    resources.getInteger(R.integer.api_requests_per_second),
+                    resources.getInteger(R.integer.api_requests_per_day),
+                    resources.getInteger(R.integer.api_background_reserve),
+                    nowMillis());
+        }
+
+        return instance;
+    }
+
+    /**
+     * @return the current time in milliseconds from a clock that is not changed by the user.
+     */
+    static long nowMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    /**
+     * Take a token from the bucket if one can be used by a request with this priority.
+     *
+     * @param priority  is the {@link Priority} of the request.
+     * @param nowMillis is the current time in milliseconds from {@link #nowMillis()}.
+     * @return 0 if a token was taken, the time in milliseconds to wait before trying again
+     * otherwise, or {@link #BUDGET_USED_UP} if the daily budget has run out.
+     */
+    synchronized long tryAcquire(Priority priority, long nowMillis) {
+        refill(nowMillis);
+
+        if (dayStartMillis < 0 || nowMillis - dayStartMillis >= DAY_MILLIS) {
+            dayStartMillis = nowMillis;
+            dayCount = 0;
+        }
+        if (dayCount >= dailyBudget) {
+            return BUDGET_USED_UP;
+        }
+
+        if (nowMillis < blockedUntilMillis) {
+            return blockedUntilMillis - nowMillis;
+        }
+
+        // Background requests leave the reserve, plus a token for each waiting user-visible request
+        double needed = 1;
+        if (priority.background) {
+            needed += backgroundReserve + userVisibleWaiting;
+        }
+
+        if (tokens >= needed) {
+            tokens -= 1;
+            dayCount++;
+            return 0;
+        }
+
+        return (long) Math.ceil((needed - tokens) / tokensPerMilli);
+    }
+
+    /**
+     * Wait until a token can be taken for a request with this priority. This blocks, so it must
+     * be called on a background thread.
+     *
+     * @param priority     is the {@link Priority} of the request.
+     * @param call         is the {@link Call} making the request, which stops the wait if cancelled.
+     * @param cancellation is the {@link CancellationToken} for the request, which also stops the
+     *                     wait straight away if cancelled, or null if there isn't one.
+     * @throws IOException if the call was cancelled, the daily budget has run out or the wait
+     *                     would be too long.
+     */
+    void acquire(Priority priority, Call call, CancellationToken cancellation) throws IOException {
+        // Wake the waiting requests when this one is cancelled, so that it stops waiting straight away
+        Runnable wakeListener = new Runnable() {
+            @Override
+            public void run() {
+                synchronized (RateLimiter.this) {
+                    RateLimiter.this.notifyAll();
+                }
+            }
+        };
+        if (cancellation != null) {
+            cancellation.addListener(wakeListener);
+        }
+
+        try {
+            synchronized (this) {
+                acquireLocked(priority, call, cancellation);
+            }
+        } finally {
+            if (cancellation != null) {
+                cancellation.removeListener(wakeListener);
+            }
+        }
+    }
+
+    // Wait for a token whilst holding the limiter's lock, which is released during each wait
+    private void acquireLocked(Priority priority, Call call, CancellationToken cancellation) throws IOException {
+        if (!priority.background) {
+            userVisibleWaiting++;
+        }
+
+        try {
+            long deadline = nowMillis() + MAX_WAIT_MILLIS;
+            while (true) {
+                if (call.isCanceled() || (cancellation != null && cancellation.isCancelled())) {
+                    throw new IOException("Canceled");
+                }
+
+                long now = nowMillis();
+                long waitMillis = tryAcquire(priority, now);
+                if (waitMillis == 0) {
+                    return;
+                } else if (waitMillis == BUDGET_USED_UP) {
+                    throw new IOException("The daily request budget for the API key has been used up");
+                } else if (now + waitMillis > deadline) {
+                    throw new IOException("Throttled by the servers for another " + waitMillis + "ms");
+                }
+
+                // Sleep until the next token is due or the backoff ends, unless woken sooner
+                waitingCount++;
+                try {
+                    wait(waitMillis);
+                } finally {
+                    waitingCount--;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted whilst waiting to make the request");
+        } finally {
+            // Background requests leave a token for each waiting user-visible request, so they may now go
+            if (!priority.background) {
+                userVisibleWaiting--;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Record the response to a request that went to the network. If the servers replied that
+     * too many requests have been made, empty the bucket and hold back every request until the
+     * backoff has passed.
+     *
+     * @param responseCode is the HTTP response code.
+     * @param retryAfter   is the value of the Retry-After header, or null if there isn't one.
+     * @param nowMillis    is the current time in milliseconds from {@link #nowMillis()}.
+     */
+    synchronized void recordResponse(int responseCode, String retryAfter, long nowMillis) {
+        if (responseCode != TOO_MANY_REQUESTS) {
+            consecutiveThrottles = 0;
+            return;
+        }
+
+        consecutiveThrottles++;
+        throttledCount++;
+        long retryAfterMillis = parseRetryAfter(retryAfter, System.currentTimeMillis());
+        long delayMillis = backoffMillis(retryAfterMillis, consecutiveThrottles, jitter.nextDouble());
+        blockedUntilMillis = Math.max(blockedUntilMillis, nowMillis + delayMillis);
+        tokens = 0;
+
+        // Wake the waiting requests so that they wait for the end of the new backoff instead
+        notifyAll();
+
+        Log.w(LOG_TAG, "Throttled by the servers, holding back requests for " + delayMillis + "ms");
+    }
+
+    /**
+     * Work out how long to hold back requests after a throttled response. This is at least the
+     * time the servers asked for, plus between half and all of an exponential backoff.
+     *
+     * @param retryAfterMillis     is the time in milliseconds that the servers asked for.
+     * @param consecutiveThrottles is the number of throttled responses in a row, including this one.
+     * @param jitterFraction       is a random number from 0 (inclusive) to 1 (exclusive).
+     * @return the time in milliseconds to hold back requests for.
+     */
+    static long backoffMillis(long retryAfterMillis, int consecutiveThrottles, double jitterFraction) {
+        int doublings = Math.min(Math.max(consecutiveThrottles - 1, 0), 16);
+        long backoff = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << doublings);
+        return Math.max(retryAfterMillis, 0) + backoff / 2 + (long) (backoff / 2 * jitterFraction);
+    }
+
+    /**
+     * Read the Retry-After header, which is either a number of seconds or a HTTP date.
+     *
+     * @param retryAfter      is the value of the header, or null if there isn't one.
+     * @param wallClockMillis is the current time in milliseconds since the epoch.
+     * @return the time in milliseconds to wait, or 0 if the header is missing or can't be read.
+     */
+    static long parseRetryAfter(String retryAfter, long wallClockMillis) {
+        if (retryAfter == null) {
+            return 0;
+        }
+
+        String value = retryAfter.trim();
+        try {
+            return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+        } catch (NumberFormatException e) {
+            // Not a number of seconds, so try reading it as a date
+        }
+
+        SimpleDateFormat httpDateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        httpDateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            Date retryDate = httpDateFormat.parse(value);
+            return Math.max(0, retryDate.getTime() - wallClockMillis);
+        } catch (ParseException e) {
+            Log.e(LOG_TAG, "Could not read the Retry-After header: " + value);
+            return 0;
+        }
+    }
+
+    /*
+    Add the tokens earned since the last refill, up to the size of the bucket. If a whole token
+    was added, wake the waiting requests, as one of them may now be able to take it
+    */
+    private void refill(long nowMillis) {
+        long elapsedMillis = nowMillis - lastRefillMillis;
+        if (elapsedMillis > 0) {
+            double previousTokens = tokens;
+            tokens = Math.min(capacity, tokens + elapsedMillis * tokensPerMilli);
+            lastRefillMillis = nowMillis;
+
+            if (waitingCount > 0 && (int) tokens > (int) previousTokens) {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return the number of requests that can be made straight away.
+     */
+    synchronized int getAvailableTokens() {
+        refill(nowMillis());
+        return (int) tokens;
+    }
+
+    /**
+     * @return the number of requests left in the daily budget.
+     */
+    synchronized int getRemainingToday() {
+        if (dayStartMillis < 0 || nowMillis() - dayStartMillis >= DAY_MILLIS) {
+            return dailyBudget;
+        }
+        return Math.max(0, dailyBudget - dayCount);
+    }
+
+    /**
+     * @return the number of throttled responses from the servers.
+     */
+    synchronized long getThrottledCount() {
+        return throttledCount;
+    }
+
+    /**
+     * Create the interceptor that takes a token before each tagged request goes to the network and
+     * records its response. This must be added as a network interceptor, so that responses from
+     * the HTTP cache do not use up the budget.
+     *
+     * @return the network {@link Interceptor}.
+     */
+    Interceptor networkInterceptor() {
+        return new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                Request request = chain.request();
+                Priority priority = request.tag(Priority.class);
+                if (priority == null) {
+                    return chain.proceed(request);
+                }
+
+                // The time waiting for a token does not count towards a timed request's limit
+                RequestTimer requestTimer = request.tag(RequestTimer.class);
+                if (requestTimer != null) {
+                    requestTimer.pause();
+                }
+                try {
+                    acquire(priority, chain.call(), request.tag(CancellationToken.class));
+                } finally {
+                    if (requestTimer != null) {
+                        requestTimer.resume();
+                    }
+                }
+
+                Response response = chain.proceed(request);
+                recordResponse(response.code(), response.header("Retry-After"), nowMillis());
+                return response;
+            }
+        };
+    }
+
+    /**
+     * Create the interceptor that retries tagged requests that were throttled by the servers. The
+     * network interceptor holds each retry back until the backoff has passed.
+     *
+     * @return the application {@link Interceptor}.
+     */
+    Interceptor retryInterceptor() {
+        return new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                Request request = chain.request();
+                Response response = chain.proceed(request);
+                if (request.tag(Priority.class) == null) {
+                    return response;
+                }
+
+                for (int retry = 0; retry < MAX_THROTTLED_RETRIES && response.code() == TOO_MANY_REQUESTS; retry++) {
+                    response.close();
+                    response = chain.proceed(request);
+                }
+                return response;
+            }
+        };
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.android.stemnews;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.support.v7.app.ActionBar;
+import android.support.v7.app.AppCompatActivity;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.view.View;
+import android.widget.TextView;
+import android.widget.Toast;
+
+/**
+ * Screen that shows the text of an article inside the app, instead of loading the full web page
+ * in a browser. The body is taken from the {@link ArticleBodies} store when it has been
+ * prefetched, so it opens straight away and without a network connection. Otherwise, it is
+ * fetched whilst the title is shown. The web page can still be opened from the menu.
+ */
+public class ReaderActivity extends AppCompatActivity {
+
+    // The values of the article shown, which are passed in the starting {@link Intent}
+    private static final String EXTRA_ARTICLE_ID = "com.example.android.stemnews.ARTICLE_ID";
+    private static final String EXTRA_TITLE = "com.example.android.stemnews.TITLE";
+    private static final String EXTRA_BYLINE = "com.example.android.stemnews.BYLINE";
+    private static final String EXTRA_WEB_URL = "com.example.android.stemnews.WEB_URL";
+
+    private String webUrl;
+    private TextView bodyTextView;
+    private TextView emptyStateView;
+    private View loadingIndicator;
+
+    /**
+     * Create an {@link Intent} that opens an article in the reader.
+     *
+     * @param context is the {@link Context} starting the reader.
+     * @param article is the {@link NewsArticle} to show.
+     * @return the {@link Intent} to start the activity with.
+     */
+    static Intent createIntent(Context context, NewsArticle article) {
+        // Show the section, author and date on one line, leaving out any that are missing
+        StringBuilder byline = new StringBuilder(article.getNewsSection());
+        String separator = context.getString(R.string.reader_byline_separator);
+        if (article.getAuthorName() != null) {
+            byline.append(separator).append(article.getAuthorName());
+        }
+        String publishedDay = ArticleDates.formatDay(article.getPublishedMillis());
+        if (publishedDay != null) {
+            byline.append(separator).append(publishedDay);
+        }
+
+        Intent readerIntent = new Intent(context, ReaderActivity.class);
+        readerIntent.putExtra(EXTRA_ARTICLE_ID, article.getArticleId());
+        readerIntent.putExtra(EXTRA_TITLE, article.getStore().getDisplayTitle(article.getIndex()));
+        readerIntent.putExtra(EXTRA_BYLINE, byline.toString());
+        readerIntent.putExtra(EXTRA_WEB_URL, article.getWebURL());
+        return readerIntent;
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_reader);
+
+        // Add up navigation arrow to the action bar
+        ActionBar readerActionBar = getSupportActionBar();
+        if (readerActionBar != null) {
+            readerActionBar.setDisplayHomeAsUpEnabled(true);
+        }
+
+        Intent readerIntent = getIntent();
+        final String articleId = readerIntent.getStringExtra(EXTRA_ARTICLE_ID);
+        webUrl = readerIntent.getStringExtra(EXTRA_WEB_URL);
+        ((TextView) findViewById(R.id.reader_title)).setText(readerIntent.getStringExtra(EXTRA_TITLE));
+        ((TextView) findViewById(R.id.reader_byline)).setText(readerIntent.getStringExtra(EXTRA_BYLINE));
+        bodyTextView = findViewById(R.id.reader_body);
+        emptyStateView = findViewById(R.id.reader_empty_text);
+        loadingIndicator = findViewById(R.id.reader_progress);
+
+        // Only show the loading indicator if the body has to come from the network
+        final ArticleBodies articleBodies = ArticleBodies.getInstance(this);
+        final boolean deviceOnline = isDeviceOnline();
+        if (deviceOnline) {
+            loadingIndicator.setVisibility(View.VISIBLE);
+        }
+
+        // The stored body is read from disk, so load it on a background thread
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final String body = articleBodies.load(articleId, deviceOnline);
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!isFinishing()) {
+                            showBody(body, deviceOnline);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.reader_menu, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+            case android.R.id.home:
+                // Go back to whichever list the article was opened from, the main one or search
+                finish();
+                return true;
+            case R.id.open_in_browser:
+                openInBrowser();
+                return true;
+        }
+
+        return super.onOptionsItemSelected(item);
+    }
+
+    private void showBody(String body, boolean deviceOnline) {
+        loadingIndicator.setVisibility(View.GONE);
+        if (body != null) {
+            bodyTextView.setText(body);
+            emptyStateView.setVisibility(View.GONE);
+        } else {
+            emptyStateView.setText(deviceOnline ? R.string.reader_no_body : R.string.reader_not_downloaded);
+            emptyStateView.setVisibility(View.VISIBLE);
+        }
+    }
+
+    /*
+    Send an intent to any available web browser to open the full article, or indicate with a
+    {@link Toast} message that there isn't one available
+    */
+    private void openInBrowser() {
+        Intent browserIntent = new Intent(Intent.ACTION_VIEW, Uri.parse(webUrl));
+        if (browserIntent.resolveActivity(getPackageManager()) != null) {
+            startActivity(browserIntent);
+        } else {
+            Toast.makeText(getApplicationContext(), getString(R.string.no_browser_app), Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    private boolean isDeviceOnline() {
+        ConnectivityManager deviceConnectivity = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (deviceConnectivity == null) {
+            return false;
+        }
+
+        NetworkInfo deviceNetworkInfo = deviceConnectivity.getActiveNetworkInfo();
+        return deviceNetworkInfo != null && deviceNetworkInfo.isConnected();
+    }
+}
@@ -0,0 +1,233 @@
+package com.example.android.stemnews;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Makes sure that only one request for the same page is made at a time. A pull-to-refresh, the
+ * refresh menu item and the scroll listener can all ask for the same page within moments of each
+ * other, so a request that arrives while an identical one is in progress waits for it and shares
+ * its result instead of opening another connection.
+ * <p>
+ * A request can only join one in progress that is at least as fresh as it needs. For example, a
+ * refresh that must check with the servers does not join a request that is allowed to use an out
+ * of date cached response. In the same way, a request that the user is waiting on does not join
+ * a background one, such as a prefetch or the sync, as it would then be held back behind the
+ * tokens that the {@link RateLimiter} keeps in reserve for the user. A background request can
+ * still join one that the user is waiting on.
+ * <p>
+ * Each caller can give up on a request with its own {@link CancellationToken}. It then stops
+ * waiting straight away, but the request itself is only cancelled once every caller that needed
+ * it has given up, so that one caller leaving does not fail the request for the others. The
+ * request is made on the coalescer's own threads rather than by the caller that started it, so
+ * that this caller can leave in the same way as the rest.
+ *
+ * @param <T> is the type of the result of a request.
+ */
+final class RequestCoalescer<T> {
+
+    private final Map<String, InFlight<T>> inFlightRequests = new HashMap<>();
+    private final ExecutorService fetchExecutor = Executors.newCachedThreadPool();
+    private final AtomicLong startedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong abandonedCount = new AtomicLong();
+
+    /**
+     * Interface for carrying out a request when there is no identical one in progress.
+     */
+    interface Fetcher<T> {
+        /**
+         * @param cancellation is cancelled once every caller waiting on the request has given up.
+         * @return the result of the request.
+         */
+        T fetch(CancellationToken cancellation);
+    }
+
+    // A request in progress, which other threads wait on for its result
+    private static final class InFlight<T> {
+        final int maxStaleSeconds;
+        final boolean background;
+        final CancellationToken cancellation = new CancellationToken();
+
+        // The number of callers still waiting on the request, guarded by inFlightRequests
+        int callerCount;
+
+        // Guarded by the InFlight object itself, which the waiting callers are notified on
+        boolean finished;
+        T result;
+
+        InFlight(int maxStaleSeconds, boolean background) {
+            this.maxStaleSeconds = maxStaleSeconds;
+            this.background = background;
+        }
+    }
+
+    /**
+     * Carry out a request, or wait for an identical one already in progress and return its
+     * result instead. This blocks, so it must be called on a background thread.
+     *
+     * @param requestKey      is the key that identifies identical requests, such as the request
+     *                        URL with its parameters in a fixed order.
+     * @param maxStaleSeconds is the number of seconds that an out of date cached response can
+     *                        still be used for.
+     * @param background      is true if the user is not waiting on the request.
+     * @param cancellation    is the {@link CancellationToken} for this caller, or null if it
+     *                        cannot give up on the request.
+     * @param fetcher         carries out the request if it is not joining another one.
+     * @return the result of the request, which is shared by every caller that joined it, or null
+     * if this caller gave up on it.
+     */
+    T execute(final String requestKey, int maxStaleSeconds, boolean background, CancellationToken cancellation,
+              final Fetcher<T> fetcher) {
+        if (cancellation != null && cancellation.isCancelled()) {
+            return null;
+        }
+
+        final InFlight<T> inFlight;
+        boolean leader = false;
+        synchronized (inFlightRequests) {
+            InFlight<T> existing = inFlightRequests.get(requestKey);
+            if (existing == null || existing.maxStaleSeconds > maxStaleSeconds || (existing.background && !background)) {
+                /*
+                Start a new request. If it is replacing one that is too stale or has a lower
+                priority, the older one still finishes for the callers waiting on it, but new
+                callers join this one instead
+                */
+                inFlight = new InFlight<>(maxStaleSeconds, background);
+                inFlightRequests.put(requestKey, inFlight);
+                leader = true;
+            } else {
+                inFlight = existing;
+            }
+            inFlight.callerCount++;
+        }
+
+        // Stop waiting if this caller gives up, and cancel the request if no other caller needs it
+        final AtomicBoolean left = new AtomicBoolean();
+        Runnable leaveListener = new Runnable() {
+            @Override
+            public void run() {
+                if (left.compareAndSet(false, true)) {
+                    abandonedCount.incrementAndGet();
+                    leave(requestKey, inFlight);
+                }
+            }
+        };
+        if (cancellation != null) {
+            cancellation.addListener(leaveListener);
+        }
+
+        if (leader) {
+            startedCount.incrementAndGet();
+            fetchExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    fetchFor(requestKey, inFlight, fetcher);
+                }
+            });
+        } else {
+            coalescedCount.incrementAndGet();
+        }
+
+        try {
+            awaitResult(inFlight, cancellation);
+        } catch (InterruptedException e) {
+            // An interrupted caller gives up on the request in the same way as a cancelled one
+            Thread.currentThread().interrupt();
+            leaveListener.run();
+            return null;
+        } finally {
+            if (cancellation != null) {
+                cancellation.removeListener(leaveListener);
+            }
+            left.set(true);
+        }
+
+        if (cancellation != null && cancellation.isCancelled()) {
+            return null;
+        }
+        synchronized (inFlight) {
+            return inFlight.result;
+        }
+    }
+
+    /*
+    Carry out the request on one of the coalescer's threads and pass the result on to every
+    waiting caller. It carries on as long as any caller still needs the result, and is only
+    cancelled once the last of them gives up
+    */
+    private void fetchFor(String requestKey, InFlight<T> inFlight, Fetcher<T> fetcher) {
+        T result = null;
+        try {
+            result = fetcher.fetch(inFlight.cancellation);
+        } finally {
+            synchronized (inFlightRequests) {
+                if (inFlightRequests.get(requestKey) == inFlight) {
+                    inFlightRequests.remove(requestKey);
+                }
+            }
+            synchronized (inFlight) {
+                inFlight.result = result;
+                inFlight.finished = true;
+                inFlight.notifyAll();
+            }
+        }
+    }
+
+    // Wait until the request finishes or this caller gives up on it
+    private static <T> void awaitResult(InFlight<T> inFlight, CancellationToken cancellation) throws InterruptedException {
+        synchronized (inFlight) {
+            while (!inFlight.finished && (cancellation == null || !cancellation.isCancelled())) {
+                inFlight.wait();
+            }
+        }
+    }
+
+    /*
+    Remove a caller that has given up from a request. If it was the last one, nothing needs the
+    result any more, so the request is cancelled and new callers start a fresh one instead
+    */
+    private void leave(String requestKey, InFlight<T> inFlight) {
+        boolean lastCaller;
+        synchronized (inFlightRequests) {
+            lastCaller = --inFlight.callerCount == 0;
+            if (lastCaller && inFlightRequests.get(requestKey) == inFlight) {
+                inFlightRequests.remove(requestKey);
+            }
+        }
+
+        if (lastCaller) {
+            inFlight.cancellation.cancel();
+        }
+
+        // Wake the callers waiting on the request so that the one that gave up can return
+        synchronized (inFlight) {
+            inFlight.notifyAll();
+        }
+    }
+
+    /**
+     * @return the number of requests that were actually made.
+     */
+    long getStartedCount() {
+        return startedCount.get();
+    }
+
+    /**
+     * @return the number of requests that were saved by joining one already in progress.
+     */
+    long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * @return the number of times that a caller gave up on a request before it finished.
+     */
+    long getAbandonedCount() {
+        return abandonedCount.get();
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.android.stemnews;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long a request has actually been in progress, so that it can be given up on if it
+ * takes too long. The time spent queued for a thread before the request starts, and the time it
+ * is held back by the {@link RateLimiter}, are not counted, as neither says anything about how
+ * quickly the servers are replying.
+ * <p>
+ * The request's thread pauses and resumes the timer and marks it as finished, whilst another
+ * thread waits on it, without either of them having to check it at intervals.
+ */
+final class RequestTimer {
+
+    // The time counted before the last resume, and when that was, both guarded by this object
+    private long countedNanos;
+    private long resumedNanos;
+    private boolean running;
+    private boolean finished;
+
+    /**
+     * Start or carry on counting the time, such as when the request starts running or is let
+     * through by the {@link RateLimiter}.
+     */
+    synchronized void resume() {
+        if (!running && !finished) {
+            running = true;
+            resumedNanos = System.nanoTime();
+            notifyAll();
+        }
+    }
+
+    /**
+     * Stop counting the time until the timer is resumed, such as whilst the request is waiting
+     * for the {@link RateLimiter}.
+     */
+    synchronized void pause() {
+        if (running) {
+            countedNanos += System.nanoTime() - resumedNanos;
+            running = false;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Mark the request as finished, whether or not it succeeded, waking anything waiting on it.
+     */
+    synchronized void finish() {
+        pause();
+        finished = true;
+        notifyAll();
+    }
+
+    /**
+     * Wait until the request finishes or has been in progress for the given time, whichever is
+     * first. Time whilst the timer is paused is not counted towards the limit.
+     *
+     * @param timeoutMillis is the most time in milliseconds that the request can take.
+     * @return true if the request finished, or false if it took too long.
+     * @throws InterruptedException if the waiting thread is interrupted.
+     */
+    synchronized boolean awaitFinish(long timeoutMillis) throws InterruptedException {
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (!finished) {
+            if (!running) {
+                wait();
+                continue;
+            }
+
+            long remainingNanos = timeoutNanos - elapsedNanos();
+            if (remainingNanos <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+        }
+        return true;
+    }
+
+    /**
+     * @return the time in nanoseconds that the request has been in progress for.
+     */
+    synchronized long elapsedNanos() {
+        return running ? countedNanos + System.nanoTime() - resumedNanos : countedNanos;
+    }
+}
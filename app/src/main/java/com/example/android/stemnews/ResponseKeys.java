@@ -0,0 +1,70 @@
+package com.example.android.stemnews;
+
+import android.content.Context;
+
+/**
+ * Holds the JSON key Strings used to read a response from The Guardian web API, so that they
+ * only have to be looked up from the application resources once per request rather than once
+ * per field of every article.
+ */
+final class ResponseKeys {
+
+    final String responseKey;
+    final String statusKey;
+    final String resultsKey;
+    final String idKey;
+    final String webTitleKey;
+    final String sectionNameKey;
+    final String tagsKey;
+    final String webPublicationDateKey;
+    final String webUrlKey;
+    final String fieldsKey;
+    final String thumbnailKey;
+    final String messageKey;
+    final String okStatus;
+    final String multipleAuthors;
+
+    ResponseKeys(String responseKey, String statusKey, String resultsKey, String idKey, String webTitleKey,
+                 String sectionNameKey, String tagsKey, String webPublicationDateKey,
+                 String webUrlKey, String fieldsKey, String thumbnailKey, String messageKey,
+                 String okStatus, String multipleAuthors) {
+        this.responseKey = responseKey;
+        this.statusKey = statusKey;
+        this.resultsKey = resultsKey;
+        this.idKey = idKey;
+        this.webTitleKey = webTitleKey;
+        this.sectionNameKey = sectionNameKey;
+        this.tagsKey = tagsKey;
+        this.webPublicationDateKey = webPublicationDateKey;
+        this.webUrlKey = webUrlKey;
+        this.fieldsKey = fieldsKey;
+        this.thumbnailKey = thumbnailKey;
+        this.messageKey = messageKey;
+        this.okStatus = okStatus;
+        this.multipleAuthors = multipleAuthors;
+    }
+
+    /**
+     * Read all of the JSON keys from the application resources.
+     *
+     * @param appContext is the {@link Context} used to access application resources.
+     * @return a new {@link ResponseKeys} object holding the resolved key Strings.
+     */
+    static ResponseKeys fromContext(Context appContext) {
+        return new ResponseKeys(
+                appContext.getString(R.string.response_key),
+                appContext.getString(R.string.status_key),
+                appContext.getString(R.string.results_key),
+                appContext.getString(R.string.id_key),
+                appContext.getString(R.string.webTitle_key),
+                appContext.getString(R.string.sectionName_key),
+                appContext.getString(R.string.tags_key),
+                appContext.getString(R.string.webPublicationDate_key),
+                appContext.getString(R.string.webUrl_key),
+                appContext.getString(R.string.fields_key),
+                appContext.getString(R.string.thumbnail_key),
+                appContext.getString(R.string.message_key),
+                appContext.getString(android.R.string.ok).toLowerCase(),
+                appContext.getString(R.string.multiple_authors));
+    }
+}
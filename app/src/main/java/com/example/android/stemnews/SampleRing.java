@@ -0,0 +1,78 @@
+package com.example.android.stemnews;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Holds the most recent samples of a measurement, such as the time taken by one stage of loading
+ * a page. Samples are added without locking, so recording one from the main thread never waits
+ * for a background thread. Once the ring is full, each new sample replaces the oldest one.
+ * <p>
+ * A copy taken whilst samples are being added can include a slot that has been claimed but not
+ * yet written, which holds the sample it is replacing. This is fine for the summaries it is used
+ * for.
+ */
+final class SampleRing {
+
+    private final AtomicLongArray samples;
+    private final AtomicLong writeCount = new AtomicLong();
+    private final int mask;
+
+    /**
+     * @param capacity is the number of samples to keep, which must be a power of two.
+     */
+    SampleRing(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("The capacity must be a power of two: " + capacity);
+        }
+        samples = new AtomicLongArray(capacity);
+        mask = capacity - 1;
+    }
+
+    /**
+     * Add a sample, replacing the oldest one if the ring is full.
+     *
+     * @param value is the sample to add.
+     */
+    void add(long value) {
+        long index = writeCount.getAndIncrement();
+        samples.set((int) (index & mask), value);
+    }
+
+    /**
+     * @return the number of samples added since the ring was created, including the ones that
+     * have since been replaced.
+     */
+    long getCount() {
+        return writeCount.get();
+    }
+
+    /**
+     * @return a copy of the samples held, from the oldest to the newest.
+     */
+    long[] snapshot() {
+        long count = writeCount.get();
+        int size = (int) Math.min(count, samples.length());
+        long[] copy = new long[size];
+        for (int i = 0; i < size; i++) {
+            copy[i] = samples.get((int) ((count - size + i) & mask));
+        }
+        return copy;
+    }
+
+    /**
+     * Find a percentile of some samples by the nearest rank.
+     *
+     * @param sortedValues is the samples in ascending order.
+     * @param fraction     is the percentile as a fraction, such as 0.95 for the 95th percentile.
+     * @return the smallest sample that at least that fraction of the samples are less than or
+     * equal to, or 0 if there are no samples.
+     */
+    static long percentile(long[] sortedValues, double fraction) {
+        if (sortedValues.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(fraction * sortedValues.length);
+        return sortedValues[Math.min(Math.max(rank, 1), sortedValues.length) - 1];
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.android.stemnews;
+
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.support.v4.app.NavUtils;
+import android.support.v4.content.ContextCompat;
+import android.support.v7.app.ActionBar;
+import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.DividerItemDecoration;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.view.View;
+import android.widget.TextView;
+
+import java.util.List;
+
+/**
+ * Screen for searching the articles that have already been downloaded, using the local
+ * {@link SearchIndex}. The results are updated as the user types, without any network request,
+ * so it works offline as well. Matching articles open in the {@link ReaderActivity}.
+ */
+public class SearchActivity extends AppCompatActivity {
+
+    // The most matching articles shown for a query
+    private static final int MAX_RESULTS = 100;
+
+    private ArticleAdapter resultsAdapter;
+    private TextView emptyStateView;
+
+    // The index is null until it has been read on a background thread
+    private SearchIndex searchIndex;
+    private String currentQuery = "";
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_search);
+
+        // Add up navigation arrow to the action bar
+        ActionBar searchActionBar = getSupportActionBar();
+        if (searchActionBar != null) {
+            searchActionBar.setDisplayHomeAsUpEnabled(true);
+        }
+
+        RecyclerView resultsListView = findViewById(R.id.search_results);
+        resultsListView.setLayoutManager(new LinearLayoutManager(this));
+        resultsListView.setHasFixedSize(true);
+        DividerItemDecoration articleSpacing = new DividerItemDecoration(this, DividerItemDecoration.VERTICAL);
+        articleSpacing.setDrawable(ContextCompat.getDrawable(this, R.drawable.article_spacing));
+        resultsListView.addItemDecoration(articleSpacing);
+        emptyStateView = findViewById(R.id.search_empty_text);
+        emptyStateView.setText(R.string.search_prompt);
+
+        // Open the article in the reader when it is clicked, as in the main list
+        resultsAdapter = new ArticleAdapter(this, new ArticleAdapter.OnArticleClickListener() {
+            @Override
+            public void onArticleClick(NewsArticle clickedArticle) {
+                startActivity(ReaderActivity.createIntent(SearchActivity.this, clickedArticle));
+            }
+        });
+        resultsListView.setAdapter(resultsAdapter);
+
+        /*
+        The index is read from storage the first time it is used, so get it on a background
+        thread and then show the results for anything typed in the meantime
+        */
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final SearchIndex loadedIndex = SearchIndex.getInstance(getApplicationContext());
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        searchIndex = loadedIndex;
+                        showResults();
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.search_menu, menu);
+
+        // Keep the search box open, as it is the only thing on the screen to interact with
+        SearchView searchView = (SearchView) menu.findItem(R.id.search_box).getActionView();
+        searchView.setIconifiedByDefault(false);
+        searchView.setQueryHint(getString(R.string.search_hint));
+        searchView.setQuery(currentQuery, false);
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                currentQuery = query;
+                showResults();
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                currentQuery = newText;
+                showResults();
+                return true;
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == android.R.id.home) {
+            NavUtils.navigateUpFromSameTask(this);
+            return true;
+        }
+
+        return super.onOptionsItemSelected(item);
+    }
+
+    /*
+    Query the index on the main thread, as it only looks up words held in memory, then show the
+    matches or a message if there are none
+    */
+    private void showResults() {
+        if (searchIndex == null) {
+            return;
+        }
+
+        List<NewsArticle> results = searchIndex.search(currentQuery, MAX_RESULTS);
+        final boolean emptyQuery = SearchIndex.tokenize(currentQuery).isEmpty();
+        resultsAdapter.applyFeed(new ArticleFeed(ArticleRow.fromArticles(results)), new ArticleAdapter.OnUpdateAppliedListener() {
+            @Override
+            public void onUpdateApplied() {
+                if (resultsAdapter.getItemCount() > 0) {
+                    emptyStateView.setVisibility(View.GONE);
+                } else {
+                    emptyStateView.setText(emptyQuery ? R.string.search_prompt : R.string.search_no_results);
+                    emptyStateView.setVisibility(View.VISIBLE);
+                }
+            }
+        });
+    }
+}
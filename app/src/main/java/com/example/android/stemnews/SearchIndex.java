@@ -0,0 +1,617 @@
+package com.example.android.stemnews;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Local full-text index over the titles, sections and authors of the articles the app has
+ * downloaded, so that they can be searched offline without any request to The Guardian web API.
+ * <p>
+ * Every article added to the index is given a document number, in the order it was added, and
+ * its values are kept in an {@link ArticleStore}. The text of each article is broken into words,
+ * which are lower cased and have their accents removed, and the index maps each word to the set
+ * of documents that contain it. A query matches the documents that contain all of its words,
+ * where the last word can be the start of a longer one so that results appear as the user types.
+ * The words are kept in sorted order, so the words starting with it are found with a range look
+ * up. Matches are returned newest first.
+ * <p>
+ * The index is saved to a binary file with the same kind of header as a {@link FeedSnapshot}.
+ * Section and author names are written once in dictionaries, each word only has the part that
+ * differs from the word before it written out, and the document numbers of each word are written
+ * as the gaps between them in a variable number of bytes, which is nearly always one. Once the
+ * index holds more than {@link #MAX_DOCUMENTS} articles, the oldest ones are removed.
+ */
+final class SearchIndex {
+
+    private static final String LOG_TAG = SearchIndex.class.getName();
+
+    private static final String INDEX_FILE = "search_index.bin";
+
+    // Identifies an index file (the characters STSI) and the version of its format
+    private static final int MAGIC_NUMBER = 0x53545349;
+    static final int FORMAT_VERSION = 1;
+
+    // The most articles kept in the index, and the number kept when it goes over that
+    static final int MAX_DOCUMENTS = 4000;
+    static final int TRIMMED_DOCUMENTS = 3000;
+
+    // The identifying number, version, body length and checksum, which are four bytes each
+    private static final int HEADER_SIZE = 16;
+
+    // Written in place of the code of a missing author
+    private static final int NONE = -1;
+
+    // Breaks text into words, and removes the accents left as separate marks by normalising it
+    private static final Pattern WORD_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern ACCENT_MARKS = Pattern.compile("\\p{M}+");
+
+    // The index is saved one copy at a time, in the order it was changed
+    private static final ExecutorService saveExecutor = Executors.newSingleThreadExecutor();
+
+    private static final Comparator<NewsArticle> NEWEST_FIRST = new Comparator<NewsArticle>() {
+        @Override
+        public int compare(NewsArticle first, NewsArticle second) {
+            long firstMillis = first.getPublishedMillis();
+            long secondMillis = second.getPublishedMillis();
+            return (firstMillis < secondMillis) ? 1 : ((firstMillis > secondMillis) ? -1 : 0);
+        }
+    };
+
+    // Read without the class lock when saving, so the main thread never waits for the index to load
+    private static volatile SearchIndex instance;
+
+    // The indexed articles and the words in them, which are guarded by the index's lock
+    private ArticleStore documents = new ArticleStore();
+    private final Map<String, Integer> documentNumbers = new HashMap<>();
+    private final TreeMap<String, Postings> terms = new TreeMap<>();
+
+    // Whether the index has changed since it was last read or saved
+    private boolean changed;
+
+    /**
+     * The document numbers of the articles that contain a word, in the order they were added.
+     */
+    private static final class Postings {
+        private int[] documents = new int[1];
+        private int size;
+
+        void add(int document) {
+            // A word that appears more than once in an article is only recorded once
+            if (size > 0 && documents[size - 1] == document) {
+                return;
+            }
+            if (size == documents.length) {
+                int[] grown = new int[size * 2];
+                System.arraycopy(documents, 0, grown, 0, size);
+                documents = grown;
+            }
+            documents[size++] = document;
+        }
+
+        void addTo(BitSet matches) {
+            for (int i = 0; i < size; i++) {
+                matches.set(documents[i]);
+            }
+        }
+    }
+
+    /**
+     * Get the single search index for the application, reading it from its file the first time.
+     * If there is no saved index, it is built from the articles in the {@link ArticleCache}. As
+     * this reads from storage, the first call must not be made on the main thread.
+     *
+     * @param context is any {@link Context} from the application.
+     * @return the shared {@link SearchIndex} object.
+     */
+    static synchronized SearchIndex getInstance(Context context) {
+        if (instance == null) {
+            SearchIndex savedIndex = read(getFile(context));
+            if (savedIndex == null) {
+                savedIndex = new SearchIndex();
+                savedIndex.addAll(ArticleCache.getInstance(context).getAllArticles());
+            }
+            instance = savedIndex;
+        }
+
+        return instance;
+    }
+
+    /**
+     * @param context is any {@link Context} from the application.
+     * @return the file that the index is kept in.
+     */
+    static File getFile(Context context) {
+        return new File(context.getFilesDir(), INDEX_FILE);
+    }
+
+    /**
+     * Save the index to its file on a background thread if it has changed. Nothing is done if
+     * the index has not been used since the app started.
+     *
+     * @param context is any {@link Context} from the application.
+     */
+    static void saveInBackground(Context context) {
+        final SearchIndex currentIndex = instance;
+        if (currentIndex == null) {
+            return;
+        }
+
+        final File indexFile = getFile(context);
+        saveExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    currentIndex.writeIfChanged(indexFile);
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Issue writing the search index", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Add a page of articles to the index. Articles that are already in it are skipped.
+     *
+     * @param articles is the list of {@link NewsArticle}s to add.
+     */
+    synchronized void addAll(List<NewsArticle> articles) {
+        for (NewsArticle article : articles) {
+            if (documentNumbers.containsKey(article.getArticleId())) {
+                continue;
+            }
+            addDocument(documents.add(article.getArticleId(), article.getArticleTitle(), article.getNewsSection(),
+                    article.getAuthorName(), article.getPublishedMillis(), unreadableDateOf(article),
+                    article.getWebURL(), article.getThumbnailUrl()));
+            changed = true;
+        }
+
+        if (documentNumbers.size() > MAX_DOCUMENTS) {
+            trim();
+        }
+    }
+
+    /**
+     * Find the articles that contain every word of a query in their title, section or author.
+     * The last word of the query also matches any word that starts with it, unless the query
+     * ends with a space.
+     *
+     * @param query is the text typed by the user.
+     * @param limit is the most articles to return.
+     * @return the matching {@link NewsArticle}s, newest first, which is empty if the query has
+     * no words.
+     */
+    synchronized List<NewsArticle> search(String query, int limit) {
+        List<String> queryWords = tokenize(query);
+        if (queryWords.isEmpty()) {
+            return Collections.emptyList();
+        }
+        boolean lastWordComplete = Character.isWhitespace(query.charAt(query.length() - 1));
+
+        BitSet matches = null;
+        for (int i = 0; i < queryWords.size(); i++) {
+            String queryWord = queryWords.get(i);
+            BitSet wordMatches = new BitSet(documentNumbers.size());
+            if (i == queryWords.size() - 1 && !lastWordComplete) {
+                for (Postings postings : wordsStartingWith(queryWord).values()) {
+                    postings.addTo(wordMatches);
+                }
+            } else {
+                Postings postings = terms.get(queryWord);
+                if (postings != null) {
+                    postings.addTo(wordMatches);
+                }
+            }
+
+            if (matches == null) {
+                matches = wordMatches;
+            } else {
+                matches.and(wordMatches);
+            }
+            if (matches.isEmpty()) {
+                return Collections.emptyList();
+            }
+        }
+
+        List<NewsArticle> results = new ArrayList<>(matches.cardinality());
+        for (int document = matches.nextSetBit(0); document >= 0; document = matches.nextSetBit(document + 1)) {
+            results.add(new NewsArticle(documents, document));
+        }
+        Collections.sort(results, NEWEST_FIRST);
+        return (results.size() > limit) ? new ArrayList<>(results.subList(0, limit)) : results;
+    }
+
+    /**
+     * @return the number of articles in the index.
+     */
+    synchronized int size() {
+        return documentNumbers.size();
+    }
+
+    /**
+     * @return the number of distinct words in the index.
+     */
+    synchronized int termCount() {
+        return terms.size();
+    }
+
+    /**
+     * Break text into lower case words without accents.
+     *
+     * @param text is the text to break up, which can be null.
+     * @return the words in the text, in order.
+     */
+    static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+
+        String plainText = ACCENT_MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        for (String word : WORD_SEPARATOR.split(plainText.toLowerCase(Locale.ROOT))) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Write the index to a file if it has changed since it was last read or written. As with a
+     * {@link FeedSnapshot}, it is written to a temporary file first and then moved into place.
+     *
+     * @param file is the file to write the index to.
+     * @throws IOException if the file could not be written.
+     */
+    void writeIfChanged(File file) throws IOException {
+        // Only hold the lock whilst the index is encoded, not whilst the file is written
+        byte[] bodyArray;
+        synchronized (this) {
+            if (!changed) {
+                return;
+            }
+            bodyArray = encode();
+            changed = false;
+        }
+
+        CRC32 checksum = new CRC32();
+        checksum.update(bodyArray, 0, bodyArray.length);
+
+        File tempFile = new File(file.getPath() + ".tmp");
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try {
+            output.writeInt(MAGIC_NUMBER);
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(bodyArray.length);
+            output.writeInt((int) checksum.getValue());
+            output.write(bodyArray);
+        } catch (IOException e) {
+            markChanged();
+            throw e;
+        } finally {
+            output.close();
+        }
+
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            markChanged();
+            throw new IOException("Could not replace the search index file");
+        }
+    }
+
+    /**
+     * Read an index from a file. A file that is corrupt or from a different version of the
+     * format is deleted, so that it is not read again.
+     *
+     * @param file is the file that the index was written to.
+     * @return the index, or null if there is no valid index in the file.
+     */
+    static SearchIndex read(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (input.readInt() != MAGIC_NUMBER) {
+                throw new IOException("Not a search index");
+            }
+            int version = input.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported search index version " + version);
+            }
+            int bodyLength = input.readInt();
+            int expectedChecksum = input.readInt();
+            if (bodyLength != file.length() - HEADER_SIZE) {
+                throw new IOException("Search index length does not match");
+            }
+
+            byte[] bodyArray = new byte[bodyLength];
+            input.readFully(bodyArray);
+            CRC32 checksum = new CRC32();
+            checksum.update(bodyArray, 0, bodyArray.length);
+            if ((int) checksum.getValue() != expectedChecksum) {
+                throw new IOException("Search index checksum does not match");
+            }
+
+            return decode(bodyArray);
+        } catch (IOException | RuntimeException e) {
+            // Any malformed value, such as a code that is not in its dictionary, ends up here
+            Log.e(LOG_TAG, "Issue reading the search index", e);
+            file.delete();
+            return null;
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Issue closing the search index", e);
+                }
+            }
+        }
+    }
+
+    // Give an article the next document number and record each word of it against that number
+    private void addDocument(NewsArticle article) {
+        int document = article.getIndex();
+        documentNumbers.put(article.getArticleId(), document);
+        addWords(article.getArticleTitle(), document);
+        addWords(article.getNewsSection(), document);
+        addWords(article.getAuthorName(), document);
+    }
+
+    private void addWords(String text, int document) {
+        for (String word : tokenize(text)) {
+            Postings postings = terms.get(word);
+            if (postings == null) {
+                postings = new Postings();
+                terms.put(word, postings);
+            }
+            postings.add(document);
+        }
+    }
+
+    private NavigableMap<String, Postings> wordsStartingWith(String prefix) {
+        return terms.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    /*
+    Rebuild the index from the newest articles, keeping them in the order they were added so that
+    the document numbers of each word stay in order
+    */
+    private void trim() {
+        List<NewsArticle> keptArticles = new ArrayList<>(documentNumbers.size());
+        for (int document = 0; document < documents.size(); document++) {
+            keptArticles.add(new NewsArticle(documents, document));
+        }
+        Collections.sort(keptArticles, NEWEST_FIRST);
+        keptArticles = new ArrayList<>(keptArticles.subList(0, TRIMMED_DOCUMENTS));
+        Collections.sort(keptArticles, new Comparator<NewsArticle>() {
+            @Override
+            public int compare(NewsArticle first, NewsArticle second) {
+                return first.getIndex() - second.getIndex();
+            }
+        });
+
+        documents = new ArticleStore();
+        documentNumbers.clear();
+        terms.clear();
+        for (NewsArticle article : keptArticles) {
+            addDocument(documents.add(article.getArticleId(), article.getArticleTitle(), article.getNewsSection(),
+                    article.getAuthorName(), article.getPublishedMillis(), unreadableDateOf(article),
+                    article.getWebURL(), article.getThumbnailUrl()));
+        }
+        changed = true;
+    }
+
+    private synchronized void markChanged() {
+        changed = true;
+    }
+
+    // Write the articles, then each word followed by the document numbers that contain it
+    private byte[] encode() throws IOException {
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(bodyBytes);
+
+        Map<String, Integer> sectionCodes = new LinkedHashMap<>();
+        Map<String, Integer> authorCodes = new LinkedHashMap<>();
+        for (int document = 0; document < documents.size(); document++) {
+            codeOf(documents.getSection(document), sectionCodes);
+            if (documents.getAuthor(document) != null) {
+                codeOf(documents.getAuthor(document), authorCodes);
+            }
+        }
+        writeDictionary(body, sectionCodes);
+        writeDictionary(body, authorCodes);
+
+        writeVarInt(body, documents.size());
+        for (int document = 0; document < documents.size(); document++) {
+            NewsArticle article = new NewsArticle(documents, document);
+            body.writeUTF(article.getArticleId());
+            body.writeUTF(article.getArticleTitle());
+            writeVarInt(body, sectionCodes.get(article.getNewsSection()));
+            writeVarInt(body, (article.getAuthorName() != null) ? authorCodes.get(article.getAuthorName()) : NONE);
+            body.writeLong(article.getPublishedMillis());
+            writeOptionalString(body, unreadableDateOf(article));
+            body.writeUTF(article.getWebURL());
+            writeOptionalString(body, article.getThumbnailUrl());
+        }
+
+        writeVarInt(body, terms.size());
+        String previousWord = "";
+        for (Map.Entry<String, Postings> term : terms.entrySet()) {
+            String word = term.getKey();
+            int sharedLength = sharedPrefixLength(previousWord, word);
+            writeVarInt(body, sharedLength);
+            body.writeUTF(word.substring(sharedLength));
+            previousWord = word;
+
+            Postings postings = term.getValue();
+            writeVarInt(body, postings.size);
+            int previousDocument = 0;
+            for (int i = 0; i < postings.size; i++) {
+                writeVarInt(body, postings.documents[i] - previousDocument);
+                previousDocument = postings.documents[i];
+            }
+        }
+
+        body.flush();
+        return bodyBytes.toByteArray();
+    }
+
+    private static SearchIndex decode(byte[] bodyArray) throws IOException {
+        DataInputStream body = new DataInputStream(new ByteArrayInputStream(bodyArray));
+        SearchIndex index = new SearchIndex();
+
+        String[] sectionNames = readDictionary(body);
+        String[] authorNames = readDictionary(body);
+
+        int documentCount = readVarInt(body);
+        for (int document = 0; document < documentCount; document++) {
+            String articleId = body.readUTF();
+            String articleTitle = body.readUTF();
+            String newsSection = sectionNames[readVarInt(body)];
+            int authorCode = readVarInt(body);
+            String authorName = (authorCode == NONE) ? null : authorNames[authorCode];
+            long publishedMillis = body.readLong();
+            String unreadableDate = readOptionalString(body);
+            String webUrl = body.readUTF();
+            String thumbnailUrl = readOptionalString(body);
+
+            NewsArticle article = index.documents.add(articleId, articleTitle, newsSection, authorName,
+                    publishedMillis, unreadableDate, webUrl, thumbnailUrl);
+            index.documentNumbers.put(articleId, article.getIndex());
+        }
+
+        int termCount = readVarInt(body);
+        String previousWord = "";
+        for (int i = 0; i < termCount; i++) {
+            String word = previousWord.substring(0, readVarInt(body)) + body.readUTF();
+            previousWord = word;
+
+            Postings postings = new Postings();
+            int postingCount = readVarInt(body);
+            int document = 0;
+            for (int j = 0; j < postingCount; j++) {
+                document += readVarInt(body);
+                if (document >= documentCount) {
+                    throw new IOException("Invalid document number");
+                }
+                postings.add(document);
+            }
+            index.terms.put(word, postings);
+        }
+
+        if (body.available() > 0) {
+            throw new IOException("Unexpected data at the end of the search index");
+        }
+        return index;
+    }
+
+    private static void writeDictionary(DataOutputStream output, Map<String, Integer> codes) throws IOException {
+        writeVarInt(output, codes.size());
+        for (String name : codes.keySet()) {
+            output.writeUTF(name);
+        }
+    }
+
+    private static String[] readDictionary(DataInputStream input) throws IOException {
+        int nameCount = readVarInt(input);
+        if (nameCount > input.available()) {
+            throw new IOException("Invalid dictionary size");
+        }
+
+        String[] names = new String[nameCount];
+        for (int i = 0; i < nameCount; i++) {
+            names[i] = input.readUTF();
+        }
+        return names;
+    }
+
+    private static void writeOptionalString(DataOutputStream output, String value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeUTF(value);
+        }
+    }
+
+    private static String readOptionalString(DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    /*
+    Write a number of at least -1 in seven bit groups, lowest first, with the top bit of each byte
+    set if another byte follows. One is added first so that a missing code (-1) fits in a byte
+    */
+    static void writeVarInt(DataOutputStream output, int value) throws IOException {
+        int remaining = value + 1;
+        while ((remaining & ~0x7F) != 0) {
+            output.writeByte((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        output.writeByte(remaining);
+    }
+
+    static int readVarInt(DataInputStream input) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int nextByte = input.readUnsignedByte();
+            value |= (nextByte & 0x7F) << shift;
+            if ((nextByte & 0x80) == 0) {
+                return value - 1;
+            }
+        }
+        throw new IOException("Invalid variable length number");
+    }
+
+    private static int sharedPrefixLength(String first, String second) {
+        int maxLength = Math.min(first.length(), second.length());
+        int length = 0;
+        while (length < maxLength && first.charAt(length) == second.charAt(length)) {
+            length++;
+        }
+        return length;
+    }
+
+    // The original date String is only needed if it could not be read
+    private static String unreadableDateOf(NewsArticle article) {
+        return (article.getPublishedMillis() == ArticleDates.INVALID_DATE) ? article.getDatePublished() : null;
+    }
+
+    // Find the position of a name in its dictionary, adding it to the end if it is a new one
+    private static int codeOf(String name, Map<String, Integer> codes) {
+        Integer code = codes.get(name);
+        if (code == null) {
+            code = codes.size();
+            codes.put(name, code);
+        }
+        return code;
+    }
+}
@@ -0,0 +1,291 @@
+package com.example.android.stemnews;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Cache;
+import okhttp3.CacheControl;
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Loads the thumbnail images of the articles into the rows of the list, through two levels of
+ * cache so that scrolling back over rows does not fetch or decode their images again:
+ * <ul>
+ * <li>Decoded bitmaps are kept in memory up to a fixed number of bytes, with the least recently
+ * used removed first.</li>
+ * <li>The downloaded image files are kept on disk by a separate HTTP cache, which also removes the
+ * least recently used first once it is full. The image at a URL never changes, so a stored copy
+ * is always used, however old it is.</li>
+ * </ul>
+ * Each image is decoded straight to the size of the view it is shown in, by first reading only
+ * its dimensions and then sampling and scaling it down as it is decoded, so a full size image is
+ * never held in memory. Requests are cancelled when the row they were for is shown for another
+ * article, including any download still in progress.
+ */
+final class ThumbnailLoader {
+
+    private static final String LOG_TAG = ThumbnailLoader.class.getName();
+
+    // The number of images that can be fetched and decoded at the same time
+    private static final int LOAD_THREADS = 2;
+
+    // The directory name of the on-disk image cache
+    private static final String IMAGE_CACHE_DIRECTORY = "thumbnails";
+
+    private static final CacheControl ANY_STORED_COPY = new CacheControl.Builder()
+            .maxStale(Integer.MAX_VALUE, TimeUnit.SECONDS)
+            .build();
+
+    private static ThumbnailLoader instance;
+
+    private final OkHttpClient imageClient;
+    private final LruCache<String, Bitmap> memoryCache;
+    private final ExecutorService loadExecutor = Executors.newFixedThreadPool(LOAD_THREADS);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private ThumbnailLoader(Context appContext) {
+        /*
+        Share the connection pool of the API client, but give the images their own cache so that
+        they cannot push the API responses out of it. Image downloads are left out of the page
+        load metrics
+        */
+        long diskCacheSize = appContext.getResources().getInteger(R.integer.thumbnail_disk_cache_mb) * 1024L * 1024L;
+        imageClient = NetworkClient.getInstance(appContext).newBuilder()
+                .cache(new Cache(new File(appContext.getCacheDir(), IMAGE_CACHE_DIRECTORY), diskCacheSize))
+                .eventListener(EventListener.NONE)
+                .build();
+
+        // Keep the decoded images within a fraction of the memory available to the app
+        ActivityManager activityManager = (ActivityManager) appContext.getSystemService(Context.ACTIVITY_SERVICE);
+        int memoryClassMb = (activityManager != null) ? activityManager.getMemoryClass() : 16;
+        int memoryCacheSize = memoryClassMb * 1024 * 1024 / appContext.getResources().getInteger(R.integer.thumbnail_memory_cache_divisor);
+        memoryCache = new LruCache<String, Bitmap>(memoryCacheSize) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * Get the single instance of the thumbnail loader for the application.
+     *
+     * @param context is any {@link Context} from the application.
+     * @return the shared {@link ThumbnailLoader} object.
+     */
+    static synchronized ThumbnailLoader getInstance(Context context) {
+        if (instance == null) {
+            instance = new ThumbnailLoader(context.getApplicationContext());
+        }
+
+        return instance;
+    }
+
+    /**
+     * A request to load one image into a view, which can be cancelled from the main thread.
+     */
+    static final class Request {
+        private final ImageView targetView;
+        private volatile boolean cancelled;
+        private volatile Call call;
+        private Future<?> task;
+
+        private Request(ImageView targetView) {
+            this.targetView = targetView;
+        }
+
+        /**
+         * Stop loading the image and never show it in the view, cancelling the download if it
+         * has started.
+         */
+        void cancel() {
+            cancelled = true;
+            if (task != null) {
+                task.cancel(false);
+            }
+            Call currentCall = call;
+            if (currentCall != null) {
+                currentCall.cancel();
+            }
+        }
+    }
+
+    /**
+     * Show an image in a view, straight away if it is in the memory cache or once it has been
+     * loaded otherwise. This must be called on the main thread.
+     *
+     * @param imageUrl   is the URL of the image.
+     * @param targetView is the view to show the image in.
+     * @param width      is the width in pixels that the image is shown at.
+     * @param height     is the height in pixels that the image is shown at.
+     * @return the request, which should be cancelled if the view is reused before it finishes,
+     * or null if the image was already in memory.
+     */
+    Request load(final String imageUrl, ImageView targetView, final int width, final int height) {
+        final String cacheKey = imageUrl + '#' + width + 'x' + height;
+        Bitmap cachedBitmap = memoryCache.get(cacheKey);
+        if (cachedBitmap != null) {
+            targetView.setImageBitmap(cachedBitmap);
+            return null;
+        }
+
+        targetView.setImageDrawable(null);
+        final Request request = new Request(targetView);
+        request.task = loadExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                if (request.cancelled) {
+                    return;
+                }
+
+                final Bitmap bitmap = fetchBitmap(imageUrl, width, height, request);
+                if (bitmap == null) {
+                    return;
+                }
+                memoryCache.put(cacheKey, bitmap);
+
+                // The request may have been cancelled whilst it was loading, so check again
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!request.cancelled) {
+                            request.targetView.setImageBitmap(bitmap);
+                        }
+                    }
+                });
+            }
+        });
+
+        return request;
+    }
+
+    /**
+     * Release the memory held by decoded images when the system is running low on it.
+     *
+     * @param level is the level passed to {@link ComponentCallbacks2#onTrimMemory(int)}.
+     */
+    void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            memoryCache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            memoryCache.trimToSize(memoryCache.maxSize() / 2);
+        }
+    }
+
+    // Download an image, using the disk cache if possible, and decode it to the target size
+    private Bitmap fetchBitmap(String imageUrl, int width, int height, Request request) {
+        Call imageCall = imageClient.newCall(new okhttp3.Request.Builder()
+                .url(imageUrl)
+                .cacheControl(ANY_STORED_COPY)
+                .build());
+        request.call = imageCall;
+        if (request.cancelled) {
+            return null;
+        }
+
+        byte[] imageBytes;
+        try {
+            Response imageResponse = imageCall.execute();
+            ResponseBody imageBody = imageResponse.body();
+            try {
+                if (!imageResponse.isSuccessful() || imageBody == null) {
+                    Log.e(LOG_TAG, "Error response code for thumbnail: " + imageResponse.code());
+                    return null;
+                }
+                imageBytes = imageBody.bytes();
+            } finally {
+                imageResponse.close();
+            }
+        } catch (IOException e) {
+            // A cancelled download ends with an exception, which is expected
+            if (!request.cancelled) {
+                Log.e(LOG_TAG, "Problem downloading the thumbnail", e);
+            }
+            return null;
+        }
+
+        return decodeToSize(imageBytes, width, height);
+    }
+
+    // Read the dimensions of an image first, then decode it scaled down to just cover the target
+    private static Bitmap decodeToSize(byte[] imageBytes, int width, int height) {
+        BitmapFactory.Options decodeOptions = new BitmapFactory.Options();
+        decodeOptions.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(imageBytes, 0, imageBytes.length, decodeOptions);
+        int imageWidth = decodeOptions.outWidth;
+        int imageHeight = decodeOptions.outHeight;
+        if (imageWidth <= 0 || imageHeight <= 0) {
+            Log.e(LOG_TAG, "Could not read the thumbnail dimensions");
+            return null;
+        }
+
+        /*
+        Skip whole rows and columns of pixels while decoding, then scale the sampled image down
+        the rest of the way by giving the decoder a source and target density. Thumbnails are
+        photos without transparency, so they are decoded with two bytes per pixel
+        */
+        decodeOptions.inJustDecodeBounds = false;
+        decodeOptions.inSampleSize = sampleSize(imageWidth, imageHeight, width, height);
+        decodeOptions.inPreferredConfig = Bitmap.Config.RGB_565;
+
+        int sampledWidth = imageWidth / decodeOptions.inSampleSize;
+        int sampledHeight = imageHeight / decodeOptions.inSampleSize;
+        int[] scale = coverScale(sampledWidth, sampledHeight, width, height);
+        if (scale[0] > scale[1]) {
+            decodeOptions.inScaled = true;
+            decodeOptions.inDensity = scale[0];
+            decodeOptions.inTargetDensity = scale[1];
+        }
+
+        return BitmapFactory.decodeByteArray(imageBytes, 0, imageBytes.length, decodeOptions);
+    }
+
+    /**
+     * Work out the largest power of two that an image can be sampled down by whilst still
+     * covering the target size in both dimensions, as the image is cropped to fill its view.
+     *
+     * @return the sample size, which is 1 if the image is not to be sampled.
+     */
+    static int sampleSize(int imageWidth, int imageHeight, int targetWidth, int targetHeight) {
+        int sampleSize = 1;
+        while (imageWidth / (sampleSize * 2) >= targetWidth && imageHeight / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Work out the scale that makes an image exactly cover the target size, by matching the
+     * dimension that needs the least scaling down to the target.
+     *
+     * @return the source and target lengths of the matched dimension, which are equal if the
+     * image is not to be scaled down.
+     */
+    static int[] coverScale(int imageWidth, int imageHeight, int targetWidth, int targetHeight) {
+        // Compare the ratios targetWidth / imageWidth and targetHeight / imageHeight
+        if ((long) targetWidth * imageHeight >= (long) targetHeight * imageWidth) {
+            return new int[]{imageWidth, Math.min(targetWidth, imageWidth)};
+        } else {
+            return new int[]{imageHeight, Math.min(targetHeight, imageHeight)};
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.android.stemnews;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the reading and fetching of article bodies by {@link ArticleBodies}.
+ */
+public class ArticleBodiesTest {
+
+    private static final String BODIES_JSON = "{\"response\":{\"status\":\"ok\",\"total\":3,\"results\":["
+            + "{\"id\":\"science/a\",\"type\":\"article\",\"fields\":{\"bodyText\":\"Body of A\"}},"
+            + "{\"id\":\"science/b\",\"fields\":{\"thumbnail\":\"https://media.example/b.jpg\",\"bodyText\":\"Body of B\"}},"
+            + "{\"id\":\"science/c\",\"fields\":{\"bodyText\":\"\"}}]}}";
+
+    private static final long CACHE_SIZE = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder cacheFolder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private OkHttpClient httpClient;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        httpClient = NetworkClient.createClient(cacheFolder.getRoot(), CACHE_SIZE, 5, 300);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void parseBodies_readsEachArticleWithABody() throws IOException {
+        Map<String, String> bodies = parse(BODIES_JSON);
+
+        assertEquals(2, bodies.size());
+        assertEquals("Body of A", bodies.get("science/a"));
+        assertEquals("Body of B", bodies.get("science/b"));
+    }
+
+    @Test
+    public void errorStatus_givesNoBodies() throws IOException {
+        Map<String, String> bodies = parse("{\"response\":{\"results\":[{\"id\":\"science/a\","
+                + "\"fields\":{\"bodyText\":\"Body of A\"}}],\"status\":\"error\",\"message\":\"Bad key\"}}");
+
+        assertTrue(bodies.isEmpty());
+    }
+
+    @Test
+    public void malformedResponse_keepsBodiesReadBeforeTheProblem() throws IOException {
+        Map<String, String> bodies = parse("{\"response\":{\"status\":\"ok\",\"results\":["
+                + "{\"id\":\"science/a\",\"fields\":{\"bodyText\":\"Body of A\"}},{\"id\":}]}}");
+
+        assertEquals("Body of A", bodies.get("science/a"));
+    }
+
+    @Test
+    public void fetch_isNotStoredInTheHttpCache() throws InterruptedException {
+        server.enqueue(new MockResponse().setBody(BODIES_JSON).addHeader("Cache-Control", "max-age=600"));
+        server.enqueue(new MockResponse().setBody(BODIES_JSON).addHeader("Cache-Control", "max-age=600"));
+        String url = server.url("/search?ids=science/a,science/b,science/c&show-fields=bodyText").toString();
+
+        Map<String, String> bodies = ArticleBodies.fetch(url, httpClient, ArticleJsonParserTest.KEYS, "bodyText", true);
+        ArticleBodies.fetch(url, httpClient, ArticleJsonParserTest.KEYS, "bodyText", true);
+
+        assertEquals(2, bodies.size());
+        RecordedRequest request = server.takeRequest();
+        assertTrue(request.getHeader("Cache-Control").contains("no-store"));
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void failedFetch_givesNoBodies() {
+        server.enqueue(new MockResponse().setResponseCode(500));
+
+        assertTrue(ArticleBodies.fetch(server.url("/search").toString(), httpClient,
+                ArticleJsonParserTest.KEYS, "bodyText", false).isEmpty());
+    }
+
+    private static Map<String, String> parse(String json) throws IOException {
+        return ArticleBodies.parseBodies(new ByteArrayInputStream(json.getBytes(Charset.forName("UTF-8"))),
+                ArticleJsonParserTest.KEYS, "bodyText");
+    }
+}
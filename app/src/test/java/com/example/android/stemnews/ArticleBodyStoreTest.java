@@ -0,0 +1,129 @@
+package com.example.android.stemnews;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the compressed storage and byte budget of the {@link ArticleBodyStore}.
+ */
+public class ArticleBodyStoreTest {
+
+    @Rule
+    public TemporaryFolder storeFolder = new TemporaryFolder();
+
+    @Test
+    public void storedBody_readsBackAndIsCompressed() throws IOException {
+        ArticleBodyStore bodyStore = new ArticleBodyStore(storeFolder.getRoot(), 1024 * 1024);
+        String body = repeatedText("Scientists say the black hole merger was detected by both observatories. ", 100);
+
+        bodyStore.put("science/2018/may/20/black-holes", body);
+
+        assertTrue(bodyStore.contains("science/2018/may/20/black-holes"));
+        assertEquals(body, bodyStore.get("science/2018/may/20/black-holes"));
+        assertTrue(bodyStore.getTotalBytes() < body.length() / 10);
+    }
+
+    @Test
+    public void missingBody_isNull() {
+        ArticleBodyStore bodyStore = new ArticleBodyStore(new File(storeFolder.getRoot(), "missing"), 1024);
+
+        assertFalse(bodyStore.contains("science/a"));
+        assertNull(bodyStore.get("science/a"));
+    }
+
+    @Test
+    public void overBudget_removesLeastRecentlyUsed() throws IOException {
+        String body = randomText(1000);
+        long bodySize = storedSizeOf(body);
+        ArticleBodyStore bodyStore = new ArticleBodyStore(storeFolder.getRoot(), 3 * bodySize);
+        bodyStore.put("science/a", body);
+        bodyStore.put("science/b", body);
+        bodyStore.put("science/c", body);
+
+        // Reading the first body makes the second the least recently used
+        assertNotNull(bodyStore.get("science/a"));
+        bodyStore.put("science/d", body);
+
+        assertEquals(3, bodyStore.size());
+        assertEquals(3 * bodySize, bodyStore.getTotalBytes());
+        assertTrue(bodyStore.contains("science/a"));
+        assertFalse(bodyStore.contains("science/b"));
+        assertTrue(bodyStore.contains("science/d"));
+    }
+
+    @Test
+    public void replacedBody_isOnlyCountedOnce() throws IOException {
+        ArticleBodyStore bodyStore = new ArticleBodyStore(storeFolder.getRoot(), 1024 * 1024);
+        bodyStore.put("science/a", "First version");
+        long firstSize = bodyStore.getTotalBytes();
+
+        bodyStore.put("science/a", "First version");
+
+        assertEquals(1, bodyStore.size());
+        assertEquals(firstSize, bodyStore.getTotalBytes());
+    }
+
+    @Test
+    public void newStore_findsBodiesAlreadyOnDisk() throws IOException {
+        new ArticleBodyStore(storeFolder.getRoot(), 1024 * 1024).put("science/a", "Stored before a restart");
+
+        ArticleBodyStore restartedStore = new ArticleBodyStore(storeFolder.getRoot(), 1024 * 1024);
+
+        assertEquals(1, restartedStore.size());
+        assertEquals("Stored before a restart", restartedStore.get("science/a"));
+    }
+
+    @Test
+    public void corruptBody_isRemoved() throws IOException {
+        ArticleBodyStore bodyStore = new ArticleBodyStore(storeFolder.getRoot(), 1024 * 1024);
+        bodyStore.put("science/a", "Will be overwritten");
+        FileOutputStream corruptFile = new FileOutputStream(new File(storeFolder.getRoot(), ArticleBodyStore.fileNameOf("science/a")));
+        try {
+            corruptFile.write(new byte[]{1, 2, 3});
+        } finally {
+            corruptFile.close();
+        }
+
+        assertNull(bodyStore.get("science/a"));
+        assertFalse(bodyStore.contains("science/a"));
+        assertEquals(0, bodyStore.getTotalBytes());
+    }
+
+    @Test
+    public void fileName_keepsArticleIdsApart() {
+        assertFalse(ArticleBodyStore.fileNameOf("science/2018/may/20/a").contains("/"));
+        assertNotEquals(ArticleBodyStore.fileNameOf("science/a-b"), ArticleBodyStore.fileNameOf("science/a/b"));
+    }
+
+    private long storedSizeOf(String body) throws IOException {
+        ArticleBodyStore sizingStore = new ArticleBodyStore(storeFolder.newFolder(), Long.MAX_VALUE);
+        sizingStore.put("science/size", body);
+        return sizingStore.getTotalBytes();
+    }
+
+    private static String repeatedText(String text, int count) {
+        StringBuilder repeated = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            repeated.append(text);
+        }
+        return repeated.toString();
+    }
+
+    // Random letters hardly compress, so a few bodies are enough to go over a small budget
+    private static String randomText(int length) {
+        Random random = new Random(1);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            text.append((char) ('a' + random.nextInt(26)));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.android.stemnews;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the ISO 8601 date reader and the cached day formatter in {@link ArticleDates} against
+ * the {@link SimpleDateFormat} class.
+ */
+public class ArticleDatesTest {
+
+    @Test
+    public void utcDate_matchesSimpleDateFormat() throws Exception {
+        assertEquals(referenceMillis("2018-05-17T13:21:54Z"), ArticleDates.parseIsoDate("2018-05-17T13:21:54Z"));
+        assertEquals(referenceMillis("1970-01-01T00:00:00Z"), ArticleDates.parseIsoDate("1970-01-01T00:00:00Z"));
+        assertEquals(referenceMillis("1969-12-31T23:59:59Z"), ArticleDates.parseIsoDate("1969-12-31T23:59:59Z"));
+        assertEquals(referenceMillis("2000-02-29T08:00:00Z"), ArticleDates.parseIsoDate("2000-02-29T08:00:00Z"));
+        assertEquals(referenceMillis("2100-03-01T12:30:00Z"), ArticleDates.parseIsoDate("2100-03-01T12:30:00Z"));
+    }
+
+    @Test
+    public void everyDayOfSeveralYears_matchesSimpleDateFormat() throws Exception {
+        SimpleDateFormat isoFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        isoFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        long millis = referenceMillis("1999-01-01T06:07:08Z");
+        long end = referenceMillis("2005-01-01T00:00:00Z");
+        while (millis < end) {
+            String isoDate = isoFormat.format(millis);
+            assertEquals(isoDate, millis, ArticleDates.parseIsoDate(isoDate));
+            millis += 24 * 60 * 60 * 1000L;
+        }
+    }
+
+    @Test
+    public void fractionsAndOffsets_areApplied() throws Exception {
+        long base = referenceMillis("2018-05-17T13:21:54Z");
+
+        assertEquals(base + 500, ArticleDates.parseIsoDate("2018-05-17T13:21:54.5Z"));
+        assertEquals(base + 123, ArticleDates.parseIsoDate("2018-05-17T13:21:54.123456Z"));
+        assertEquals(base, ArticleDates.parseIsoDate("2018-05-17T14:21:54+01:00"));
+        assertEquals(base, ArticleDates.parseIsoDate("2018-05-17T08:51:54-0430"));
+        assertEquals(base, ArticleDates.parseIsoDate("2018-05-17T13:21:54"));
+    }
+
+    @Test
+    public void invalidDates_areRejected() {
+        String[] invalidDates = {null, "", "2018-05-17", "2018-13-17T13:21:54Z", "2018-02-29T13:21:54Z",
+                "2018-05-17T24:00:00Z", "2018-05-17 13:21:54Z", "2018-05-17T13:21:54X",
+                "2018-05-17T13:21:54Z ", "2018-05-17T13:21:54.Z", "20l8-05-17T13:21:54Z"};
+
+        for (String invalidDate : invalidDates) {
+            assertEquals(invalidDate, ArticleDates.INVALID_DATE, ArticleDates.parseIsoDate(invalidDate));
+        }
+    }
+
+    @Test
+    public void formatDay_showsUtcDayAndReusesStrings() throws Exception {
+        SimpleDateFormat displayFormat = new SimpleDateFormat("dd MMM, yyyy", Locale.getDefault());
+        displayFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        long morning = ArticleDates.parseIsoDate("2018-05-17T00:00:01Z");
+        long evening = ArticleDates.parseIsoDate("2018-05-17T23:59:59Z");
+
+        String morningString = ArticleDates.formatDay(morning);
+        assertEquals(displayFormat.format(morning), morningString);
+        assertSame(morningString, ArticleDates.formatDay(evening));
+        assertEquals(displayFormat.format(morning + 64 * 24 * 60 * 60 * 1000L),
+                ArticleDates.formatDay(morning + 64 * 24 * 60 * 60 * 1000L));
+        assertEquals(displayFormat.format(morning), ArticleDates.formatDay(morning));
+    }
+
+    @Test
+    public void formatDay_invalidDate_isNull() {
+        assertNull(ArticleDates.formatDay(ArticleDates.INVALID_DATE));
+    }
+
+    private static long referenceMillis(String isoDate) throws Exception {
+        SimpleDateFormat isoFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        isoFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return isoFormat.parse(isoDate).getTime();
+    }
+}
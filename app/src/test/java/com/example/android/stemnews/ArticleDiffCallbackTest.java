@@ -0,0 +1,65 @@
+package com.example.android.stemnews;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks how {@link ArticleDiffCallback} matches up the rows in an old and a new list.
+ */
+public class ArticleDiffCallbackTest {
+
+    @Test
+    public void articlesWithSameId_areTheSameItem() {
+        List<ArticleRow> oldRows = rows(article("science/a", "Title"), article("science/b", "Title"));
+        List<ArticleRow> newRows = rows(article("science/b", "Title"), article("science/c", "Title"));
+
+        ArticleDiffCallback diffCallback = new ArticleDiffCallback(oldRows, newRows);
+
+        assertTrue(diffCallback.areItemsTheSame(1, 0));
+        assertFalse(diffCallback.areItemsTheSame(0, 0));
+        assertFalse(diffCallback.areItemsTheSame(1, 1));
+    }
+
+    @Test
+    public void unchangedArticle_doesNotNeedBindingAgain() {
+        List<ArticleRow> oldRows = rows(article("science/a", "Title"));
+        List<ArticleRow> newRows = rows(article("science/a", "Title"));
+
+        assertTrue(new ArticleDiffCallback(oldRows, newRows).areContentsTheSame(0, 0));
+    }
+
+    @Test
+    public void editedTitle_needsBindingAgain() {
+        List<ArticleRow> oldRows = rows(article("science/a", "Title"));
+        List<ArticleRow> newRows = rows(article("science/a", "Updated title"));
+
+        ArticleDiffCallback diffCallback = new ArticleDiffCallback(oldRows, newRows);
+
+        assertTrue(diffCallback.areItemsTheSame(0, 0));
+        assertFalse(diffCallback.areContentsTheSame(0, 0));
+    }
+
+    @Test
+    public void missingAuthor_isComparedSafely() {
+        NewsArticle withAuthor = new NewsArticle("science/a", "Title", "Science", "Author",
+                "2018-05-17T13:21:54Z", "https://www.theguardian.com/science/a");
+
+        ArticleDiffCallback diffCallback = new ArticleDiffCallback(
+                rows(article("science/a", "Title")), rows(withAuthor));
+
+        assertFalse(diffCallback.areContentsTheSame(0, 0));
+    }
+
+    private static List<ArticleRow> rows(NewsArticle... articles) {
+        return ArticleRow.fromArticles(Arrays.asList(articles));
+    }
+
+    private static NewsArticle article(String id, String title) {
+        return new NewsArticle(id, title, "Science", null, "2018-05-17T13:21:54Z",
+                "https://www.theguardian.com/" + id);
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.android.stemnews;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link ArticleFeed} only hands the changed articles on to its consumer, so that the
+ * cost of adding a page stays the same however long the list gets.
+ */
+public class ArticleFeedTest {
+
+    private static final int PAGE_SIZE = 10;
+    private static final int PAGE_COUNT = 150;
+
+    @Test
+    public void appendingPages_copiesOnlyTheNewPage() {
+        ArticleFeed feed = new ArticleFeed();
+        List<ArticleRow> adapterItems = new ArrayList<>();
+
+        for (int page = 0; page < PAGE_COUNT; page++) {
+            int pageStart = feed.size();
+            feed = feed.replaceFrom(pageStart, page(page, "fresh"));
+
+            assertEquals(pageStart, feed.getChangedFrom());
+            assertEquals(PAGE_SIZE, sync(feed, adapterItems));
+            assertEquals((page + 1) * PAGE_SIZE, adapterItems.size());
+        }
+
+        assertSame(feed.getRows().get(0), adapterItems.get(0));
+        assertEquals("page149/9", adapterItems.get(adapterItems.size() - 1).getArticle().getArticleId());
+    }
+
+    @Test
+    public void freshPageReplacingCachedCopy_onlyTouchesTheLastPage() {
+        ArticleFeed feed = new ArticleFeed();
+        List<ArticleRow> adapterItems = new ArrayList<>();
+        for (int page = 0; page < PAGE_COUNT; page++) {
+            feed = feed.replaceFrom(feed.size(), page(page, "fresh"));
+            sync(feed, adapterItems);
+        }
+        ArticleRow firstRow = adapterItems.get(0);
+
+        // Deliver a cached copy of the next page, then the fresh one that replaces it
+        int pageStart = feed.size();
+        feed = feed.replaceFrom(pageStart, page(PAGE_COUNT, "cached"));
+        assertEquals(PAGE_SIZE, sync(feed, adapterItems));
+        feed = feed.replaceFrom(pageStart, page(PAGE_COUNT, "fresh"));
+        assertEquals(PAGE_SIZE, feed.updateFor(adapterItems, feed.getChangedFrom()).getOldRows().size());
+        assertEquals(PAGE_SIZE, sync(feed, adapterItems));
+
+        assertEquals((PAGE_COUNT + 1) * PAGE_SIZE, adapterItems.size());
+        assertSame(firstRow, adapterItems.get(0));
+        assertEquals("Title fresh", adapterItems.get(pageStart).getTitle());
+    }
+
+    @Test
+    public void recreatedAdapter_receivesWholeFeed() {
+        ArticleFeed feed = new ArticleFeed();
+        for (int page = 0; page < 3; page++) {
+            feed = feed.replaceFrom(feed.size(), page(page, "fresh"));
+        }
+
+        List<ArticleRow> adapterItems = new ArrayList<>();
+        assertEquals(3 * PAGE_SIZE, sync(feed, adapterItems));
+        assertEquals(feed.getRows(), adapterItems);
+    }
+
+    @Test
+    public void emptyPage_leavesFeedUnchanged() {
+        ArticleFeed feed = new ArticleFeed(page(0, "fresh"));
+        List<ArticleRow> adapterItems = new ArrayList<>();
+        sync(feed, adapterItems);
+
+        feed = feed.replaceFrom(feed.size(), new ArrayList<ArticleRow>());
+
+        assertEquals(0, sync(feed, adapterItems));
+        assertEquals(PAGE_SIZE, adapterItems.size());
+    }
+
+    @Test
+    public void shiftedPage_dropsArticlesAlreadyLoaded() {
+        ArticleFeed feed = new ArticleFeed(page(0, "fresh"));
+
+        // Two new articles were published, pushing the last two of the first page onto the next
+        List<NewsArticle> shiftedPage = new ArrayList<>();
+        shiftedPage.add(article("page0/8"));
+        shiftedPage.add(article("page0/9"));
+        shiftedPage.add(article("page1/0"));
+        shiftedPage.add(article("page1/0"));
+        shiftedPage.add(article("page1/1"));
+
+        Set<String> acceptedIds = new HashSet<>();
+        List<NewsArticle> newArticles = feed.withoutLoaded(shiftedPage, feed.size(), acceptedIds);
+
+        assertEquals(2, newArticles.size());
+        assertEquals("page1/0", newArticles.get(0).getArticleId());
+        assertEquals("page1/1", newArticles.get(1).getArticleId());
+        assertTrue(acceptedIds.contains("page1/1"));
+    }
+
+    @Test
+    public void replacedPage_isNotTreatedAsLoaded() {
+        ArticleFeed feed = new ArticleFeed(page(0, "fresh"));
+        int pageStart = feed.size();
+        feed = feed.replaceFrom(pageStart, page(1, "cached"));
+
+        // The fresh copy of the page replaces the cached one, so its articles are still new
+        List<NewsArticle> freshPage = new ArrayList<>();
+        freshPage.add(article("page1/0"));
+        assertEquals(1, feed.withoutLoaded(freshPage, pageStart, new HashSet<String>()).size());
+
+        // Once the page is replaced by a different one, its old articles are no longer in the feed
+        feed = feed.replaceFrom(pageStart, page(2, "fresh"));
+        assertEquals(1, feed.withoutLoaded(freshPage, feed.size(), new HashSet<String>()).size());
+        freshPage.add(article("page2/3"));
+        assertEquals(1, feed.withoutLoaded(freshPage, feed.size(), new HashSet<String>()).size());
+    }
+
+    // Bring a copy of the feed up to date with the same update that the {@link ArticleAdapter} applies
+    private static int sync(ArticleFeed feed, List<ArticleRow> adapterItems) {
+        ArticleFeed.Update feedUpdate = feed.updateFor(adapterItems, feed.getChangedFrom());
+        feedUpdate.applyTo(adapterItems);
+        return feedUpdate.getNewRows().size();
+    }
+
+    private static List<ArticleRow> page(int page, String copy) {
+        List<NewsArticle> articles = new ArrayList<>();
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            String id = "page" + page + "/" + i;
+            articles.add(new NewsArticle(id, "Title " + copy, "Science", null,
+                    "2018-05-17T13:21:54Z", "https://www.theguardian.com/" + id));
+        }
+        return ArticleRow.fromArticles(articles);
+    }
+
+    private static NewsArticle article(String id) {
+        return new NewsArticle(id, "Title", "Science", null, "2018-05-17T13:21:54Z",
+                "https://www.theguardian.com/" + id);
+    }
+}
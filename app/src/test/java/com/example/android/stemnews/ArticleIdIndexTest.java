@@ -0,0 +1,66 @@
+package com.example.android.stemnews;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link ArticleIdIndex} finds the first position of each article as pages are added
+ * and replaced.
+ */
+public class ArticleIdIndexTest {
+
+    @Test
+    public void manyArticles_allFoundAfterGrowing() {
+        ArticleIdIndex idIndex = new ArticleIdIndex();
+        for (int i = 0; i < 5000; i++) {
+            idIndex.add("science/" + i);
+        }
+
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(i, idIndex.positionOf("science/" + i, 5000));
+        }
+        assertEquals(-1, idIndex.positionOf("science/5000", 5000));
+    }
+
+    @Test
+    public void positionAtOrAfterLimit_isNotFound() {
+        ArticleIdIndex idIndex = new ArticleIdIndex();
+        idIndex.add("science/a");
+        idIndex.add("science/b");
+
+        assertEquals(-1, idIndex.positionOf("science/b", 1));
+        assertEquals(1, idIndex.positionOf("science/b", 2));
+    }
+
+    @Test
+    public void repeatedArticle_keepsFirstPosition() {
+        ArticleIdIndex idIndex = new ArticleIdIndex();
+        idIndex.add("science/a");
+        idIndex.add("science/b");
+        idIndex.add("science/a");
+
+        assertEquals(0, idIndex.positionOf("science/a", 3));
+    }
+
+    @Test
+    public void replacedArticles_areNoLongerFound() {
+        ArticleIdIndex idIndex = new ArticleIdIndex();
+        for (int i = 0; i < 20; i++) {
+            idIndex.add("cached/" + i);
+        }
+
+        // Replace the second half many times over, leaving plenty of entries that no longer match
+        for (int copy = 0; copy < 100; copy++) {
+            idIndex.truncate(10);
+            for (int i = 10; i < 20; i++) {
+                idIndex.add("fresh" + copy + "/" + i);
+            }
+        }
+
+        assertEquals(5, idIndex.positionOf("cached/5", 20));
+        assertEquals(-1, idIndex.positionOf("cached/15", 20));
+        assertEquals(-1, idIndex.positionOf("fresh98/15", 20));
+        assertEquals(15, idIndex.positionOf("fresh99/15", 20));
+    }
+}
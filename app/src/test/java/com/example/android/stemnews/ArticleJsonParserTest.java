@@ -0,0 +1,118 @@
+package com.example.android.stemnews;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the streaming {@link ArticleJsonParser} produces exactly the same articles as the
+ * JSON object tree parser in {@link QueryUtils} for recorded Guardian API responses.
+ */
+public class ArticleJsonParserTest {
+
+    // The same key values as the ones in the strings.xml resource file
+    static final ResponseKeys KEYS = new ResponseKeys("response", "status", "results", "id", "webTitle",
+            "sectionName", "tags", "webPublicationDate", "webUrl", "fields", "thumbnail", "message", "ok", " & \u2026");
+
+    @Test
+    public void pageOfTen_matchesTreeParser() throws IOException {
+        assertSameArticles("search_page_size_10.json", 10);
+    }
+
+    @Test
+    public void pageOfFifty_matchesTreeParser() throws IOException {
+        assertSameArticles("search_page_size_50.json", 50);
+    }
+
+    @Test
+    public void pageOfTwoHundred_matchesTreeParser() throws IOException {
+        assertSameArticles("search_page_size_200.json", 200);
+    }
+
+    @Test
+    public void emptyPage_matchesTreeParser() throws IOException {
+        assertSameArticles("search_empty.json", 0);
+    }
+
+    @Test
+    public void errorResponse_matchesTreeParser() throws IOException {
+        assertSameArticles("search_error.json", 0);
+    }
+
+    @Test
+    public void nullStream_returnsNull() throws IOException {
+        assertNull(new ArticleJsonParser(KEYS).parse(null));
+    }
+
+    @Test
+    public void stopsReadingOnceResultsAreConsumed() throws IOException {
+        // Anything after the results of a successful response should never be read
+        String json = "{\"response\":{\"status\":\"ok\",\"results\":[]},\"trailing\":[1,2,";
+        List<NewsArticle> articles = new ArticleJsonParser(KEYS).parse(
+                new ByteArrayInputStream(json.getBytes("UTF-8")));
+
+        assertNotNull(articles);
+        assertTrue(articles.isEmpty());
+    }
+
+    @Test
+    public void thumbnailField_isReadWhenPresent() throws IOException {
+        String json = "{\"response\":{\"status\":\"ok\",\"results\":["
+                + "{\"id\":\"science/a\",\"webTitle\":\"A\",\"sectionName\":\"Science\",\"tags\":[],"
+                + "\"webPublicationDate\":\"2018-05-17T13:21:54Z\",\"webUrl\":\"https://www.theguardian.com/science/a\","
+                + "\"fields\":{\"headline\":\"A\",\"thumbnail\":\"https://media.guim.co.uk/a/500.jpg\"}},"
+                + "{\"id\":\"science/b\",\"webTitle\":\"B\",\"sectionName\":\"Science\",\"tags\":[],"
+                + "\"webPublicationDate\":\"2018-05-17T13:21:54Z\",\"webUrl\":\"https://www.theguardian.com/science/b\"}]}}";
+
+        List<NewsArticle> expected = QueryUtils.extractFeatureFromJson(json, KEYS);
+        List<NewsArticle> actual = new ArticleJsonParser(KEYS).parse(new ByteArrayInputStream(json.getBytes("UTF-8")));
+
+        assertEquals("https://media.guim.co.uk/a/500.jpg", actual.get(0).getThumbnailUrl());
+        assertNull(actual.get(1).getThumbnailUrl());
+        assertEquals(expected.get(0).getThumbnailUrl(), actual.get(0).getThumbnailUrl());
+        assertNull(expected.get(1).getThumbnailUrl());
+    }
+
+    @Test(expected = InterruptedIOException.class)
+    public void cancelledParse_stopsBeforeNextArticle() throws IOException {
+        CancellationToken cancellation = new CancellationToken();
+        cancellation.cancel();
+
+        new ArticleJsonParser(KEYS).parse(openFixture("search_page_size_10.json"), cancellation);
+    }
+
+    private void assertSameArticles(String fixtureName, int expectedCount) throws IOException {
+        List<NewsArticle> expected = QueryUtils.extractFeatureFromJson(
+                QueryUtils.readFromStream(openFixture(fixtureName)), KEYS);
+        List<NewsArticle> actual = new ArticleJsonParser(KEYS).parse(openFixture(fixtureName));
+
+        assertNotNull(expected);
+        assertNotNull(actual);
+        assertEquals(expectedCount, expected.size());
+        assertEquals(expected.size(), actual.size());
+
+        for (int i = 0; i < expected.size(); i++) {
+            NewsArticle expectedArticle = expected.get(i);
+            NewsArticle actualArticle = actual.get(i);
+            assertEquals(expectedArticle.getArticleId(), actualArticle.getArticleId());
+            assertEquals(expectedArticle.getArticleTitle(), actualArticle.getArticleTitle());
+            assertEquals(expectedArticle.getNewsSection(), actualArticle.getNewsSection());
+            assertEquals(expectedArticle.getAuthorName(), actualArticle.getAuthorName());
+            assertEquals(expectedArticle.getDatePublished(), actualArticle.getDatePublished());
+            assertEquals(expectedArticle.getWebURL(), actualArticle.getWebURL());
+            assertEquals(expectedArticle.getThumbnailUrl(), actualArticle.getThumbnailUrl());
+        }
+    }
+
+    static InputStream openFixture(String fixtureName) {
+        InputStream fixture = ArticleJsonParserTest.class.getClassLoader().getResourceAsStream("fixtures/" + fixtureName);
+        assertNotNull("Missing fixture " + fixtureName, fixture);
+        return fixture;
+    }
+}
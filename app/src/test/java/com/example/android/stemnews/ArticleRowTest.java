@@ -0,0 +1,54 @@
+package com.example.android.stemnews;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the values that {@link ArticleRow} works out for binding to the list items.
+ */
+public class ArticleRowTest {
+
+    @Test
+    public void titleIsTrimmedAtSeparator() {
+        ArticleRow row = row(article("Squirrels on the Moon | Science news", "Ben Smith", "2018-05-17T13:21:54Z"));
+
+        assertEquals("Squirrels on the Moon ", row.getTitle());
+    }
+
+    @Test
+    public void titleWithoutSeparator_isUnchanged() {
+        ArticleRow row = row(article("Squirrels on the Moon", "Ben Smith", "2018-05-17T13:21:54Z"));
+
+        assertEquals("Squirrels on the Moon", row.getTitle());
+    }
+
+    @Test
+    public void authorAndDate_areShownWhenGiven() {
+        ArticleRow row = row(article("Title", "Ben Smith", "2018-05-17T13:21:54Z"));
+
+        assertTrue(row.showAuthor());
+        assertEquals("Ben Smith", row.getAuthorLabel());
+        assertTrue(row.showDate());
+        assertEquals(ArticleDates.formatDay(ArticleDates.parseIsoDate("2018-05-17T13:21:54Z")), row.getDateLabel());
+    }
+
+    @Test
+    public void missingAuthorAndInvalidDate_areHidden() {
+        ArticleRow row = row(article("Title", null, "17/05/2018"));
+
+        assertFalse(row.showAuthor());
+        assertFalse(row.showDate());
+    }
+
+    private static ArticleRow row(NewsArticle article) {
+        return ArticleRow.fromArticles(Collections.singletonList(article)).get(0);
+    }
+
+    private static NewsArticle article(String title, String author, String datePublished) {
+        return new NewsArticle("science/a", title, "Science", author, datePublished,
+                "https://www.theguardian.com/science/a");
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.android.stemnews;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link ArticleStore} gives back the same values that were added to it, and that it
+ * holds a long scrolling session in much less memory than one object per article.
+ */
+public class ArticleStoreTest {
+
+    private static final int PAGE_SIZE = 10;
+    private static final int ARTICLE_COUNT = 10000;
+    private static final String[] SECTIONS = {"Science", "Technology", "Environment", "Education", "Business"};
+
+    @Test
+    public void addedArticle_returnsSameValues() {
+        ArticleStore store = new ArticleStore();
+        NewsArticle article = store.add("science/2018/may/17/moon", "Squirrels on the Moon | Science",
+                "Science", "Ben Smith", "2018-05-17T13:21:54Z", "https://www.theguardian.com/science/2018/may/17/moon", null);
+
+        assertEquals("science/2018/may/17/moon", article.getArticleId());
+        assertEquals("Squirrels on the Moon | Science", article.getArticleTitle());
+        assertEquals("Science", article.getNewsSection());
+        assertEquals("Ben Smith", article.getAuthorName());
+        assertEquals("2018-05-17T13:21:54Z", article.getDatePublished());
+        assertEquals(ArticleDates.parseIsoDate("2018-05-17T13:21:54Z"), article.getPublishedMillis());
+        assertEquals("https://www.theguardian.com/science/2018/may/17/moon", article.getWebURL());
+    }
+
+    @Test
+    public void unusualValues_arePreserved() {
+        ArticleStore store = new ArticleStore();
+        NewsArticle article = store.add("science/moon", "Title", "Science", null, "17/05/2018",
+                "https://www.example.com/science/moon", null);
+
+        assertNull(article.getAuthorName());
+        assertEquals("17/05/2018", article.getDatePublished());
+        assertEquals(ArticleDates.INVALID_DATE, article.getPublishedMillis());
+        assertEquals("https://www.example.com/science/moon", article.getWebURL());
+    }
+
+    @Test
+    public void repeatedNames_areOnlyKeptOnce() {
+        ArticleStore store = new ArticleStore();
+        NewsArticle first = store.add("science/a", "Title", new String("Science"), new String("Ben Smith"),
+                "2018-05-17T13:21:54Z", "https://www.theguardian.com/science/a", null);
+        NewsArticle second = store.add("science/b", "Title", new String("Science"), new String("Ben Smith"),
+                "2018-05-17T13:21:54Z", "https://www.theguardian.com/science/b", null);
+
+        assertSame(first.getNewsSection(), second.getNewsSection());
+        assertSame(first.getAuthorName(), second.getAuthorName());
+    }
+
+    @Test
+    public void views_stayTheSameAsStoreGrows() {
+        ArticleStore store = new ArticleStore();
+        List<NewsArticle> articles = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            articles.add(store.add("science/" + i, "Title " + i, SECTIONS[i % SECTIONS.length], "Author " + (i % 7),
+                    "2018-05-17T13:21:54Z", "https://www.theguardian.com/science/" + i, null));
+        }
+
+        assertEquals(1000, store.size());
+        for (int i = 0; i < 1000; i++) {
+            NewsArticle article = articles.get(i);
+            assertEquals("science/" + i, article.getArticleId());
+            assertEquals("Title " + i, article.getArticleTitle());
+            assertEquals(SECTIONS[i % SECTIONS.length], article.getNewsSection());
+            assertEquals("Author " + (i % 7), article.getAuthorName());
+        }
+    }
+
+    @Test
+    public void copiedRow_keepsDisplayValues() {
+        List<ArticleRow> pageRows = ArticleRow.fromArticles(Collections.singletonList(
+                new NewsArticle("science/a", "Squirrels on the Moon | Science", "Science", "Ben Smith",
+                        "2018-05-17T13:21:54Z", "https://www.theguardian.com/science/a")));
+
+        ArticleRow copiedRow = new ArticleStore().copyRow(pageRows.get(0));
+
+        assertEquals("Squirrels on the Moon ", copiedRow.getTitle());
+        assertEquals(pageRows.get(0).getDateLabel(), copiedRow.getDateLabel());
+        assertEquals("Ben Smith", copiedRow.getAuthorLabel());
+        assertEquals("Squirrels on the Moon | Science", copiedRow.getArticle().getArticleTitle());
+    }
+
+    @Test
+    public void tenThousandArticles_retainMuchLessThanOneObjectEach() throws Exception {
+        long before = usedHeap();
+        List<PlainArticle> plainArticles = new ArrayList<>(ARTICLE_COUNT);
+        for (int i = 0; i < ARTICLE_COUNT; i++) {
+            plainArticles.add(new PlainArticle(i));
+        }
+        long plainSize = usedHeap() - before;
+        assertEquals(ARTICLE_COUNT, plainArticles.size());
+        plainArticles = null;
+
+        before = usedHeap();
+        ArticleFeed feed = new ArticleFeed();
+        for (int page = 0; page < ARTICLE_COUNT / PAGE_SIZE; page++) {
+            feed = feed.replaceFrom(feed.size(), ArticleRow.fromArticles(parsedPage(page)));
+        }
+        long storeSize = usedHeap() - before;
+        assertEquals(ARTICLE_COUNT, feed.size());
+
+        System.out.println("Retained bytes per article: one object each " + plainSize / ARTICLE_COUNT
+                + ", article store " + storeSize / ARTICLE_COUNT);
+        assertTrue("Store retained " + storeSize + " bytes against " + plainSize,
+                storeSize < plainSize * 2 / 3);
+    }
+
+    // A page of articles as the parser creates them, with new Strings for every value
+    private static List<NewsArticle> parsedPage(int page) {
+        ArticleStore pageStore = new ArticleStore();
+        List<NewsArticle> articles = new ArrayList<>(PAGE_SIZE);
+        for (int i = page * PAGE_SIZE; i < (page + 1) * PAGE_SIZE; i++) {
+            PlainArticle values = new PlainArticle(i);
+            articles.add(pageStore.add(values.articleId, values.articleTitle, values.newsSection,
+                    values.authorName, values.datePublished, values.webURL, null));
+        }
+        return articles;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // The way an article was held before the store, as one object with a separate String per field
+    private static final class PlainArticle {
+        final String articleId;
+        final String articleTitle;
+        final String newsSection;
+        final String authorName;
+        final String datePublished;
+        final String webURL;
+
+        PlainArticle(int i) {
+            articleId = new String("science/2018/may/" + (i % 28 + 1) + "/article-number-" + i + "-about-research");
+            articleTitle = new String("Researchers publish finding number " + i + " about the natural world | Science");
+            newsSection = new String(SECTIONS[i % SECTIONS.length]);
+            authorName = (i % 5 == 0) ? null : new String("Correspondent Number " + (i % 200));
+            datePublished = new String("2018-05-" + (i % 18 + 10) + "T13:21:54Z");
+            webURL = new String("https://www.theguardian.com/" + articleId);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.android.stemnews;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the listeners of a {@link CancellationToken} are run exactly once.
+ */
+public class CancellationTokenTest {
+
+    @Test
+    public void cancel_runsListenersOnce() {
+        CancellationToken cancellation = new CancellationToken();
+        AtomicInteger runCount = new AtomicInteger();
+        cancellation.addListener(counter(runCount));
+
+        cancellation.cancel();
+        cancellation.cancel();
+
+        assertTrue(cancellation.isCancelled());
+        assertEquals(1, runCount.get());
+    }
+
+    @Test
+    public void listenerAddedAfterCancel_runsStraightAway() {
+        CancellationToken cancellation = new CancellationToken();
+        cancellation.cancel();
+        AtomicInteger runCount = new AtomicInteger();
+
+        cancellation.addListener(counter(runCount));
+
+        assertEquals(1, runCount.get());
+    }
+
+    @Test
+    public void removedListener_isNotRun() {
+        CancellationToken cancellation = new CancellationToken();
+        AtomicInteger runCount = new AtomicInteger();
+        Runnable listener = counter(runCount);
+        cancellation.addListener(listener);
+
+        cancellation.removeListener(listener);
+        cancellation.cancel();
+
+        assertEquals(0, runCount.get());
+    }
+
+    private static Runnable counter(final AtomicInteger runCount) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                runCount.incrementAndGet();
+            }
+        };
+    }
+}
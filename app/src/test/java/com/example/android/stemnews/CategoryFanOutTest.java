@@ -0,0 +1,289 @@
+package com.example.android.stemnews;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the k-way merge of the category pages in {@link CategoryFanOut}, and how it carries on
+ * from one page to the next.
+ */
+public class CategoryFanOutTest {
+
+    private static final List<String> CATEGORY_URLS = Arrays.asList(
+            "https://content.guardianapis.com/search?q=science",
+            "https://content.guardianapis.com/search?q=technology");
+
+    @Test
+    public void newestFirst_mergesByDescendingDate() {
+        List<NewsArticle> science = Arrays.asList(
+                article("science/a", "2018-05-20T10:00:00Z"),
+                article("science/b", "2018-05-18T10:00:00Z"));
+        List<NewsArticle> technology = Arrays.asList(
+                article("technology/c", "2018-05-19T10:00:00Z"),
+                article("technology/d", "2018-05-17T10:00:00Z"));
+
+        List<NewsArticle> merged = CategoryFanOut.merge(pages(science, technology), CategoryFanOut.NEWEST_FIRST);
+
+        assertIds(merged, "science/a", "technology/c", "science/b", "technology/d");
+    }
+
+    @Test
+    public void oldestFirst_mergesByAscendingDate() {
+        List<NewsArticle> science = Arrays.asList(
+                article("science/a", "2018-05-17T10:00:00Z"),
+                article("science/b", "2018-05-19T10:00:00Z"));
+        List<NewsArticle> mathematics = Collections.singletonList(
+                article("mathematics/c", "2018-05-18T10:00:00Z"));
+
+        List<NewsArticle> merged = CategoryFanOut.merge(pages(science, mathematics), CategoryFanOut.OLDEST_FIRST);
+
+        assertIds(merged, "science/a", "mathematics/c", "science/b");
+    }
+
+    @Test
+    public void relevance_interleavesByRank() {
+        List<NewsArticle> science = Arrays.asList(
+                article("science/a", "2018-05-17T10:00:00Z"),
+                article("science/b", "2018-05-19T10:00:00Z"));
+        List<NewsArticle> engineering = Arrays.asList(
+                article("engineering/c", "2018-05-20T10:00:00Z"),
+                article("engineering/d", "2018-05-10T10:00:00Z"));
+
+        List<NewsArticle> merged = CategoryFanOut.merge(pages(science, engineering), CategoryFanOut.BY_RANK);
+
+        assertIds(merged, "science/a", "engineering/c", "science/b", "engineering/d");
+    }
+
+    @Test
+    public void articleInSeveralCategories_isOnlyMergedOnce() {
+        NewsArticle shared = article("science/shared", "2018-05-19T10:00:00Z");
+        List<NewsArticle> science = Arrays.asList(article("science/a", "2018-05-20T10:00:00Z"), shared);
+        List<NewsArticle> technology = Arrays.asList(shared, article("technology/b", "2018-05-18T10:00:00Z"));
+
+        List<NewsArticle> merged = CategoryFanOut.merge(pages(science, technology), CategoryFanOut.NEWEST_FIRST);
+
+        assertIds(merged, "science/a", "science/shared", "technology/b");
+    }
+
+    @Test
+    public void emptyPages_mergeToEmptyList() {
+        List<NewsArticle> empty = Collections.emptyList();
+
+        assertTrue(CategoryFanOut.merge(pages(empty, empty), CategoryFanOut.NEWEST_FIRST).isEmpty());
+    }
+
+    @Test
+    public void limit_keepsTopOfUnion() {
+        List<NewsArticle> science = Arrays.asList(
+                article("science/a", "2018-05-20T10:00:00Z"),
+                article("science/b", "2018-05-16T10:00:00Z"));
+        List<NewsArticle> technology = Arrays.asList(
+                article("technology/c", "2018-05-19T10:00:00Z"),
+                article("technology/d", "2018-05-18T10:00:00Z"));
+
+        List<NewsArticle> merged = CategoryFanOut.merge(pages(science, technology), CategoryFanOut.NEWEST_FIRST, 3);
+
+        assertIds(merged, "science/a", "technology/c", "technology/d");
+    }
+
+    @Test
+    public void removedCategory_isLeftOutOfRecomposedPage() {
+        List<NewsArticle> science = Arrays.asList(
+                article("science/a", "2018-05-20T10:00:00Z"),
+                article("science/b", "2018-05-16T10:00:00Z"));
+        List<NewsArticle> technology = Arrays.asList(
+                article("technology/c", "2018-05-19T10:00:00Z"),
+                article("technology/d", "2018-05-18T10:00:00Z"));
+        assertIds(CategoryFanOut.merge(pages(science, technology), CategoryFanOut.NEWEST_FIRST, 2),
+                "science/a", "technology/c");
+
+        // Without technology, the next science article moves up into the page
+        assertIds(CategoryFanOut.merge(pages(science), CategoryFanOut.NEWEST_FIRST, 2),
+                "science/a", "science/b");
+    }
+
+    @Test
+    public void nextPage_carriesOnFromLeftovers() {
+        List<NewsArticle> science = Arrays.asList(
+                article("science/a", "2018-05-20T10:00:00Z"),
+                article("science/b", "2018-05-19T10:00:00Z"),
+                article("science/c", "2018-05-18T10:00:00Z"));
+        List<NewsArticle> technology = Arrays.asList(
+                article("technology/d", "2018-05-21T10:00:00Z"),
+                article("technology/e", "2018-05-17T10:00:00Z"));
+        CategoryFanOut.MergeState mergeState = state(science, technology);
+
+        assertIds(CategoryFanOut.mergeNext(mergeState, CategoryFanOut.NEWEST_FIRST, 0, 2), "technology/d", "science/a");
+        assertEquals(2, mergeState.position);
+
+        // Every article in the second page is older than the end of the first
+        assertIds(CategoryFanOut.mergeNext(mergeState, CategoryFanOut.NEWEST_FIRST, 0, 2), "science/b", "science/c");
+        assertIds(CategoryFanOut.mergeNext(mergeState, CategoryFanOut.NEWEST_FIRST, 0, 2), "technology/e");
+        assertEquals(5, mergeState.position);
+    }
+
+    @Test
+    public void skippedPages_matchPagesMergedInTurn() {
+        List<NewsArticle> science = Arrays.asList(
+                article("science/a", "2018-05-20T10:00:00Z"),
+                article("science/b", "2018-05-18T10:00:00Z"),
+                article("science/c", "2018-05-16T10:00:00Z"));
+        List<NewsArticle> mathematics = Arrays.asList(
+                article("mathematics/d", "2018-05-19T10:00:00Z"),
+                article("mathematics/e", "2018-05-17T10:00:00Z"));
+
+        CategoryFanOut.MergeState inTurn = state(science, mathematics);
+        CategoryFanOut.mergeNext(inTurn, CategoryFanOut.NEWEST_FIRST, 0, 2);
+        List<NewsArticle> secondPage = CategoryFanOut.mergeNext(inTurn, CategoryFanOut.NEWEST_FIRST, 0, 2);
+
+        List<NewsArticle> replayed = CategoryFanOut.mergeNext(state(science, mathematics), CategoryFanOut.NEWEST_FIRST, 2, 2);
+
+        assertIds(secondPage, "science/b", "mathematics/e");
+        assertIds(replayed, "science/b", "mathematics/e");
+    }
+
+    @Test
+    public void articleInTwoCategories_isOnlyMergedOnceAcrossPages() {
+        List<NewsArticle> science = Arrays.asList(
+                article("science/shared", "2018-05-20T10:00:00Z"),
+                article("science/b", "2018-05-19T10:00:00Z"));
+        List<NewsArticle> environment = Arrays.asList(
+                article("environment/c", "2018-05-22T10:00:00Z"),
+                article("environment/d", "2018-05-21T10:00:00Z"),
+                article("science/shared", "2018-05-20T10:00:00Z"));
+        CategoryFanOut.MergeState mergeState = state(science, environment);
+
+        assertIds(CategoryFanOut.mergeNext(mergeState, CategoryFanOut.NEWEST_FIRST, 0, 3),
+                "environment/c", "environment/d", "science/shared");
+        assertIds(CategoryFanOut.mergeNext(mergeState, CategoryFanOut.NEWEST_FIRST, 0, 3), "science/b");
+        assertEquals(4, mergeState.position);
+    }
+
+    @Test
+    public void heldBackCategory_keepsItsLeftoversForTheNextPage() {
+        List<NewsArticle> science = Arrays.asList(
+                article("science/a", "2018-05-20T10:00:00Z"),
+                article("science/b", "2018-05-18T10:00:00Z"));
+        List<NewsArticle> technology = Arrays.asList(
+                article("technology/c", "2018-05-19T10:00:00Z"));
+        CategoryFanOut.MergeState mergeState = state(science, technology);
+
+        assertIds(CategoryFanOut.mergeNext(mergeState, CategoryFanOut.NEWEST_FIRST, 0, 1, new boolean[]{false, true}),
+                "science/a");
+        assertIds(CategoryFanOut.mergeNext(mergeState, CategoryFanOut.NEWEST_FIRST, 0, 2), "technology/c", "science/b");
+    }
+
+    @Test
+    public void categoryWithMoreResults_stopsTheMergeWhenItRunsOut() {
+        List<NewsArticle> science = Arrays.asList(
+                article("science/a", "2018-05-20T10:00:00Z"));
+        List<NewsArticle> technology = Arrays.asList(
+                article("technology/b", "2018-05-19T10:00:00Z"),
+                article("technology/c", "2018-05-18T10:00:00Z"));
+        CategoryFanOut.MergeState mergeState = state(science, technology);
+        mergeState.exhausted[0] = false;
+
+        // The next science article could be newer than either technology article
+        assertIds(CategoryFanOut.mergeNext(mergeState, CategoryFanOut.NEWEST_FIRST, 0, 3), "science/a");
+        assertEquals(2, mergeState.leftovers.get(1).size());
+    }
+
+    @Test
+    public void copiedState_isNotMovedOnByMerge() {
+        CategoryFanOut.MergeState mergeState = state(Arrays.asList(
+                article("science/a", "2018-05-20T10:00:00Z"),
+                article("science/b", "2018-05-19T10:00:00Z")));
+        CategoryFanOut.MergeState stateCopy = mergeState.copy();
+
+        CategoryFanOut.mergeNext(mergeState, CategoryFanOut.NEWEST_FIRST, 0, 1);
+
+        assertEquals(0, stateCopy.position);
+        assertEquals(2, stateCopy.leftovers.get(0).size());
+        assertEquals(1, mergeState.leftovers.get(0).size());
+    }
+
+    @Test
+    public void cursors_startFromFurthestEarlierPosition() {
+        CategoryFanOut.MergeCursors cursors = new CategoryFanOut.MergeCursors();
+        CategoryFanOut.MergeState firstPageEnd = new CategoryFanOut.MergeState(2);
+        firstPageEnd.position = 10;
+        cursors.store("list", firstPageEnd, true);
+
+        assertEquals(10, cursors.startAt("list", 20, CATEGORY_URLS).position);
+        assertEquals(0, cursors.startAt("list", 5, CATEGORY_URLS).position);
+        assertEquals(0, cursors.startAt("other list", 20, CATEGORY_URLS).position);
+
+        // Merging the first page again makes the later positions out of date
+        CategoryFanOut.MergeState refreshedEnd = new CategoryFanOut.MergeState(2);
+        refreshedEnd.position = 5;
+        cursors.store("list", refreshedEnd, true);
+        assertEquals(5, cursors.startAt("list", 20, CATEGORY_URLS).position);
+    }
+
+    @Test
+    public void chunkSize_isAtLeastPageAndAlignedToFetchedCount() {
+        assertEquals(10, CategoryFanOut.chunkSize(3, 10, 0));
+        assertEquals(10, CategoryFanOut.chunkSize(3, 10, 20));
+        assertEquals(15, CategoryFanOut.chunkSize(12, 10, 15));
+        assertEquals(5, CategoryFanOut.chunkSize(12, 10, 5));
+        assertEquals(PageSizer.MAX_PAGE_SIZE, CategoryFanOut.chunkSize(500, 10, 0));
+    }
+
+    @Test
+    public void isChange_onlyOnceCategoriesAreRecorded() {
+        Set<String> science = new HashSet<>(Collections.singletonList("science"));
+        Set<String> scienceAndMaths = new HashSet<>(Arrays.asList("science", "mathematics"));
+
+        assertFalse(CategoryFanOut.isChange(null, science));
+        assertFalse(CategoryFanOut.isChange(science, new HashSet<>(science)));
+        assertTrue(CategoryFanOut.isChange(science, scienceAndMaths));
+        assertTrue(CategoryFanOut.isChange(scienceAndMaths, science));
+    }
+
+    @Test
+    public void removedList_isNoLongerContinued() {
+        CategoryFanOut.MergeCursors cursors = new CategoryFanOut.MergeCursors();
+        cursors.store("list", new CategoryFanOut.MergeState(2), true);
+        assertTrue(cursors.contains("list"));
+
+        cursors.remove("list");
+        assertFalse(cursors.contains("list"));
+        assertEquals(0, cursors.startAt("list", 10, CATEGORY_URLS).position);
+    }
+
+    @SafeVarargs
+    private static List<List<NewsArticle>> pages(List<NewsArticle>... categoryPages) {
+        return new ArrayList<>(Arrays.asList(categoryPages));
+    }
+
+    @SafeVarargs
+    private static CategoryFanOut.MergeState state(List<NewsArticle>... categoryPages) {
+        CategoryFanOut.MergeState mergeState = new CategoryFanOut.MergeState(categoryPages.length);
+        for (int i = 0; i < categoryPages.length; i++) {
+            mergeState.leftovers.set(i, categoryPages[i]);
+            mergeState.fetchedCounts[i] = categoryPages[i].size();
+            mergeState.exhausted[i] = true;
+        }
+        return mergeState;
+    }
+
+    private static NewsArticle article(String id, String datePublished) {
+        return new NewsArticle(id, "Title of " + id, "Science", null, datePublished,
+                "https://www.theguardian.com/" + id);
+    }
+
+    private static void assertIds(List<NewsArticle> articles, String... expectedIds) {
+        assertEquals(expectedIds.length, articles.size());
+        for (int i = 0; i < expectedIds.length; i++) {
+            assertEquals(expectedIds[i], articles.get(i).getArticleId());
+        }
+    }
+}
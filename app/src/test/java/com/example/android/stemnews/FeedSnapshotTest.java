@@ -0,0 +1,115 @@
+package com.example.android.stemnews;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that a {@link FeedSnapshot} restores the same articles and scroll position that were
+ * saved, and that a damaged or outdated file is ignored.
+ */
+public class FeedSnapshotTest {
+
+    private static final String QUERY = "https://content.guardianapis.com/search?order-by=newest&q=science";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void writtenSnapshot_readsBackTheSame() throws Exception {
+        File snapshotFile = temporaryFolder.newFile();
+        List<ArticleRow> rows = rows();
+        new FeedSnapshot(QUERY, rows, 3, new int[]{10, 10, 20}, 17, -42).write(snapshotFile);
+
+        FeedSnapshot snapshot = FeedSnapshot.read(snapshotFile);
+
+        assertNotNull(snapshot);
+        assertEquals(QUERY, snapshot.getQuery());
+        assertEquals(3, snapshot.getCurrentPage());
+        assertArrayEquals(new int[]{10, 10, 20}, snapshot.getPageSizes());
+        assertEquals(17, snapshot.getScrollPosition());
+        assertEquals(-42, snapshot.getScrollOffset());
+
+        List<ArticleRow> restoredRows = snapshot.getFeed().getRows();
+        assertEquals(rows.size(), restoredRows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            NewsArticle article = rows.get(i).getArticle();
+            NewsArticle restoredArticle = restoredRows.get(i).getArticle();
+            assertEquals(article.getArticleId(), restoredArticle.getArticleId());
+            assertEquals(article.getArticleTitle(), restoredArticle.getArticleTitle());
+            assertEquals(article.getNewsSection(), restoredArticle.getNewsSection());
+            assertEquals(article.getAuthorName(), restoredArticle.getAuthorName());
+            assertEquals(article.getDatePublished(), restoredArticle.getDatePublished());
+            assertEquals(article.getWebURL(), restoredArticle.getWebURL());
+            assertEquals(rows.get(i).getDateLabel(), restoredRows.get(i).getDateLabel());
+        }
+    }
+
+    @Test
+    public void damagedSnapshot_isIgnoredAndDeleted() throws Exception {
+        File snapshotFile = temporaryFolder.newFile();
+        new FeedSnapshot(QUERY, rows(), 1, new int[]{10}, 0, 0).write(snapshotFile);
+
+        // Flip a byte in one of the article titles
+        RandomAccessFile snapshotData = new RandomAccessFile(snapshotFile, "rw");
+        snapshotData.seek(snapshotData.length() - 20);
+        int original = snapshotData.read();
+        snapshotData.seek(snapshotData.length() - 20);
+        snapshotData.write(original ^ 0xFF);
+        snapshotData.close();
+
+        assertNull(FeedSnapshot.read(snapshotFile));
+        assertFalse(snapshotFile.exists());
+    }
+
+    @Test
+    public void truncatedSnapshot_isIgnored() throws Exception {
+        File snapshotFile = temporaryFolder.newFile();
+        new FeedSnapshot(QUERY, rows(), 1, new int[]{10}, 0, 0).write(snapshotFile);
+
+        RandomAccessFile snapshotData = new RandomAccessFile(snapshotFile, "rw");
+        snapshotData.setLength(snapshotData.length() / 2);
+        snapshotData.close();
+
+        assertNull(FeedSnapshot.read(snapshotFile));
+    }
+
+    @Test
+    public void otherFormatVersion_isIgnored() throws Exception {
+        File snapshotFile = temporaryFolder.newFile();
+        new FeedSnapshot(QUERY, rows(), 1, new int[]{10}, 0, 0).write(snapshotFile);
+
+        RandomAccessFile snapshotData = new RandomAccessFile(snapshotFile, "rw");
+        snapshotData.seek(4);
+        snapshotData.writeInt(FeedSnapshot.FORMAT_VERSION + 1);
+        snapshotData.close();
+
+        assertNull(FeedSnapshot.read(snapshotFile));
+    }
+
+    @Test
+    public void missingOrEmptySnapshot_isIgnored() throws Exception {
+        assertNull(FeedSnapshot.read(new File(temporaryFolder.getRoot(), "missing.bin")));
+        assertNull(FeedSnapshot.read(temporaryFolder.newFile()));
+    }
+
+    private static List<ArticleRow> rows() {
+        List<NewsArticle> articles = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String id = "science/" + i;
+            articles.add(new NewsArticle(id, "Squirrels on the Moon " + i + " | Science",
+                    (i % 3 == 0) ? "Science" : "Technology", (i % 4 == 0) ? null : "Author " + (i % 5),
+                    "2018-05-17T13:21:" + (10 + i % 50) + "Z", "https://www.theguardian.com/" + id));
+        }
+        articles.add(new NewsArticle("science/unreadable", "Unreadable date", "Science", "Ben Smith",
+                "last Tuesday", "https://example.com/elsewhere"));
+        return ArticleRow.fromArticles(articles);
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.android.stemnews;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link FeedSync} respects the minimum interval between syncs.
+ */
+public class FeedSyncTest {
+
+    private static final long MIN_INTERVAL = 60 * 60 * 1000;
+    private static final long NOW = 1526563314000L;
+
+    @Test
+    public void neverSynced_isDue() {
+        assertTrue(FeedSync.isDue(0, NOW, MIN_INTERVAL));
+    }
+
+    @Test
+    public void syncedWithinInterval_isNotDue() {
+        assertFalse(FeedSync.isDue(NOW - MIN_INTERVAL + 1, NOW, MIN_INTERVAL));
+    }
+
+    @Test
+    public void syncedIntervalAgo_isDue() {
+        assertTrue(FeedSync.isDue(NOW - MIN_INTERVAL, NOW, MIN_INTERVAL));
+    }
+
+    @Test
+    public void clockSetBack_isDue() {
+        assertTrue(FeedSync.isDue(NOW + MIN_INTERVAL, NOW, MIN_INTERVAL));
+    }
+}
@@ -0,0 +1,397 @@
+package com.example.android.stemnews;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.GzipSink;
+
+/**
+ * A local stand-in for the /search endpoint of The Guardian web API, so that the whole load
+ * pipeline can be run and measured without the real servers or an API key.
+ * <p>
+ * Pages of any size are made up from the articles in the largest recorded response, which are
+ * repeated further back in time (with new IDs) to fill as many pages as the recorded total. Any
+ * query is accepted, the newest and oldest orders are honoured and relevance is treated as newest.
+ * Requests for an invalid page size or a page past the end get the same errors as the real API.
+ * Responses are compressed when gzip is accepted and can be revalidated by their ETag.
+ * <p>
+ * Each response is delayed, slowed down, failed or throttled according to a {@link Profile},
+ * using random numbers from a fixed seed so that a run can be repeated.
+ * <p>
+ * The stand-in can also be run on its own for a debug build of the app to load, with
+ * ./gradlew :app:guardianStandIn -PstandInProfile=mobile and a debug build made with
+ * -PguardianApiUrl set to its address.
+ */
+public final class GuardianStandIn {
+
+    /**
+     * The conditions that responses are served under.
+     */
+    static final class Profile {
+        final String name;
+        final int latencyMillis;
+        final int jitterMillis;
+        final int bytesPerSecond;
+        final double errorRate;
+        final double throttleRate;
+        final int retryAfterSeconds;
+
+        /**
+         * @param name              is the name used to pick the profile and to report on it.
+         * @param latencyMillis     is the least time taken before the response headers are sent.
+         * @param jitterMillis      is the most extra time, chosen at random, added to the latency.
+         * @param bytesPerSecond    is the rate the response body is sent at, or 0 for no limit.
+         * @param errorRate         is the fraction of requests that fail with a server error.
+         * @param throttleRate      is the fraction of requests that are refused with a 429.
+         * @param retryAfterSeconds is the Retry-After value sent with a 429.
+         */
+        Profile(String name, int latencyMillis, int jitterMillis, int bytesPerSecond,
+                double errorRate, double throttleRate, int retryAfterSeconds) {
+            this.name = name;
+            this.latencyMillis = latencyMillis;
+            this.jitterMillis = jitterMillis;
+            this.bytesPerSecond = bytesPerSecond;
+            this.errorRate = errorRate;
+            this.throttleRate = throttleRate;
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+    }
+
+    static final Profile FAST = new Profile("fast", 0, 0, 0, 0, 0, 0);
+    static final Profile WIFI = new Profile("wifi", 30, 20, 2000000, 0, 0, 0);
+    static final Profile MOBILE = new Profile("mobile", 150, 100, 100000, 0.01, 0, 0);
+    static final Profile FLAKY = new Profile("flaky", 80, 60, 250000, 0.1, 0.05, 1);
+    static final Profile RATE_LIMITED = new Profile("rate_limited", 30, 10, 2000000, 0, 0.3, 1);
+
+    private static final Profile[] PROFILES = {FAST, WIFI, MOBILE, FLAKY, RATE_LIMITED};
+
+    private static final String SEARCH_PATH = "/search";
+    private static final String RECORDED_RESPONSE = "fixtures/search_page_size_200.json";
+    private static final int DEFAULT_PAGE_SIZE = 10;
+    private static final int MAX_PAGE_SIZE = 200;
+    private static final int MAX_AGE_SECONDS = 60;
+
+    // Responses are sent in slices of the bandwidth allowed for this many milliseconds
+    private static final int THROTTLE_PERIOD = 100;
+
+    private final Profile profile;
+    private final Random random;
+    private final List<JsonObject> recordedArticles;
+    private final int totalArticles;
+    private final long recordedSpanMillis;
+
+    private final AtomicInteger errorCount = new AtomicInteger();
+    private final AtomicInteger throttledCount = new AtomicInteger();
+    private final AtomicInteger notModifiedCount = new AtomicInteger();
+
+    private MockWebServer server;
+
+    /**
+     * @param profile is the {@link Profile} that responses are served under.
+     * @param seed    is the seed of the random numbers used to apply the profile.
+     * @throws IOException if the recorded response could not be read.
+     */
+    GuardianStandIn(Profile profile, long seed) throws IOException {
+        this.profile = profile;
+        this.random = new Random(seed);
+
+        JsonObject recordedResponse = readRecordedResponse().getAsJsonObject().getAsJsonObject("response");
+        totalArticles = recordedResponse.get("total").getAsInt();
+
+        recordedArticles = new ArrayList<>();
+        for (JsonElement article : recordedResponse.getAsJsonArray("results")) {
+            recordedArticles.add(article.getAsJsonObject());
+        }
+        Collections.sort(recordedArticles, new Comparator<JsonObject>() {
+            @Override
+            public int compare(JsonObject first, JsonObject second) {
+                return Long.compare(publishedMillis(second), publishedMillis(first));
+            }
+        });
+
+        // The repeats of the recorded articles start just before the oldest of them
+        recordedSpanMillis = publishedMillis(recordedArticles.get(0))
+                - publishedMillis(recordedArticles.get(recordedArticles.size() - 1)) + TimeUnit.MINUTES.toMillis(1);
+    }
+
+    /**
+     * Start serving on the given port.
+     *
+     * @param port is the port to listen on, or 0 for any free port.
+     * @throws IOException if the server could not be started.
+     */
+    void start(int port) throws IOException {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return respond(request);
+            }
+        });
+        server.start(port);
+    }
+
+    void shutdown() throws IOException {
+        server.shutdown();
+    }
+
+    /**
+     * Build a search URL in the same form as the app, for a page of the stand-in's results.
+     *
+     * @param orderBy  is the order of the results, such as newest.
+     * @param pageSize is the number of articles in each page.
+     * @param page     is the number of the page, starting from 1.
+     * @return the URL in String form.
+     */
+    String searchUrl(String orderBy, int pageSize, int page) {
+        return server.url(SEARCH_PATH).newBuilder()
+                .addQueryParameter("q", "science OR technology")
+                .addQueryParameter("order-by", orderBy)
+                .addQueryParameter("page-size", String.valueOf(pageSize))
+                .addQueryParameter(QueryUtils.PAGE_PARAMETER, String.valueOf(page))
+                .addQueryParameter("show-tags", "contributor")
+                .addQueryParameter("show-fields", "thumbnail")
+                .addQueryParameter(ArticleCache.API_KEY_PARAMETER, "test")
+                .build().toString();
+    }
+
+    int getRequestCount() {
+        return server.getRequestCount();
+    }
+
+    int getErrorCount() {
+        return errorCount.get();
+    }
+
+    int getThrottledCount() {
+        return throttledCount.get();
+    }
+
+    int getNotModifiedCount() {
+        return notModifiedCount.get();
+    }
+
+    /**
+     * Work out the response to a request under the profile.
+     *
+     * @param request is the {@link RecordedRequest} received by the server.
+     * @return the {@link MockResponse} to send back.
+     */
+    private MockResponse respond(RecordedRequest request) {
+        HttpUrl requestUrl = request.getRequestUrl();
+        if (!SEARCH_PATH.equals(requestUrl.encodedPath())) {
+            return errorResponse(404, "Not found");
+        }
+
+        // Decide on any injected failure first, as the real servers refuse before doing any work
+        double failureRoll = random.nextDouble();
+        if (failureRoll < profile.throttleRate) {
+            throttledCount.incrementAndGet();
+            return delayed(new MockResponse()
+                    .setResponseCode(RateLimiter.TOO_MANY_REQUESTS)
+                    .addHeader("Retry-After", String.valueOf(profile.retryAfterSeconds)));
+        }
+        if (failureRoll < profile.throttleRate + profile.errorRate) {
+            errorCount.incrementAndGet();
+            return delayed(errorResponse(500, "Internal server error"));
+        }
+
+        int pageSize = intParameter(requestUrl, "page-size", DEFAULT_PAGE_SIZE);
+        int page = intParameter(requestUrl, QueryUtils.PAGE_PARAMETER, 1);
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            return delayed(errorResponse(400, "The page size must be less than or equal to " + MAX_PAGE_SIZE));
+        }
+        int pageCount = (totalArticles + pageSize - 1) / pageSize;
+        if (page < 1 || page > pageCount) {
+            return delayed(errorResponse(400, "requested page is beyond the number of available pages"));
+        }
+
+        boolean oldestFirst = "oldest".equals(requestUrl.queryParameter("order-by"));
+        String body = pageBody(oldestFirst, pageSize, page, pageCount);
+
+        String entityTag = "\"" + Integer.toHexString(body.hashCode()) + "\"";
+        if (entityTag.equals(request.getHeader("If-None-Match"))) {
+            notModifiedCount.incrementAndGet();
+            return delayed(new MockResponse().setResponseCode(304).addHeader("ETag", entityTag));
+        }
+
+        MockResponse response = new MockResponse()
+                .addHeader("Content-Type", "application/json; charset=utf-8")
+                .addHeader("Cache-Control", "max-age=" + MAX_AGE_SECONDS)
+                .addHeader("ETag", entityTag);
+
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            response.addHeader("Content-Encoding", "gzip").setBody(gzip(body));
+        } else {
+            response.setBody(body);
+        }
+
+        if (profile.bytesPerSecond > 0) {
+            response.throttleBody(Math.max(1, profile.bytesPerSecond * THROTTLE_PERIOD / 1000),
+                    THROTTLE_PERIOD, TimeUnit.MILLISECONDS);
+        }
+        return delayed(response);
+    }
+
+    // Write a successful response in the same form and field order as the real API
+    private String pageBody(boolean oldestFirst, int pageSize, int page, int pageCount) {
+        int startIndex = (page - 1) * pageSize;
+        int endIndex = Math.min(startIndex + pageSize, totalArticles);
+
+        JsonArray results = new JsonArray();
+        for (int i = startIndex; i < endIndex; i++) {
+            results.add(article(oldestFirst ? totalArticles - 1 - i : i));
+        }
+
+        JsonObject response = new JsonObject();
+        response.addProperty("status", "ok");
+        response.addProperty("userTier", "developer");
+        response.addProperty("total", totalArticles);
+        response.addProperty("startIndex", startIndex + 1);
+        response.addProperty("pageSize", pageSize);
+        response.addProperty("currentPage", page);
+        response.addProperty("pages", pageCount);
+        response.addProperty("orderBy", oldestFirst ? "oldest" : "newest");
+        response.add("results", results);
+
+        JsonObject root = new JsonObject();
+        root.add("response", response);
+        return root.toString();
+    }
+
+    /*
+    Get the article at a position in the newest first order. Past the recorded articles, they are
+    repeated with their IDs and links made unique and their dates moved back by whole spans of
+    the recorded dates, so the order stays the same
+    */
+    private JsonObject article(int index) {
+        JsonObject recordedArticle = recordedArticles.get(index % recordedArticles.size());
+        int repeat = index / recordedArticles.size();
+        if (repeat == 0) {
+            return recordedArticle;
+        }
+
+        JsonObject article = recordedArticle.deepCopy();
+        article.addProperty("id", recordedArticle.get("id").getAsString() + "-" + repeat);
+        article.addProperty("webUrl", recordedArticle.get("webUrl").getAsString() + "-" + repeat);
+        article.addProperty("webPublicationDate",
+                ArticleDates.formatIsoDate(publishedMillis(recordedArticle) - repeat * recordedSpanMillis));
+        return article;
+    }
+
+    private MockResponse delayed(MockResponse response) {
+        int jitter = (profile.jitterMillis > 0) ? random.nextInt(profile.jitterMillis + 1) : 0;
+        return response.setHeadersDelay(profile.latencyMillis + jitter, TimeUnit.MILLISECONDS);
+    }
+
+    private static MockResponse errorResponse(int code, String message) {
+        JsonObject response = new JsonObject();
+        response.addProperty("status", "error");
+        response.addProperty("message", message);
+
+        JsonObject root = new JsonObject();
+        root.add("response", response);
+        return new MockResponse()
+                .setResponseCode(code)
+                .addHeader("Content-Type", "application/json; charset=utf-8")
+                .setBody(root.toString());
+    }
+
+    private static int intParameter(HttpUrl url, String name, int defaultValue) {
+        String value = url.queryParameter(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static long publishedMillis(JsonObject article) {
+        return ArticleDates.parseIsoDate(article.get("webPublicationDate").getAsString());
+    }
+
+    private static Buffer gzip(String body) {
+        Buffer compressedBody = new Buffer();
+        try {
+            GzipSink gzipSink = new GzipSink(compressedBody);
+            Buffer plainBody = new Buffer().writeUtf8(body);
+            gzipSink.write(plainBody, plainBody.size());
+            gzipSink.close();
+        } catch (IOException e) {
+            // Writing to a Buffer never fails
+            throw new AssertionError(e);
+        }
+        return compressedBody;
+    }
+
+    private static JsonElement readRecordedResponse() throws IOException {
+        InputStream recordedStream = GuardianStandIn.class.getClassLoader().getResourceAsStream(RECORDED_RESPONSE);
+        if (recordedStream == null) {
+            throw new IOException("Missing recorded response " + RECORDED_RESPONSE);
+        }
+        try {
+            return new JsonParser().parse(new InputStreamReader(recordedStream, Charset.forName("UTF-8")));
+        } finally {
+            recordedStream.close();
+        }
+    }
+
+    /**
+     * Look up one of the standard profiles by name.
+     *
+     * @param name is the name of the profile, such as mobile.
+     * @return the {@link Profile}, or null if there is none with that name.
+     */
+    static Profile profileNamed(String name) {
+        for (Profile profile : PROFILES) {
+            if (profile.name.equals(name)) {
+                return profile;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Serve until stopped.
+     *
+     * @param args are the port to listen on and the name of the profile, which default to 8080
+     *             and fast.
+     */
+    public static void main(String[] args) throws Exception {
+        int port = (args.length > 0) ? Integer.parseInt(args[0]) : 8080;
+        Profile profile = profileNamed((args.length > 1) ? args[1] : FAST.name);
+        if (profile == null) {
+            System.err.println("Unknown profile " + args[1] + ", expected one of fast, wifi, mobile, flaky or rate_limited");
+            System.exit(1);
+        }
+
+        GuardianStandIn standIn = new GuardianStandIn(profile, System.nanoTime());
+        standIn.start(port);
+        System.out.println("Serving the " + profile.name + " profile at " + standIn.server.url(SEARCH_PATH));
+        Thread.sleep(Long.MAX_VALUE);
+    }
+}
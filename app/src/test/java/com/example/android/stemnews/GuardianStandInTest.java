@@ -0,0 +1,109 @@
+package com.example.android.stemnews;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.List;
+
+import okhttp3.OkHttpClient;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the {@link GuardianStandIn} serves pages that the app's client and parser read in
+ * the same way as responses from the real API.
+ */
+public class GuardianStandInTest {
+
+    private static final long CACHE_SIZE = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder cacheFolder = new TemporaryFolder();
+
+    private GuardianStandIn standIn;
+    private OkHttpClient httpClient;
+    private ArticleJsonParser articleParser;
+
+    @Before
+    public void setUp() throws IOException {
+        standIn = new GuardianStandIn(GuardianStandIn.FAST, 1);
+        standIn.start(0);
+
+        httpClient = NetworkClient.createClient(cacheFolder.getRoot(), CACHE_SIZE, 5, 300);
+        articleParser = new ArticleJsonParser(ArticleJsonParserTest.KEYS);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        standIn.shutdown();
+    }
+
+    @Test
+    public void anyPageSize_isServed() {
+        assertEquals(10, fetch("newest", 10, 1).size());
+        assertEquals(37, fetch("newest", 37, 3).size());
+        assertEquals(200, fetch("newest", 200, 2).size());
+    }
+
+    @Test
+    public void pagesPastRecordedArticles_haveUniqueIdsAndOlderDates() {
+        List<NewsArticle> lastRecorded = fetch("newest", 200, 1);
+        List<NewsArticle> firstRepeat = fetch("newest", 200, 2);
+
+        NewsArticle oldestRecorded = lastRecorded.get(199);
+        NewsArticle newestRepeat = firstRepeat.get(0);
+        assertNotEquals(lastRecorded.get(0).getArticleId(), newestRepeat.getArticleId());
+        assertTrue(newestRepeat.getPublishedMillis() < oldestRecorded.getPublishedMillis());
+    }
+
+    @Test
+    public void oldestOrder_reversesNewestOrder() {
+        List<NewsArticle> newest = fetch("newest", 10, 1);
+        int lastPage = (4823 + 9) / 10;
+        List<NewsArticle> oldest = fetch("oldest", 10, lastPage);
+
+        // The last page of the oldest order ends with the newest article
+        assertEquals(newest.get(0).getArticleId(), oldest.get(oldest.size() - 1).getArticleId());
+    }
+
+    @Test
+    public void pagePastTheEnd_isRefused() {
+        assertNull(fetch("newest", 200, 1000));
+    }
+
+    @Test
+    public void pageSizeOverLimit_isRefused() {
+        assertNull(fetch("newest", 201, 1));
+    }
+
+    @Test
+    public void unchangedPage_isRevalidated() {
+        String url = standIn.searchUrl("newest", 10, 1);
+        QueryUtils.fetchLatestNews(url, httpClient, articleParser, 0);
+        List<NewsArticle> revalidated = QueryUtils.fetchLatestNews(url, httpClient, articleParser, 0);
+
+        assertEquals(10, revalidated.size());
+        assertEquals(1, standIn.getNotModifiedCount());
+    }
+
+    @Test
+    public void profile_injectsFailures() throws IOException {
+        GuardianStandIn failingStandIn = new GuardianStandIn(
+                new GuardianStandIn.Profile("failing", 0, 0, 0, 1, 0, 0), 1);
+        failingStandIn.start(0);
+        try {
+            assertNull(QueryUtils.fetchLatestNews(failingStandIn.searchUrl("newest", 10, 1), httpClient, articleParser, 0));
+            assertEquals(1, failingStandIn.getErrorCount());
+        } finally {
+            failingStandIn.shutdown();
+        }
+    }
+
+    private List<NewsArticle> fetch(String orderBy, int pageSize, int page) {
+        return QueryUtils.fetchLatestNews(standIn.searchUrl(orderBy, pageSize, page), httpClient, articleParser, 0);
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.android.stemnews;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the summary and export formats of {@link LoadMetrics}.
+ */
+public class LoadMetricsTest {
+
+    @Test
+    public void summaryLine_showsPercentilesInMillis() {
+        long[] sortedNanos = {1000000, 2000000, 3000000, 40000000};
+
+        String line = LoadMetrics.summaryLine("Read and parse", 10, sortedNanos);
+
+        assertTrue(line.startsWith("Read and parse"));
+        assertTrue(line.trim().endsWith("2.0     40.0     40.0"));
+        assertTrue(line.contains(" 10 "));
+    }
+
+    @Test
+    public void recordedStage_isInSummaryAndSamples() throws IOException {
+        LoadMetrics.record(LoadMetrics.STAGE_BIND, System.nanoTime());
+
+        StringBuilder summary = new StringBuilder();
+        LoadMetrics.writeSummary(summary);
+        StringWriter samples = new StringWriter();
+        LoadMetrics.writeSamples(samples);
+
+        assertTrue(summary.toString().contains("Bind row"));
+        assertTrue(samples.toString().startsWith("stage,duration_ms\n"));
+        assertTrue(samples.toString().contains("Bind row,"));
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.android.stemnews;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.GzipSink;
+import okio.Okio;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the shared HTTP client used by {@link QueryUtils} against a local stand-in for The
+ * Guardian web API.
+ */
+public class NetworkClientTest {
+
+    private static final long CACHE_SIZE = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder cacheFolder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private OkHttpClient httpClient;
+    private ArticleJsonParser articleParser;
+    private String pageJson;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+
+        httpClient = NetworkClient.createClient(cacheFolder.getRoot(), CACHE_SIZE, 5, 300);
+        articleParser = new ArticleJsonParser(ArticleJsonParserTest.KEYS);
+        pageJson = Okio.buffer(Okio.source(ArticleJsonParserTest.openFixture("search_page_size_10.json"))).readUtf8();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void unchangedPage_isRevalidatedWithConditionalRequest() throws InterruptedException {
+        server.enqueue(new MockResponse()
+                .setBody(pageJson)
+                .addHeader("ETag", "\"page-1\"")
+                .addHeader("Cache-Control", "max-age=0"));
+        server.enqueue(new MockResponse().setResponseCode(304));
+
+        String url = server.url("/search?page=1").toString();
+        List<NewsArticle> firstLoad = QueryUtils.fetchLatestNews(url, httpClient, articleParser, 0);
+        List<NewsArticle> secondLoad = QueryUtils.fetchLatestNews(url, httpClient, articleParser, 0);
+
+        server.takeRequest();
+        RecordedRequest revalidation = server.takeRequest();
+        assertEquals("\"page-1\"", revalidation.getHeader("If-None-Match"));
+
+        assertEquals(10, firstLoad.size());
+        assertEquals(10, secondLoad.size());
+        assertEquals(firstLoad.get(9).getWebURL(), secondLoad.get(9).getWebURL());
+        assertEquals(1, httpClient.cache().hitCount());
+        assertEquals(2, httpClient.cache().networkCount());
+    }
+
+    @Test
+    public void stalePage_isServedLocallyWithinMaxStale() {
+        server.enqueue(new MockResponse()
+                .setBody(pageJson)
+                .addHeader("Cache-Control", "max-age=0"));
+
+        String url = server.url("/search?page=2").toString();
+        QueryUtils.fetchLatestNews(url, httpClient, articleParser, 60);
+        List<NewsArticle> secondLoad = QueryUtils.fetchLatestNews(url, httpClient, articleParser, 60);
+
+        assertEquals(1, server.getRequestCount());
+        assertEquals(10, secondLoad.size());
+        assertEquals(1, httpClient.cache().hitCount());
+    }
+
+    @Test
+    public void gzipResponse_isDecodedIntoParser() throws IOException, InterruptedException {
+        Buffer compressedBody = new Buffer();
+        GzipSink gzipSink = new GzipSink(compressedBody);
+        Buffer plainBody = new Buffer().writeUtf8(pageJson);
+        gzipSink.write(plainBody, plainBody.size());
+        gzipSink.close();
+
+        server.enqueue(new MockResponse()
+                .setBody(compressedBody)
+                .addHeader("Content-Encoding", "gzip"));
+
+        List<NewsArticle> articles = QueryUtils.fetchLatestNews(
+                server.url("/search?page=3").toString(), httpClient, articleParser, 0);
+
+        assertEquals("gzip", server.takeRequest().getHeader("Accept-Encoding"));
+        assertEquals(10, articles.size());
+    }
+
+    @Test
+    public void nextPage_reusesPooledConnection() throws InterruptedException {
+        server.enqueue(new MockResponse().setBody(pageJson));
+        server.enqueue(new MockResponse().setBody(pageJson));
+
+        QueryUtils.fetchLatestNews(server.url("/search?page=1").toString(), httpClient, articleParser, 0);
+        QueryUtils.fetchLatestNews(server.url("/search?page=2").toString(), httpClient, articleParser, 0);
+
+        // The sequence number counts the requests made over the same connection
+        assertEquals(0, server.takeRequest().getSequenceNumber());
+        assertEquals(1, server.takeRequest().getSequenceNumber());
+        assertEquals(1, httpClient.connectionPool().connectionCount());
+    }
+
+    @Test
+    public void poolWithoutIdleConnections_closesConnectionAfterUse() {
+        OkHttpClient noPoolClient = NetworkClient.createClient(cacheFolder.getRoot(), CACHE_SIZE, 0, 300);
+        server.enqueue(new MockResponse().setBody(pageJson));
+
+        QueryUtils.fetchLatestNews(server.url("/search?page=1").toString(), noPoolClient, articleParser, 0);
+
+        assertEquals(0, noPoolClient.connectionPool().idleConnectionCount());
+    }
+
+    @Test
+    public void errorResponse_returnsNull() {
+        server.enqueue(new MockResponse().setResponseCode(500));
+
+        assertNull(QueryUtils.fetchLatestNews(server.url("/search?page=1").toString(), httpClient, articleParser, 0));
+    }
+
+    @Test
+    public void cancelledRequest_stopsDownloadStraightAway() throws Exception {
+        // A body trickled out so slowly that it would take far longer than the test allows
+        server.enqueue(new MockResponse()
+                .setBody(pageJson)
+                .throttleBody(64, 1, TimeUnit.SECONDS));
+
+        final CancellationToken cancellation = new CancellationToken();
+        ExecutorService loader = Executors.newSingleThreadExecutor();
+        Future<List<NewsArticle>> result = loader.submit(new Callable<List<NewsArticle>>() {
+            @Override
+            public List<NewsArticle> call() {
+                return QueryUtils.fetchLatestNews(server.url("/search?page=1").toString(), httpClient, articleParser, 0, false, cancellation);
+            }
+        });
+
+        server.takeRequest();
+        cancellation.cancel();
+
+        assertNull(result.get(2, TimeUnit.SECONDS));
+        loader.shutdown();
+    }
+
+    @Test
+    public void throttledRequest_isRetriedAfterBackoff() throws InterruptedException {
+        RateLimiter rateLimiter = new RateLimiter(10, 100, 3, RateLimiter.nowMillis());
+        OkHttpClient limitedClient = NetworkClient.createClient(cacheFolder.getRoot(), CACHE_SIZE, 5, 300, rateLimiter);
+        server.enqueue(new MockResponse().setResponseCode(RateLimiter.TOO_MANY_REQUESTS).addHeader("Retry-After", "0"));
+        server.enqueue(new MockResponse().setBody(pageJson));
+
+        List<NewsArticle> articles = QueryUtils.fetchLatestNews(
+                server.url("/search?page=1").toString(), limitedClient, articleParser, 0, false, null);
+
+        assertNotNull(articles);
+        assertEquals(2, server.getRequestCount());
+        assertEquals(1, rateLimiter.getThrottledCount());
+    }
+
+    @Test
+    public void cachedResponse_doesNotUseBudget() throws InterruptedException {
+        RateLimiter rateLimiter = new RateLimiter(10, 100, 3, RateLimiter.nowMillis());
+        OkHttpClient limitedClient = NetworkClient.createClient(cacheFolder.getRoot(), CACHE_SIZE, 5, 300, rateLimiter);
+        server.enqueue(new MockResponse()
+                .setBody(pageJson)
+                .addHeader("Cache-Control", "max-age=60"));
+
+        String url = server.url("/search?page=1").toString();
+        QueryUtils.fetchLatestNews(url, limitedClient, articleParser, 60, false, null);
+        QueryUtils.fetchLatestNews(url, limitedClient, articleParser, 60, false, null);
+
+        assertEquals(1, server.getRequestCount());
+        assertEquals(99, rateLimiter.getRemainingToday());
+    }
+}
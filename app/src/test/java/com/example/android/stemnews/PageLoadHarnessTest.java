@@ -0,0 +1,123 @@
+package com.example.android.stemnews;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+
+import static org.junit.Assert.*;
+
+/**
+ * Scrolls through pages of the {@link GuardianStandIn} with the same steps that the
+ * {@link ArticleLoader} takes for each page (fetching and parsing it through the shared client,
+ * leaving out articles already in the feed and working out the rows) and reports the percentiles
+ * of the page load times for each profile.
+ */
+public class PageLoadHarnessTest {
+
+    private static final long CACHE_SIZE = 1024 * 1024;
+    private static final int PAGE_SIZE = 10;
+    private static final int PAGES = 20;
+    private static final long SEED = 42;
+
+    @Rule
+    public TemporaryFolder cacheFolder = new TemporaryFolder();
+
+    private GuardianStandIn standIn;
+    private RateLimiter rateLimiter;
+
+    @After
+    public void tearDown() throws IOException {
+        if (standIn != null) {
+            standIn.shutdown();
+        }
+    }
+
+    @Test
+    public void fastProfile_loadsEveryPage() throws IOException {
+        LoadReport report = scroll(GuardianStandIn.FAST);
+
+        assertEquals(0, report.failedPages);
+        assertEquals(PAGES * PAGE_SIZE, report.feed.size());
+    }
+
+    @Test
+    public void latency_isIncludedInEveryLoad() throws IOException {
+        LoadReport report = scroll(new GuardianStandIn.Profile("slow", 50, 20, 500000, 0, 0, 0));
+
+        long[] sortedSamples = report.samples.snapshot();
+        Arrays.sort(sortedSamples);
+        assertTrue(sortedSamples[0] >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(PAGES * PAGE_SIZE, report.feed.size());
+    }
+
+    @Test
+    public void flakyProfile_reportsFailedPages() throws IOException {
+        LoadReport report = scroll(new GuardianStandIn.Profile("flaky", 10, 10, 0, 0.2, 0, 0));
+
+        assertEquals(standIn.getErrorCount(), report.failedPages);
+        assertTrue(report.failedPages > 0);
+        assertEquals((PAGES - report.failedPages) * PAGE_SIZE, report.feed.size());
+    }
+
+    @Test
+    public void throttledRequests_areRetried() throws IOException {
+        LoadReport report = scroll(new GuardianStandIn.Profile("throttled", 0, 0, 0, 0, 0.2, 0));
+
+        assertTrue(standIn.getThrottledCount() > 0);
+        assertEquals(standIn.getThrottledCount(), rateLimiter.getThrottledCount());
+        assertEquals(0, report.failedPages);
+    }
+
+    /*
+    Load each page in turn on a fresh client and cache, in the way the loader does when the user
+    scrolls to the end of the feed, and time it from the request to the rows being ready
+    */
+    private LoadReport scroll(GuardianStandIn.Profile profile) throws IOException {
+        standIn = new GuardianStandIn(profile, SEED);
+        standIn.start(0);
+
+        rateLimiter = new RateLimiter(10, 5000, 3, RateLimiter.nowMillis());
+        OkHttpClient httpClient = NetworkClient.createClient(cacheFolder.getRoot(), CACHE_SIZE, 5, 300, rateLimiter);
+        ArticleJsonParser articleParser = new ArticleJsonParser(ArticleJsonParserTest.KEYS);
+
+        LoadReport report = new LoadReport();
+        for (int page = 1; page <= PAGES; page++) {
+            long startNanos = System.nanoTime();
+            List<NewsArticle> articles = QueryUtils.fetchLatestNews(standIn.searchUrl("newest", PAGE_SIZE, page),
+                    httpClient, articleParser, ArticleLoader.NEXT_PAGE_MAX_STALE, false, null);
+            if (articles == null) {
+                report.failedPages++;
+                continue;
+            }
+
+            int pageStart = report.feed.size();
+            ArticleFeed renderedPage = ArticleLoader.renderPage(
+                    report.feed.withoutLoaded(articles, pageStart, new HashSet<String>()));
+            report.feed = report.feed.replaceFrom(pageStart, renderedPage.getRows());
+            report.samples.add(System.nanoTime() - startNanos);
+        }
+
+        long[] sortedSamples = report.samples.snapshot();
+        Arrays.sort(sortedSamples);
+        System.out.print(LoadMetrics.summaryLine("Page load (" + profile.name + ")", report.samples.getCount(), sortedSamples));
+        System.out.println("  requests: " + standIn.getRequestCount() + ", failed pages: " + report.failedPages
+                + ", throttled: " + standIn.getThrottledCount());
+        return report;
+    }
+
+    // The feed built up by a scroll through the pages, with the load time of each page
+    private static final class LoadReport {
+        final SampleRing samples = new SampleRing(32);
+        ArticleFeed feed = new ArticleFeed();
+        int failedPages;
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.android.stemnews;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link PagePlan} maps pages of the list to API pages that follow on from each other
+ * without gaps or overlaps, however the page size changes.
+ */
+public class PagePlanTest {
+
+    @Test
+    public void defaultSize_matchesFixedPaging() {
+        PagePlan pagePlan = new PagePlan();
+        PageSizer pageSizer = new PageSizer();
+
+        for (int page = 1; page <= 5; page++) {
+            PagePlan.Window window = pagePlan.windowFor(page, pageSizer);
+            assertEquals(page, window.apiPage);
+            assertEquals(PageSizer.DEFAULT_PAGE_SIZE, window.pageSize);
+        }
+    }
+
+    @Test
+    public void growingSize_keepsPagesContiguous() {
+        PagePlan pagePlan = new PagePlan();
+        PageSizer pageSizer = new PageSizer();
+        pagePlan.windowFor(1, pageSizer);
+
+        // Scrolling faster than the articles can be received asks for the largest pages
+        pageSizer.recordResponse(10, 20000, TimeUnit.MILLISECONDS.toNanos(300), TimeUnit.MILLISECONDS.toNanos(100));
+        for (int step = 0; step <= 10; step++) {
+            pageSizer.recordScroll(step * 30, step * 200);
+        }
+
+        int offset = PageSizer.DEFAULT_PAGE_SIZE;
+        for (int page = 2; page <= 8; page++) {
+            PagePlan.Window window = pagePlan.windowFor(page, pageSizer);
+            assertEquals("Page " + page + " starts where the last one ended", offset, (window.apiPage - 1) * window.pageSize);
+            offset += window.pageSize;
+        }
+
+        // The sizes double until the largest size fits the offset
+        assertArrayEquals(new int[]{10, 10, 20, 40, 40, 40, 40, 50}, pagePlan.getPageSizes(8));
+    }
+
+    @Test
+    public void plannedPage_keepsItsSize() {
+        PagePlan pagePlan = new PagePlan();
+        PageSizer pageSizer = new PageSizer();
+        PagePlan.Window prefetchWindow = pagePlan.windowFor(3, pageSizer);
+
+        pageSizer.recordResponse(10, 20000, TimeUnit.MILLISECONDS.toNanos(300), TimeUnit.MILLISECONDS.toNanos(100));
+        for (int step = 0; step <= 10; step++) {
+            pageSizer.recordScroll(step * 30, step * 200);
+        }
+        PagePlan.Window loadWindow = pagePlan.windowFor(3, pageSizer);
+
+        assertEquals(prefetchWindow.apiPage, loadWindow.apiPage);
+        assertEquals(prefetchWindow.pageSize, loadWindow.pageSize);
+    }
+
+    @Test
+    public void alignedSize_isLargestThatFitsOffset() {
+        assertEquals(20, PagePlan.alignedSize(20, 0));
+        assertEquals(10, PagePlan.alignedSize(20, 10));
+        assertEquals(30, PagePlan.alignedSize(50, 30));
+        assertEquals(5, PagePlan.alignedSize(10, 15));
+        assertEquals(25, PagePlan.alignedSize(25, 75));
+    }
+
+    @Test
+    public void restoredSizes_replaceDifferentPlan() {
+        PagePlan pagePlan = new PagePlan();
+        pagePlan.windowFor(3, new PageSizer());
+
+        pagePlan.restore(new int[]{10, 20});
+
+        assertArrayEquals(new int[]{10, 20}, pagePlan.getPageSizes(5));
+        PagePlan.Window window = pagePlan.windowFor(2, new PageSizer());
+        assertEquals(1, window.apiPage);
+        assertEquals(20, window.pageSize);
+    }
+
+    @Test
+    public void restoredSizes_keepPagesPlannedAfterThem() {
+        PagePlan pagePlan = new PagePlan();
+        pagePlan.windowFor(4, new PageSizer());
+
+        pagePlan.restore(new int[]{10, 10});
+
+        assertEquals(4, pagePlan.getPageSizes(10).length);
+    }
+
+    @Test
+    public void reset_plansFromTheStart() {
+        PagePlan pagePlan = new PagePlan();
+        pagePlan.windowFor(4, new PageSizer());
+
+        pagePlan.reset();
+
+        assertEquals(0, pagePlan.getPageSizes(10).length);
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.android.stemnews;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link PageSizer} grows pages for fast scrolling, shrinks the first page on slow
+ * links and otherwise keeps to the default size.
+ */
+public class PageSizerTest {
+
+    private static final int PAGE_SIZE = 10;
+
+    @Test
+    public void noMeasurements_usesDefaultSize() {
+        PageSizer pageSizer = new PageSizer();
+
+        assertEquals(PageSizer.DEFAULT_PAGE_SIZE, pageSizer.targetPageSize(true));
+        assertEquals(PageSizer.DEFAULT_PAGE_SIZE, pageSizer.targetPageSize(false));
+    }
+
+    @Test
+    public void fastLinkWithoutScrolling_usesDefaultSize() {
+        PageSizer pageSizer = new PageSizer();
+        recordPages(pageSizer, 50, 20000, 10);
+
+        assertEquals(PageSizer.DEFAULT_PAGE_SIZE, pageSizer.targetPageSize(false));
+    }
+
+    @Test
+    public void fastScrolling_growsPages() {
+        PageSizer pageSizer = new PageSizer();
+        // A 300ms round trip and 10ms to receive each article
+        recordPages(pageSizer, 300, 20000, 100);
+        scroll(pageSizer, 10, 200, 10);
+
+        int pageSize = pageSizer.targetPageSize(false);
+        assertTrue(pageSize > PageSizer.DEFAULT_PAGE_SIZE);
+        assertTrue(pageSize < PageSizer.MAX_PAGE_SIZE);
+        assertEquals(0, pageSize % PageSizer.MIN_PAGE_SIZE);
+    }
+
+    @Test
+    public void scrollingFasterThanDownload_usesLargestSize() {
+        PageSizer pageSizer = new PageSizer();
+        recordPages(pageSizer, 300, 20000, 100);
+        scroll(pageSizer, 30, 200, 10);
+
+        assertEquals(PageSizer.MAX_PAGE_SIZE, pageSizer.targetPageSize(false));
+    }
+
+    @Test
+    public void slowLink_shrinksFirstPageOnly() {
+        PageSizer pageSizer = new PageSizer();
+        // A 600ms round trip and 200ms to receive each article
+        recordPages(pageSizer, 600, 20000, 2000);
+
+        assertEquals(PageSizer.MIN_PAGE_SIZE, pageSizer.targetPageSize(true));
+        assertEquals(PageSizer.DEFAULT_PAGE_SIZE, pageSizer.targetPageSize(false));
+    }
+
+    @Test
+    public void pauseInScrolling_slowsVelocity() {
+        PageSizer pageSizer = new PageSizer();
+        scroll(pageSizer, 10, 200, 10);
+        double scrollingVelocity = pageSizer.getArticlesPerSecond();
+
+        // Carry on from the same place after a long pause
+        pageSizer.recordScroll(100, 10000);
+
+        assertTrue(pageSizer.getArticlesPerSecond() < scrollingVelocity);
+    }
+
+    @Test
+    public void throttledResponseSizes_areIgnored() {
+        PageSizer pageSizer = new PageSizer();
+        pageSizer.recordResponse(PAGE_SIZE, 0, TimeUnit.MILLISECONDS.toNanos(300), 0);
+
+        assertEquals(0, pageSizer.getRoundTripMillis(), 0);
+    }
+
+    @Test
+    public void sizes_areRoundedUpWithinBounds() {
+        assertEquals(5, PageSizer.roundToPageSize(0));
+        assertEquals(5, PageSizer.roundToPageSize(Double.NaN));
+        assertEquals(15, PageSizer.roundToPageSize(11.2));
+        assertEquals(20, PageSizer.roundToPageSize(20));
+        assertEquals(50, PageSizer.roundToPageSize(400));
+    }
+
+    // Record several pages of the default size with the same timings
+    private static void recordPages(PageSizer pageSizer, long roundTripMillis, long bodyBytes, long transferMillis) {
+        for (int i = 0; i < 5; i++) {
+            pageSizer.recordResponse(PAGE_SIZE, bodyBytes, TimeUnit.MILLISECONDS.toNanos(roundTripMillis),
+                    TimeUnit.MILLISECONDS.toNanos(transferMillis));
+        }
+    }
+
+    // Scroll down the list by the same number of articles at a steady interval
+    private static void scroll(PageSizer pageSizer, int articlesPerStep, long stepMillis, int steps) {
+        for (int step = 0; step <= steps; step++) {
+            pageSizer.recordScroll(step * articlesPerStep, step * stepMillis);
+        }
+    }
+}
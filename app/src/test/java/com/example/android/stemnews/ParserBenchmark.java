@@ -0,0 +1,75 @@
+package com.example.android.stemnews;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okio.Okio;
+
+/**
+ * Measures how many pages of recorded Guardian API responses can be parsed each second, by the
+ * streaming parser that the app uses and by the original parser that reads the whole response
+ * into a String and builds a JSON object tree from it.
+ * <p>
+ * Run with ./gradlew :app:jmh, which also reports the allocation rate of each benchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    // The number of articles in the recorded response
+    @Param({"10", "50", "200"})
+    public int pageSize;
+
+    private byte[] responseBytes;
+    private ArticleJsonParser articleParser;
+
+    @Setup
+    public void readFixture() throws IOException {
+        responseBytes = readFixture("search_page_size_" + pageSize + ".json");
+        articleParser = new ArticleJsonParser(ArticleJsonParserTest.KEYS);
+    }
+
+    @Benchmark
+    public List<NewsArticle> streamingParser() throws IOException {
+        return articleParser.parse(new ByteArrayInputStream(responseBytes));
+    }
+
+    @Benchmark
+    public List<NewsArticle> treeParser() throws IOException {
+        String responseJson = QueryUtils.readFromStream(new ByteArrayInputStream(responseBytes));
+        return QueryUtils.extractFeatureFromJson(responseJson, ArticleJsonParserTest.KEYS);
+    }
+
+    /**
+     * Read a recorded response from the test resources.
+     *
+     * @param fixtureName is the file name of the response in the fixtures directory.
+     * @return the bytes of the response.
+     */
+    static byte[] readFixture(String fixtureName) throws IOException {
+        InputStream fixture = ParserBenchmark.class.getClassLoader().getResourceAsStream("fixtures/" + fixtureName);
+        if (fixture == null) {
+            throw new IOException("Missing fixture " + fixtureName);
+        }
+        return Okio.buffer(Okio.source(fixture)).readByteArray();
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.android.stemnews;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the token bucket and backoff of {@link RateLimiter}, using fixed times so that the
+ * results do not depend on how quickly the tests run.
+ */
+public class RateLimiterTest {
+
+    private static final int PER_SECOND = 10;
+    private static final int PER_DAY = 100;
+    private static final int RESERVE = 3;
+
+    @Test
+    public void fullBucket_allowsBurstThenWaits() {
+        RateLimiter rateLimiter = new RateLimiter(PER_SECOND, PER_DAY, RESERVE, 0);
+
+        for (int i = 0; i < PER_SECOND; i++) {
+            assertEquals(0, rateLimiter.tryAcquire(RateLimiter.USER_VISIBLE, 0));
+        }
+
+        // The next token is earned after a tenth of a second
+        assertEquals(100, rateLimiter.tryAcquire(RateLimiter.USER_VISIBLE, 0));
+        assertEquals(0, rateLimiter.tryAcquire(RateLimiter.USER_VISIBLE, 100));
+    }
+
+    @Test
+    public void backgroundRequests_leaveReserve() {
+        RateLimiter rateLimiter = new RateLimiter(PER_SECOND, PER_DAY, RESERVE, 0);
+
+        int backgroundCount = 0;
+        while (rateLimiter.tryAcquire(RateLimiter.BACKGROUND, 0) == 0) {
+            backgroundCount++;
+        }
+
+        assertEquals(PER_SECOND - RESERVE, backgroundCount);
+        for (int i = 0; i < RESERVE; i++) {
+            assertEquals(0, rateLimiter.tryAcquire(RateLimiter.USER_VISIBLE, 0));
+        }
+    }
+
+    @Test
+    public void throttledResponse_holdsBackRequests() {
+        RateLimiter rateLimiter = new RateLimiter(PER_SECOND, PER_DAY, RESERVE, 0);
+
+        rateLimiter.recordResponse(RateLimiter.TOO_MANY_REQUESTS, "2", 0);
+
+        // At least the Retry-After time, plus at least half of the first backoff
+        long waitMillis = rateLimiter.tryAcquire(RateLimiter.USER_VISIBLE, 0);
+        assertTrue(waitMillis >= 2500);
+        assertTrue(waitMillis <= 3000);
+        assertEquals(1, rateLimiter.getThrottledCount());
+    }
+
+    @Test
+    public void dailyBudget_runsOut() {
+        RateLimiter rateLimiter = new RateLimiter(PER_SECOND, 2, RESERVE, 0);
+
+        assertEquals(0, rateLimiter.tryAcquire(RateLimiter.USER_VISIBLE, 0));
+        assertEquals(0, rateLimiter.tryAcquire(RateLimiter.USER_VISIBLE, 0));
+        assertEquals(RateLimiter.BUDGET_USED_UP, rateLimiter.tryAcquire(RateLimiter.USER_VISIBLE, 0));
+
+        // The budget is counted again a day later
+        assertEquals(0, rateLimiter.tryAcquire(RateLimiter.USER_VISIBLE, TimeUnit.DAYS.toMillis(1)));
+    }
+
+    @Test
+    public void waitingRequest_getsTokenWhenItIsDue() throws Exception {
+        RateLimiter rateLimiter = new RateLimiter(PER_SECOND, PER_DAY, RESERVE, RateLimiter.nowMillis());
+        while (rateLimiter.tryAcquire(RateLimiter.USER_VISIBLE, RateLimiter.nowMillis()) == 0) {
+            // Empty the bucket
+        }
+
+        long waitStart = System.nanoTime();
+        rateLimiter.acquire(RateLimiter.USER_VISIBLE, newCall(), null);
+
+        // The next token is earned a tenth of a second after the bucket was emptied
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - waitStart) < 1000);
+    }
+
+    @Test
+    public void cancelledRequest_stopsWaitingStraightAway() throws Exception {
+        final RateLimiter rateLimiter = new RateLimiter(1, PER_DAY, 0, RateLimiter.nowMillis());
+        rateLimiter.recordResponse(RateLimiter.TOO_MANY_REQUESTS, "10", RateLimiter.nowMillis());
+        final CancellationToken cancellation = new CancellationToken();
+        ExecutorService waiter = Executors.newSingleThreadExecutor();
+
+        Future<Void> waitResult = waiter.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                rateLimiter.acquire(RateLimiter.USER_VISIBLE, newCall(), cancellation);
+                return null;
+            }
+        });
+        Thread.sleep(50);
+        long cancelStart = System.nanoTime();
+        cancellation.cancel();
+
+        try {
+            waitResult.get(5, TimeUnit.SECONDS);
+            fail("The wait should have been cancelled");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - cancelStart) < 1000);
+        waiter.shutdown();
+    }
+
+    @Test
+    public void backoff_doublesWithJitterUpToLimit() {
+        assertEquals(500, RateLimiter.backoffMillis(0, 1, 0));
+        assertEquals(999, RateLimiter.backoffMillis(0, 1, 0.999));
+        assertEquals(3000, RateLimiter.backoffMillis(0, 3, 0.5));
+        assertEquals(60000, RateLimiter.backoffMillis(0, 20, 1));
+        assertEquals(5500, RateLimiter.backoffMillis(5000, 1, 0));
+    }
+
+    @Test
+    public void retryAfter_readsSecondsAndDates() {
+        long now = 1526563314000L; // Thu, 17 May 2018 13:21:54 GMT
+
+        assertEquals(30000, RateLimiter.parseRetryAfter("30", now));
+        assertEquals(10000, RateLimiter.parseRetryAfter("Thu, 17 May 2018 13:22:04 GMT", now));
+        assertEquals(0, RateLimiter.parseRetryAfter("soon", now));
+        assertEquals(0, RateLimiter.parseRetryAfter(null, now));
+    }
+
+    private static Call newCall() {
+        return new OkHttpClient().newCall(new Request.Builder().url("http://localhost/").build());
+    }
+}
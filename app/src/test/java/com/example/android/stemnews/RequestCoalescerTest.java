@@ -0,0 +1,276 @@
+package com.example.android.stemnews;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link RequestCoalescer} only makes one request for identical requests made at the
+ * same time, and shares its result between them.
+ */
+public class RequestCoalescerTest {
+
+    private static final int CALLERS = 5;
+
+    @Test
+    public void identicalRequests_makeOneCall() throws Exception {
+        RequestCoalescer<String> coalescer = new RequestCoalescer<>();
+        BlockingFetcher fetcher = new BlockingFetcher("page 1");
+        ExecutorService callers = Executors.newFixedThreadPool(CALLERS);
+
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(callers.submit(execute(coalescer, "page=1", 60, fetcher)));
+        }
+
+        // Let the request finish once every caller is waiting on it
+        waitForCount(coalescer, CALLERS);
+        fetcher.release.countDown();
+
+        for (Future<String> result : results) {
+            assertEquals("page 1", result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, fetcher.calls.get());
+        assertEquals(1, coalescer.getStartedCount());
+        assertEquals(CALLERS - 1, coalescer.getCoalescedCount());
+        callers.shutdown();
+    }
+
+    @Test
+    public void differentRequests_makeSeparateCalls() throws Exception {
+        RequestCoalescer<String> coalescer = new RequestCoalescer<>();
+        BlockingFetcher fetcher = new BlockingFetcher("page");
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+
+        Future<String> first = callers.submit(execute(coalescer, "page=1", 60, fetcher));
+        Future<String> second = callers.submit(execute(coalescer, "page=2", 60, fetcher));
+        waitForCount(coalescer, 2);
+        fetcher.release.countDown();
+
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        assertEquals(2, fetcher.calls.get());
+        assertEquals(0, coalescer.getCoalescedCount());
+        callers.shutdown();
+    }
+
+    @Test
+    public void fresherRequest_doesNotJoinStalerOne() throws Exception {
+        RequestCoalescer<String> coalescer = new RequestCoalescer<>();
+        BlockingFetcher fetcher = new BlockingFetcher("page 1");
+        ExecutorService callers = Executors.newFixedThreadPool(3);
+
+        Future<String> scroll = callers.submit(execute(coalescer, "page=1", 600, fetcher));
+        waitForCount(coalescer, 1);
+        Future<String> refresh = callers.submit(execute(coalescer, "page=1", 0, fetcher));
+        waitForCount(coalescer, 2);
+
+        // A later request that allows a stale response can join the fresher one
+        Future<String> later = callers.submit(execute(coalescer, "page=1", 600, fetcher));
+        waitForCount(coalescer, 3);
+        fetcher.release.countDown();
+
+        scroll.get(5, TimeUnit.SECONDS);
+        refresh.get(5, TimeUnit.SECONDS);
+        later.get(5, TimeUnit.SECONDS);
+        assertEquals(2, fetcher.calls.get());
+        assertEquals(1, coalescer.getCoalescedCount());
+        callers.shutdown();
+    }
+
+    @Test
+    public void userVisibleRequest_doesNotJoinBackgroundOne() throws Exception {
+        RequestCoalescer<String> coalescer = new RequestCoalescer<>();
+        BlockingFetcher fetcher = new BlockingFetcher("page 2");
+        ExecutorService callers = Executors.newFixedThreadPool(3);
+
+        Future<String> prefetch = callers.submit(execute(coalescer, "page=2", 600, true, null, fetcher));
+        waitForCount(coalescer, 1);
+        Future<String> scroll = callers.submit(execute(coalescer, "page=2", 600, false, null, fetcher));
+        waitForCount(coalescer, 2);
+
+        // A later background request can join the one that the user is waiting on
+        Future<String> laterPrefetch = callers.submit(execute(coalescer, "page=2", 600, true, null, fetcher));
+        waitForCount(coalescer, 3);
+        fetcher.release.countDown();
+
+        prefetch.get(5, TimeUnit.SECONDS);
+        assertEquals("page 2", scroll.get(5, TimeUnit.SECONDS));
+        laterPrefetch.get(5, TimeUnit.SECONDS);
+        assertEquals(2, fetcher.calls.get());
+        assertEquals(1, coalescer.getCoalescedCount());
+        callers.shutdown();
+    }
+
+    @Test
+    public void finishedRequest_isMadeAgain() {
+        RequestCoalescer<String> coalescer = new RequestCoalescer<>();
+        BlockingFetcher fetcher = new BlockingFetcher("page 1");
+        fetcher.release.countDown();
+
+        coalescer.execute("page=1", 60, false, null, fetcher);
+        coalescer.execute("page=1", 60, false, null, fetcher);
+
+        assertEquals(2, fetcher.calls.get());
+    }
+
+    @Test
+    public void onlyCallerGivingUp_cancelsRequest() throws Exception {
+        RequestCoalescer<String> coalescer = new RequestCoalescer<>();
+        BlockingFetcher fetcher = new BlockingFetcher("page 1");
+        ExecutorService callers = Executors.newSingleThreadExecutor();
+        CancellationToken cancellation = new CancellationToken();
+
+        Future<String> result = callers.submit(execute(coalescer, "page=1", 60, cancellation, fetcher));
+        waitForCount(coalescer, 1);
+        assertTrue(fetcher.started.await(5, TimeUnit.SECONDS));
+        cancellation.cancel();
+
+        assertNull(result.get(5, TimeUnit.SECONDS));
+        assertTrue(fetcher.cancelled);
+        assertEquals(1, coalescer.getAbandonedCount());
+        callers.shutdown();
+    }
+
+    @Test
+    public void oneCallerGivingUp_keepsRequestForOthers() throws Exception {
+        RequestCoalescer<String> coalescer = new RequestCoalescer<>();
+        BlockingFetcher fetcher = new BlockingFetcher("page 1");
+        ExecutorService callers = Executors.newFixedThreadPool(3);
+        CancellationToken leaderCancellation = new CancellationToken();
+        CancellationToken followerCancellation = new CancellationToken();
+
+        Future<String> leader = callers.submit(execute(coalescer, "page=1", 60, leaderCancellation, fetcher));
+        waitForCount(coalescer, 1);
+        Future<String> follower = callers.submit(execute(coalescer, "page=1", 60, followerCancellation, fetcher));
+        Future<String> other = callers.submit(execute(coalescer, "page=1", 60, null, fetcher));
+        waitForCount(coalescer, 3);
+
+        // A waiting caller that gives up returns straight away, before the request finishes
+        followerCancellation.cancel();
+        assertNull(follower.get(5, TimeUnit.SECONDS));
+
+        // The caller that started the request also returns straight away, without cancelling it for the caller still waiting
+        leaderCancellation.cancel();
+        assertNull(leader.get(5, TimeUnit.SECONDS));
+        assertFalse(fetcher.cancelled);
+        fetcher.release.countDown();
+
+        assertEquals("page 1", other.get(5, TimeUnit.SECONDS));
+        assertEquals(2, coalescer.getAbandonedCount());
+        callers.shutdown();
+    }
+
+    @Test
+    public void lastCallerGivingUp_cancelsRequestStartedByAnother() throws Exception {
+        RequestCoalescer<String> coalescer = new RequestCoalescer<>();
+        BlockingFetcher fetcher = new BlockingFetcher("page 1");
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        CancellationToken leaderCancellation = new CancellationToken();
+        CancellationToken followerCancellation = new CancellationToken();
+
+        Future<String> leader = callers.submit(execute(coalescer, "page=1", 60, leaderCancellation, fetcher));
+        waitForCount(coalescer, 1);
+        Future<String> follower = callers.submit(execute(coalescer, "page=1", 60, followerCancellation, fetcher));
+        waitForCount(coalescer, 2);
+        assertTrue(fetcher.started.await(5, TimeUnit.SECONDS));
+
+        leaderCancellation.cancel();
+        assertNull(leader.get(5, TimeUnit.SECONDS));
+        assertFalse(fetcher.cancelled);
+
+        followerCancellation.cancel();
+        assertNull(follower.get(5, TimeUnit.SECONDS));
+        assertTrue(fetcher.cancelled);
+        callers.shutdown();
+    }
+
+    @Test
+    public void cancelledCaller_makesNoRequest() {
+        RequestCoalescer<String> coalescer = new RequestCoalescer<>();
+        BlockingFetcher fetcher = new BlockingFetcher("page 1");
+        fetcher.release.countDown();
+        CancellationToken cancellation = new CancellationToken();
+        cancellation.cancel();
+
+        assertNull(coalescer.execute("page=1", 60, false, cancellation, fetcher));
+        assertEquals(0, fetcher.calls.get());
+        assertEquals(0, coalescer.getStartedCount());
+    }
+
+    private static Callable<String> execute(RequestCoalescer<String> coalescer, String key, int maxStaleSeconds,
+                                            BlockingFetcher fetcher) {
+        return execute(coalescer, key, maxStaleSeconds, null, fetcher);
+    }
+
+    private static Callable<String> execute(RequestCoalescer<String> coalescer, String key, int maxStaleSeconds,
+                                            CancellationToken cancellation, BlockingFetcher fetcher) {
+        return execute(coalescer, key, maxStaleSeconds, false, cancellation, fetcher);
+    }
+
+    private static Callable<String> execute(final RequestCoalescer<String> coalescer,
+                                            final String key, final int maxStaleSeconds,
+                                            final boolean background,
+                                            final CancellationToken cancellation,
+                                            final BlockingFetcher fetcher) {
+        return new Callable<String>() {
+            @Override
+            public String call() {
+                return coalescer.execute(key, maxStaleSeconds, background, cancellation, fetcher);
+            }
+        };
+    }
+
+    // Wait until the given number of callers have either started a request or joined one
+    private static void waitForCount(RequestCoalescer<String> coalescer, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (coalescer.getStartedCount() + coalescer.getCoalescedCount() < count) {
+            assertTrue("Callers did not arrive in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+        // Give the last caller time to start waiting after it has been counted
+        Thread.sleep(20);
+    }
+
+    // A request that does not finish until it is released or cancelled
+    private static final class BlockingFetcher implements RequestCoalescer.Fetcher<String> {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        volatile boolean cancelled;
+        private final String result;
+
+        BlockingFetcher(String result) {
+            this.result = result;
+        }
+
+        @Override
+        public String fetch(CancellationToken cancellation) {
+            calls.incrementAndGet();
+            cancellation.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    cancelled = true;
+                    release.countDown();
+                }
+            });
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return cancelled ? null : result;
+        }
+    }
+}
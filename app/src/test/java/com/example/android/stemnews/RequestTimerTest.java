@@ -0,0 +1,60 @@
+package com.example.android.stemnews;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link RequestTimer} only counts the time that a request is actually in progress.
+ */
+public class RequestTimerTest {
+
+    @Test
+    public void timeWhilstPaused_isNotCounted() throws InterruptedException {
+        RequestTimer requestTimer = new RequestTimer();
+        Thread.sleep(50);
+        assertEquals(0, requestTimer.elapsedNanos());
+
+        requestTimer.resume();
+        requestTimer.pause();
+        long counted = requestTimer.elapsedNanos();
+        Thread.sleep(50);
+
+        assertEquals(counted, requestTimer.elapsedNanos());
+    }
+
+    @Test
+    public void runningRequest_isLateAfterTheLimit() throws InterruptedException {
+        RequestTimer requestTimer = new RequestTimer();
+        requestTimer.resume();
+
+        long waitStart = System.nanoTime();
+        assertFalse(requestTimer.awaitFinish(50));
+        assertTrue(System.nanoTime() - waitStart >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    public void requestHeldBack_isNotLateUntilItRuns() throws InterruptedException {
+        final RequestTimer requestTimer = new RequestTimer();
+        Thread requestThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    // Held back for longer than the limit, then finishes quickly once running
+                    Thread.sleep(150);
+                    requestTimer.resume();
+                    Thread.sleep(10);
+                    requestTimer.finish();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        requestThread.start();
+
+        assertTrue(requestTimer.awaitFinish(100));
+        requestThread.join();
+    }
+}
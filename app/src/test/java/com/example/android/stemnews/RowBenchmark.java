@@ -0,0 +1,74 @@
+package com.example.android.stemnews;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the work done for each page before its rows are bound to the list: reading the
+ * publication dates, formatting them for display and working out the values of every row.
+ * <p>
+ * Run with ./gradlew :app:jmh, which also reports the allocation rate of each benchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowBenchmark {
+
+    // The number of articles in the recorded response
+    @Param({"10", "50", "200"})
+    public int pageSize;
+
+    private List<NewsArticle> articles;
+    private String[] isoDates;
+    private long[] publishedMillis;
+
+    @Setup
+    public void parseFixture() throws IOException {
+        byte[] responseBytes = ParserBenchmark.readFixture("search_page_size_" + pageSize + ".json");
+        articles = new ArticleJsonParser(ArticleJsonParserTest.KEYS).parse(new ByteArrayInputStream(responseBytes));
+
+        isoDates = new String[articles.size()];
+        publishedMillis = new long[articles.size()];
+        for (int i = 0; i < articles.size(); i++) {
+            publishedMillis[i] = articles.get(i).getPublishedMillis();
+            isoDates[i] = ArticleDates.formatIsoDate(publishedMillis[i]);
+        }
+    }
+
+    @Benchmark
+    public void parseDates(Blackhole blackhole) {
+        for (String isoDate : isoDates) {
+            blackhole.consume(ArticleDates.parseIsoDate(isoDate));
+        }
+    }
+
+    @Benchmark
+    public void formatDates(Blackhole blackhole) {
+        for (long millis : publishedMillis) {
+            blackhole.consume(ArticleDates.formatDay(millis));
+        }
+    }
+
+    @Benchmark
+    public List<ArticleRow> buildRows() {
+        return ArticleRow.fromArticles(articles);
+    }
+}
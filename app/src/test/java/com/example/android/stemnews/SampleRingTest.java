@@ -0,0 +1,77 @@
+package com.example.android.stemnews;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link SampleRing} keeps the most recent samples and works out their percentiles.
+ */
+public class SampleRingTest {
+
+    @Test
+    public void fullRing_keepsNewestSamplesInOrder() {
+        SampleRing samples = new SampleRing(4);
+        for (long value = 1; value <= 6; value++) {
+            samples.add(value);
+        }
+
+        assertArrayEquals(new long[]{3, 4, 5, 6}, samples.snapshot());
+        assertEquals(6, samples.getCount());
+    }
+
+    @Test
+    public void partlyFullRing_onlyReturnsSamplesAdded() {
+        SampleRing samples = new SampleRing(8);
+        samples.add(7);
+        samples.add(9);
+
+        assertArrayEquals(new long[]{7, 9}, samples.snapshot());
+    }
+
+    @Test
+    public void percentiles_useNearestRank() {
+        long[] sortedValues = new long[100];
+        for (int i = 0; i < sortedValues.length; i++) {
+            sortedValues[i] = i + 1;
+        }
+
+        assertEquals(50, SampleRing.percentile(sortedValues, 0.5));
+        assertEquals(95, SampleRing.percentile(sortedValues, 0.95));
+        assertEquals(99, SampleRing.percentile(sortedValues, 0.99));
+        assertEquals(7, SampleRing.percentile(new long[]{7}, 0.99));
+        assertEquals(0, SampleRing.percentile(new long[0], 0.5));
+    }
+
+    @Test
+    public void concurrentWriters_areAllCounted() throws InterruptedException {
+        final SampleRing samples = new SampleRing(64);
+        ExecutorService writers = Executors.newFixedThreadPool(4);
+        for (int writer = 0; writer < 4; writer++) {
+            writers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 1000; i++) {
+                        samples.add(1);
+                    }
+                }
+            });
+        }
+        writers.shutdown();
+        assertTrue(writers.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(4000, samples.getCount());
+        for (long sample : samples.snapshot()) {
+            assertEquals(1, sample);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacity_mustBePowerOfTwo() {
+        new SampleRing(100);
+    }
+}
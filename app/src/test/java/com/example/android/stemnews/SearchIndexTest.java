@@ -0,0 +1,157 @@
+package com.example.android.stemnews;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the queries, trimming and saved form of the {@link SearchIndex}.
+ */
+public class SearchIndexTest {
+
+    @Rule
+    public TemporaryFolder indexFolder = new TemporaryFolder();
+
+    @Test
+    public void tokenize_lowerCasesAndRemovesAccents() {
+        assertEquals(Arrays.asList("cafe", "scientists", "find", "h2o", "on", "mars", "science"),
+                SearchIndex.tokenize("Café scientists find H2O on Mars | Science"));
+    }
+
+    @Test
+    public void search_matchesEveryWordInAnyField() {
+        SearchIndex index = indexOf(
+                article("science/a", "Black holes merge", "Science", "Ian Sample", "2018-05-20T10:00:00Z"),
+                article("science/b", "Gravitational waves detected", "Science", "Ian Sample", "2018-05-19T10:00:00Z"),
+                article("technology/c", "Black Friday gadgets", "Technology", null, "2018-05-18T10:00:00Z"));
+
+        assertIds(index.search("black", 10), "science/a", "technology/c");
+        assertIds(index.search("black science", 10), "science/a");
+        assertIds(index.search("sample waves", 10), "science/b");
+        assertIds(index.search("quantum", 10));
+        assertIds(index.search("  ", 10));
+    }
+
+    @Test
+    public void search_lastWordMatchesAsPrefixUntilComplete() {
+        SearchIndex index = indexOf(
+                article("science/a", "Gravity explained", "Science", null, "2018-05-20T10:00:00Z"),
+                article("science/b", "Gravitational waves", "Science", null, "2018-05-19T10:00:00Z"));
+
+        assertIds(index.search("grav", 10), "science/a", "science/b");
+        assertIds(index.search("gravity ", 10), "science/a");
+        assertIds(index.search("grav ", 10));
+    }
+
+    @Test
+    public void search_returnsNewestFirstUpToLimit() {
+        SearchIndex index = indexOf(
+                article("science/a", "Moon landing", "Science", null, "2018-05-17T10:00:00Z"),
+                article("science/b", "Moon rocks", "Science", null, "2018-05-20T10:00:00Z"),
+                article("science/c", "Moon base", "Science", null, "2018-05-19T10:00:00Z"));
+
+        assertIds(index.search("moon", 2), "science/b", "science/c");
+    }
+
+    @Test
+    public void addAll_skipsArticlesAlreadyIndexed() {
+        SearchIndex index = new SearchIndex();
+        NewsArticle article = article("science/a", "Moon landing", "Science", null, "2018-05-17T10:00:00Z");
+        index.addAll(Arrays.asList(article));
+        index.addAll(Arrays.asList(article));
+
+        assertEquals(1, index.size());
+        assertIds(index.search("moon", 10), "science/a");
+    }
+
+    @Test
+    public void addAll_trimsOldestArticlesOverTheLimit() {
+        List<NewsArticle> articles = new ArrayList<>();
+        for (int i = 0; i <= SearchIndex.MAX_DOCUMENTS; i++) {
+            articles.add(article("science/" + i, "Article number" + i, "Science", null,
+                    ArticleDates.formatIsoDate(i * 60000L)));
+        }
+        SearchIndex index = new SearchIndex();
+        index.addAll(articles);
+
+        assertEquals(SearchIndex.TRIMMED_DOCUMENTS, index.size());
+        assertIds(index.search("number0", 10));
+        assertIds(index.search("number" + SearchIndex.MAX_DOCUMENTS, 10), "science/" + SearchIndex.MAX_DOCUMENTS);
+        assertEquals(SearchIndex.TRIMMED_DOCUMENTS, index.search("article", Integer.MAX_VALUE).size());
+    }
+
+    @Test
+    public void writtenIndex_readsBackWithSameResults() throws IOException {
+        SearchIndex index = indexOf(
+                article("science/a", "Black holes merge", "Science", "Ian Sample", "2018-05-20T10:00:00Z"),
+                article("technology/c", "Black Friday gadgets", "Technology", null, "not a date"));
+        File indexFile = indexFolder.newFile();
+        index.writeIfChanged(indexFile);
+
+        SearchIndex readIndex = SearchIndex.read(indexFile);
+
+        assertNotNull(readIndex);
+        assertEquals(index.termCount(), readIndex.termCount());
+        assertIds(readIndex.search("black", 10), "science/a", "technology/c");
+        NewsArticle restored = readIndex.search("sample", 10).get(0);
+        assertEquals("Ian Sample", restored.getAuthorName());
+        assertEquals("https://www.theguardian.com/science/a", restored.getWebURL());
+        assertEquals("not a date", readIndex.search("friday", 10).get(0).getDatePublished());
+    }
+
+    @Test
+    public void corruptIndex_isDeleted() throws IOException {
+        SearchIndex index = indexOf(article("science/a", "Black holes", "Science", null, "2018-05-20T10:00:00Z"));
+        File indexFile = indexFolder.newFile();
+        index.writeIfChanged(indexFile);
+
+        RandomAccessFile corruptFile = new RandomAccessFile(indexFile, "rw");
+        try {
+            corruptFile.seek(indexFile.length() - 1);
+            corruptFile.write(0xFF);
+        } finally {
+            corruptFile.close();
+        }
+
+        assertNull(SearchIndex.read(indexFile));
+        assertFalse(indexFile.exists());
+    }
+
+    @Test
+    public void unchangedIndex_isNotWrittenAgain() throws IOException {
+        SearchIndex index = indexOf(article("science/a", "Black holes", "Science", null, "2018-05-20T10:00:00Z"));
+        File indexFile = indexFolder.newFile();
+        index.writeIfChanged(indexFile);
+        assertTrue(indexFile.delete());
+
+        index.writeIfChanged(indexFile);
+
+        assertFalse(indexFile.exists());
+    }
+
+    private static SearchIndex indexOf(NewsArticle... articles) {
+        SearchIndex index = new SearchIndex();
+        index.addAll(Arrays.asList(articles));
+        return index;
+    }
+
+    private static NewsArticle article(String id, String title, String section, String author, String datePublished) {
+        return new NewsArticle(id, title, section, author, datePublished, "https://www.theguardian.com/" + id);
+    }
+
+    private static void assertIds(List<NewsArticle> articles, String... expectedIds) {
+        assertEquals(expectedIds.length, articles.size());
+        for (int i = 0; i < expectedIds.length; i++) {
+            assertEquals(expectedIds[i], articles.get(i).getArticleId());
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.android.stemnews;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link ThumbnailLoader} decodes images to just cover the size of their view.
+ */
+public class ThumbnailLoaderTest {
+
+    @Test
+    public void largeImage_isSampledWhilstStillCoveringTarget() {
+        // A 500x300 thumbnail shown in a 96x72 view can be quartered to 125x75
+        assertEquals(4, ThumbnailLoader.sampleSize(500, 300, 96, 72));
+        assertEquals(8, ThumbnailLoader.sampleSize(2000, 1200, 192, 144));
+    }
+
+    @Test
+    public void smallImage_isNotSampled() {
+        assertEquals(1, ThumbnailLoader.sampleSize(96, 72, 96, 72));
+        assertEquals(1, ThumbnailLoader.sampleSize(50, 40, 96, 72));
+
+        // Halving 500x300 would leave it too short for a 200x160 view
+        assertEquals(1, ThumbnailLoader.sampleSize(500, 300, 200, 160));
+    }
+
+    @Test
+    public void wideImage_isScaledToTargetHeight() {
+        // 250x150 is wider than 96x72, so it is scaled until its height matches
+        assertArrayEquals(new int[]{150, 72}, ThumbnailLoader.coverScale(250, 150, 96, 72));
+    }
+
+    @Test
+    public void tallImage_isScaledToTargetWidth() {
+        assertArrayEquals(new int[]{200, 96}, ThumbnailLoader.coverScale(200, 300, 96, 72));
+    }
+
+    @Test
+    public void imageSmallerThanTarget_isNotScaledUp() {
+        int[] scale = ThumbnailLoader.coverScale(50, 40, 96, 72);
+        assertEquals(scale[0], scale[1]);
+    }
+}